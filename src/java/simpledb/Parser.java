@@ -24,6 +24,8 @@ import simpledb.transaction.TransactionId;
 
 public class Parser {
     static boolean explain = false;
+    static boolean compile = false;
+    static int parallelism = 1;
 
     public static Predicate.Op getOp(String s) throws simpledb.ParsingException {
         if (s.equals("="))
@@ -143,6 +145,7 @@ public class Parser {
         List<ZFromItem> from = q.getFrom();
         LogicalPlan lp = new LogicalPlan();
         lp.setQuery(q.toString());
+        lp.setParallelism(parallelism);
         // walk through tables in the FROM clause
         for (int i = 0; i < from.size(); i++) {
             ZFromItem fromIt = from.get(i);
@@ -312,6 +315,9 @@ public class Parser {
                 e.printStackTrace();
             }
         }
+        if (compile && physicalPlan != null) {
+            query.setPhysicalPlan(PipelineCompiler.compile(physicalPlan));
+        }
 
         return query;
     }
@@ -581,7 +587,7 @@ public class Parser {
         p.start(argv);
     }
 
-    static final String usage = "Usage: parser catalogFile [-explain] [-f queryFile]";
+    static final String usage = "Usage: parser catalogFile [-explain] [-compile] [-parallel N] [-f queryFile]";
     static final int SLEEP_TIME = 1000;
 
     protected void shutdown() {
@@ -602,6 +608,20 @@ public class Parser {
                 if (argv[i].equals("-explain")) {
                     explain = true;
                     System.out.println("Explain mode enabled.");
+                } else if (argv[i].equals("-compile")) {
+                    compile = true;
+                    System.out.println("Query pipelines will be compiled.");
+                } else if (argv[i].equals("-parallel")) {
+                    try {
+                        parallelism = Integer.parseInt(argv[++i]);
+                        if (parallelism < 1)
+                            throw new NumberFormatException();
+                    } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                        System.out.println("Expected a number of threads after -parallel\n"
+                                + usage);
+                        System.exit(0);
+                    }
+                    System.out.println("Queries will scan tables with " + parallelism + " threads.");
                 } else if (argv[i].equals("-f")) {
                     interactive = false;
                     if (i++ == argv.length) {
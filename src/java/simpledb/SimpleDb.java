@@ -7,6 +7,7 @@ import simpledb.transaction.TransactionAbortedException;
 import simpledb.transaction.TransactionId;
 
 import java.io.*;
+import java.util.Arrays;
 
 public class SimpleDb {
     public static void main (String[] args)
@@ -22,33 +23,12 @@ public class SimpleDb {
                     File sourceTxtFile = new File(args[1]);
                     File targetDatFile = new File(args[1].replaceAll(".txt", ".dat"));
                     int numOfAttributes = Integer.parseInt(args[2]);
-                    Type[] ts = new Type[numOfAttributes];
+                    Type[] ts = parseTypes(args.length > 3 ? args[3] : null, numOfAttributes);
+                    if (ts == null)
+                        return;
                     char fieldSeparator = ',';
-
-                    if (args.length == 3)
-                        for (int i = 0; i < numOfAttributes; i++)
-                            ts[i] = Type.INT_TYPE;
-                    else {
-                        String typeString = args[3];
-                        String[] typeStringAr = typeString.split(",");
-                        if (typeStringAr.length != numOfAttributes) {
-                            System.err.println("The number of types does not agree with the number of columns");
-                            return;
-                        }
-                        int index = 0;
-                        for (String s : typeStringAr) {
-                            if (s.equalsIgnoreCase("int"))
-                                ts[index++] = Type.INT_TYPE;
-                            else if (s.equalsIgnoreCase("string"))
-                                ts[index++] = Type.STRING_TYPE;
-                            else {
-                                System.err.println("Unknown type " + s);
-                                return;
-                            }
-                        }
-                        if (args.length == 5)
-                            fieldSeparator = args[4].charAt(0);
-                    }
+                    if (args.length == 5)
+                        fieldSeparator = args[4].charAt(0);
 
                     HeapFileEncoder.convert(sourceTxtFile, targetDatFile,
                             BufferPool.getPageSize(), numOfAttributes, ts, fieldSeparator);
@@ -57,6 +37,22 @@ public class SimpleDb {
                     throw new RuntimeException(e);
                 }
                 break;
+            case "migrate":
+                // rewrite a table of fixed-width pages as slotted pages
+                try {
+                    if (args.length < 4 || args.length > 5) {
+                        System.err.println("Usage: migrate source.dat target.dat numOfAttributes [types]");
+                        return;
+                    }
+                    Type[] ts = parseTypes(args.length > 4 ? args[4] : null, Integer.parseInt(args[3]));
+                    if (ts == null)
+                        return;
+                    HeapFileEncoder.convertToSlotted(new File(args[1]), new File(args[2]),
+                            BufferPool.getPageSize(), new TupleDesc(ts));
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                break;
             case "print":
                 File tableFile = new File(args[1]);
                 int columns = Integer.parseInt(args[2]);
@@ -75,6 +71,21 @@ public class SimpleDb {
                     it.close();
                 }
                 break;
+            case "simulate":
+                if (args.length < 3) {
+                    System.err.println("Usage: simulate tracefile numPages [numPages ...]");
+                    return;
+                }
+                int[] poolSizes = new int[args.length - 2];
+                for (int i = 2; i < args.length; i++) {
+                    poolSizes[i - 2] = Integer.parseInt(args[i]);
+                }
+                try {
+                    EvictionSimulator.simulate(new File(args[1]), poolSizes);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                break;
             case "parser":
                 // Strip the first argument and call the parser
                 String[] newargs = new String[args.length - 1];
@@ -101,4 +112,35 @@ public class SimpleDb {
         }
     }
 
+    /**
+     * Parses a comma-separated list of column types, such as "int,string".
+     *
+     * @param typeString the list, or null for numOfAttributes int columns
+     * @return the types, or null after reporting an error
+     */
+    private static Type[] parseTypes(String typeString, int numOfAttributes) {
+        Type[] ts = new Type[numOfAttributes];
+        if (typeString == null) {
+            Arrays.fill(ts, Type.INT_TYPE);
+            return ts;
+        }
+        String[] typeStringAr = typeString.split(",");
+        if (typeStringAr.length != numOfAttributes) {
+            System.err.println("The number of types does not agree with the number of columns");
+            return null;
+        }
+        int index = 0;
+        for (String s : typeStringAr) {
+            if (s.equalsIgnoreCase("int"))
+                ts[index++] = Type.INT_TYPE;
+            else if (s.equalsIgnoreCase("string"))
+                ts[index++] = Type.STRING_TYPE;
+            else {
+                System.err.println("Unknown type " + s);
+                return null;
+            }
+        }
+        return ts;
+    }
+
 }
@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.util.*;
 import simpledb.storage.DbFile;
 import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPageFormat;
 import simpledb.storage.TupleDesc;
 
 /**
@@ -209,7 +210,9 @@ public class Catalog {
 
     /**
      * Reads the schema from a file and creates the appropriate tables in the
-     * database.
+     * database. A table's line may end with the format of its pages after the
+     * closing parenthesis, e.g. <code>name (a int, b string) slotted</code>;
+     * without one, the table uses {@link HeapPageFormat#FIXED}.
      * 
      * @param catalogFile
      */
@@ -220,7 +223,7 @@ public class Catalog {
             BufferedReader br = new BufferedReader(new FileReader(catalogFile));
 
             while ((line = br.readLine()) != null) {
-                // assume line is of the format name (field type, field type, ...)
+                // assume line is of the format name (field type, field type, ...) [format]
                 String name = line.substring(0, line.indexOf("(")).trim();
                 // System.out.println("TABLE NAME: " + name);
                 String fields = line.substring(line.indexOf("(") + 1, line.indexOf(")")).trim();
@@ -251,7 +254,17 @@ public class Catalog {
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder + "/" + name + ".dat"), t);
+                HeapPageFormat format = HeapPageFormat.FIXED;
+                String formatName = line.substring(line.indexOf(")") + 1).trim();
+                if (!formatName.isEmpty()) {
+                    try {
+                        format = HeapPageFormat.valueOf(formatName.toUpperCase());
+                    } catch (IllegalArgumentException e) {
+                        System.out.println("Unknown page format " + formatName);
+                        System.exit(0);
+                    }
+                }
+                HeapFile tabHf = new HeapFile(new File(baseFolder + "/" + name + ".dat"), t, format);
                 addTable(tabHf, name, primaryKey);
                 System.out.println("Added table : " + name + " with schema " + t);
             }
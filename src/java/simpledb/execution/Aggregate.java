@@ -152,20 +152,36 @@ public class Aggregate extends Operator {
      * "aggName(aop) (child_td.getFieldName(afield))" where aop and afield are
      * given in the constructor, and child_td is the TupleDesc of the child
      * iterator.
+     * <p>
+     * A SUM_COUNT aggregate ends with one more column, the count of each sum.
      */
     public TupleDesc getTupleDesc() {
-        TupleDesc childTd = source.getTupleDesc();
-        Type aggType = childTd.getFieldType(fieldIndexOfAggregate);
-        String aggFieldName = nameOfAggregatorOp(operation) + " (" + childTd.getFieldName(fieldIndexOfAggregate) + ")";
+        return tupleDesc(source.getTupleDesc(), fieldIndexOfAggregate, fieldIndexToGB, operation);
+    }
 
-        Type groupType = childTd.getFieldType(fieldIndexToGB);
-        String groupFieldName = childTd.getFieldName(fieldIndexToGB);
-        if (fieldIndexToGB == -1){
-            return new TupleDesc(new Type[]{aggType}, new String[]{aggFieldName});
+    /**
+     * @return the TupleDesc of an aggregate of the given child TupleDesc, as
+     * described for {@link #getTupleDesc()}
+     */
+    static TupleDesc tupleDesc(TupleDesc childTd, int afield, int gfield, Aggregator.Op aop) {
+        Type aggType = childTd.getFieldType(afield);
+        String aggFieldName = nameOfAggregatorOp(aop) + " (" + childTd.getFieldName(afield) + ")";
+
+        TupleDesc td;
+        if (gfield == -1){
+            td = new TupleDesc(new Type[]{aggType}, new String[]{aggFieldName});
         }
         else{
-            return new TupleDesc(new Type[]{groupType, aggType}, new String[]{groupFieldName, aggFieldName});
+            Type groupType = childTd.getFieldType(gfield);
+            String groupFieldName = childTd.getFieldName(gfield);
+            td = new TupleDesc(new Type[]{groupType, aggType}, new String[]{groupFieldName, aggFieldName});
+        }
+        if (aop == Aggregator.Op.SUM_COUNT){
+            // the count of each sum follows it
+            String countFieldName = nameOfAggregatorOp(Aggregator.Op.COUNT) + " (" + childTd.getFieldName(afield) + ")";
+            td = TupleDesc.merge(td, new TupleDesc(new Type[]{Type.INT_TYPE}, new String[]{countFieldName}));
         }
+        return td;
     }
 
     public void close() {
@@ -176,12 +192,12 @@ public class Aggregate extends Operator {
 
     @Override
     public OpIterator[] getChildren() {
-        return new OpIterator[]{aggIterator};
+        return new OpIterator[]{source};
     }
 
     @Override
     public void setChildren(OpIterator[] children) {
-        aggIterator = children[0];
+        source = children[0];
     }
 
 }
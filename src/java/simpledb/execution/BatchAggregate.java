@@ -0,0 +1,174 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.TupleBatch;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.Arrays;
+
+/**
+ * BatchAggregate is the batch counterpart of {@link Aggregate}, for int
+ * aggregate fields. Each group is numbered as it is first seen, and its
+ * running value and row count are kept in int arrays indexed by that
+ * number, which one loop per aggregate operator updates for a whole batch.
+ */
+public class BatchAggregate implements BatchIterator {
+
+    private static final long serialVersionUID = 1L;
+    private final BatchIterator child;
+    private final int afield;
+    private final int gfield;
+    private final Aggregator.Op aop;
+    private final TupleDesc td;
+    private final int[] groupIds = new int[TupleBatch.SIZE];
+    private transient TupleBatch result;
+    private transient int[] rows;
+    private transient int emitted; // the number of rows of result returned
+
+    /**
+     * @param child  The BatchIterator that is feeding us rows.
+     * @param afield The column over which we are computing an aggregate,
+     *               which must be an int column
+     * @param gfield The column over which we are grouping the result, or -1 if
+     *               there is no grouping
+     * @param aop    The aggregation operator to use: MIN, MAX, SUM, AVG or
+     *               COUNT
+     */
+    public BatchAggregate(BatchIterator child, int afield, int gfield, Aggregator.Op aop) {
+        if (child.getTupleDesc().getFieldType(afield) != Type.INT_TYPE) {
+            throw new IllegalArgumentException("BatchAggregate only aggregates int fields");
+        }
+        switch (aop) {
+            case MIN:
+            case MAX:
+            case SUM:
+            case AVG:
+            case COUNT:
+                break;
+            default:
+                throw new IllegalArgumentException("BatchAggregate does not compute " + aop);
+        }
+        this.child = child;
+        this.afield = afield;
+        this.gfield = gfield;
+        this.aop = aop;
+        this.td = Aggregate.tupleDesc(child.getTupleDesc(), afield, gfield, aop);
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+        KeyTable keys = gfield == Aggregator.NO_GROUPING ? null
+                : new KeyTable(child.getTupleDesc().getFieldType(gfield));
+        int[] values = new int[64];
+        int[] counts = new int[64];
+        int groups = 0;
+        TupleBatch batch;
+        while ((batch = child.nextBatch()) != null) {
+            int n = batch.rows();
+            int[] rows = batch.rowIndexes();
+            if (keys == null) {
+                Arrays.fill(groupIds, 0, n, 0);
+                groups = 1;
+            } else if (keys.getType() == Type.INT_TYPE) {
+                int[] g = batch.ints(gfield);
+                for (int i = 0; i < n; i++) {
+                    groupIds[i] = keys.add(g[rows[i]]);
+                }
+                groups = keys.size();
+            } else {
+                String[] g = batch.strings(gfield);
+                for (int i = 0; i < n; i++) {
+                    groupIds[i] = keys.add(g[rows[i]]);
+                }
+                groups = keys.size();
+            }
+            if (groups > values.length) {
+                values = Arrays.copyOf(values, Math.max(groups, values.length * 2));
+                counts = Arrays.copyOf(counts, values.length);
+            }
+            update(batch.ints(afield), rows, n, values, counts);
+        }
+
+        result = new TupleBatch(td);
+        for (int id = 0; id < groups; id++) {
+            int value = aop == Aggregator.Op.AVG ? values[id] / counts[id]
+                    : aop == Aggregator.Op.COUNT ? counts[id] : values[id];
+            int r = result.append();
+            if (keys == null) {
+                result.ints(0)[r] = value;
+                continue;
+            }
+            if (keys.getType() == Type.INT_TYPE) {
+                result.ints(0)[r] = keys.intKey(id);
+            } else {
+                result.strings(0)[r] = keys.stringKey(id);
+            }
+            result.ints(1)[r] = value;
+        }
+        rows = new int[TupleBatch.SIZE];
+        emitted = 0;
+    }
+
+    /**
+     * Adds the values in a at the first n of rows to the groups in groupIds.
+     */
+    private void update(int[] a, int[] rows, int n, int[] values, int[] counts) {
+        switch (aop) {
+            case MIN:
+                for (int i = 0; i < n; i++) {
+                    int g = groupIds[i];
+                    int v = a[rows[i]];
+                    values[g] = counts[g]++ == 0 ? v : Math.min(values[g], v);
+                }
+                break;
+            case MAX:
+                for (int i = 0; i < n; i++) {
+                    int g = groupIds[i];
+                    int v = a[rows[i]];
+                    values[g] = counts[g]++ == 0 ? v : Math.max(values[g], v);
+                }
+                break;
+            case SUM:
+            case AVG:
+                for (int i = 0; i < n; i++) {
+                    int g = groupIds[i];
+                    values[g] += a[rows[i]];
+                    counts[g]++;
+                }
+                break;
+            default: // COUNT
+                for (int i = 0; i < n; i++) {
+                    counts[groupIds[i]]++;
+                }
+                break;
+        }
+    }
+
+    public TupleBatch nextBatch() {
+        int count = Math.min(TupleBatch.SIZE, result.size() - emitted);
+        if (count == 0) {
+            return null;
+        }
+        for (int i = 0; i < count; i++) {
+            rows[i] = emitted + i;
+        }
+        emitted += count;
+        return result.view(rows, count);
+    }
+
+    public void rewind() {
+        emitted = 0;
+    }
+
+    public void close() {
+        child.close();
+        result = null;
+        rows = null;
+    }
+}
@@ -0,0 +1,130 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.storage.TupleBatch;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+/**
+ * BatchFilter is the batch counterpart of {@link Filter}. It drops the rows
+ * of each batch that fail its predicate by narrowing the batch's selection,
+ * in one loop per comparison operator for int fields.
+ */
+public class BatchFilter implements BatchIterator {
+
+    private static final long serialVersionUID = 1L;
+    private final Predicate p;
+    private final BatchIterator child;
+    private final int[] selection = new int[TupleBatch.SIZE];
+
+    /**
+     * @param p     The predicate to filter rows with
+     * @param child The child operator
+     */
+    public BatchFilter(Predicate p, BatchIterator child) {
+        this.p = p;
+        this.child = child;
+    }
+
+    public Predicate getPredicate() {
+        return p;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        TupleBatch batch;
+        while ((batch = child.nextBatch()) != null) {
+            int count;
+            if (child.getTupleDesc().getFieldType(p.getField()) == Type.INT_TYPE) {
+                count = filter(batch.ints(p.getField()), batch.rowIndexes(), batch.rows(),
+                        ((IntField) p.getOperand()).getValue());
+            } else {
+                count = filter(batch.strings(p.getField()), batch.rowIndexes(), batch.rows(),
+                        ((StringField) p.getOperand()).getValue());
+            }
+            if (count > 0) {
+                batch.select(selection, count);
+                return batch;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes the indexes among the first n of rows whose values satisfy the
+     * predicate, for an operand of b, to selection.
+     *
+     * @return the number of indexes written
+     */
+    private int filter(int[] values, int[] rows, int n, int b) {
+        int count = 0;
+        switch (p.getOp()) {
+            case EQUALS:
+            case LIKE:
+                for (int i = 0; i < n; i++) {
+                    int r = rows[i];
+                    if (values[r] == b) selection[count++] = r;
+                }
+                break;
+            case NOT_EQUALS:
+                for (int i = 0; i < n; i++) {
+                    int r = rows[i];
+                    if (values[r] != b) selection[count++] = r;
+                }
+                break;
+            case GREATER_THAN:
+                for (int i = 0; i < n; i++) {
+                    int r = rows[i];
+                    if (values[r] > b) selection[count++] = r;
+                }
+                break;
+            case GREATER_THAN_OR_EQ:
+                for (int i = 0; i < n; i++) {
+                    int r = rows[i];
+                    if (values[r] >= b) selection[count++] = r;
+                }
+                break;
+            case LESS_THAN:
+                for (int i = 0; i < n; i++) {
+                    int r = rows[i];
+                    if (values[r] < b) selection[count++] = r;
+                }
+                break;
+            case LESS_THAN_OR_EQ:
+                for (int i = 0; i < n; i++) {
+                    int r = rows[i];
+                    if (values[r] <= b) selection[count++] = r;
+                }
+                break;
+        }
+        return count;
+    }
+
+    private int filter(String[] values, int[] rows, int n, String b) {
+        Predicate.Op op = p.getOp();
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            int r = rows[i];
+            if (StringField.compare(op, values[r], b)) selection[count++] = r;
+        }
+        return count;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+    }
+
+    public void close() {
+        child.close();
+    }
+}
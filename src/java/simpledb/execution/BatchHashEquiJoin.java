@@ -0,0 +1,173 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.TupleBatch;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.Arrays;
+
+/**
+ * BatchHashEquiJoin is the batch counterpart of {@link HashEquiJoin}. The
+ * rows of the left child are copied into one growing batch, with the rows
+ * of each key chained in the order they came; the right child's batches then
+ * probe it, and each match is copied into the batch returned, column by
+ * column.
+ */
+public class BatchHashEquiJoin implements BatchIterator {
+
+    private static final long serialVersionUID = 1L;
+    private final JoinPredicate pred;
+    private final BatchIterator child1, child2;
+    private final TupleDesc comboTD;
+    private final boolean intKeys;
+    private transient KeyTable keys;
+    private transient TupleBatch store; // the rows of child1
+    private transient int[] head, tail; // the first and last row of store with each key
+    private transient int[] next; // the next row of store with the same key, or -1
+    private transient TupleBatch out;
+    private transient TupleBatch probe; // the batch of child2 being joined
+    private transient int position; // the next selected row of probe to join
+    private transient int match; // the next row of store to join to it, or -1
+
+    /**
+     * @param p      The predicate to join on; its operator must be EQUALS
+     * @param child1 Iterator for the left relation, which is held in memory
+     * @param child2 Iterator for the right relation, which is streamed
+     */
+    public BatchHashEquiJoin(JoinPredicate p, BatchIterator child1, BatchIterator child2) {
+        if (p.getOperator() != Predicate.Op.EQUALS) {
+            throw new IllegalArgumentException("BatchHashEquiJoin only joins on EQUALS, not " + p.getOperator());
+        }
+        this.pred = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.comboTD = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+        this.intKeys = child1.getTupleDesc().getFieldType(p.getField1()) == Type.INT_TYPE;
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return pred;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return comboTD;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child1.open();
+        child2.open();
+        keys = new KeyTable(child1.getTupleDesc().getFieldType(pred.getField1()));
+        head = new int[64];
+        tail = new int[64];
+        next = new int[TupleBatch.SIZE];
+        store = null;
+        TupleBatch batch;
+        while ((batch = child1.nextBatch()) != null) {
+            if (store == null) {
+                store = new TupleBatch(child1.getTupleDesc(), columns(batch, 0, null));
+            }
+            build(batch);
+        }
+        out = null;
+        probe = null;
+        match = -1;
+    }
+
+    /**
+     * @return the indexes of the columns batch holds, plus offset, after
+     * those in before
+     */
+    private static int[] columns(TupleBatch batch, int offset, int[] before) {
+        int[] columns = before == null ? new int[0] : before;
+        for (int i = 0; i < batch.getTupleDesc().numFields(); i++) {
+            if (batch.hasColumn(i)) {
+                columns = Arrays.copyOf(columns, columns.length + 1);
+                columns[columns.length - 1] = i + offset;
+            }
+        }
+        return columns;
+    }
+
+    private void build(TupleBatch batch) {
+        int field = pred.getField1();
+        int[] rows = batch.rowIndexes();
+        for (int i = 0; i < batch.rows(); i++) {
+            int r = rows[i];
+            int known = keys.size();
+            int id = intKeys ? keys.add(batch.ints(field)[r]) : keys.add(batch.strings(field)[r]);
+            int row = store.append(batch, r, 0);
+            if (row == next.length) {
+                next = Arrays.copyOf(next, row * 2);
+            }
+            next[row] = -1;
+            if (id == head.length) {
+                head = Arrays.copyOf(head, id * 2);
+                tail = Arrays.copyOf(tail, id * 2);
+            }
+            if (id == known) {
+                head[id] = row;
+            } else {
+                next[tail[id]] = row;
+            }
+            tail[id] = row;
+        }
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (store == null) {
+            return null; // child1 has no rows, so nothing joins
+        }
+        int n1 = child1.getTupleDesc().numFields();
+        int field = pred.getField2();
+        if (out != null) {
+            out.clear();
+        }
+        while (out == null || !out.isFull()) {
+            if (match >= 0) {
+                int row = out.append(store, match, 0);
+                out.copy(probe, probe.rowIndexes()[position], row, n1);
+                match = next[match];
+                if (match < 0) {
+                    position++;
+                }
+                continue;
+            }
+            if (probe == null || position == probe.rows()) {
+                probe = child2.nextBatch();
+                position = 0;
+                if (probe == null) {
+                    break;
+                }
+                if (out == null) {
+                    out = new TupleBatch(comboTD, columns(probe, n1, columns(store, 0, null)));
+                }
+                continue;
+            }
+            int r = probe.rowIndexes()[position];
+            int id = intKeys ? keys.find(probe.ints(field)[r]) : keys.find(probe.strings(field)[r]);
+            if (id < 0) {
+                position++;
+            } else {
+                match = head[id];
+            }
+        }
+        return out != null && out.rows() > 0 ? out : null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child2.rewind();
+        probe = null;
+        match = -1;
+    }
+
+    public void close() {
+        child1.close();
+        child2.close();
+        keys = null;
+        store = null;
+        head = tail = next = null;
+        out = probe = null;
+    }
+}
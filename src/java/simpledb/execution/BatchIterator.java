@@ -0,0 +1,57 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.TupleBatch;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.io.Serializable;
+
+/**
+ * BatchIterator is the batch-at-a-time counterpart of {@link OpIterator}:
+ * operators pass each other a {@link TupleBatch} of up to
+ * {@link TupleBatch#SIZE} rows per call instead of one tuple, so the cost of
+ * each call is spread over many rows, and the work on a column runs in a
+ * tight loop over an array.
+ * <p>
+ * {@link RowsToBatches} and {@link BatchesToRows} connect batch operators to
+ * tuple-at-a-time ones.
+ */
+public interface BatchIterator extends Serializable {
+
+    /**
+     * Opens the iterator. This must be called before {@link #nextBatch}.
+     *
+     * @throws DbException when there are problems opening/accessing the database.
+     */
+    void open() throws DbException, TransactionAbortedException;
+
+    /**
+     * Returns the next batch of rows. A batch belongs to the operator that
+     * returned it, which may reuse it once nextBatch is called again; the
+     * caller may change its selection, but not its values.
+     *
+     * @return a batch that selects at least one row, or null when there are
+     * no more rows
+     * @throws IllegalStateException If the iterator has not been opened
+     */
+    TupleBatch nextBatch() throws DbException, TransactionAbortedException;
+
+    /**
+     * Resets the iterator to the start.
+     *
+     * @throws DbException when rewind is unsupported.
+     * @throws IllegalStateException If the iterator has not been opened
+     */
+    void rewind() throws DbException, TransactionAbortedException;
+
+    /**
+     * @return the TupleDesc of the rows in the batches this iterator returns
+     */
+    TupleDesc getTupleDesc();
+
+    /**
+     * Closes the iterator.
+     */
+    void close();
+}
@@ -0,0 +1,110 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.TupleBatch;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.Arrays;
+
+/**
+ * BatchOrderBy is the batch counterpart of {@link OrderBy}. It copies every
+ * row of its child into one growing batch and sorts the row indexes; for an
+ * int field each index is packed with its key into a long, so the sort is
+ * one of primitives. Rows with equal keys keep their order, as in OrderBy.
+ */
+public class BatchOrderBy implements BatchIterator {
+
+    private static final long serialVersionUID = 1L;
+    private final BatchIterator child;
+    private final int orderByField;
+    private final boolean asc;
+    private transient TupleBatch store;
+    private transient int[] sorted; // the indexes of the rows of store, in order
+    private transient int[] rows;
+    private transient int emitted; // the number of rows of sorted returned
+
+    /**
+     * @param orderbyField the field to which the sort is applied.
+     * @param asc          true if the sort order is ascending.
+     * @param child        the rows to sort.
+     */
+    public BatchOrderBy(int orderbyField, boolean asc, BatchIterator child) {
+        this.child = child;
+        this.orderByField = orderbyField;
+        this.asc = asc;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+        store = null;
+        TupleBatch batch;
+        while ((batch = child.nextBatch()) != null) {
+            if (store == null) {
+                int[] columns = new int[0];
+                for (int i = 0; i < batch.getTupleDesc().numFields(); i++) {
+                    if (batch.hasColumn(i)) {
+                        columns = Arrays.copyOf(columns, columns.length + 1);
+                        columns[columns.length - 1] = i;
+                    }
+                }
+                store = new TupleBatch(getTupleDesc(), columns);
+            }
+            int[] rows = batch.rowIndexes();
+            for (int i = 0; i < batch.rows(); i++) {
+                store.append(batch, rows[i], 0);
+            }
+        }
+        int n = store == null ? 0 : store.size();
+        sorted = new int[n];
+        if (n > 0 && getTupleDesc().getFieldType(orderByField) == Type.INT_TYPE) {
+            int[] keys = store.ints(orderByField);
+            long[] packed = new long[n];
+            for (int r = 0; r < n; r++) {
+                int key = asc ? keys[r] : ~keys[r];
+                packed[r] = (long) key << 32 | r;
+            }
+            Arrays.sort(packed);
+            for (int i = 0; i < n; i++) {
+                sorted[i] = (int) packed[i];
+            }
+        } else if (n > 0) {
+            String[] keys = store.strings(orderByField);
+            Integer[] order = new Integer[n];
+            for (int r = 0; r < n; r++) {
+                order[r] = r;
+            }
+            Arrays.sort(order, (a, b) -> asc ? keys[a].compareTo(keys[b]) : keys[b].compareTo(keys[a]));
+            for (int i = 0; i < n; i++) {
+                sorted[i] = order[i];
+            }
+        }
+        rows = new int[TupleBatch.SIZE];
+        emitted = 0;
+    }
+
+    public TupleBatch nextBatch() {
+        int count = Math.min(TupleBatch.SIZE, sorted.length - emitted);
+        if (count == 0) {
+            return null;
+        }
+        System.arraycopy(sorted, emitted, rows, 0, count);
+        emitted += count;
+        return store.view(rows, count);
+    }
+
+    public void rewind() {
+        emitted = 0;
+    }
+
+    public void close() {
+        child.close();
+        store = null;
+        sorted = rows = null;
+    }
+}
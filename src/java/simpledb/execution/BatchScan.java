@@ -0,0 +1,123 @@
+package simpledb.execution;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Permissions;
+import simpledb.storage.DbFile;
+import simpledb.storage.DbFileIterator;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPage;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.Page;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
+import simpledb.storage.TupleDesc;
+import simpledb.storage.TuplePage;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+import java.util.Iterator;
+
+/**
+ * BatchScan is the batch counterpart of {@link SeqScan}. Fixed-width heap
+ * pages are copied into the column arrays of each batch straight from their
+ * bytes; other pages and files are read a tuple at a time.
+ */
+public class BatchScan implements BatchIterator {
+
+    private static final long serialVersionUID = 1L;
+    private final TransactionId tid;
+    private final DbFile f;
+    private final TupleDesc td;
+    private final int[] columns;
+    private TupleBatch batch;
+    private int pages; // of a HeapFile, when opened
+    private int pageNo; // the page to go on from
+    private int slot; // the slot of a HeapPage to go on from
+    private Iterator<Tuple> pending; // the rest of a page that is not a HeapPage
+    private DbFileIterator other; // the tuples of a file that is not a HeapFile
+
+    /**
+     * Creates a scan of the specified table as a part of the specified
+     * transaction.
+     *
+     * @param tableAlias the alias of the table, which prefixes the field
+     *                   names of the rows returned, as for SeqScan
+     * @param columns    indexes of the fields the operators above this scan
+     *                   read, or null for all of them; the others are absent
+     *                   from the batches returned
+     */
+    public BatchScan(TransactionId tid, int tableid, String tableAlias, int[] columns) {
+        this.tid = tid;
+        this.f = Database.getCatalog().getDatabaseFile(tableid);
+        this.td = SeqScan.aliased(f.getTupleDesc(), tableAlias);
+        this.columns = columns;
+    }
+
+    public BatchScan(TransactionId tid, int tableid, String tableAlias) {
+        this(tid, tableid, tableAlias, null);
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        batch = new TupleBatch(td, columns);
+        pageNo = 0;
+        slot = 0;
+        pending = null;
+        if (f instanceof HeapFile) {
+            pages = ((HeapFile) f).numPages();
+        } else {
+            other = columns == null ? f.iterator(tid) : f.iterator(tid, columns);
+            other.open();
+        }
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        batch.clear();
+        if (other != null) {
+            while (!batch.isFull() && other.hasNext()) {
+                batch.append(other.next());
+            }
+        }
+        while (!batch.isFull() && pageNo < pages) {
+            Page p = Database.getBufferPool().getPage(tid, new HeapPageId(f.getId(), pageNo), Permissions.READ_ONLY);
+            if (p instanceof HeapPage) {
+                slot = ((HeapPage) p).fill(batch, slot);
+                if (slot < 0) {
+                    slot = 0;
+                    pageNo++;
+                }
+                continue;
+            }
+            if (pending == null) {
+                TuplePage tp = (TuplePage) p;
+                pending = columns == null ? tp.iterator() : tp.iterator(columns);
+            }
+            while (!batch.isFull() && pending.hasNext()) {
+                batch.append(pending.next());
+            }
+            if (!pending.hasNext()) {
+                pending = null;
+                pageNo++;
+            }
+        }
+        return batch.rows() > 0 ? batch : null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        close();
+        open();
+    }
+
+    public void close() {
+        if (other != null) {
+            other.close();
+            other = null;
+        }
+        batch = null;
+        pending = null;
+    }
+}
@@ -0,0 +1,73 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Returns the rows of a BatchIterator one tuple at a time, so that a batch
+ * plan can feed tuple-at-a-time operators, or be the root of a query.
+ */
+public class BatchesToRows extends Operator {
+
+    private static final long serialVersionUID = 1L;
+    private final BatchIterator child;
+    private TupleBatch batch;
+    private int next; // the next selected row of batch to return
+
+    public BatchesToRows(BatchIterator child) {
+        this.child = child;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child.open();
+        batch = null;
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+        batch = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+        batch = null;
+    }
+
+    protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+        while (batch == null || next == batch.rows()) {
+            batch = child.nextBatch();
+            if (batch == null) {
+                return null;
+            }
+            next = 0;
+        }
+        return batch.getTuple(batch.rowIndexes()[next++]);
+    }
+
+    /**
+     * @return no children: the child of this operator is a batch operator
+     */
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[0];
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        if (children.length != 0) {
+            throw new IllegalArgumentException("BatchesToRows has no tuple-at-a-time children");
+        }
+    }
+}
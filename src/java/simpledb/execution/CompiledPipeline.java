@@ -0,0 +1,216 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.BufferPool;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The superclass of the classes {@link PipelineCompiler} generates. A
+ * pipeline reads the tuples of one source operator and pushes each through
+ * the filters, hash join probes and projection the compiler fused, in code
+ * generated for that plan; {@link #consume} is that code.
+ * <p>
+ * Each join of the pipeline holds every tuple of its build side in memory,
+ * within the memory budget of the {@link HashEquiJoin} it was compiled from.
+ * If a build side turns out to be larger, the pipeline gives up on it when
+ * it is opened and runs the operators it was compiled from instead, so that
+ * the join partitions and spills as it would have. The constants of the
+ * filters are in {@link #ints} and {@link #strings}, so that one generated
+ * class serves every plan of the same shape.
+ */
+public abstract class CompiledPipeline extends Operator {
+
+    private static final long serialVersionUID = 1L;
+    private OpIterator source;
+    private OpIterator[] builds; // the build side of each join, bottom up
+    private int[] buildKeys; // the join field in the tuples of each build side
+    private int[] memoryPages; // the memory budget of each join, in pages
+    private OpIterator plan; // the operators the pipeline was compiled from
+    private TupleDesc td;
+    private transient boolean fallback; // whether plan is run instead
+    private transient KeyTable[] tables;
+    private transient List<List<Tuple>>[] matches; // the tuples of each key id
+    private final ArrayDeque<Tuple> out = new ArrayDeque<>();
+
+    /**
+     * The int constants of the pipeline's filters, by the number the
+     * generated code gives them.
+     */
+    protected int[] ints;
+
+    /**
+     * The string constants of the pipeline's filters.
+     */
+    protected String[] strings;
+
+    /**
+     * Sets the operators the pipeline reads and the constants of its
+     * filters. Called by the compiler once it has built the pipeline.
+     *
+     * @param plan        the operators the pipeline was compiled from, which
+     *                    share the source and build sides' operators
+     * @param memoryPages the memory budget of each join, in pages
+     */
+    void init(OpIterator plan, TupleDesc td, OpIterator source, OpIterator[] builds, int[] buildKeys,
+              int[] memoryPages, int[] ints, String[] strings) {
+        this.plan = plan;
+        this.td = td;
+        this.source = source;
+        this.builds = builds;
+        this.buildKeys = buildKeys;
+        this.memoryPages = memoryPages;
+        this.ints = ints;
+        this.strings = strings;
+    }
+
+    /**
+     * Pushes one tuple of the source through the pipeline, passing each
+     * tuple that comes out of the top of it to {@link #emit}.
+     */
+    protected abstract void consume(Tuple t);
+
+    protected final void emit(Tuple t) {
+        out.add(t);
+    }
+
+    /**
+     * @return the tuples of the build side of join j whose join field is
+     * key, or null if there are none
+     */
+    protected final List<Tuple> matches(int j, int key) {
+        int id = tables[j].find(key);
+        return id < 0 ? null : matches[j].get(id);
+    }
+
+    protected final List<Tuple> matches(int j, String key) {
+        int id = tables[j].find(key);
+        return id < 0 ? null : matches[j].get(id);
+    }
+
+    /**
+     * @return the value of string field i of t
+     */
+    protected static String string(Tuple t, int i) {
+        return ((StringField) t.getField(i)).getValue();
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        fallback = !build();
+        if (fallback) {
+            closeChildren();
+            plan.open();
+        } else {
+            source.open();
+        }
+        out.clear();
+        super.open();
+    }
+
+    /**
+     * Reads each build side into the table of its join.
+     *
+     * @return false if a build side is over its join's memory budget, in
+     * which case the build sides read so far are still open
+     */
+    @SuppressWarnings("unchecked")
+    private boolean build() throws DbException, TransactionAbortedException {
+        tables = new KeyTable[builds.length];
+        matches = new List[builds.length];
+        for (int j = 0; j < builds.length; j++) {
+            Type type = builds[j].getTupleDesc().getFieldType(buildKeys[j]);
+            long budget = (long) memoryPages[j] * BufferPool.getPageSize();
+            int tupleBytes = builds[j].getTupleDesc().getSize();
+            long used = 0;
+            tables[j] = new KeyTable(type);
+            matches[j] = new ArrayList<>();
+            builds[j].open();
+            while (builds[j].hasNext()) {
+                used += tupleBytes;
+                if (used > budget) {
+                    return false;
+                }
+                Tuple t = builds[j].next();
+                int id = type == Type.INT_TYPE ? tables[j].add(t.getInt(buildKeys[j]))
+                        : tables[j].add(string(t, buildKeys[j]));
+                if (id == matches[j].size()) {
+                    matches[j].add(new ArrayList<>());
+                }
+                matches[j].get(id).add(t);
+            }
+        }
+        return true;
+    }
+
+    private void closeChildren() {
+        source.close();
+        for (OpIterator build : builds) {
+            build.close();
+        }
+        tables = null;
+        matches = null;
+    }
+
+    public void close() {
+        super.close();
+        if (fallback) {
+            plan.close();
+            fallback = false;
+        } else {
+            closeChildren();
+        }
+        out.clear();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        if (fallback) {
+            plan.rewind();
+        } else {
+            source.rewind();
+        }
+        out.clear();
+    }
+
+    protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+        if (fallback) {
+            return plan.hasNext() ? plan.next() : null;
+        }
+        while (out.isEmpty()) {
+            if (!source.hasNext()) {
+                return null;
+            }
+            consume(source.next());
+        }
+        return out.poll();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * @return the build side of each join, bottom up, then the source
+     */
+    @Override
+    public OpIterator[] getChildren() {
+        OpIterator[] children = new OpIterator[builds.length + 1];
+        System.arraycopy(builds, 0, children, 0, builds.length);
+        children[builds.length] = source;
+        return children;
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        System.arraycopy(children, 0, builds, 0, builds.length);
+        source = children[builds.length];
+    }
+}
@@ -0,0 +1,348 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.Morsels;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Exchange repartitions the tuples of several producers: each producer runs
+ * on a thread of its own, and sends each of its tuples to one of a number of
+ * partitions, chosen by the hash of a field or in turn (round-robin). Each
+ * partition is an Exchange operator that returns the tuples sent to it, so
+ * that, for example, the i-th partitions of two inputs hashed on their join
+ * fields can be joined by the i-th worker of a {@link Gather}.
+ * <p>
+ * Tuples travel in chunks through a bounded queue per partition, so a
+ * producer that gets ahead of a partition's consumer waits for it. As a
+ * consequence, the partitions of an exchange must be read at the same time,
+ * each by a thread of its own: a consumer that waits for one partition while
+ * another fills up waits forever. The producers start when the first
+ * partition is opened, and stop, and are closed, once every partition has
+ * been closed; a partition closed early gets no more tuples. A partition
+ * keeps the tuples it has returned, so that it can be rewound without
+ * running the producers again.
+ * <p>
+ * Like those of {@link Gather}, the producers act for the query's
+ * TransactionId, and an exception thrown by a producer is thrown again by
+ * every partition.
+ */
+public class Exchange extends Operator {
+
+    private static final long serialVersionUID = 1L;
+    private static final List<Tuple> DONE = Collections.emptyList(); // a producer's last chunk
+
+    private final Producers producers;
+    private final int partition;
+    private transient List<Tuple> returned; // the tuples returned since open, for rewind
+    private transient int position; // the next of them to return
+    private transient Iterator<Tuple> chunk;
+    private transient int running; // producers yet to send their last chunk
+
+    private Exchange(Producers producers, int partition) {
+        this.producers = producers;
+        this.partition = partition;
+    }
+
+    /**
+     * Sends each tuple of children to the partition given by the hash of
+     * its field field.
+     *
+     * @param children   the producers, which all have the same TupleDesc
+     * @param morsels    the morsels the scans of the children share, handed
+     *                   out again from the first page each time the
+     *                   producers start, or null
+     * @param field      the field whose hash chooses the partition
+     * @param partitions the number of partitions
+     * @return the partitions
+     */
+    public static Exchange[] hash(OpIterator[] children, Morsels morsels, int field, int partitions) {
+        return partitions(new Producers(children, morsels, field, partitions));
+    }
+
+    /**
+     * Sends the tuples of each of children to the partitions in turn.
+     *
+     * @see #hash
+     */
+    public static Exchange[] roundRobin(OpIterator[] children, Morsels morsels, int partitions) {
+        return partitions(new Producers(children, morsels, -1, partitions));
+    }
+
+    private static Exchange[] partitions(Producers producers) {
+        Exchange[] partitions = new Exchange[producers.partitions];
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = new Exchange(producers, i);
+        }
+        return partitions;
+    }
+
+    /**
+     * @return the field whose hash chooses the partition of each tuple, or
+     * -1 if the tuples go to the partitions in turn
+     */
+    public int getField() {
+        return producers.field;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        producers.open(partition);
+        returned = new ArrayList<>();
+        position = 0;
+        chunk = null;
+        running = producers.children.length;
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        producers.close(partition);
+        returned = null;
+        chunk = null;
+    }
+
+    public void rewind() {
+        position = 0;
+    }
+
+    protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+        if (position < returned.size()) {
+            return returned.get(position++);
+        }
+        while (chunk == null || !chunk.hasNext()) {
+            if (running == 0) {
+                return null;
+            }
+            List<Tuple> tuples = producers.take(partition);
+            if (tuples == DONE) {
+                running--;
+            } else {
+                chunk = tuples.iterator();
+            }
+        }
+        Tuple t = chunk.next();
+        returned.add(t);
+        position++;
+        return t;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return producers.children[0].getTupleDesc();
+    }
+
+    /**
+     * @return the producers, which all partitions share
+     */
+    @Override
+    public OpIterator[] getChildren() {
+        return producers.children.clone();
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        System.arraycopy(children, 0, producers.children, 0, producers.children.length);
+    }
+
+    /**
+     * The producers of an exchange and the queues of its partitions.
+     */
+    private static class Producers {
+
+        final OpIterator[] children;
+        final Morsels morsels;
+        final int field;
+        final boolean intField;
+        final int partitions;
+        private final BlockingQueue<List<Tuple>>[] queues;
+        private final AtomicIntegerArray closed; // 1 for the partitions closed in this run
+        private final boolean[] opened; // the partitions opened in this run
+        private int closedCount;
+        private Future<?>[] workers; // while the producers run
+        private volatile boolean cancelled;
+        private volatile Throwable failure;
+
+        @SuppressWarnings("unchecked")
+        Producers(OpIterator[] children, Morsels morsels, int field, int partitions) {
+            if (children.length == 0 || partitions <= 0) {
+                throw new IllegalArgumentException("an exchange needs producers and partitions");
+            }
+            this.children = children.clone();
+            this.morsels = morsels;
+            this.field = field;
+            this.intField = field >= 0 && children[0].getTupleDesc().getFieldType(field) == Type.INT_TYPE;
+            this.partitions = partitions;
+            this.queues = new BlockingQueue[partitions];
+            this.closed = new AtomicIntegerArray(partitions);
+            this.opened = new boolean[partitions];
+        }
+
+        /**
+         * Starts the producers if partition p is the first to be opened.
+         */
+        synchronized void open(int p) throws DbException {
+            if (opened[p]) {
+                throw new DbException("partition " + p + " of the exchange is already open;"
+                        + " it can be opened again once every partition is closed");
+            }
+            opened[p] = true;
+            if (workers != null) {
+                return;
+            }
+            cancelled = false;
+            failure = null;
+            closedCount = 0;
+            for (int i = 0; i < partitions; i++) {
+                closed.set(i, 0);
+                queues[i] = new ArrayBlockingQueue<>(children.length * Gather.CHUNKS_PER_WORKER);
+            }
+            if (morsels != null) {
+                morsels.reset();
+            }
+            workers = new Future<?>[children.length];
+            for (int i = 0; i < children.length; i++) {
+                int child = i;
+                workers[i] = Gather.WORKERS.submit(() -> produce(child));
+            }
+        }
+
+        /**
+         * Stops sending tuples to partition p, and stops and closes the
+         * producers once every partition is closed.
+         */
+        synchronized void close(int p) {
+            if (!opened[p] || closed.get(p) == 1) {
+                return;
+            }
+            closed.set(p, 1);
+            queues[p].clear(); // a producer may be waiting for room
+            if (++closedCount < partitions) {
+                return;
+            }
+            cancelled = true;
+            for (Future<?> worker : workers) {
+                while (true) {
+                    for (BlockingQueue<List<Tuple>> queue : queues) {
+                        queue.clear();
+                    }
+                    try {
+                        worker.get(10, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (TimeoutException e) {
+                        // keep waiting
+                    } catch (InterruptedException | ExecutionException e) {
+                        break;
+                    }
+                }
+            }
+            for (OpIterator child : children) {
+                child.close();
+            }
+            for (int i = 0; i < partitions; i++) {
+                opened[i] = false;
+                queues[i] = null;
+            }
+            workers = null;
+        }
+
+        /**
+         * Waits for the next chunk of partition p.
+         */
+        List<Tuple> take(int p) throws DbException, TransactionAbortedException {
+            List<Tuple> tuples;
+            try {
+                tuples = queues[p].take();
+            } catch (InterruptedException e) {
+                throw new DbException("interrupted while waiting for tuples");
+            }
+            if (failure != null) {
+                throw Gather.rethrow(failure);
+            }
+            return tuples;
+        }
+
+        private int partitionOf(Tuple t) {
+            int h = intField ? t.getInt(field) : t.getField(field).hashCode();
+            // spread neighbouring keys over the partitions
+            return ((h * 0x9E3779B9) >>> 16) % partitions;
+        }
+
+        /**
+         * Sends the tuples of child i to their partitions, chunk by chunk,
+         * and DONE to every partition after them.
+         */
+        @SuppressWarnings("unchecked")
+        private void produce(int i) {
+            try {
+                children[i].open();
+                List<Tuple>[] chunks = new List[partitions];
+                int next = i; // the next partition in turn
+                while (!cancelled && children[i].hasNext()) {
+                    Tuple t = children[i].next();
+                    int p;
+                    if (field < 0) {
+                        p = next;
+                        next = next + 1 == partitions ? 0 : next + 1;
+                    } else {
+                        p = partitionOf(t);
+                    }
+                    if (closed.get(p) == 1) {
+                        continue;
+                    }
+                    if (chunks[p] == null) {
+                        chunks[p] = new ArrayList<>(Gather.CHUNK_TUPLES);
+                    }
+                    chunks[p].add(t);
+                    if (chunks[p].size() == Gather.CHUNK_TUPLES) {
+                        put(p, chunks[p]);
+                        chunks[p] = null;
+                    }
+                }
+                for (int p = 0; p < partitions; p++) {
+                    if (chunks[p] != null) {
+                        put(p, chunks[p]);
+                    }
+                }
+            } catch (Throwable e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+            for (int p = 0; p < partitions; p++) {
+                put(p, DONE);
+            }
+        }
+
+        /**
+         * Waits for room in the queue of partition p for tuples, unless the
+         * partition is closed or the producers are stopped first.
+         */
+        private void put(int p, List<Tuple> tuples) {
+            BlockingQueue<List<Tuple>> queue = queues[p];
+            try {
+                while (!cancelled && closed.get(p) == 0) {
+                    if (queue.offer(tuples, 10, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+    }
+}
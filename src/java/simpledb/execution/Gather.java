@@ -0,0 +1,286 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.Morsels;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Gather runs each of its children on a thread of its own and returns the
+ * tuples of all of them, in no particular order. The children are usually
+ * copies of one pipeline whose scans split a table between them through
+ * shared {@link Morsels}, so that the pipeline runs on several cores.
+ * <p>
+ * The workers hand tuples over in chunks through a bounded queue, so a
+ * worker that gets ahead of the consumer waits for it instead of filling
+ * memory. A worker opens its child on its own thread. An exception thrown
+ * by a child is thrown again by this operator's hasNext or next. Closing or
+ * rewinding the operator stops the workers after the tuple they are working
+ * on, and waits for them.
+ * <p>
+ * The workers act for the TransactionId the children were built with, the
+ * query's: the locks they take through the BufferPool belong to that
+ * transaction and are released when it completes, and a worker chosen to
+ * abort a deadlock throws TransactionAbortedException here, so that the
+ * whole query aborts. Since close waits for the workers, no worker is left
+ * taking locks once the plan is closed and the transaction completes.
+ *
+ * @see Exchange
+ */
+public class Gather extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Number of tuples a worker hands over at a time.
+     */
+    static final int CHUNK_TUPLES = 256;
+
+    /**
+     * Number of chunks each worker may have waiting in the queue.
+     */
+    static final int CHUNKS_PER_WORKER = 4;
+
+    private static final List<Tuple> DONE = Collections.emptyList(); // a worker's last chunk
+
+    /**
+     * The threads of every Gather and {@link Exchange}.
+     */
+    static final ExecutorService WORKERS = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "simpledb-gather");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private OpIterator[] children;
+    private final Morsels morsels;
+    private transient boolean[] opened;
+    private transient Future<?>[] workers;
+    private transient BlockingQueue<List<Tuple>> queue;
+    private transient Iterator<Tuple> chunk;
+    private transient int running; // workers yet to hand over their last chunk
+    private transient volatile boolean cancelled;
+    private transient volatile Throwable failure;
+
+    /**
+     * @param children the operators to run, which all have the same
+     *                 TupleDesc
+     */
+    public Gather(OpIterator[] children) {
+        this(children, null);
+    }
+
+    /**
+     * @param children the operators to run, which all have the same
+     *                 TupleDesc
+     * @param morsels  the morsels the scans of the children share, handed
+     *                 out again from the first page each time the children
+     *                 are run, or null
+     */
+    public Gather(OpIterator[] children, Morsels morsels) {
+        if (children.length == 0) {
+            throw new IllegalArgumentException("nothing to gather");
+        }
+        this.children = children.clone();
+        this.morsels = morsels;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        opened = new boolean[children.length];
+        super.open();
+        start();
+    }
+
+    public void close() {
+        super.close();
+        if (workers != null) {
+            stop();
+            for (int i = 0; i < children.length; i++) {
+                if (opened[i]) {
+                    children[i].close();
+                }
+            }
+            workers = null;
+        }
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        stop();
+        start();
+    }
+
+    /**
+     * Runs every child, from its start, on a worker of its own.
+     */
+    private void start() {
+        cancelled = false;
+        failure = null;
+        chunk = null;
+        queue = new ArrayBlockingQueue<>(children.length * CHUNKS_PER_WORKER);
+        if (morsels != null) {
+            morsels.reset();
+        }
+        running = children.length;
+        workers = new Future<?>[children.length];
+        for (int i = 0; i < children.length; i++) {
+            int child = i;
+            workers[i] = WORKERS.submit(() -> work(child));
+        }
+    }
+
+    /**
+     * Stops the workers and waits for them to finish, so that the children
+     * can be closed or run again.
+     */
+    private void stop() {
+        cancelled = true;
+        for (Future<?> worker : workers) {
+            while (true) {
+                queue.clear(); // a worker may be waiting for room
+                try {
+                    worker.get(10, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    // keep waiting
+                } catch (InterruptedException | ExecutionException e) {
+                    break;
+                }
+            }
+        }
+        queue.clear();
+    }
+
+    /**
+     * Hands the tuples of child i over to the queue, chunk by chunk, and
+     * DONE after them.
+     */
+    private void work(int i) {
+        try {
+            if (opened[i]) {
+                children[i].rewind();
+            } else {
+                opened[i] = true;
+                children[i].open();
+            }
+            List<Tuple> tuples = new ArrayList<>(CHUNK_TUPLES);
+            while (!cancelled && children[i].hasNext()) {
+                tuples.add(children[i].next());
+                if (tuples.size() == CHUNK_TUPLES) {
+                    if (!put(tuples)) {
+                        return;
+                    }
+                    tuples = new ArrayList<>(CHUNK_TUPLES);
+                }
+            }
+            if (!tuples.isEmpty() && !put(tuples)) {
+                return;
+            }
+        } catch (Throwable e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        put(DONE);
+    }
+
+    /**
+     * Waits for room in the queue for tuples.
+     *
+     * @return false if the workers were stopped first
+     */
+    private boolean put(List<Tuple> tuples) {
+        try {
+            while (!cancelled) {
+                if (queue.offer(tuples, 10, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        return false;
+    }
+
+    protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+        while (chunk == null || !chunk.hasNext()) {
+            if (running == 0) {
+                return null;
+            }
+            List<Tuple> tuples;
+            try {
+                tuples = queue.take();
+            } catch (InterruptedException e) {
+                throw new DbException("interrupted while waiting for tuples");
+            }
+            if (failure != null) {
+                throw rethrow(failure);
+            }
+            if (tuples == DONE) {
+                running--;
+            } else {
+                chunk = tuples.iterator();
+            }
+        }
+        return chunk.next();
+    }
+
+    /**
+     * Throws e, which a worker failed with, on the consumer's thread: an
+     * unchecked exception or TransactionAbortedException as it is, and any
+     * other exception as a DbException, which is returned.
+     */
+    static DbException rethrow(Throwable e) throws TransactionAbortedException {
+        if (e instanceof TransactionAbortedException) {
+            throw (TransactionAbortedException) e;
+        }
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        if (e instanceof DbException) {
+            return (DbException) e;
+        }
+        DbException wrapped = new DbException("a worker failed: " + e);
+        wrapped.initCause(e);
+        return wrapped;
+    }
+
+    /**
+     * @return the morsels the scans of the children share, or null
+     */
+    public Morsels getMorsels() {
+        return morsels;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return children[0].getTupleDesc();
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return children.clone();
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.children = children.clone();
+    }
+}
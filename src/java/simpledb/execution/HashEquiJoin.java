@@ -2,21 +2,58 @@ package simpledb.execution;
 
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.common.DbException;
+import simpledb.storage.BufferPool;
 import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
 
 import java.util.*;
 
 /**
- * The Join operator implements the relational join operation.
+ * The HashEquiJoin operator implements the relational join operation on an
+ * EQUALS predicate, by hashing the tuples of its first child (the build side)
+ * and probing the table with the tuples of its second child (the probe side).
+ * <p>
+ * The join is a hybrid hash join that sizes itself from a memory budget of
+ * {@link #setMemoryPages pages}. When the build side fits, it is held in
+ * memory and each child is read once. When it does not, the build side is
+ * hashed into partitions, and the largest partitions are spilled to
+ * temporary files, one at a time, until the rest fit; the probe tuples of a
+ * spilled partition are spilled to a file of their own rather than probed.
+ * Each pair of spilled partitions is then joined after the probe side is
+ * used up, by a join of its own, so that each child is still read once and
+ * each spilled tuple is written once and read once. A spilled partition that
+ * does not fit either, because the keys are skewed, is partitioned again
+ * with another hash function, and at the last level it is joined in chunks
+ * that fit, reading its probe partition once per chunk.
+ * <p>
+ * Rewinding the join reads only the probe side again when the build side is
+ * in memory; otherwise the join starts over.
  */
 public class HashEquiJoin extends Operator {
 
     private static final long serialVersionUID = 1L;
+
+    /**
+     * Default memory budget of a join, in pages.
+     */
+    public static final int DEFAULT_MEMORY_PAGES = 256;
+
+    /**
+     * Most partitions the build side is hashed into.
+     */
+    static final int MAX_FANOUT = 64;
+
+    /**
+     * Number of times a spilled partition may be partitioned again before
+     * it is joined in chunks.
+     */
+    static final int MAX_LEVEL = 2;
+
     private final JoinPredicate pred;
     private OpIterator child1, child2;
     private final TupleDesc comboTD;
-    transient private Tuple t1 = null;
+    private final int level; // how many times the inputs were partitioned already
+    private int memoryPages = DEFAULT_MEMORY_PAGES;
     transient private Tuple t2 = null;
 
     /**
@@ -31,9 +68,14 @@ public class HashEquiJoin extends Operator {
      *            Iterator for the right(inner) relation to join
      */
     public HashEquiJoin(JoinPredicate p, OpIterator child1, OpIterator child2) {
+        this(p, child1, child2, 0);
+    }
+
+    private HashEquiJoin(JoinPredicate p, OpIterator child1, OpIterator child2, int level) {
         this.pred = p;
         this.child1 = child1;
         this.child2 = child2;
+        this.level = level;
         comboTD = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
     }
 
@@ -55,53 +97,249 @@ public class HashEquiJoin extends Operator {
 	return this.child2.getTupleDesc().getFieldName(this.pred.getField2());
     }
     
+    /**
+     * Sets the memory budget of the join, which takes effect the next time
+     * it is opened.
+     *
+     * @param pages the number of pages of tuples the join may hold in
+     *              memory, with one page of buffer per spilled partition
+     */
+    public void setMemoryPages(int pages) {
+        if (pages <= 0) {
+            throw new IllegalArgumentException("a join needs memory, not " + pages + " pages");
+        }
+        memoryPages = pages;
+    }
+
+    /**
+     * @return the memory budget of the join, in pages
+     */
+    public int getMemoryPages() {
+        return memoryPages;
+    }
+
+    /**
+     * @return the number of partitions of the build side spilled to disk
+     * since the join was last opened or rewound
+     */
+    public int getSpilledPartitions() {
+        int spilled = 0;
+        if (builds != null) {
+            for (SpillFile build : builds) {
+                if (build != null) {
+                    spilled++;
+                }
+            }
+        }
+        return spilled;
+    }
+
+    // the build tuples held in memory, by join field
     final Map<Object, List<Tuple>> map = new HashMap<>();
-    public final static int MAP_SIZE = 20000;
+    transient private int fanout;
+    transient private int[] sizes; // the number of tuples of each partition in memory
+    transient private long used; // the bytes of memory used
+    transient private SpillFile[] builds; // the spilled partitions, by partition, or null
+    transient private SpillFile[] probes; // the probe tuples of the spilled partitions
+    transient private boolean resident; // whether the whole build side is in memory
+    transient private boolean more; // whether the build side has tuples beyond the chunk in memory
+    transient private boolean probing; // whether child2 is being read
+    transient private int pair; // the next spilled partition to join
+    transient private HashEquiJoin pairJoin; // the join of a spilled partition
+    transient private Iterator<Tuple> listIt = null;
 
-    private boolean loadMap() throws DbException, TransactionAbortedException {
-        int cnt = 0;
+    private int partitionOf(Object key) {
+        // a different hash function at each level, so that a partition
+        // spilled at one level is spread over the partitions of the next
+        int h = (key.hashCode() ^ (level + 1) * 0x85EBCA6B) * 0x9E3779B9;
+        return (h >>> 16) % fanout;
+    }
+
+    /**
+     * Reads the build side into memory, spilling partitions if it does not
+     * fit, or, at the last level, reads the next chunk of it that fits.
+     */
+    private void build() throws DbException, TransactionAbortedException {
+        long budget = (long) memoryPages * BufferPool.getPageSize();
+        int tupleBytes = child1.getTupleDesc().getSize();
         map.clear();
+        used = 0;
+        more = false;
         while (child1.hasNext()) {
-            t1 = child1.next();
-            List<Tuple> list = map.computeIfAbsent(t1.getField(pred.getField1()), k -> new ArrayList<>());
-            list.add(t1);
-            if (cnt++ == MAP_SIZE)
-                return true;
+            if (level == MAX_LEVEL && used >= budget) {
+                more = true;
+                break;
+            }
+            Tuple t1 = child1.next();
+            Object key = t1.getField(pred.getField1());
+            if (level < MAX_LEVEL) {
+                int p = partitionOf(key);
+                if (builds != null && builds[p] != null) {
+                    builds[p].add(t1);
+                    continue;
+                }
+                sizes[p]++;
+            }
+            map.computeIfAbsent(key, k -> new ArrayList<>()).add(t1);
+            used += tupleBytes;
+            while (used > budget && level < MAX_LEVEL && spillLargest(tupleBytes)) {
+                // until the rest fit, or every partition is spilled
+            }
+        }
+        resident = builds == null && !more;
+        if (builds != null) {
+            probes = new SpillFile[fanout];
+            for (int p = 0; p < fanout; p++) {
+                if (builds[p] != null) {
+                    builds[p].finish();
+                    probes[p] = new SpillFile(child2.getTupleDesc());
+                }
+            }
         }
-        return cnt > 0;
+        probing = !map.isEmpty() || builds != null;
+    }
 
+    /**
+     * Moves the largest partition held in memory to a file.
+     *
+     * @return false if no partition is left in memory
+     */
+    private boolean spillLargest(int tupleBytes) throws DbException {
+        int largest = -1;
+        for (int p = 0; p < fanout; p++) {
+            if (sizes[p] > 0 && (largest < 0 || sizes[p] > sizes[largest])) {
+                largest = p;
+            }
+        }
+        if (largest < 0) {
+            return false;
+        }
+        if (builds == null) {
+            builds = new SpillFile[fanout];
+        }
+        SpillFile file = new SpillFile(child1.getTupleDesc());
+        builds[largest] = file;
+        for (Iterator<Map.Entry<Object, List<Tuple>>> it = map.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Object, List<Tuple>> e = it.next();
+            if (partitionOf(e.getKey()) == largest) {
+                for (Tuple t1 : e.getValue()) {
+                    file.add(t1);
+                }
+                it.remove();
+            }
+        }
+        used -= (long) sizes[largest] * tupleBytes;
+        used += BufferPool.getPageSize(); // the file's buffer
+        sizes[largest] = 0;
+        return true;
+    }
+
+    /**
+     * Starts a run of the join, with the children at their start.
+     */
+    private void start() throws DbException, TransactionAbortedException {
+        fanout = Math.max(2, Math.min(MAX_FANOUT, memoryPages / 2));
+        sizes = new int[fanout];
+        builds = null;
+        probes = null;
+        pair = 0;
+        listIt = null;
+        build();
+    }
+
+    /**
+     * Deletes the spilled partitions, and stops the join of a pair of them.
+     */
+    private void discard() {
+        if (pairJoin != null) {
+            pairJoin.close();
+            pairJoin = null;
+        }
+        for (SpillFile[] files : new SpillFile[][]{builds, probes}) {
+            if (files != null) {
+                for (SpillFile file : files) {
+                    if (file != null) {
+                        file.delete();
+                    }
+                }
+            }
+        }
+        builds = null;
+        probes = null;
     }
 
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child1.open();
         child2.open();
-        loadMap();
+        start();
         super.open();
     }
 
     public void close() {
         super.close();
+        discard();
         child2.close();
         child1.close();
-        this.t1=null;
         this.t2=null;
         this.listIt=null;
         this.map.clear();
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
+        listIt = null;
+        if (resident) {
+            child2.rewind();
+            probing = !map.isEmpty();
+            return;
+        }
+        discard();
         child1.rewind();
         child2.rewind();
+        start();
     }
 
-    transient Iterator<Tuple> listIt = null;
+    private Tuple merge(Tuple t1) {
+        int td1n = t1.getTupleDesc().numFields();
+        int td2n = t2.getTupleDesc().numFields();
+
+        // set fields in combined tuple
+        Tuple t = new Tuple(comboTD);
+        for (int i = 0; i < td1n; i++)
+            t.setField(i, t1.getField(i));
+        for (int i = 0; i < td2n; i++)
+            t.setField(td1n + i, t2.getField(i));
+        return t;
+    }
+
+    /**
+     * Starts the join of the next pair of spilled partitions that can have
+     * matches.
+     *
+     * @return false if there is none left
+     */
+    private boolean nextPair() throws DbException, TransactionAbortedException {
+        while (builds != null && pair < fanout) {
+            int p = pair++;
+            if (builds[p] == null) {
+                continue;
+            }
+            if (builds[p].size() > 0 && probes[p].size() > 0) {
+                pairJoin = new HashEquiJoin(pred, builds[p], probes[p], level + 1);
+                pairJoin.setMemoryPages(memoryPages);
+                pairJoin.open();
+                return true;
+            }
+            builds[p].delete();
+            probes[p].delete();
+        }
+        return false;
+    }
 
     /**
      * Returns the next tuple generated by the join, or null if there are no
      * more tuples. Logically, this is the next tuple in r1 cross r2 that
-     * satisfies the join predicate. There are many possible implementations;
-     * the simplest is a nested loops join.
+     * satisfies the join predicate.
      * <p>
      * Note that the tuples returned from this particular implementation of Join
      * are simply the concatenation of joining tuples from the left and right
@@ -115,49 +353,59 @@ public class HashEquiJoin extends Operator {
      * @return The next matching tuple.
      * @see JoinPredicate#filter
      */
-    private Tuple processList() {
-        t1 = listIt.next();
-
-        int td1n = t1.getTupleDesc().numFields();
-        int td2n = t2.getTupleDesc().numFields();
-
-        // set fields in combined tuple
-        Tuple t = new Tuple(comboTD);
-        for (int i = 0; i < td1n; i++)
-            t.setField(i, t1.getField(i));
-        for (int i = 0; i < td2n; i++)
-            t.setField(td1n + i, t2.getField(i));
-        return t;
-
-    }
-
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
-        if (listIt != null && listIt.hasNext()) {
-            return processList();
+        while (true) {
+            if (listIt != null && listIt.hasNext()) {
+                return merge(listIt.next());
+            }
+            listIt = null;
+            if (pairJoin != null) {
+                if (pairJoin.hasNext()) {
+                    return pairJoin.next();
+                }
+                pairJoin.close();
+                builds[pair - 1].delete();
+                probes[pair - 1].delete();
+                pairJoin = null;
+            }
+            if (probing) {
+                if (child2.hasNext()) {
+                    t2 = child2.next();
+                    Object key = t2.getField(pred.getField2());
+                    if (builds != null) {
+                        SpillFile probe = probes[partitionOf(key)];
+                        if (probe != null) {
+                            probe.add(t2);
+                            continue;
+                        }
+                    }
+                    List<Tuple> l = map.get(key);
+                    if (l != null) {
+                        listIt = l.iterator();
+                    }
+                    continue;
+                }
+                if (more) {
+                    // the next chunk of the build side, against all of child2
+                    child2.rewind();
+                    build();
+                    resident = false;
+                    continue;
+                }
+                probing = false;
+                if (builds != null) {
+                    map.clear();
+                    for (SpillFile probe : probes) {
+                        if (probe != null) {
+                            probe.finish();
+                        }
+                    }
+                }
+            }
+            if (!nextPair()) {
+                return null;
+            }
         }
-
-        // loop around child2
-        while (child2.hasNext()) {
-            t2 = child2.next();
-
-            // if match, create a combined tuple and fill it with the values
-            // from both tuples
-            List<Tuple> l = map.get(t2.getField(pred.getField2()));
-            if (l == null)
-                continue;
-            listIt = l.iterator();
-
-            return processList();
-
-        }
-
-        // child2 is done: advance child1
-        child2.rewind();
-        if (loadMap()) {
-            return fetchNext();
-        }
-
-        return null;
     }
 
     @Override
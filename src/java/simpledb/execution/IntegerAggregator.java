@@ -18,8 +18,8 @@ public class IntegerAggregator implements Aggregator {
     private Type typeOfField;
     private int fieldIndexOfAggregate;
     private Op operation;
-    private HashMap <Field , Integer> resultantTable; //First Field represents the key, the second integer represent the value requested of number of tuples with the same key
-    private HashMap <Field , Integer> countTable; //First Field represents the key, the second integer represent the count of the number of tuples with the same key
+    // the running value and the tuple count of each group, updated in place
+    private HashMap <Field , int[]> groups;
 
     /**
      * Aggregate constructor
@@ -41,8 +41,7 @@ public class IntegerAggregator implements Aggregator {
         this.typeOfField = gbfieldtype;
         this.fieldIndexOfAggregate = afield;
         this.operation = what;
-        this.resultantTable = new HashMap<Field , Integer>();
-        this.countTable = new HashMap<Field , Integer>();
+        this.groups = new HashMap<Field , int[]>();
     }
 
     /**
@@ -54,7 +53,6 @@ public class IntegerAggregator implements Aggregator {
      */
     public void mergeTupleIntoGroup(Tuple tup) {
         Field key;
-        Integer value;
         if (this.fieldIndexToGB == Aggregator.NO_GROUPING){
             key = null;
         }
@@ -62,53 +60,32 @@ public class IntegerAggregator implements Aggregator {
             key = tup.getField(fieldIndexToGB);
         }
         
-        int tupleValue = ((IntField)tup.getField(fieldIndexOfAggregate)).getValue();
-        if (!resultantTable.containsKey(key)){
-            switch(operation){
-                case MIN:
-                    resultantTable.put(key,tupleValue);
-                    break;
-                case MAX:
-                    resultantTable.put(key,tupleValue);
-                    break;
-                case SUM:
-                    resultantTable.put(key,tupleValue);
-                    break;
-                case AVG:
-                    resultantTable.put(key,tupleValue);
-                    break;
-                case COUNT:
-                    resultantTable.put(key,1);
-                    break;
-            }
-            countTable.put(key,1);
+        int tupleValue = tup.getInt(fieldIndexOfAggregate);
+        // a SUM_COUNT tuple carries the count of its sum in the next field
+        int tupleCount = operation == Op.SC_AVG ? tup.getInt(fieldIndexOfAggregate + 1) : 1;
+        int[] group = groups.get(key);
+        if (group == null){
+            groups.put(key, new int[] {operation == Op.COUNT ? 1 : tupleValue, tupleCount});
         }
         else{
             switch(operation){
                 case MIN:
-                    if (tupleValue<resultantTable.get(key)){
-                        resultantTable.put(key,tupleValue);
-                    }
+                    group[0] = Math.min(group[0], tupleValue);
                     break;
                 case MAX:
-                    if (tupleValue>resultantTable.get(key)){
-                        resultantTable.put(key,tupleValue);
-                    }
+                    group[0] = Math.max(group[0], tupleValue);
                     break;
                 case SUM:
-                    int newValue = tupleValue + resultantTable.get(key);
-                    resultantTable.put(key,newValue);
-                    break;
                 case AVG:
-                    int sum = tupleValue + resultantTable.get(key);
-                    resultantTable.put(key,sum);
+                case SUM_COUNT:
+                case SC_AVG:
+                    group[0] += tupleValue;
                     break;
                 case COUNT:
-                    int count = 1 + resultantTable.get(key);
-                    resultantTable.put(key,count);
+                    group[0]++;
                     break;
             }
-            countTable.put(key,1+countTable.get(key));
+            group[1] += tupleCount;
         }
 
     }
@@ -119,7 +96,8 @@ public class IntegerAggregator implements Aggregator {
      * @return a OpIterator whose tuples are the pair (groupVal, aggregateVal)
      *         if using group, or a single (aggregateVal) if no grouping. The
      *         aggregateVal is determined by the type of aggregate specified in
-     *         the constructor.
+     *         the constructor. SUM_COUNT tuples end with a countVal field
+     *         after the sum.
      */
     public OpIterator iterator() {
         ArrayList<Tuple> tupleList = new ArrayList<Tuple>();
@@ -133,27 +111,24 @@ public class IntegerAggregator implements Aggregator {
             typeAr = new Type[] {typeOfField,Type.INT_TYPE};
             fieldAr = new String[] {"groupVal","aggregateVal"};
         }
+        if (operation == Op.SUM_COUNT){
+            typeAr = Arrays.copyOf(typeAr, typeAr.length + 1);
+            fieldAr = Arrays.copyOf(fieldAr, fieldAr.length + 1);
+            typeAr[typeAr.length - 1] = Type.INT_TYPE;
+            fieldAr[fieldAr.length - 1] = "countVal";
+        }
         TupleDesc descriptor = new TupleDesc(typeAr, fieldAr);
-        for (Field key : resultantTable.keySet()){
+        int valueField = this.fieldIndexToGB == Aggregator.NO_GROUPING ? 0 : 1;
+        for (Map.Entry<Field, int[]> group : groups.entrySet()){
             Tuple entry = new Tuple(descriptor);
-            int value = resultantTable.get(key);
-            if (this.fieldIndexToGB == Aggregator.NO_GROUPING){
-                if (operation == Op.AVG){
-                    entry.setField(0, new IntField(value/countTable.get(null)));
-                }
-                else{
-                    entry.setField(0, new IntField(value));
-                }
+            int[] state = group.getValue();
+            int value = operation == Op.AVG || operation == Op.SC_AVG ? state[0] / state[1] : state[0];
+            if (valueField == 1){
+                entry.setField(0, group.getKey());
             }
-            else{
-                entry.setField(0, key);
-                if (operation == Op.AVG){
-                    entry.setField(1, new IntField(value/countTable.get(key)));
-                }
-                else{
-                    entry.setField(1, new IntField(resultantTable.get(key)));
-                }
-                
+            entry.setField(valueField, new IntField(value));
+            if (operation == Op.SUM_COUNT){
+                entry.setField(valueField + 1, new IntField(state[1]));
             }
             tupleList.add(entry);
         }
@@ -2,22 +2,47 @@ package simpledb.execution;
 
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.common.DbException;
+import simpledb.storage.BufferPool;
 import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
 
 import java.util.*;
 
 /**
- * The Join operator implements the relational join operation.
+ * The Join operator implements the relational join operation, on any
+ * predicate, by nested loops over blocks of tuples sized from a memory
+ * budget of {@link #setMemoryPages pages}.
+ * <p>
+ * When the inner relation (the second child) fits in the budget, it is
+ * read into memory once, and each outer tuple is compared with it there;
+ * rewinding the join then reads only the outer relation again. Otherwise,
+ * the outer relation is read a block that fits at a time, and the inner is
+ * scanned once per block, each of its tuples being compared with the whole
+ * block, so that the inner is read once per block rather than once per
+ * outer tuple. The tuples of a block then come out in the order of the
+ * inner relation.
  */
 public class Join extends Operator {
 
     private static final long serialVersionUID = 1L;
+
+    /**
+     * Default memory budget of a join, in pages.
+     */
+    public static final int DEFAULT_MEMORY_PAGES = 256;
+
     private JoinPredicate joinPredicate;
     private OpIterator child1;
     private OpIterator child2;
     private TupleDesc tupleDesc;
-    private Tuple currentTuple1;    
+    private int memoryPages = DEFAULT_MEMORY_PAGES;
+    private transient Tuple currentTuple1;
+    private transient Tuple currentTuple2;
+    // the whole inner relation, or null if it does not fit
+    private transient List<Tuple> inner;
+    // the current block of the outer relation, if the inner does not fit
+    private transient List<Tuple> block;
+    private transient int position; // the next tuple of inner or block to compare
     /**
      * Constructor. Accepts two children to join and the predicate to join them
      * on
@@ -69,13 +94,89 @@ public class Join extends Operator {
         return tupleDesc;
     }
 
+    /**
+     * Sets the memory budget of the join, which takes effect the next time
+     * it is opened.
+     *
+     * @param pages the number of pages of tuples the join may hold in memory
+     */
+    public void setMemoryPages(int pages) {
+        if (pages <= 0) {
+            throw new IllegalArgumentException("a join needs memory, not " + pages + " pages");
+        }
+        memoryPages = pages;
+    }
+
+    /**
+     * @return the memory budget of the join, in pages
+     */
+    public int getMemoryPages() {
+        return memoryPages;
+    }
+
+    /**
+     * @return whether the inner relation is held in memory, since the join
+     * was last opened
+     */
+    public boolean isInnerResident() {
+        return inner != null;
+    }
+
+    private long budget() {
+        return (long) memoryPages * BufferPool.getPageSize();
+    }
+
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
                 super.open();
                 child1.open();
                 child2.open();
                 currentTuple1 = null;
-        // some code goes here
+                currentTuple2 = null;
+                position = 0;
+                loadInner();
+    }
+
+    /**
+     * Reads the inner relation into memory if it fits, or else reads the
+     * first block of the outer relation.
+     */
+    private void loadInner() throws DbException, TransactionAbortedException {
+        int tupleBytes = child2.getTupleDesc().getSize();
+        List<Tuple> tuples = new ArrayList<>();
+        long used = 0;
+        while (child2.hasNext()) {
+            if (used + tupleBytes > budget()) {
+                // too large: nested loops over blocks of the outer relation
+                inner = null;
+                child2.rewind();
+                loadBlock();
+                return;
+            }
+            tuples.add(child2.next());
+            used += tupleBytes;
+        }
+        inner = tuples;
+        block = null;
+    }
+
+    /**
+     * Reads the next block of the outer relation that fits in memory.
+     *
+     * @return false if the outer relation is used up
+     */
+    private boolean loadBlock() throws DbException, TransactionAbortedException {
+        int tupleBytes = child1.getTupleDesc().getSize();
+        if (block == null) {
+            block = new ArrayList<>();
+        }
+        block.clear();
+        long used = 0;
+        while ((used == 0 || used + tupleBytes <= budget()) && child1.hasNext()) {
+            block.add(child1.next());
+            used += tupleBytes;
+        }
+        return !block.isEmpty();
     }
 
     public void close() {
@@ -83,14 +184,20 @@ public class Join extends Operator {
         child1.close();
         child2.close();
         currentTuple1 = null;
-        // some code goes here
+        currentTuple2 = null;
+        inner = null;
+        block = null;
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
         child1.rewind();
-        child2.rewind();
         currentTuple1 = null;
-        // some code goes here
+        currentTuple2 = null;
+        position = 0;
+        if (inner == null) {
+            child2.rewind();
+            loadBlock();
+        }
     }
 
     /**
@@ -112,23 +219,47 @@ public class Join extends Operator {
      * @see JoinPredicate#filter
      */
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
-        while (true) {
-            if (currentTuple1 == null) {
+        if (inner != null) {
+            while (true) {
+                if (currentTuple1 != null) {
+                    while (position < inner.size()) {
+                        Tuple t2 = inner.get(position++);
+                        if (joinPredicate.filter(currentTuple1, t2)) {
+                            return mergeTuples(currentTuple1, t2);
+                        }
+                    }
+                }
                 if (!child1.hasNext()) {
                     return null; // No more tuples in child1
                 }
                 currentTuple1 = child1.next();
-                child2.rewind(); // Reset child2 for each new tuple in child1
+                position = 0;
             }
+        }
 
-            while (child2.hasNext()) {
-                Tuple currentTuple2 = child2.next();
-                if (joinPredicate.filter(currentTuple1, currentTuple2)) {
-                    return mergeTuples(currentTuple1, currentTuple2);
+        while (true) {
+            if (currentTuple2 != null) {
+                while (position < block.size()) {
+                    Tuple t1 = block.get(position++);
+                    if (joinPredicate.filter(t1, currentTuple2)) {
+                        return mergeTuples(t1, currentTuple2);
+                    }
                 }
             }
-
-            currentTuple1 = null; // Move to the next tuple in child1
+            if (block.isEmpty()) {
+                return null; // No more tuples in child1
+            }
+            if (child2.hasNext()) {
+                currentTuple2 = child2.next();
+                position = 0;
+                continue;
+            }
+            // the inner is used up for this block: on to the next one
+            currentTuple2 = null;
+            if (!loadBlock()) {
+                return null;
+            }
+            child2.rewind();
         }
     }
 
@@ -1,6 +1,8 @@
 package simpledb.execution;
 
+import simpledb.common.Type;
 import simpledb.storage.Field;
+import simpledb.storage.IntField;
 import simpledb.storage.Tuple;
 
 import java.io.Serializable;
@@ -46,6 +48,10 @@ public class JoinPredicate implements Serializable {
      */
     public boolean filter(Tuple t1, Tuple t2) {
         // some code goes here
+        if (t1.getTupleDesc().getFieldType(this.field1) == Type.INT_TYPE
+                && t2.getTupleDesc().getFieldType(this.field2) == Type.INT_TYPE) {
+            return IntField.compare(this.op, t1.getInt(this.field1), t2.getInt(this.field2));
+        }
         Field fieldFromTuple1 = t1.getField(this.field1);
         Field fieldFromTuple2 = t2.getField(this.field2);
         return fieldFromTuple1.compare(this.op, fieldFromTuple2);
@@ -0,0 +1,143 @@
+package simpledb.execution;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import simpledb.common.Type;
+
+/**
+ * Numbers the distinct keys of an int or string column 0, 1, 2, ... in the
+ * order they are first added, for batch operators that keep per-key state in
+ * arrays. Int keys are held in an open-addressing table, so that adding one
+ * builds no objects.
+ */
+class KeyTable {
+
+    private final Type type;
+    private int[] slotKeys = new int[64]; // int keys, by slot
+    private int[] slotIds = filled(64); // the id of the key in each slot, or -1
+    private int[] intKeys = new int[64]; // by id
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private final List<String> stringKeys = new ArrayList<>();
+    private int size;
+
+    KeyTable(Type type) {
+        this.type = type;
+    }
+
+    private static int[] filled(int length) {
+        int[] a = new int[length];
+        Arrays.fill(a, -1);
+        return a;
+    }
+
+    private static int hash(int key, int mask) {
+        return (key * 0x9E3779B9 >>> 16 ^ key * 0x9E3779B9) & mask;
+    }
+
+    /**
+     * @return the number of distinct keys added
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the id of key, which is added if it is new
+     */
+    int add(int key) {
+        int mask = slotIds.length - 1;
+        int slot = hash(key, mask);
+        while (slotIds[slot] >= 0) {
+            if (slotKeys[slot] == key) {
+                return slotIds[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size == intKeys.length) {
+            intKeys = Arrays.copyOf(intKeys, size * 2);
+        }
+        intKeys[size] = key;
+        slotKeys[slot] = key;
+        slotIds[slot] = size;
+        if (++size * 2 > slotIds.length) {
+            rehash();
+        }
+        return size - 1;
+    }
+
+    private void rehash() {
+        int length = slotIds.length * 2;
+        int mask = length - 1;
+        slotKeys = new int[length];
+        slotIds = filled(length);
+        for (int id = 0; id < size; id++) {
+            int slot = hash(intKeys[id], mask);
+            while (slotIds[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            slotKeys[slot] = intKeys[id];
+            slotIds[slot] = id;
+        }
+    }
+
+    /**
+     * @return the id of key, or -1 if it was never added
+     */
+    int find(int key) {
+        int mask = slotIds.length - 1;
+        int slot = hash(key, mask);
+        while (slotIds[slot] >= 0) {
+            if (slotKeys[slot] == key) {
+                return slotIds[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the id of key, which is added if it is new
+     */
+    int add(String key) {
+        Integer id = stringIds.get(key);
+        if (id == null) {
+            id = size++;
+            stringIds.put(key, id);
+            stringKeys.add(key);
+        }
+        return id;
+    }
+
+    /**
+     * @return the id of key, or -1 if it was never added
+     */
+    int find(String key) {
+        Integer id = stringIds.get(key);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return the type of the keys
+     */
+    Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the int key numbered id
+     */
+    int intKey(int id) {
+        return intKeys[id];
+    }
+
+    /**
+     * @return the string key numbered id
+     */
+    String stringKey(int id) {
+        return stringKeys.get(id);
+    }
+}
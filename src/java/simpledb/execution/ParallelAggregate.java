@@ -0,0 +1,143 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.Morsels;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * ParallelAggregate computes the same aggregate as {@link Aggregate} over
+ * the tuples of several copies of a pipeline, run in parallel by a
+ * {@link Gather}. Each copy aggregates the tuples it reads on its own
+ * thread, and this operator merges the partial aggregates: sums and counts
+ * are added up, minimums and maximums taken again, and averages computed
+ * from partial SUM_COUNT aggregates.
+ * <p>
+ * Only aggregates over int fields can be merged.
+ */
+public class ParallelAggregate extends Operator {
+
+    private static final long serialVersionUID = 1L;
+    private OpIterator gather;
+    private final int gfield;
+    private final Aggregator.Op aop;
+    private final TupleDesc td;
+    private transient List<Tuple> results;
+    private transient Iterator<Tuple> it;
+
+    /**
+     * @param pipelines the copies of the pipeline whose tuples are
+     *                  aggregated, which all have the same TupleDesc
+     * @param morsels   the morsels the scans of the pipelines share, or null
+     * @param afield    the column over which we are computing an aggregate
+     * @param gfield    the column over which we are grouping the result, or
+     *                  -1 if there is no grouping
+     * @param aop       the aggregation operator to use
+     * @throws IllegalArgumentException if the aggregate cannot be merged
+     * @see #canMerge
+     */
+    public ParallelAggregate(OpIterator[] pipelines, Morsels morsels, int afield, int gfield, Aggregator.Op aop) {
+        TupleDesc childTd = pipelines[0].getTupleDesc();
+        if (!canMerge(childTd.getFieldType(afield), aop)) {
+            throw new IllegalArgumentException("cannot merge partial " + aop + " aggregates");
+        }
+        OpIterator[] partials = new OpIterator[pipelines.length];
+        for (int i = 0; i < pipelines.length; i++) {
+            partials[i] = new Aggregate(pipelines[i], afield, gfield, partialOp(aop));
+        }
+        this.gather = new Gather(partials, morsels);
+        this.gfield = gfield;
+        this.aop = aop;
+        this.td = Aggregate.tupleDesc(childTd, afield, gfield, aop);
+    }
+
+    /**
+     * @return true if partial aggregates of aop over fields of type type can
+     * be merged
+     */
+    public static boolean canMerge(Type type, Aggregator.Op aop) {
+        return type == Type.INT_TYPE && aop != Aggregator.Op.SUM_COUNT && aop != Aggregator.Op.SC_AVG;
+    }
+
+    /**
+     * @return the aggregate each copy of the pipeline computes for aop
+     */
+    private static Aggregator.Op partialOp(Aggregator.Op aop) {
+        return aop == Aggregator.Op.AVG ? Aggregator.Op.SUM_COUNT : aop;
+    }
+
+    /**
+     * @return the aggregate that merges the partial aggregates for aop
+     */
+    private static Aggregator.Op mergeOp(Aggregator.Op aop) {
+        switch (aop) {
+            case COUNT:
+                return Aggregator.Op.SUM;
+            case AVG:
+                return Aggregator.Op.SC_AVG;
+            default:
+                return aop;
+        }
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        super.open();
+        gather.open();
+        boolean grouped = gfield != Aggregator.NO_GROUPING;
+        IntegerAggregator merger = new IntegerAggregator(grouped ? 0 : Aggregator.NO_GROUPING,
+                grouped ? td.getFieldType(0) : null, grouped ? 1 : 0, mergeOp(aop));
+        while (gather.hasNext()) {
+            merger.mergeTupleIntoGroup(gather.next());
+        }
+
+        // give the merged tuples the names the aggregate has in a serial plan
+        results = new ArrayList<>();
+        OpIterator merged = merger.iterator();
+        merged.open();
+        while (merged.hasNext()) {
+            Tuple t = merged.next();
+            Tuple result = new Tuple(td);
+            for (int i = 0; i < td.numFields(); i++) {
+                result.setField(i, t.getField(i));
+            }
+            results.add(result);
+        }
+        merged.close();
+        it = results.iterator();
+    }
+
+    protected Tuple fetchNext() {
+        return it.hasNext() ? it.next() : null;
+    }
+
+    public void rewind() {
+        it = results.iterator();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void close() {
+        super.close();
+        gather.close();
+        results = null;
+        it = null;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[]{gather};
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        gather = children[0];
+    }
+}
@@ -0,0 +1,357 @@
+package simpledb.execution;
+
+import simpledb.common.Debug;
+import simpledb.common.Type;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.storage.TupleDesc;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles the pipelines of a physical plan into Java classes, so that a
+ * tuple passes through a pipeline's operators in one generated method rather
+ * than through a hasNext and next call per operator, and its filters compare
+ * field values inline rather than through {@link Predicate} and
+ * {@link simpledb.storage.Field#compare}.
+ * <p>
+ * A pipeline is a Project, Filters and HashEquiJoins stacked on a source,
+ * where each join continues the pipeline through its probe side (its second
+ * child). The source and each build side are compiled as pipelines of their
+ * own; other operators are left to run as they are, as is the whole plan if
+ * no Java compiler is available at run time.
+ */
+public class PipelineCompiler {
+
+    private static final String PACKAGE = "simpledb.execution.compiled";
+    private static final String NAME = "$NAME";
+
+    // generated classes, by their source with NAME for their name, since
+    // plans of the same shape share them
+    private static final Map<String, Class<? extends CompiledPipeline>> classes = new HashMap<>();
+
+    private PipelineCompiler() {
+    }
+
+    /**
+     * Replaces each pipeline of plan that has operators to fuse by a
+     * compiled one, in place.
+     *
+     * @return the plan, whose root is replaced if it is part of a pipeline
+     */
+    public static OpIterator compile(OpIterator plan) {
+        if (plan instanceof Project || plan instanceof Filter || plan instanceof HashEquiJoin) {
+            CompiledPipeline pipeline = compilePipeline((Operator) plan);
+            if (pipeline != null) {
+                return pipeline;
+            }
+        }
+        if (plan instanceof Operator) {
+            Operator op = (Operator) plan;
+            OpIterator[] children = op.getChildren();
+            boolean changed = false;
+            for (int i = 0; i < children.length; i++) {
+                OpIterator child = compile(children[i]);
+                changed |= child != children[i];
+                children[i] = child;
+            }
+            if (changed) {
+                op.setChildren(children);
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * A tuple variable of the generated code, which holds width fields of
+     * the row a stage of the pipeline sees.
+     */
+    private static class Part {
+        final String var;
+        final int width;
+
+        Part(String var, int width) {
+            this.var = var;
+            this.width = width;
+        }
+    }
+
+    /**
+     * @return the code that reads field i of the row made of parts, which is
+     * of the given type
+     */
+    private static String field(List<Part> parts, int i, Type type) {
+        for (Part part : parts) {
+            if (i < part.width) {
+                return type == Type.INT_TYPE ? part.var + ".getInt(" + i + ")"
+                        : "string(" + part.var + ", " + i + ")";
+            }
+            i -= part.width;
+        }
+        throw new IllegalArgumentException("no field " + i + " in the row");
+    }
+
+    private static String fieldObject(List<Part> parts, int i) {
+        for (Part part : parts) {
+            if (i < part.width) {
+                return part.var + ".getField(" + i + ")";
+            }
+            i -= part.width;
+        }
+        throw new IllegalArgumentException("no field " + i + " in the row");
+    }
+
+    private static String operator(Predicate.Op op) {
+        switch (op) {
+            case EQUALS:
+            case LIKE:
+                return "==";
+            case NOT_EQUALS:
+                return "!=";
+            case GREATER_THAN:
+                return ">";
+            case GREATER_THAN_OR_EQ:
+                return ">=";
+            case LESS_THAN:
+                return "<";
+            default:
+                return "<=";
+        }
+    }
+
+    /**
+     * @return the pipeline whose top is top, or null if it could not be
+     * compiled, in which case the plan is unchanged
+     */
+    private static CompiledPipeline compilePipeline(Operator top) {
+        // the operators of the pipeline, top down
+        List<Operator> stages = new ArrayList<>();
+        OpIterator op = top;
+        if (op instanceof Project) {
+            stages.add((Operator) op);
+            op = ((Operator) op).getChildren()[0];
+        }
+        while (op instanceof Filter || op instanceof HashEquiJoin) {
+            stages.add((Operator) op);
+            op = ((Operator) op).getChildren()[op instanceof Filter ? 0 : 1];
+        }
+        Collections.reverse(stages);
+
+        List<Part> parts = new ArrayList<>();
+        parts.add(new Part("s", op.getTupleDesc().numFields()));
+        List<Integer> ints = new ArrayList<>();
+        List<String> strings = new ArrayList<>();
+        List<Operator> joins = new ArrayList<>();
+        StringBuilder code = new StringBuilder();
+        int depth = 0;
+        for (Operator stage : stages) {
+            if (stage instanceof Filter) {
+                Predicate p = ((Filter) stage).getPredicate();
+                Type type = stage.getTupleDesc().getFieldType(p.getField());
+                String value = field(parts, p.getField(), type);
+                if (type == Type.INT_TYPE) {
+                    code.append("if (").append(value).append(' ').append(operator(p.getOp()))
+                            .append(" ints[").append(ints.size()).append("]) {\n");
+                    ints.add(((IntField) p.getOperand()).getValue());
+                } else if (p.getOp() == Predicate.Op.LIKE) {
+                    code.append("if (").append(value).append(".contains(strings[")
+                            .append(strings.size()).append("])) {\n");
+                    strings.add(((StringField) p.getOperand()).getValue());
+                } else {
+                    code.append("if (").append(value).append(".compareTo(strings[").append(strings.size())
+                            .append("]) ").append(operator(p.getOp())).append(" 0) {\n");
+                    strings.add(((StringField) p.getOperand()).getValue());
+                }
+                depth++;
+            } else if (stage instanceof HashEquiJoin) {
+                JoinPredicate p = ((HashEquiJoin) stage).getJoinPredicate();
+                OpIterator build = stage.getChildren()[0];
+                Type type = build.getTupleDesc().getFieldType(p.getField1());
+                int j = joins.size();
+                code.append("List<Tuple> m").append(j).append(" = matches(").append(j).append(", ")
+                        .append(field(parts, p.getField2(), type)).append(");\n")
+                        .append("if (m").append(j).append(" != null) for (int i").append(j).append(" = 0; i")
+                        .append(j).append(" < m").append(j).append(".size(); i").append(j).append("++) {\n")
+                        .append("Tuple l").append(j).append(" = m").append(j).append(".get(i").append(j)
+                        .append(");\n");
+                parts.add(0, new Part("l" + j, build.getTupleDesc().numFields()));
+                joins.add(stage);
+                depth++;
+            }
+        }
+        if (top instanceof Project) {
+            List<Integer> fields = ((Project) top).getOutFieldIds();
+            code.append("Tuple o = new Tuple(getTupleDesc());\n");
+            if (joins.isEmpty()) {
+                code.append("o.setRecordId(s.getRecordId());\n");
+            }
+            for (int k = 0; k < fields.size(); k++) {
+                code.append("o.setField(").append(k).append(", ")
+                        .append(fieldObject(parts, fields.get(k))).append(");\n");
+            }
+            code.append("emit(o);\n");
+        } else if (joins.isEmpty()) {
+            code.append("emit(s);\n");
+        } else {
+            code.append("Tuple o = new Tuple(getTupleDesc());\n");
+            int n = top.getTupleDesc().numFields();
+            for (int k = 0; k < n; k++) {
+                code.append("o.setField(").append(k).append(", ").append(fieldObject(parts, k)).append(");\n");
+            }
+            code.append("emit(o);\n");
+        }
+        for (; depth > 0; depth--) {
+            code.append("}\n");
+        }
+
+        String source = "package " + PACKAGE + ";\n\n"
+                + "import java.util.List;\n"
+                + "import simpledb.execution.CompiledPipeline;\n"
+                + "import simpledb.storage.Tuple;\n\n"
+                + "public final class " + NAME + " extends CompiledPipeline {\n"
+                + "protected void consume(Tuple s) {\n"
+                + code
+                + "}\n"
+                + "}\n";
+        Class<? extends CompiledPipeline> c = load(source);
+        if (c == null) {
+            return null;
+        }
+        CompiledPipeline pipeline;
+        try {
+            pipeline = c.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            Debug.log("cannot instantiate %s: %s", c.getName(), e);
+            return null;
+        }
+
+        OpIterator[] builds = new OpIterator[joins.size()];
+        int[] buildKeys = new int[joins.size()];
+        int[] memoryPages = new int[joins.size()];
+        for (int j = 0; j < builds.length; j++) {
+            builds[j] = compile(joins.get(j).getChildren()[0]);
+            buildKeys[j] = ((HashEquiJoin) joins.get(j)).getJoinPredicate().getField1();
+            memoryPages[j] = ((HashEquiJoin) joins.get(j)).getMemoryPages();
+        }
+        int[] intConstants = new int[ints.size()];
+        for (int k = 0; k < intConstants.length; k++) {
+            intConstants[k] = ints.get(k);
+        }
+        pipeline.init(top, top.getTupleDesc(), compile(op), builds, buildKeys, memoryPages,
+                intConstants, strings.toArray(new String[0]));
+        pipeline.setEstimatedCardinality(top.getEstimatedCardinality());
+        return pipeline;
+    }
+
+    /**
+     * @return the class compiled from source, with NAME replaced by a name of
+     * its own, or null if it does not compile
+     */
+    private static synchronized Class<? extends CompiledPipeline> load(String source) {
+        if (classes.containsKey(source)) {
+            return classes.get(source);
+        }
+        String name = "Pipeline" + classes.size();
+        Class<? extends CompiledPipeline> c = compileClass(PACKAGE + "." + name, source.replace(NAME, name));
+        classes.put(source, c); // a failure is remembered too, so it is not retried
+        return c;
+    }
+
+    private static Class<? extends CompiledPipeline> compileClass(String className, String source) {
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if (javac == null) {
+            Debug.log("no Java compiler: pipelines are not compiled");
+            return null;
+        }
+        Map<String, ByteArrayOutputStream> output = new HashMap<>();
+        StandardJavaFileManager files = javac.getStandardFileManager(null, null, null);
+        JavaFileManager memory = new ForwardingJavaFileManager<StandardJavaFileManager>(files) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String name, JavaFileObject.Kind kind,
+                                                       FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("mem:///" + name.replace('.', '/') + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                        output.put(name, bytes);
+                        return bytes;
+                    }
+                };
+            }
+        };
+        JavaFileObject file = new SimpleJavaFileObject(
+                URI.create("string:///" + className.replace('.', '/') + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        List<String> options = Arrays.asList("-classpath", classPath(), "-g:none", "-nowarn");
+        boolean compiled = javac.getTask(null, memory, diagnostics, options, null,
+                Collections.singletonList(file)).call();
+        try {
+            memory.close();
+        } catch (IOException ignored) {
+        }
+        if (!compiled) {
+            for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+                Debug.log("%s", d);
+            }
+            return null;
+        }
+
+        ClassLoader loader = new ClassLoader(CompiledPipeline.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                ByteArrayOutputStream bytes = output.get(name);
+                if (bytes == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                byte[] b = bytes.toByteArray();
+                return defineClass(name, b, 0, b.length);
+            }
+        };
+        try {
+            return loader.loadClass(className).asSubclass(CompiledPipeline.class);
+        } catch (ClassNotFoundException e) {
+            Debug.log("cannot load %s: %s", className, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the class path of this JVM, together with wherever SimpleDB's
+     * classes were loaded from
+     */
+    private static String classPath() {
+        String path = System.getProperty("java.class.path");
+        try {
+            File classes = new File(CompiledPipeline.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            path = classes.getPath() + File.pathSeparator + path;
+        } catch (Exception ignored) {
+            // the JVM's class path will have to do
+        }
+        return path;
+    }
+}
@@ -1,6 +1,7 @@
 package simpledb.execution;
 
 import simpledb.storage.Field;
+import simpledb.storage.IntField;
 import simpledb.storage.Tuple;
 
 import java.io.Serializable;
@@ -105,10 +106,21 @@ public class Predicate implements Serializable {
      */
     public boolean filter(Tuple t) {
         // some code goes here
+        if (this.operand instanceof IntField) {
+            return filter(t.getInt(this.field));
+        }
         Field tupleField = t.getField(this.field);
         return tupleField.compare(this.op, this.operand);
     }
 
+    /**
+     * Same as {@link #filter(Tuple)} for a tuple whose field is the int
+     * value, without building the field. The operand must be an IntField.
+     */
+    public boolean filter(int value) {
+        return IntField.compare(this.op, value, ((IntField) this.operand).getValue());
+    }
+
     /**
      * Returns something useful, like "f = field_id op = op_string operand =
      * operand_string"
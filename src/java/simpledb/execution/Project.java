@@ -44,6 +44,13 @@ public class Project extends Operator {
         td = new TupleDesc(types, fieldAr);
     }
 
+    /**
+     * @return the ids of the fields of the child's tuples that are projected
+     */
+    List<Integer> getOutFieldIds() {
+        return outFieldIds;
+    }
+
     public TupleDesc getTupleDesc() {
         return td;
     }
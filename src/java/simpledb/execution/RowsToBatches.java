@@ -0,0 +1,47 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.TupleBatch;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+/**
+ * Collects the tuples of an OpIterator into batches, so that batch operators
+ * can run over any tuple-at-a-time plan.
+ */
+public class RowsToBatches implements BatchIterator {
+
+    private static final long serialVersionUID = 1L;
+    private final OpIterator child;
+    private TupleBatch batch;
+
+    public RowsToBatches(OpIterator child) {
+        this.child = child;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+        batch = new TupleBatch(child.getTupleDesc());
+    }
+
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        batch.clear();
+        while (!batch.isFull() && child.hasNext()) {
+            batch.append(child.next());
+        }
+        return batch.rows() > 0 ? batch : null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void close() {
+        child.close();
+        batch = null;
+    }
+}
@@ -6,6 +6,8 @@ import simpledb.common.DbException;
 import simpledb.common.Type;
 import simpledb.storage.DbFile;
 import simpledb.storage.DbFileIterator;
+import simpledb.storage.HeapFile;
+import simpledb.storage.Morsels;
 import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
 import simpledb.transaction.TransactionAbortedException;
@@ -22,6 +24,10 @@ public class SeqScan implements OpIterator {
     private int tableId;
     private String tableAlias;
     private DbFile f;
+    private TransactionId tid;
+    private int[] columns;
+    private final List<Predicate> filters = new ArrayList<>();
+    private Morsels morsels;
     private DbFileIterator tupleIterator;
     private boolean isOpen = false;
 
@@ -45,11 +51,74 @@ public class SeqScan implements OpIterator {
      *                   tableAlias.null, or null.null).
      */
     public SeqScan(TransactionId tid, int tableid, String tableAlias) {
+        this(tid, tableid, tableAlias, null);
+    }
+
+    /**
+     * Creates a sequential scan that only needs some of the table's columns.
+     * The returned tuples still have the table's TupleDesc, but fields outside
+     * columns may be null, so that a table stored column by column need not
+     * read them.
+     *
+     * @param columns
+     *                   indexes of the fields the operators above this scan
+     *                   read, or null for all of them
+     * @see simpledb.storage.DbFile#iterator(TransactionId, int[])
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, int[] columns) {
         // some code goes here
         this.tableId = tableid;
         this.tableAlias = tableAlias;
         this.f = Database.getCatalog().getDatabaseFile(tableid);
-        this.tupleIterator = f.iterator(tid);
+        this.tid = tid;
+        this.columns = columns;
+        this.tupleIterator = columns == null ? f.iterator(tid) : f.iterator(tid, columns);
+    }
+
+    /**
+     * Creates a scan that reads only the pages it claims from morsels, so
+     * that several scans sharing morsels split the table between them, for
+     * example to read it from several threads. The scans return every tuple
+     * of the table between them.
+     *
+     * @param morsels
+     *                   the page ranges of the table to claim
+     * @throws IllegalArgumentException
+     *                   if the table is not the HeapFile of morsels
+     * @see HeapFile#iterator(TransactionId, int[], Predicate[], Morsels)
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, int[] columns, Morsels morsels) {
+        this(tid, tableid, tableAlias, columns);
+        if (f != morsels.getFile()) {
+            throw new IllegalArgumentException("the morsels are pages of another table");
+        }
+        this.morsels = morsels;
+        this.tupleIterator = newIterator();
+    }
+
+    private DbFileIterator newIterator() {
+        Predicate[] pushed = filters.toArray(new Predicate[0]);
+        if (morsels != null) {
+            return ((HeapFile) f).iterator(tid, columns, pushed, morsels);
+        }
+        return f.iterator(tid, columns, pushed);
+    }
+
+    /**
+     * Makes the scan return only the tuples that satisfy p, as well as any
+     * predicates pushed down before. The table tests the predicates before
+     * it builds each tuple, and may skip pages that cannot hold a match.
+     *
+     * @return false, and the scan is unchanged, if it is already open
+     * @see simpledb.storage.DbFile#iterator(TransactionId, int[], Predicate[])
+     */
+    public boolean pushDown(Predicate p) {
+        if (isOpen) {
+            return false;
+        }
+        filters.add(p);
+        this.tupleIterator = newIterator();
+        return true;
     }
 
     /**
@@ -91,7 +160,11 @@ public class SeqScan implements OpIterator {
         this.tableAlias = tableAlias;
         this.tableId = tableid;
         this.f = Database.getCatalog().getDatabaseFile(tableid);
-        this.tupleIterator = f.iterator(new TransactionId());
+        this.tid = new TransactionId();
+        this.columns = null;
+        this.filters.clear();
+        this.morsels = null;
+        this.tupleIterator = f.iterator(tid);
     }
 
     public SeqScan(TransactionId tid, int tableId) {
@@ -121,7 +194,13 @@ public class SeqScan implements OpIterator {
     @Override
     public TupleDesc getTupleDesc() {
         // some code goes here
-        TupleDesc td = f.getTupleDesc();
+        return aliased(f.getTupleDesc(), tableAlias);
+    }
+
+    /**
+     * @return td with each field name prefixed by tableAlias and a "."
+     */
+    static TupleDesc aliased(TupleDesc td, String tableAlias) {
         Iterator<TupleDesc.TDItem> iter = td.iterator();
 
         String[] fieldNames = new String[td.numFields()];
@@ -0,0 +1,392 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.index.BTreeScan;
+import simpledb.storage.BufferPool;
+import simpledb.storage.Field;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The SortMergeJoin operator joins two inputs in ascending order of their
+ * join fields, on EQUALS or on a range predicate (LESS_THAN,
+ * LESS_THAN_OR_EQ, GREATER_THAN or GREATER_THAN_OR_EQ). An input that must
+ * be sorted and is not already in order, as a {@link BTreeScan} is in the
+ * order of its key, is sorted first by an {@link OrderBy}.
+ * <p>
+ * On EQUALS both inputs are sorted and read once, in step. The inner tuples
+ * that have the key of the current outer tuple, a run of duplicates, are
+ * held so that every outer tuple with that key is joined with all of them;
+ * when both inputs come in order, a run is all the join holds in memory.
+ * The tuples come out in the order of the outer input.
+ * <p>
+ * On a range predicate, the inner tuples that match an outer tuple are a
+ * prefix or a suffix of the sorted inner, so the inner is held in memory,
+ * sorted, and the end of each outer tuple's matches is found by binary
+ * search. The outer need not be sorted. When the inner fits in the memory
+ * budget of {@link #setMemoryPages pages}, the outer is read once, and the
+ * tuples come out in its order; otherwise the inner is read a chunk that
+ * fits at a time, and the outer is read once per chunk.
+ */
+public class SortMergeJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Default memory budget of a join, in pages.
+     */
+    public static final int DEFAULT_MEMORY_PAGES = 256;
+
+    private final JoinPredicate pred;
+    private OpIterator child1, child2;
+    private final TupleDesc comboTD;
+    private int memoryPages = DEFAULT_MEMORY_PAGES;
+    private transient Tuple t1; // the current outer tuple
+    private transient Tuple t2; // on EQUALS, the next inner tuple after the run
+    // on EQUALS, the run of inner tuples with one key; on a range predicate,
+    // the chunk of the inner in memory, sorted
+    private transient List<Tuple> inner;
+    private transient boolean more; // whether the inner has tuples beyond the chunk
+    private transient boolean resident; // whether the whole inner was one chunk
+    private transient Field runKey; // the key of the run, or null
+    private transient int pos; // the next inner tuple to join with t1
+    private transient int end; // the end of t1's matches in inner
+
+    /**
+     * Constructor. Accepts two children to join and the predicate to join
+     * them on
+     *
+     * @param p      The predicate to use to join the children
+     * @param child1 Iterator for the left(outer) relation to join
+     * @param child2 Iterator for the right(inner) relation to join
+     * @throws IllegalArgumentException if the predicate's operator is neither
+     *                                  EQUALS nor a range operator
+     */
+    public SortMergeJoin(JoinPredicate p, OpIterator child1, OpIterator child2) {
+        if (!canJoin(p.getOperator())) {
+            throw new IllegalArgumentException("SortMergeJoin cannot join on " + p.getOperator());
+        }
+        this.pred = p;
+        if (p.getOperator() == Predicate.Op.EQUALS && !isOrderedOn(child1, p.getField1())) {
+            child1 = new OrderBy(p.getField1(), true, child1);
+        }
+        if (p.getOperator() == Predicate.Op.EQUALS && !isOrderedOn(child2, p.getField2())) {
+            child2 = new OrderBy(p.getField2(), true, child2);
+        }
+        this.child1 = child1;
+        this.child2 = child2;
+        comboTD = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+
+    /**
+     * @return whether a SortMergeJoin can join on op
+     */
+    public static boolean canJoin(Predicate.Op op) {
+        switch (op) {
+            case EQUALS:
+            case LESS_THAN:
+            case LESS_THAN_OR_EQ:
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQ:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Tells whether the tuples of it come in ascending order of a field, so
+     * that a merge join need not sort them: those of a BTreeScan, in the
+     * order of its key, of an ascending OrderBy, and of Filters and merge
+     * joins on EQUALS over them.
+     *
+     * @param it    the operator
+     * @param field the index of the field in it's TupleDesc
+     * @return true if it is known to be in order of field
+     */
+    public static boolean isOrderedOn(OpIterator it, int field) {
+        if (it instanceof BTreeScan) {
+            return ((BTreeScan) it).getKeyField() == field;
+        }
+        if (it instanceof OrderBy) {
+            OrderBy o = (OrderBy) it;
+            return o.isASC() && o.getOrderByField() == field;
+        }
+        if (it instanceof Filter) {
+            return isOrderedOn(((Filter) it).getChildren()[0], field);
+        }
+        if (it instanceof SortMergeJoin) {
+            // on a range predicate, the outer is read once per chunk of
+            // the inner, so its order is only kept if the inner fits
+            SortMergeJoin j = (SortMergeJoin) it;
+            if (j.pred.getOperator() != Predicate.Op.EQUALS) {
+                return false;
+            }
+            int outerFields = j.child1.getTupleDesc().numFields();
+            if (field < outerFields) {
+                return isOrderedOn(j.child1, field);
+            }
+            // the inner keys are those of the outer tuples
+            return field - outerFields == j.pred.getField2();
+        }
+        return false;
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return pred;
+    }
+
+    public String getJoinField1Name() {
+        return child1.getTupleDesc().getFieldName(pred.getField1());
+    }
+
+    public String getJoinField2Name() {
+        return child2.getTupleDesc().getFieldName(pred.getField2());
+    }
+
+    public TupleDesc getTupleDesc() {
+        return comboTD;
+    }
+
+    /**
+     * Sets the memory budget of the join, which takes effect the next time
+     * it is opened.
+     *
+     * @param pages the number of pages of inner tuples the join may hold in
+     *              memory on a range predicate
+     */
+    public void setMemoryPages(int pages) {
+        if (pages <= 0) {
+            throw new IllegalArgumentException("a join needs memory, not " + pages + " pages");
+        }
+        memoryPages = pages;
+    }
+
+    /**
+     * @return the memory budget of the join, in pages
+     */
+    public int getMemoryPages() {
+        return memoryPages;
+    }
+
+    /**
+     * @return whether, on a range predicate, the whole inner is held in
+     * memory, since the join was last opened
+     */
+    public boolean isInnerResident() {
+        return resident;
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child1.open();
+        child2.open();
+        start();
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        child2.close();
+        child1.close();
+        t1 = null;
+        t2 = null;
+        inner = null;
+        runKey = null;
+        resident = false;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child1.rewind();
+        if (resident) {
+            t1 = null; // the sorted inner is kept
+        } else {
+            child2.rewind();
+            start();
+        }
+    }
+
+    /**
+     * Sets up a pass over the children, which are at their start.
+     */
+    private void start() throws DbException, TransactionAbortedException {
+        t1 = null;
+        pos = end = 0;
+        inner = new ArrayList<>();
+        more = false;
+        resident = false;
+        if (pred.getOperator() == Predicate.Op.EQUALS) {
+            runKey = null;
+            t2 = nextInner();
+            return;
+        }
+        loadChunk();
+        resident = !more;
+    }
+
+    /**
+     * Reads the next chunk of the inner that fits in memory, sorted.
+     */
+    private void loadChunk() throws DbException, TransactionAbortedException {
+        long budget = (long) memoryPages * BufferPool.getPageSize();
+        int tupleBytes = child2.getTupleDesc().getSize();
+        inner.clear();
+        long used = 0;
+        while ((used == 0 || used + tupleBytes <= budget) && child2.hasNext()) {
+            inner.add(child2.next());
+            used += tupleBytes;
+        }
+        if (!isOrderedOn(child2, pred.getField2())) {
+            inner.sort(new TupleComparator(pred.getField2(), true));
+        }
+        more = child2.hasNext();
+    }
+
+    private Tuple nextInner() throws DbException, TransactionAbortedException {
+        return child2.hasNext() ? child2.next() : null;
+    }
+
+    /**
+     * Compares two keys of the same type, in the order the inputs are
+     * sorted in.
+     */
+    private static int compare(Field a, Field b) {
+        if (a instanceof IntField) {
+            return Integer.compare(((IntField) a).getValue(), ((IntField) b).getValue());
+        }
+        if (a.compare(Predicate.Op.EQUALS, b)) {
+            return 0;
+        }
+        return a.compare(Predicate.Op.LESS_THAN, b) ? -1 : 1;
+    }
+
+    /**
+     * Makes the run the inner tuples with the smallest key that is not below
+     * key, skipping those before them.
+     */
+    private void loadRun(Field key) throws DbException, TransactionAbortedException {
+        inner.clear();
+        while (t2 != null && compare(t2.getField(pred.getField2()), key) < 0) {
+            t2 = nextInner();
+        }
+        runKey = t2 == null ? null : t2.getField(pred.getField2());
+        while (t2 != null && compare(t2.getField(pred.getField2()), runKey) == 0) {
+            inner.add(t2);
+            t2 = nextInner();
+        }
+    }
+
+    /**
+     * @return the index of the first tuple of the sorted inner whose key is
+     * above key, or, if orEqual, not below it
+     */
+    private int search(Field key, boolean orEqual) {
+        int lo = 0, hi = inner.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compare(inner.get(mid).getField(pred.getField2()), key);
+            if (c < 0 || (c == 0 && !orEqual)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Finds the inner tuples t1 joins with, from pos to end.
+     *
+     * @return false if no outer tuple after t1 can join either
+     */
+    private boolean match() throws DbException, TransactionAbortedException {
+        Field key = t1.getField(pred.getField1());
+        switch (pred.getOperator()) {
+            case EQUALS:
+                if (runKey == null || compare(key, runKey) > 0) {
+                    loadRun(key);
+                    if (runKey == null) {
+                        return false; // the inner is used up
+                    }
+                }
+                pos = 0;
+                end = compare(key, runKey) == 0 ? inner.size() : 0;
+                break;
+            case LESS_THAN: // key < inner key
+                pos = search(key, false);
+                end = inner.size();
+                break;
+            case LESS_THAN_OR_EQ:
+                pos = search(key, true);
+                end = inner.size();
+                break;
+            case GREATER_THAN: // key > inner key
+                pos = 0;
+                end = search(key, true);
+                break;
+            default: // GREATER_THAN_OR_EQ
+                pos = 0;
+                end = search(key, false);
+                break;
+        }
+        return true;
+    }
+
+    private Tuple merge(Tuple t2) {
+        int td1n = t1.getTupleDesc().numFields();
+        int td2n = t2.getTupleDesc().numFields();
+        Tuple t = new Tuple(comboTD);
+        for (int i = 0; i < td1n; i++)
+            t.setField(i, t1.getField(i));
+        for (int i = 0; i < td2n; i++)
+            t.setField(td1n + i, t2.getField(i));
+        return t;
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples: the concatenation of an outer tuple and an inner tuple
+     * that satisfy the join predicate.
+     *
+     * @return The next matching tuple.
+     * @see JoinPredicate#filter
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        while (true) {
+            if (t1 != null && pos < end) {
+                return merge(inner.get(pos++));
+            }
+            if (!child1.hasNext()) {
+                if (!more) {
+                    return null;
+                }
+                // on to the next chunk of the inner, and the outer again
+                loadChunk();
+                child1.rewind();
+                t1 = null;
+                continue;
+            }
+            t1 = child1.next();
+            if (!match()) {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[]{this.child1, this.child2};
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child1 = children[0];
+        this.child2 = children[1];
+    }
+}
@@ -0,0 +1,200 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.BufferPool;
+import simpledb.storage.Field;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A temporary file of tuples that an operator spills when its input does not
+ * fit in memory. Tuples are added through a buffer of one page; once the file
+ * is finished it is read back, as often as needed, as an operator over its
+ * tuples. The operator that spills deletes the file by {@link #delete} when
+ * it is done with it.
+ * <p>
+ * Each tuple is written as a bitmap of its null fields, such as the fields a
+ * scan with a projection did not build, followed by its other fields in the
+ * format of a HeapPage slot.
+ */
+class SpillFile extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final TupleDesc td;
+    private final File file;
+    private final int bitmapSize; // bytes of null bitmap at the start of each record
+    private transient OutputStream out; // while tuples are added
+    private transient byte[] record;
+    private int count;
+    private transient DataInputStream in; // while the tuples are read
+    private transient int read;
+
+    /**
+     * Creates an empty file for tuples of td.
+     */
+    SpillFile(TupleDesc td) throws DbException {
+        this.td = td;
+        this.bitmapSize = (td.numFields() + 7) / 8;
+        this.record = new byte[bitmapSize + td.getSize()];
+        try {
+            file = File.createTempFile("simpledb-spill", ".dat");
+            out = new BufferedOutputStream(new FileOutputStream(file), BufferPool.getPageSize());
+        } catch (IOException e) {
+            throw spillFailed(e);
+        }
+    }
+
+    private static DbException spillFailed(IOException e) {
+        DbException wrapped = new DbException("could not spill tuples to disk: " + e);
+        wrapped.initCause(e);
+        return wrapped;
+    }
+
+    /**
+     * Appends t, which has this file's TupleDesc.
+     */
+    void add(Tuple t) throws DbException {
+        ByteBuffer buf = ByteBuffer.wrap(record);
+        int offset = bitmapSize;
+        for (int i = 0; i < td.numFields(); i++) {
+            Field f = t.getField(i);
+            if (f == null) {
+                record[i / 8] |= 1 << (i % 8);
+                continue;
+            }
+            f.serialize(buf, offset);
+            offset += td.getFieldType(i).getLen();
+        }
+        try {
+            out.write(record, 0, offset);
+        } catch (IOException e) {
+            throw spillFailed(e);
+        }
+        Arrays.fill(record, 0, bitmapSize, (byte) 0);
+        count++;
+    }
+
+    /**
+     * Writes out the tuples added, after which the file can be read.
+     */
+    void finish() throws DbException {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw spillFailed(e);
+            }
+            out = null;
+        }
+    }
+
+    /**
+     * @return the number of tuples added
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Closes the file and removes it from disk.
+     */
+    void delete() {
+        close();
+        try {
+            finish();
+        } catch (DbException e) {
+            // the tuples are thrown away anyway
+        }
+        file.delete();
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        finish();
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BufferPool.getPageSize()));
+        } catch (IOException e) {
+            throw spillFailed(e);
+        }
+        read = 0;
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // nothing was written through it
+            }
+            in = null;
+        }
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        close();
+        open();
+    }
+
+    protected Tuple fetchNext() throws DbException {
+        if (read == count) {
+            return null;
+        }
+        byte[] nulls = new byte[bitmapSize];
+        byte[] bytes;
+        try {
+            in.readFully(nulls);
+            int size = 0;
+            for (int i = 0; i < td.numFields(); i++) {
+                if (!isNull(nulls, i)) {
+                    size += td.getFieldType(i).getLen();
+                }
+            }
+            bytes = new byte[size];
+            in.readFully(bytes);
+        } catch (IOException e) {
+            throw spillFailed(e);
+        }
+        read++;
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        Tuple t = new Tuple(td);
+        int offset = 0;
+        for (int i = 0; i < td.numFields(); i++) {
+            if (!isNull(nulls, i)) {
+                t.setField(i, td.getFieldType(i).parse(buf, offset));
+                offset += td.getFieldType(i).getLen();
+            }
+        }
+        return t;
+    }
+
+    private static boolean isNull(byte[] nulls, int i) {
+        return (nulls[i / 8] & 1 << (i % 8)) != 0;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[0];
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+    }
+}
@@ -32,6 +32,7 @@ public class BTreeFile implements DbFile {
     private final TupleDesc td;
     private final int tableid;
     private final int keyField;
+    private final PageChannel channel;
 
     /**
      * Constructs a B+ tree file backed by the specified file.
@@ -46,6 +47,7 @@ public class BTreeFile implements DbFile {
         this.tableid = f.getAbsoluteFile().hashCode();
         this.keyField = key;
         this.td = td;
+        this.channel = new PageChannel(f);
     }
 
     /**
@@ -87,34 +89,15 @@ public class BTreeFile implements DbFile {
     public Page readPage(PageId pid) {
         BTreePageId id = (BTreePageId) pid;
 
-        try (BufferedInputStream bis = new BufferedInputStream(new FileInputStream(f))) {
+        try {
             if (id.pgcateg() == BTreePageId.ROOT_PTR) {
                 byte[] pageBuf = new byte[BTreeRootPtrPage.getPageSize()];
-                int retval = bis.read(pageBuf, 0, BTreeRootPtrPage.getPageSize());
-                if (retval == -1) {
-                    throw new IllegalArgumentException("Read past end of table");
-                }
-                if (retval < BTreeRootPtrPage.getPageSize()) {
-                    throw new IllegalArgumentException("Unable to read "
-                            + BTreeRootPtrPage.getPageSize() + " bytes from BTreeFile");
-                }
+                channel.read(0, pageBuf);
                 Debug.log(1, "BTreeFile.readPage: read page %d", id.getPageNumber());
                 return new BTreeRootPtrPage(id, pageBuf);
             } else {
                 byte[] pageBuf = new byte[BufferPool.getPageSize()];
-                if (bis.skip(BTreeRootPtrPage.getPageSize() + (long) (id.getPageNumber() - 1) * BufferPool.getPageSize())
-                        != BTreeRootPtrPage.getPageSize() + (long) (id.getPageNumber() - 1) * BufferPool.getPageSize()) {
-                    throw new IllegalArgumentException(
-                            "Unable to seek to correct place in BTreeFile");
-                }
-                int retval = bis.read(pageBuf, 0, BufferPool.getPageSize());
-                if (retval == -1) {
-                    throw new IllegalArgumentException("Read past end of table");
-                }
-                if (retval < BufferPool.getPageSize()) {
-                    throw new IllegalArgumentException("Unable to read "
-                            + BufferPool.getPageSize() + " bytes from BTreeFile");
-                }
+                channel.read(pageOffset(id.getPageNumber()), pageBuf);
                 Debug.log(1, "BTreeFile.readPage: read page %d", id.getPageNumber());
                 if (id.pgcateg() == BTreePageId.INTERNAL) {
                     return new BTreeInternalPage(id, pageBuf, keyField);
@@ -124,11 +107,11 @@ public class BTreeFile implements DbFile {
                     return new BTreeHeaderPage(id, pageBuf);
                 }
             }
+        } catch (EOFException e) {
+            throw new IllegalArgumentException("Read past end of table", e);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        // Close the file on success or error
-        // Ignore failures closing the file
     }
 
     /**
@@ -141,23 +124,35 @@ public class BTreeFile implements DbFile {
         BTreePageId id = (BTreePageId) page.getId();
 
         byte[] data = page.getPageData();
-        RandomAccessFile rf = new RandomAccessFile(f, "rw");
         if (id.pgcateg() == BTreePageId.ROOT_PTR) {
-            rf.write(data);
-            rf.close();
+            channel.write(0, data);
         } else {
-            rf.seek(BTreeRootPtrPage.getPageSize() + (long) (page.getId().getPageNumber() - 1) * BufferPool.getPageSize());
-            rf.write(data);
-            rf.close();
+            channel.write(pageOffset(id.getPageNumber()), data);
         }
     }
 
+    /**
+     * Returns the offset in the file of the page with the given number; the
+     * root pointer page comes first and page numbers start at 1.
+     */
+    private static long pageOffset(int pageNo) {
+        return BTreeRootPtrPage.getPageSize() + (long) (pageNo - 1) * BufferPool.getPageSize();
+    }
+
     /**
      * Returns the number of pages in this BTreeFile.
      */
     public int numPages() {
         // we only ever write full pages
-        return (int) ((f.length() - BTreeRootPtrPage.getPageSize()) / BufferPool.getPageSize());
+        return (int) ((length() - BTreeRootPtrPage.getPageSize()) / BufferPool.getPageSize());
+    }
+
+    private long length() {
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to get file length", e);
+        }
     }
 
     /**
@@ -1054,15 +1049,10 @@ public class BTreeFile implements DbFile {
      */
     BTreeRootPtrPage getRootPtrPage(TransactionId tid, Map<PageId, Page> dirtypages) throws DbException, IOException, TransactionAbortedException {
         synchronized (this) {
-            if (f.length() == 0) {
+            if (length() == 0) {
                 // create the root pointer page and the root page
-                BufferedOutputStream bw = new BufferedOutputStream(
-                        new FileOutputStream(f, true));
-                byte[] emptyRootPtrData = BTreeRootPtrPage.createEmptyPageData();
-                byte[] emptyLeafData = BTreeLeafPage.createEmptyPageData();
-                bw.write(emptyRootPtrData);
-                bw.write(emptyLeafData);
-                bw.close();
+                channel.write(0, BTreeRootPtrPage.createEmptyPageData());
+                channel.write(pageOffset(1), BTreeLeafPage.createEmptyPageData());
             }
         }
 
@@ -1118,12 +1108,8 @@ public class BTreeFile implements DbFile {
         if (headerId == null) {
             synchronized (this) {
                 // create the new page
-                BufferedOutputStream bw = new BufferedOutputStream(
-                        new FileOutputStream(f, true));
-                byte[] emptyData = BTreeInternalPage.createEmptyPageData();
-                bw.write(emptyData);
-                bw.close();
-                emptyPageNo = numPages();
+                emptyPageNo = numPages() + 1;
+                channel.write(pageOffset(emptyPageNo), BTreeInternalPage.createEmptyPageData());
             }
         }
 
@@ -1156,10 +1142,7 @@ public class BTreeFile implements DbFile {
         BTreePageId newPageId = new BTreePageId(tableid, emptyPageNo, pgcateg);
 
         // write empty page to disk
-        RandomAccessFile rf = new RandomAccessFile(f, "rw");
-        rf.seek(BTreeRootPtrPage.getPageSize() + (long) (emptyPageNo - 1) * BufferPool.getPageSize());
-        rf.write(BTreePage.createEmptyPageData());
-        rf.close();
+        channel.write(pageOffset(emptyPageNo), BTreePage.createEmptyPageData());
 
         // make sure the page is not in the buffer pool	or in the local cache		
         Database.getBufferPool().discardPage(newPageId);
@@ -1290,6 +1273,7 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 
     Iterator<Tuple> it = null;
     BTreeLeafPage curp = null;
+    ReadAheadChain readAhead = null;
 
     final TransactionId tid;
     final BTreeFile f;
@@ -1312,7 +1296,8 @@ class BTreeFileIterator extends AbstractDbFileIterator {
         BTreeRootPtrPage rootPtr = (BTreeRootPtrPage) Database.getBufferPool().getPage(
                 tid, BTreeRootPtrPage.getId(f.getId()), Permissions.READ_ONLY);
         BTreePageId root = rootPtr.getRootId();
-        curp = f.findLeafPage(tid, root, null);
+        readAhead = leafReadAhead(tid);
+        curp = pin(tid, f.findLeafPage(tid, root, null).getId(), null, readAhead);
         it = curp.iterator();
     }
 
@@ -1331,10 +1316,10 @@ class BTreeFileIterator extends AbstractDbFileIterator {
         while (it == null && curp != null) {
             BTreePageId nextp = curp.getRightSiblingId();
             if (nextp == null) {
+                unpin(tid, curp);
                 curp = null;
             } else {
-                curp = (BTreeLeafPage) Database.getBufferPool().getPage(tid,
-                        nextp, Permissions.READ_ONLY);
+                curp = pin(tid, nextp, curp, readAhead);
                 it = curp.iterator();
                 if (!it.hasNext()) {
                     it = null;
@@ -1361,8 +1346,44 @@ class BTreeFileIterator extends AbstractDbFileIterator {
      */
     public void close() {
         super.close();
+        unpin(tid, curp);
         it = null;
         curp = null;
+        readAhead = null;
+    }
+
+    /**
+     * @return read-ahead along the right-sibling pointers of the leaves, for
+     * a walk that goes on to the last leaf
+     */
+    static ReadAheadChain leafReadAhead(TransactionId tid) {
+        return Database.getBufferPool().readAheadChain(tid, p -> ((BTreeLeafPage) p).getRightSiblingId());
+    }
+
+    /**
+     * Pins a leaf page for the duration of the walk over it, releasing the
+     * pin on the page the walk is leaving.
+     *
+     * @param pid the page to pin
+     * @param prev the page the walk is leaving, or null
+     * @param readAhead the walk's read-ahead, which is told the walk reached
+     * pid, or null if the walk may stop before the last leaf
+     */
+    static BTreeLeafPage pin(TransactionId tid, BTreePageId pid, BTreeLeafPage prev, ReadAheadChain readAhead)
+            throws DbException, TransactionAbortedException {
+        // release the old page first, so its frame can take the new one
+        unpin(tid, prev);
+        BTreeLeafPage page = (BTreeLeafPage) Database.getBufferPool().pinPage(tid, pid, Permissions.READ_ONLY);
+        if (readAhead != null) {
+            readAhead.reached(page);
+        }
+        return page;
+    }
+
+    static void unpin(TransactionId tid, BTreeLeafPage leaf) {
+        if (leaf != null) {
+            Database.getBufferPool().unpinPage(tid, leaf.getId());
+        }
     }
 }
 
@@ -1374,6 +1395,7 @@ class BTreeSearchIterator extends AbstractDbFileIterator {
 
     Iterator<Tuple> it = null;
     BTreeLeafPage curp = null;
+    ReadAheadChain readAhead = null;
 
     final TransactionId tid;
     final BTreeFile f;
@@ -1406,9 +1428,19 @@ class BTreeSearchIterator extends AbstractDbFileIterator {
         } else {
             curp = f.findLeafPage(tid, root, null);
         }
+        readAhead = toLastLeaf() ? BTreeFileIterator.leafReadAhead(tid) : null;
+        curp = BTreeFileIterator.pin(tid, curp.getId(), null, readAhead);
         it = curp.iterator();
     }
 
+    /**
+     * @return true if the predicate has no upper bound, so the search reads
+     * every leaf from the first match on and may read them ahead
+     */
+    private boolean toLastLeaf() {
+        return ipred.getOp() == Op.GREATER_THAN || ipred.getOp() == Op.GREATER_THAN_OR_EQ;
+    }
+
     /**
      * Read the next tuple either from the current page if it has more tuples
      * matching the predicate or from the next page by following the right
@@ -1442,8 +1474,7 @@ class BTreeSearchIterator extends AbstractDbFileIterator {
             if (nextp == null) {
                 return null;
             } else {
-                curp = (BTreeLeafPage) Database.getBufferPool().getPage(tid,
-                        nextp, Permissions.READ_ONLY);
+                curp = BTreeFileIterator.pin(tid, nextp, curp, readAhead);
                 it = curp.iterator();
             }
         }
@@ -1464,6 +1495,9 @@ class BTreeSearchIterator extends AbstractDbFileIterator {
      */
     public void close() {
         super.close();
+        BTreeFileIterator.unpin(tid, curp);
         it = null;
+        curp = null;
+        readAhead = null;
     }
 }
@@ -4,12 +4,11 @@ import simpledb.common.DbException;
 import simpledb.common.Debug;
 import simpledb.common.Type;
 import simpledb.storage.BufferPool;
-import simpledb.storage.Field;
-import simpledb.storage.IntField;
 import simpledb.storage.Page;
 import simpledb.transaction.TransactionId;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -47,31 +46,21 @@ public class BTreeHeaderPage implements Page {
 	public BTreeHeaderPage(BTreePageId id, byte[] data) throws IOException {
 		this.pid = id;
 		this.numSlots = getNumSlots();
-		DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+		ByteBuffer buf = ByteBuffer.wrap(data);
 
 		// Read the next and prev pointers
-		try {
-			Field f = Type.INT_TYPE.parse(dis);
-			this.nextPage = ((IntField) f).getValue();
-		} catch (java.text.ParseException e) {
-			e.printStackTrace();
-		}
-
-		try {
-			Field f = Type.INT_TYPE.parse(dis);
-			this.prevPage = ((IntField) f).getValue();
-		} catch (java.text.ParseException e) {
-			e.printStackTrace();
-		}
+		this.nextPage = buf.getInt();
+		this.prevPage = buf.getInt();
 
 		// allocate and read the header slots of this page
 		header = new byte[getHeaderSize()];
-		for (int i=0; i<header.length; i++)
-			header[i] = dis.readByte();
+		buf.get(header);
 
-		dis.close();
-
-		setBeforeImage();
+		// the bytes just decoded are the before-image
+		synchronized(oldDataLock)
+		{
+			oldData = Arrays.copyOf(data, BufferPool.getPageSize());
+		}
 	}
 
 	/**
@@ -118,7 +107,7 @@ public class BTreeHeaderPage implements Page {
 	public void setBeforeImage() {
 		synchronized(oldDataLock)
 		{
-			oldData = getPageData().clone();
+			oldData = getPageData();
 		}
 	}
 
@@ -141,41 +130,17 @@ public class BTreeHeaderPage implements Page {
 	 * @return A byte array correspond to the bytes of this page.
 	 */
 	public byte[] getPageData() {
-		int len = BufferPool.getPageSize();
-		ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-		DataOutputStream dos = new DataOutputStream(baos);
+		byte[] data = new byte[BufferPool.getPageSize()];
+		ByteBuffer buf = ByteBuffer.wrap(data);
 
 		// write out the next and prev pointers
-		try {
-			dos.writeInt(nextPage);
-
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		try {
-			dos.writeInt(prevPage);
-
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		buf.putInt(nextPage);
+		buf.putInt(prevPage);
 
 		// create the header of the page
-        for (byte b : header) {
-            try {
-                dos.writeByte(b);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
-
-		try {
-			dos.flush();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		buf.put(header);
 
-		return baos.toByteArray();
+		return data;
 	}
 
 	/**
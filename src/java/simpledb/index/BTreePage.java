@@ -9,6 +9,8 @@ import simpledb.storage.Page;
 import simpledb.storage.TupleDesc;
 import simpledb.transaction.TransactionId;
 
+import java.util.Arrays;
+
 /**
  * Each instance of BTreeInternalPage stores data for one page of a BTreeFile and 
  * implements the Page interface that is used by BufferPool.
@@ -29,7 +31,7 @@ public abstract class BTreePage implements Page {
 
 	protected int parent; // parent is always internal node or 0 for root node
 	protected byte[] oldData;
-	protected final Byte oldDataLock= (byte) 0;
+	protected final Object oldDataLock = new Object();
 
 	/**
 	 * Create a BTreeInternalPage from a set of bytes of data read from disk.
@@ -60,6 +62,17 @@ public abstract class BTreePage implements Page {
 		this.td = Database.getCatalog().getTupleDesc(id.getTableId());
 	}
 
+	/**
+	 * Makes a copy of the bytes the page was just decoded from its
+	 * before-image, instead of encoding the page again.
+	 */
+	protected void setBeforeImage(byte[] data) {
+		synchronized(oldDataLock)
+		{
+			oldData = Arrays.copyOf(data, BufferPool.getPageSize());
+		}
+	}
+
 	/**
 	 * @return the PageId associated with this page.
 	 */
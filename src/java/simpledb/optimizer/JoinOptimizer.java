@@ -3,6 +3,7 @@ package simpledb.optimizer;
 import simpledb.common.Database;
 import simpledb.ParsingException;
 import simpledb.execution.*;
+import simpledb.storage.BufferPool;
 import simpledb.storage.TupleDesc;
 
 import java.util.*;
@@ -39,6 +40,11 @@ public class JoinOptimizer {
      * inner/outer here -- because OpIterator's don't provide any cardinality
      * estimates, and stats only has information about the base tables. For this
      * reason, the plan1
+     * <p>
+     * With no cardinalities, an equi-join is a {@link SortMergeJoin} if both
+     * subplans come sorted on their join fields, and a {@link HashEquiJoin}
+     * otherwise; a join on a range predicate is a SortMergeJoin, and any
+     * other join a nested-loop {@link Join}.
      * 
      * @param lj
      *            The join being considered
@@ -46,9 +52,35 @@ public class JoinOptimizer {
      *            The left join node's child
      * @param plan2
      *            The right join node's child
+     * @see #instantiateJoin(LogicalJoinNode, OpIterator, OpIterator, int, int)
      */
     public static OpIterator instantiateJoin(LogicalJoinNode lj,
                                              OpIterator plan1, OpIterator plan2) throws ParsingException {
+        return instantiateJoin(lj, plan1, plan2, 0, 0);
+    }
+
+    /**
+     * Return the cheapest iterator for computing a given logical join, given
+     * the estimated cardinalities of its subplans: a nested-loop
+     * {@link Join}, a {@link HashEquiJoin} for an equi-join, or a
+     * {@link SortMergeJoin} for an equi-join or a range predicate, which
+     * sorts the subplans that do not come sorted on their join fields. With
+     * no estimate for either subplan, the join is chosen as by
+     * {@link #instantiateJoin(LogicalJoinNode, OpIterator, OpIterator)}.
+     *
+     * @param lj
+     *            The join being considered
+     * @param plan1
+     *            The left join node's child
+     * @param plan2
+     *            The right join node's child
+     * @param card1
+     *            Estimated cardinality of plan1, or 0 if unknown
+     * @param card2
+     *            Estimated cardinality of plan2, or 0 if unknown
+     */
+    public static OpIterator instantiateJoin(LogicalJoinNode lj, OpIterator plan1, OpIterator plan2,
+                                             int card1, int card2) throws ParsingException {
 
         int t1id = 0, t2id = 0;
         OpIterator j;
@@ -72,8 +104,30 @@ public class JoinOptimizer {
         }
 
         JoinPredicate p = new JoinPredicate(t1id, lj.p, t2id);
+        boolean ordered1 = SortMergeJoin.isOrderedOn(plan1, t1id);
+        boolean ordered2 = SortMergeJoin.isOrderedOn(plan2, t2id);
+
+        boolean merge, hash;
+        if (card1 <= 0 || card2 <= 0 || lj instanceof LogicalSubplanJoinNode) {
+            // when both inputs are sorted already, merging them needs
+            // neither a hash table nor a sort; sorting plan2 once is
+            // cheaper than scanning it for every tuple of plan1
+            hash = lj.p == Predicate.Op.EQUALS && !(ordered1 && ordered2);
+            merge = !hash && SortMergeJoin.canJoin(lj.p);
+        } else {
+            double loops = nestedLoopCost(card1, card2);
+            double hashed = lj.p == Predicate.Op.EQUALS
+                    ? hashJoinCost(plan1.getTupleDesc(), card1, card2) : Double.POSITIVE_INFINITY;
+            double merged = SortMergeJoin.canJoin(lj.p)
+                    ? sortMergeCost(lj.p, plan2.getTupleDesc(), card1, card2, ordered1, ordered2)
+                    : Double.POSITIVE_INFINITY;
+            merge = merged < hashed && merged <= loops;
+            hash = !merge && hashed <= loops;
+        }
 
-        if (lj.p == Predicate.Op.EQUALS) {
+        if (merge) {
+            j = new SortMergeJoin(p, plan1, plan2);
+        } else if (hash) {
 
             try {
                 // dynamically load HashEquiJoin -- if it doesn't exist, just
@@ -93,6 +147,58 @@ public class JoinOptimizer {
 
     }
 
+    // The costs of the join algorithms below count the tuples each handles,
+    // with each read, comparison, hash or move of a tuple costing about 1;
+    // the cost of producing the output is the same for all of them.
+
+    /**
+     * @return the cost of a nested-loop join, which reads and compares the
+     *         inner tuples once per outer tuple
+     */
+    static double nestedLoopCost(int card1, int card2) {
+        return card1 + 2.0 * card1 * card2;
+    }
+
+    /**
+     * @return the cost of a hash join, which hashes each outer tuple into a
+     *         table and looks up each inner tuple, and writes both inputs to
+     *         partitions and reads them back if the outer does not fit in
+     *         its memory budget
+     */
+    static double hashJoinCost(TupleDesc td1, int card1, int card2) {
+        double cost = 2.0 * (card1 + card2);
+        if ((double) card1 * td1.getSize() > (double) HashEquiJoin.DEFAULT_MEMORY_PAGES * BufferPool.getPageSize()) {
+            cost += 2.0 * (card1 + card2);
+        }
+        return cost;
+    }
+
+    /**
+     * @return the cost of a sort-merge join, which sorts the inputs that are
+     *         not in order and reads both once on EQUALS; on a range
+     *         predicate it sorts only the inner, finds the matches of each
+     *         outer tuple by binary search, and reads the outer once per
+     *         chunk of the inner that fits in its memory budget
+     */
+    static double sortMergeCost(Predicate.Op op, TupleDesc td2, int card1, int card2,
+                                boolean ordered1, boolean ordered2) {
+        double cost = card1 + card2 + (ordered2 ? 0 : sortCost(card2));
+        if (op == Predicate.Op.EQUALS) {
+            return cost + (ordered1 ? 0 : sortCost(card1));
+        }
+        double chunks = Math.ceil((double) card2 * td2.getSize()
+                / ((double) SortMergeJoin.DEFAULT_MEMORY_PAGES * BufferPool.getPageSize()));
+        return cost + card1 * log2(card2) + (chunks - 1) * card1;
+    }
+
+    private static double sortCost(int card) {
+        return card * log2(card);
+    }
+
+    private static double log2(int n) {
+        return Math.log(Math.max(n, 2)) / Math.log(2);
+    }
+
     /**
      * Estimate the cost of a join.
      * 
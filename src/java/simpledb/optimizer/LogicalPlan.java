@@ -39,6 +39,7 @@ public class LogicalPlan {
     private boolean oByAsc, hasOrderBy = false;
     private String oByField;
     private String query;
+    private int parallelism = 1;
 //    private Query owner;
 
     /** Constructor -- generate an empty logical plan */
@@ -69,6 +70,30 @@ public class LogicalPlan {
         return query;
     }
 
+    /** Set the number of threads that run each part of the plan.  With more than one,
+        {@link #physicalPlan} has that many copies of each heap file table's scan and filters
+        share its pages out through {@link Morsels} and runs them under a {@link Gather}.
+        Equality joins over such tables are run by as many copies of the join, each over the
+        partitions of its inputs an {@link Exchange} hashed on the join fields.  Aggregates
+        are computed in the copies and merged with a {@link ParallelAggregate}, or, if they
+        cannot be merged, computed over partitions hashed on the group by field, and a plan
+        without an aggregate or ORDER BY also projects in the copies.
+
+        @param parallelism the number of threads, 1 (the default) to run the plan on the
+          calling thread only
+    */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        this.parallelism = parallelism;
+    }
+
+    /** Get the number of threads set by {@link #setParallelism}.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
     /** Given a table alias, return id of the table object (this id can be supplied to {@link Catalog#getDatabaseFile(int)}).
         Aliases are added as base tables are added via {@link #addScan}.
 
@@ -274,6 +299,47 @@ public class LogicalPlan {
         throw new ParsingException("Unknown predicate " + s);
     }
 
+    /** Find the fields the plan reads from its tables: those in the select list, filters,
+     *  joins, aggregate and ORDER BY.  Filters are also pushed down into the scans, which
+     *  only build these fields of each tuple.
+     *  @return the fully qualified names of the fields, or null if the select list reads
+     *    every field
+     */
+    private Set<String> readFields() {
+        Set<String> fields = new HashSet<>();
+        for (LogicalSelectListNode si : selectList) {
+            if (si.fname.endsWith("*"))
+                return null;
+            fields.add(si.fname);
+        }
+        if (aggField != null && aggField.endsWith("*"))
+            return null;
+        for (LogicalFilterNode lf : filters)
+            fields.add(lf.fieldQuantifiedName);
+        for (LogicalJoinNode lj : joins) {
+            fields.add(lj.f1QuantifiedName);
+            fields.add(lj.f2QuantifiedName);
+        }
+        fields.add(aggField);
+        fields.add(groupByField);
+        fields.add(oByField);
+        return fields;
+    }
+
+    /** @return the indexes of the fields of the table with the given alias that are
+     *    among readFields, or null for all of them
+     */
+    private static int[] readColumns(String alias, TupleDesc td, Set<String> readFields) {
+        if (readFields == null)
+            return null;
+        List<Integer> columns = new ArrayList<>();
+        for (int i = 0; i < td.numFields(); i++) {
+            if (readFields.contains(alias + "." + td.getFieldName(i)))
+                columns.add(i);
+        }
+        return columns.stream().mapToInt(Integer::intValue).toArray();
+    }
+
     /** Convert this LogicalPlan into a physicalPlan represented by a {@link OpIterator}.  Attempts to
      *   find the optimal plan by using {@link JoinOptimizer#orderJoins} to order the joins in the plan.
      *  @param t The transaction that the returned OpIterator will run as a part of
@@ -292,17 +358,24 @@ public class LogicalPlan {
         Map<String,String> equivMap = new HashMap<>();
         Map<String,Double> filterSelectivities = new HashMap<>();
         Map<String,TableStats> statsMap = new HashMap<>();
+        Set<String> readFields = readFields();
+        Map<String,List<Predicate>> tableFilters = new HashMap<>();
+        Map<String,SeqScan> scans = new HashMap<>();
 
         while (tableIt.hasNext()) {
             LogicalScanNode table = tableIt.next();
             SeqScan ss = null;
             try {
-                 ss = new SeqScan(t, Database.getCatalog().getDatabaseFile(table.t).getId(), table.alias);
+                 DbFile file = Database.getCatalog().getDatabaseFile(table.t);
+                 ss = new SeqScan(t, file.getId(), table.alias,
+                         readColumns(table.alias, file.getTupleDesc(), readFields));
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown table " + table.t);
             }
             
             subplanMap.put(table.alias,ss);
+            scans.put(table.alias, ss);
+            tableFilters.put(table.alias, new ArrayList<>());
             String baseTableName = Database.getCatalog().getTableName(table.t);
             statsMap.put(baseTableName, baseTableStats.get(baseTableName));
             filterSelectivities.put(table.alias, 1.0);
@@ -335,7 +408,11 @@ public class LogicalPlan {
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown field " + lf.fieldQuantifiedName);
             }
-            subplanMap.put(lf.tableAlias, new Filter(p, subplan));
+            // the scan tests the predicate as it reads; a Filter only for one it refuses
+            if (!scans.get(lf.tableAlias).pushDown(p)) {
+                subplanMap.put(lf.tableAlias, new Filter(p, subplan));
+            }
+            tableFilters.get(lf.tableAlias).add(p);
 
             TableStats s = statsMap.get(Database.getCatalog().getTableName(this.getTableId(lf.tableAlias)));
 
@@ -345,10 +422,43 @@ public class LogicalPlan {
             //s.addSelectivityFactor(estimateFilterSelectivity(lf,statsMap));
         }
         
+        // with parallelism, each heap file table is read by copies of its scan and filters
+        Set<OpIterator> parallel = new HashSet<>(); // the Gathers over copies of a subplan
+        if (parallelism > 1) {
+            for (LogicalScanNode table : tables) {
+                DbFile file = Database.getCatalog().getDatabaseFile(table.t);
+                if (!(file instanceof HeapFile))
+                    continue;
+                Morsels morsels = new Morsels((HeapFile) file);
+                int[] columns = readColumns(table.alias, file.getTupleDesc(), readFields);
+                OpIterator[] copies = new OpIterator[parallelism];
+                for (int i = 0; i < parallelism; i++) {
+                    SeqScan copy = new SeqScan(t, file.getId(), table.alias, columns, morsels);
+                    copies[i] = copy;
+                    for (Predicate p : tableFilters.get(table.alias)) {
+                        if (!copy.pushDown(p)) {
+                            copies[i] = new Filter(p, copies[i]);
+                        }
+                    }
+                }
+                Gather gather = new Gather(copies, morsels);
+                parallel.add(gather);
+                subplanMap.put(table.alias, gather);
+            }
+        }
+
         JoinOptimizer jo = new JoinOptimizer(this,joins);
 
         joins = jo.orderJoins(statsMap,filterSelectivities,explain);
 
+        // the estimated cardinality of each subplan, or 0 if unknown, by which
+        // instantiateJoin picks the cheapest join
+        Map<String,Integer> cards = new HashMap<>();
+        for (LogicalScanNode table : tables) {
+            TableStats s = statsMap.get(Database.getCatalog().getTableName(table.t));
+            cards.put(table.alias, s == null ? 0 : s.estimateTableCardinality(filterSelectivities.get(table.alias)));
+        }
+
         for (LogicalJoinNode lj : joins) {
             OpIterator plan1;
             OpIterator plan2;
@@ -380,9 +490,27 @@ public class LogicalPlan {
             if (plan2 == null)
                 throw new ParsingException("Unknown table in WHERE clause " + lj.t2Alias);
 
+            int card1 = cards.getOrDefault(t1name, 0);
+            int card2 = isSubqueryJoin ? 0 : cards.getOrDefault(t2name, 0);
             OpIterator j;
-            j = JoinOptimizer.instantiateJoin(lj, plan1, plan2);
+            if (!isSubqueryJoin && lj.p == Predicate.Op.EQUALS
+                    && (parallel.contains(plan1) || parallel.contains(plan2))) {
+                // join the matching partitions of the inputs in copies of the join
+                Exchange[] left = exchange(plan1, lj.f1QuantifiedName, parallel);
+                Exchange[] right = exchange(plan2, lj.f2QuantifiedName, parallel);
+                OpIterator[] copies = new OpIterator[parallelism];
+                for (int i = 0; i < parallelism; i++)
+                    copies[i] = JoinOptimizer.instantiateJoin(lj, left[i], right[i],
+                            (card1 + parallelism - 1) / parallelism, (card2 + parallelism - 1) / parallelism);
+                j = new Gather(copies);
+                parallel.add(j);
+            } else {
+                j = JoinOptimizer.instantiateJoin(lj, plan1, plan2, card1, card2);
+            }
             subplanMap.put(t1name, j);
+            // without primary keys, an upper bound
+            cards.put(t1name, card1 > 0 && card2 > 0
+                    ? jo.estimateJoinCardinality(lj, card1, card2, false, false, statsMap) : 0);
 
             if (!isSubqueryJoin) {
                 subplanMap.remove(t2name);
@@ -457,14 +585,28 @@ public class LogicalPlan {
                 }
         }
 
+        // a plan run in copies can aggregate or project in them
+        Gather gather = parallel.contains(node) ? (Gather) node : null;
+
         if (hasAgg) {
             TupleDesc td = node.getTupleDesc();
-            Aggregate aggNode;
+            OpIterator aggNode;
             try {
-                aggNode = new Aggregate(node,
-                                        td.fieldNameToIndex(aggField),
-                                        groupByField == null?Aggregator.NO_GROUPING:td.fieldNameToIndex(groupByField),
-                                getAggOp(aggOp));
+                int afield = td.fieldNameToIndex(aggField);
+                int gfield = groupByField == null?Aggregator.NO_GROUPING:td.fieldNameToIndex(groupByField);
+                Aggregator.Op op = getAggOp(aggOp);
+                if (gather != null && ParallelAggregate.canMerge(td.getFieldType(afield), op)) {
+                    aggNode = new ParallelAggregate(gather.getChildren(), gather.getMorsels(), afield, gfield, op);
+                } else if (gather != null && gfield != Aggregator.NO_GROUPING) {
+                    // each group is in one partition, and aggregated by one copy
+                    Exchange[] partitions = Exchange.hash(gather.getChildren(), gather.getMorsels(), gfield, parallelism);
+                    OpIterator[] copies = new OpIterator[parallelism];
+                    for (int i = 0; i < parallelism; i++)
+                        copies[i] = new Aggregate(partitions[i], afield, gfield, op);
+                    aggNode = new Gather(copies);
+                } else {
+                    aggNode = new Aggregate(node, afield, gfield, op);
+                }
             } catch (NoSuchElementException | IllegalArgumentException e) {
                 throw new simpledb.ParsingException(e);
             }
@@ -475,9 +617,35 @@ public class LogicalPlan {
             node = new OrderBy(node.getTupleDesc().fieldNameToIndex(oByField), oByAsc, node);
         }
 
+        if (gather != null && !hasAgg && !hasOrderBy) {
+            OpIterator[] copies = gather.getChildren();
+            for (int i = 0; i < copies.length; i++)
+                copies[i] = new Project(outFields, outTypes, copies[i]);
+            return new Gather(copies, gather.getMorsels());
+        }
+
         return new Project(outFields, outTypes, node);
     }
 
+    /** Partition the tuples of plan on the given field, for the copies of a join.
+     *  @param parallel the Gathers over copies of a subplan, whose copies produce the
+     *    tuples in parallel
+     *  @return one partition for each copy
+     */
+    private Exchange[] exchange(OpIterator plan, String field, Set<OpIterator> parallel) throws ParsingException {
+        int index;
+        try {
+            index = plan.getTupleDesc().fieldNameToIndex(field);
+        } catch (NoSuchElementException e) {
+            throw new ParsingException("Unknown field " + field);
+        }
+        if (parallel.contains(plan)) {
+            Gather gather = (Gather) plan;
+            return Exchange.hash(gather.getChildren(), gather.getMorsels(), index, parallelism);
+        }
+        return Exchange.hash(new OpIterator[]{plan}, null, index, parallelism);
+    }
+
     public static void main(String[] argv) {
         // construct a 3-column table schema
         Type[] types = new Type[]{ Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE };
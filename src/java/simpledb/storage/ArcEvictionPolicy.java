@@ -0,0 +1,110 @@
+package simpledb.storage;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * Adaptive Replacement Cache (Megiddo and Modha). Resident pages are split
+ * between T1 (seen once recently) and T2 (seen at least twice); B1 and B2
+ * remember the ids of pages recently evicted from each. A miss that hits a
+ * ghost list shifts the target size p of T1 towards the list that would have
+ * kept the page, so the policy adapts between recency and frequency.
+ * <p>
+ * The BufferPool chooses a victim before it admits the missing page, so p is
+ * adapted on admission and takes effect from the next replacement onwards.
+ */
+public class ArcEvictionPolicy implements EvictionPolicy {
+
+    private final int c;
+    private int p = 0;
+    // LinkedHashSets keep insertion order: the first element is the LRU end
+    private final LinkedHashSet<PageId> t1 = new LinkedHashSet<>();
+    private final LinkedHashSet<PageId> t2 = new LinkedHashSet<>();
+    private final LinkedHashSet<PageId> b1 = new LinkedHashSet<>();
+    private final LinkedHashSet<PageId> b2 = new LinkedHashSet<>();
+
+    /**
+     * @param numPages the number of frames managed (c in the ARC paper)
+     */
+    public ArcEvictionPolicy(int numPages) {
+        this.c = Math.max(1, numPages);
+    }
+
+    @Override
+    public void admit(PageId pid) {
+        if (t1.contains(pid) || t2.contains(pid)) {
+            access(pid);
+        } else if (b1.remove(pid)) {
+            p = Math.min(c, p + Math.max(b2.size() / Math.max(1, b1.size()), 1));
+            t2.add(pid);
+        } else if (b2.remove(pid)) {
+            p = Math.max(0, p - Math.max(b1.size() / Math.max(1, b2.size()), 1));
+            t2.add(pid);
+        } else {
+            // a brand new page: keep the directory within 2c entries
+            if (t1.size() + b1.size() >= c) {
+                removeOldest(b1);
+            } else if (t1.size() + t2.size() + b1.size() + b2.size() >= 2 * c) {
+                removeOldest(b2);
+            }
+            t1.add(pid);
+        }
+    }
+
+    @Override
+    public void access(PageId pid) {
+        if (t1.remove(pid) || t2.remove(pid)) {
+            t2.add(pid);
+        } else {
+            admit(pid);
+        }
+    }
+
+    @Override
+    public void evicted(PageId pid) {
+        if (t1.remove(pid)) {
+            b1.add(pid);
+        } else if (t2.remove(pid)) {
+            b2.add(pid);
+        }
+        if (b1.size() > c) {
+            removeOldest(b1);
+        }
+        if (b2.size() > c) {
+            removeOldest(b2);
+        }
+    }
+
+    @Override
+    public void remove(PageId pid) {
+        t1.remove(pid);
+        t2.remove(pid);
+        b1.remove(pid);
+        b2.remove(pid);
+    }
+
+    /**
+     * Prefers the LRU end of T1 while T1 is larger than its target size p (or
+     * T2 is empty), and the LRU end of T2 otherwise.
+     */
+    @Override
+    public Iterator<PageId> victims() {
+        if (!t1.isEmpty() && (t1.size() > p || t2.isEmpty())) {
+            return TwoQEvictionPolicy.concat(t1.iterator(), t2.iterator());
+        }
+        return TwoQEvictionPolicy.concat(t2.iterator(), t1.iterator());
+    }
+
+    @Override
+    public int size() {
+        return t1.size() + t2.size();
+    }
+
+    private static void removeOldest(LinkedHashSet<PageId> list) {
+        Iterator<PageId> it = list.iterator();
+        if (it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+}
@@ -2,6 +2,10 @@ package simpledb.storage;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
 import simpledb.common.Database;
 import simpledb.common.DbException;
 import simpledb.common.Permissions;
@@ -17,6 +21,16 @@ import simpledb.transaction.TransactionId;
  * The BufferPool is also responsible for locking; when a transaction fetches a
  * page, BufferPool checks that the transaction has the appropriate locks to
  * read/write the page.
+ * <p>
+ * The frames are split into hash partitions by PageId. Each partition has its
+ * own page table, eviction policy and latch (the partition's monitor), and
+ * there is no pool-wide monitor. Page locks are acquired before any partition
+ * latch is taken, so a transaction waiting for a lock never blocks threads
+ * that are reading other pages.
+ * <p>
+ * Operators that walk a page pin it with {@link #pinPage} and release it
+ * with {@link #unpinPage} when they move on. Eviction never chooses a pinned
+ * page, and any pins a transaction still holds are dropped when it completes.
  *
  * @Threadsafe, all fields are final
  */
@@ -36,25 +50,131 @@ public class BufferPool {
      */
     public static final int DEFAULT_PAGES = 50;
 
-    private List<PageId> LRUList;
-    private List<Page> pagesList;
-    private int size = DEFAULT_PAGE_SIZE;
-    private LockManager lockManager;
-    private DeadLockChecker deadLockChecker;
+    /**
+     * Smallest number of frames a partition is given when the partition count
+     * is chosen automatically. Small pools therefore stay unpartitioned, and
+     * one transaction's dirty pages cannot fill a partition prematurely.
+     */
+    public static final int MIN_PARTITION_PAGES = 64;
 
-    /* map<waiterTID, awaiting PID> */
     /**
-     * Creates a BufferPool that caches up to numPages pages.
+     * Default number of frames in the private ring of a large scan.
+     *
+     * @see #newScanRing
+     */
+    public static final int DEFAULT_SCAN_RING_PAGES = 32;
+
+    /**
+     * Name of the system property with the default read-ahead depth of new
+     * pools, e.g. <code>-Dsimpledb.storage.PrefetchDepth=16</code>.
+     */
+    public static final String PREFETCH_DEPTH_PROPERTY = "simpledb.storage.PrefetchDepth";
+
+    /**
+     * Default number of pages a sequential scan reads ahead.
+     */
+    public static final int DEFAULT_PREFETCH_DEPTH = 8;
+
+    /**
+     * One hash partition of the pool. All fields are guarded by the
+     * partition's monitor.
+     */
+    private static class Partition {
+
+        final int capacity;
+        final Map<PageId, Page> pages;
+        final EvictionPolicy policy;
+        // pin count of each pinned page; unpinned pages have no entry
+        final Map<PageId, Integer> pins = new HashMap<>();
+        // recently evicted pages, to count pages that are read again soon
+        final Map<PageId, Boolean> ghosts;
+        long hits;
+        long misses;
+        long rereads;
+        long pinnedSkips;
+        long prefetches;
+
+        Partition(int capacity, EvictionPolicyType policyType) {
+            this.capacity = capacity;
+            this.pages = new HashMap<>(capacity * 2);
+            this.policy = policyType.create(capacity);
+            this.ghosts = new LinkedHashMap<PageId, Boolean>() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<PageId, Boolean> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+    }
+
+    private final int numPages;
+    private final Partition[] partitions;
+    private final int partitionMask;
+    private final LockManager lockManager;
+    private final DeadLockChecker deadLockChecker;
+    private final FrameArena frameArena;
+    private final ConcurrentHashMap<TransactionId, List<PageId>> pinsByTid = new ConcurrentHashMap<>();
+    private volatile PrintWriter trace;
+    private volatile int scanRingPages = DEFAULT_SCAN_RING_PAGES;
+    private volatile int prefetchDepth = Integer.getInteger(PREFETCH_DEPTH_PROPERTY, DEFAULT_PREFETCH_DEPTH);
+    private final Prefetcher prefetcher = new Prefetcher();
+    // the rings of open scans, whose copies of a page are dropped when it is
+    // written back; guarded by itself
+    private final Set<ScanRing> rings = Collections.newSetFromMap(new WeakHashMap<>());
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages, using the default
+     * replacement policy.
      *
      * @param numPages maximum number of pages in this buffer pool.
+     * @see EvictionPolicyType#getDefault()
      */
     public BufferPool(int numPages) {
-        // some code goes here
-        size = numPages;
-        LRUList = new ArrayList<>(size);
-        pagesList = new ArrayList<>(size);
+        this(numPages, EvictionPolicyType.getDefault());
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages, partitioned
+     * according to the number of processors and the pool size.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policyType the replacement policy used to choose victims when the
+     * pool is full
+     */
+    public BufferPool(int numPages, EvictionPolicyType policyType) {
+        this(numPages, policyType, defaultPartitions(numPages));
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policyType the replacement policy used to choose victims when a
+     * partition is full
+     * @param numPartitions the number of hash partitions; rounded down to a
+     * power of two and to at most numPages
+     */
+    public BufferPool(int numPages, EvictionPolicyType policyType, int numPartitions) {
+        this.numPages = numPages;
+        int n = Integer.highestOneBit(Math.max(1, Math.min(numPartitions, numPages)));
+        this.partitions = new Partition[n];
+        this.partitionMask = n - 1;
+        for (int i = 0; i < n; i++) {
+            // spread the remainder over the first partitions
+            int capacity = numPages / n + (i < numPages % n ? 1 : 0);
+            partitions[i] = new Partition(capacity, policyType);
+        }
         lockManager = new LockManager();
         deadLockChecker = new DeadLockChecker();
+        // room for the cached pages plus their copies still held by iterators
+        frameArena = FrameArena.isEnabled() ? new FrameArena(pageSize, 2 * numPages) : null;
+    }
+
+    private static int defaultPartitions(int numPages) {
+        int byCpu = 4 * Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(byCpu, numPages / MIN_PARTITION_PAGES));
     }
 
     public static int getPageSize() {
@@ -71,6 +191,27 @@ public class BufferPool {
         BufferPool.pageSize = DEFAULT_PAGE_SIZE;
     }
 
+    /**
+     * @return the arena that pages read into this pool keep their bytes in,
+     * or null if pages use heap buffers
+     * @see FrameArena#PROPERTY
+     */
+    public FrameArena getFrameArena() {
+        return frameArena;
+    }
+
+    /**
+     * @return the number of hash partitions the frames are split into
+     */
+    public int numPartitions() {
+        return partitions.length;
+    }
+
+    private Partition partitionFor(PageId pid) {
+        int h = pid.hashCode();
+        return partitions[(h ^ (h >>> 16)) & partitionMask];
+    }
+
     /**
      * Retrieve the specified page with the associated permissions. Will acquire
      * a lock and may block if that lock is held by another transaction.
@@ -85,51 +226,339 @@ public class BufferPool {
      * @param pid the ID of the requested page
      * @param perm the requested permissions on the page
      */
-    public synchronized Page getPage(TransactionId tid, PageId pid, Permissions perm)
+    public Page getPage(TransactionId tid, PageId pid, Permissions perm)
             throws TransactionAbortedException, DbException {
         // some code goes here
-        Page page;
-        // acquire lock
-        synchronized (this) {
-            try {
-                HashSet<TransactionId> holdersSet = lockManager.getLockHoldersTID(pid);
-                if (lockManager.hasLock(pid) && !lockManager.getLock(pid).canReadWrite(tid)) {
-                    if (perm == Permissions.READ_WRITE || !lockManager.getLock(pid).canRead(tid)) {
-                        if (deadLockChecker.hasCycle(lockManager, tid, pid, perm)) {
-                            throw new TransactionAbortedException();
-                        }
-                    }
-                }
-                for (TransactionId holdersTID : holdersSet) {
-                    deadLockChecker.addWaiter(tid, holdersTID);
-                }
-                lockManager.acquireLock(pid, tid, perm);
-                for (TransactionId holderTID : holdersSet) {
-                    deadLockChecker.removeWaiter(tid, holderTID);
-                }
-            } catch (Exception e) {
-                throw new TransactionAbortedException();
+        return fetch(tid, pid, perm, false);
+    }
+
+    /**
+     * Like {@link #getPage}, but also pins the page so that it stays in the
+     * pool until a matching {@link #unpinPage} or the end of the transaction.
+     * A page may be pinned more than once; each pin needs its own unpin.
+     *
+     * @throws BufferPoolFullException if the page is not resident and every
+     * frame that could hold it is pinned
+     */
+    public Page pinPage(TransactionId tid, PageId pid, Permissions perm)
+            throws TransactionAbortedException, DbException {
+        return fetch(tid, pid, perm, true);
+    }
+
+    /**
+     * Releases one pin that tid holds on the page. Does nothing if tid holds
+     * no pin on it.
+     */
+    public void unpinPage(TransactionId tid, PageId pid) {
+        boolean[] held = new boolean[1];
+        pinsByTid.computeIfPresent(tid, (k, l) -> {
+            held[0] = l.remove(pid);
+            return l.isEmpty() ? null : l;
+        });
+        if (held[0]) {
+            Partition part = partitionFor(pid);
+            synchronized (part) {
+                part.pins.computeIfPresent(pid, (k, n) -> n == 1 ? null : n - 1);
             }
+        }
+    }
 
-            if (LRUList.contains(pid)) {
-                int pageIndex = LRUList.indexOf(pid);
-                page = pagesList.get(pageIndex);
-            } else {
-                while (pagesList.size() >= size) {
-                    evictPage();
+    private Page fetch(TransactionId tid, PageId pid, Permissions perm, boolean pin)
+            throws TransactionAbortedException, DbException {
+        // acquire lock; no partition latch is held while we may wait
+        acquireLock(tid, pid, perm);
+        trace(pid);
+
+        Partition part = partitionFor(pid);
+        synchronized (part) {
+            Page page = part.pages.get(pid);
+            if (page == null) {
+                part.misses++;
+                while (part.pages.size() >= part.capacity) {
+                    evictPage(part);
                 }
                 DbFile dbFile = Database.getCatalog().getDatabaseFile(pid.getTableId());
                 page = dbFile.readPage(pid);
+                part.pages.put(pid, page);
+                part.policy.admit(pid);
+                if (part.ghosts.remove(pid) != null) {
+                    part.rereads++;
+                }
+            } else {
+                part.hits++;
+                part.policy.access(pid);
             }
             if (perm == Permissions.READ_WRITE) {
                 page.markDirty(true, tid);
             }
-            putPage(page);
+            if (pin) {
+                part.pins.merge(pid, 1, Integer::sum);
+                pinsByTid.compute(tid, (k, l) -> {
+                    List<PageId> pinned = l == null ? new ArrayList<>() : l;
+                    pinned.add(pid);
+                    return pinned;
+                });
+            }
             // release lock in transaction complete
             return page;
         }
     }
 
+    private void trace(PageId pid) {
+        PrintWriter t = trace;
+        if (t != null) {
+            StringBuilder line = new StringBuilder(pid.getClass().getName());
+            for (int i : pid.serialize()) {
+                line.append(' ').append(i);
+            }
+            t.println(line);
+        }
+    }
+
+    /**
+     * Returns a private ring of frames for a sequential scan over a table of
+     * the given size, or null if the scan should go through the shared pool.
+     * A ring is used when the table does not fit in the pool, since such a
+     * scan would otherwise evict every page in it.
+     *
+     * @param tablePages the number of pages the scan will read
+     */
+    public ScanRing newScanRing(int tablePages) {
+        int ringPages = scanRingPages;
+        if (ringPages <= 0 || tablePages <= numPages) {
+            return null;
+        }
+        ScanRing ring = new ScanRing(ringPages);
+        synchronized (rings) {
+            rings.add(ring);
+        }
+        return ring;
+    }
+
+    /**
+     * Sets the number of frames in the rings of new large scans; 0 makes
+     * every scan go through the shared pool.
+     */
+    public void setScanRingPages(int pages) {
+        scanRingPages = pages;
+    }
+
+    /**
+     * Retrieves a page for a sequential scan that has its own ring of frames.
+     * A page already in the shared pool is returned from there, without
+     * counting as a use for the eviction policy; otherwise it is read into
+     * the ring and the shared pool is left untouched. Write requests, and
+     * requests with a null ring, go through {@link #getPage} as usual.
+     *
+     * @param ring the scan's ring, or null
+     */
+    public Page getPage(TransactionId tid, PageId pid, Permissions perm, ScanRing ring)
+            throws TransactionAbortedException, DbException {
+        if (ring == null || perm == Permissions.READ_WRITE) {
+            return getPage(tid, pid, perm);
+        }
+        acquireLock(tid, pid, perm);
+        trace(pid);
+
+        Partition part = partitionFor(pid);
+        synchronized (part) {
+            Page page = part.pages.get(pid);
+            if (page != null) {
+                part.hits++;
+                return page;
+            }
+        }
+        // the read lock keeps other transactions from changing the page
+        // while the ring holds its copy
+        Page page = ring.get(pid);
+        if (page == null) {
+            page = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
+            ring.add(page);
+        }
+        return page;
+    }
+
+    /**
+     * @return the number of pages sequential scans should read ahead; 0 when
+     * read-ahead is off
+     */
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    /**
+     * Sets the number of pages sequential scans read ahead; 0 turns
+     * read-ahead off.
+     */
+    public void setPrefetchDepth(int depth) {
+        prefetchDepth = depth;
+    }
+
+    /**
+     * Starts reading a page in the background on behalf of tid, into ring if
+     * it is not null and into the shared pool otherwise. Read-ahead is only
+     * a hint, and takes no locks for tid: it reads only a page that is not in
+     * the shared pool, so one no transaction has changed, and a copy in a
+     * ring is dropped if the page is written back before the scan locks it.
+     */
+    public void prefetch(TransactionId tid, PageId pid, ScanRing ring) {
+        if (ring == null) {
+            prefetcher.submit(tid, () -> prefetchIntoPool(pid), () -> { });
+            return;
+        }
+        CompletableFuture<Page> frame = ring.reserve(pid);
+        if (frame == null) {
+            return;
+        }
+        prefetcher.submit(tid, () -> {
+            Page page = null;
+            try {
+                // a page the shared pool holds is read from there by getPage
+                if (!isResident(pid)) {
+                    page = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
+                }
+            } catch (RuntimeException e) {
+                // leave the read to the scan, which reports the error
+            }
+            frame.complete(page);
+        }, () -> frame.complete(null));
+    }
+
+    /**
+     * Starts read-ahead on behalf of tid along a chain of pages that each
+     * name the next, e.g. the leaves of a B+ tree, for one walk over it.
+     *
+     * @param next gives the id of the page after a page, or null at the end
+     */
+    public ReadAheadChain readAheadChain(TransactionId tid, Function<Page, PageId> next) {
+        return new ReadAheadChain(this, tid, prefetchDepth, next);
+    }
+
+    /**
+     * Queues read-ahead work for tid; skipped runs instead if tid completes
+     * first.
+     */
+    void submitReadAhead(TransactionId tid, Runnable task, Runnable skipped) {
+        prefetcher.submit(tid, task, skipped);
+    }
+
+    /**
+     * Loads a page into the shared pool for read-ahead, like a getPage miss
+     * but without a lock, without waiting for a frame, and without taking the
+     * frame of a dirty page. The page is read under the partition latch, so
+     * it is not written back meanwhile.
+     *
+     * @return the page, or null if it could not be loaded without waiting
+     */
+    Page prefetchIntoPool(PageId pid) {
+        Partition part = partitionFor(pid);
+        synchronized (part) {
+            Page page = part.pages.get(pid);
+            if (page != null) {
+                return page;
+            }
+            while (part.pages.size() >= part.capacity) {
+                if (!evictCleanPage(part)) {
+                    return null;
+                }
+            }
+            try {
+                page = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
+            } catch (RuntimeException e) {
+                return null;
+            }
+            part.pages.put(pid, page);
+            part.policy.admit(pid);
+            part.ghosts.remove(pid);
+            part.prefetches++;
+            return page;
+        }
+    }
+
+    private boolean isResident(PageId pid) {
+        Partition part = partitionFor(pid);
+        synchronized (part) {
+            return part.pages.containsKey(pid);
+        }
+    }
+
+    /**
+     * @return the number of pages read ahead into the shared pool
+     */
+    public long getPrefetches() {
+        return sum(part -> part.prefetches);
+    }
+
+    /**
+     * @return the number of requests served from the shared pool
+     */
+    public long getHits() {
+        return sum(part -> part.hits);
+    }
+
+    /**
+     * @return the number of requests that read a page into the shared pool
+     */
+    public long getMisses() {
+        return sum(part -> part.misses);
+    }
+
+    /**
+     * @return the number of pages read from disk again shortly after being
+     * evicted (while still among the last numPages evictions)
+     */
+    public long getRereads() {
+        return sum(part -> part.rereads);
+    }
+
+    /**
+     * @return the number of times eviction passed over a page because it was
+     * pinned, i.e. the re-reads of in-use pages that pinning prevented
+     */
+    public long getPinnedSkips() {
+        return sum(part -> part.pinnedSkips);
+    }
+
+    private long sum(ToLongFunction<Partition> counter) {
+        long n = 0;
+        for (Partition part : partitions) {
+            synchronized (part) {
+                n += counter.applyAsLong(part);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Acquires the page lock for getPage, aborting the transaction if waiting
+     * would close a cycle in the waits-for graph.
+     */
+    private void acquireLock(TransactionId tid, PageId pid, Permissions perm)
+            throws TransactionAbortedException {
+        if (lockManager.holdsLock(pid, tid, perm)) {
+            return;
+        }
+        try {
+            HashSet<TransactionId> holdersSet = lockManager.getLockHoldersTID(pid);
+            if (lockManager.hasLock(pid) && !lockManager.getLock(pid).canReadWrite(tid)) {
+                if (perm == Permissions.READ_WRITE || !lockManager.getLock(pid).canRead(tid)) {
+                    if (deadLockChecker.hasCycle(lockManager, tid, pid, perm)) {
+                        throw new TransactionAbortedException();
+                    }
+                }
+            }
+            for (TransactionId holdersTID : holdersSet) {
+                deadLockChecker.addWaiter(tid, holdersTID);
+            }
+            lockManager.acquireLock(pid, tid, perm);
+            for (TransactionId holderTID : holdersSet) {
+                deadLockChecker.removeWaiter(tid, holderTID);
+            }
+        } catch (Exception e) {
+            throw new TransactionAbortedException();
+        }
+    }
+
     /**
      * Releases the lock on a page. Calling this is very risky, and may result
      * in wrong behavior. Think hard about who needs to call this and why, and
@@ -138,7 +567,7 @@ public class BufferPool {
      * @param tid the ID of the transaction requesting the unlock
      * @param pid the ID of the page to unlock
      */
-    public synchronized void unsafeReleasePage(TransactionId tid, PageId pid) {
+    public void unsafeReleasePage(TransactionId tid, PageId pid) {
         // some code goes here
         // not necessary for lab1|lab2
 
@@ -152,7 +581,7 @@ public class BufferPool {
      * @param tid the ID of the transaction requesting the unlock Should ALWAYS
      * commit, can just call trnsactionComplete(true)
      */
-    public synchronized void transactionComplete(TransactionId tid) {
+    public void transactionComplete(TransactionId tid) {
         // some code goes here
         // not necessary for lab1|lab2
         transactionComplete(tid, true);
@@ -174,35 +603,46 @@ public class BufferPool {
      * @param tid the ID of the transaction requesting the unlock
      * @param commit a flag indicating whether we should commit or abort
      */
-    public synchronized void transactionComplete(TransactionId tid, boolean commit) {
+    public void transactionComplete(TransactionId tid, boolean commit) {
         // some code goes here
         // not necessary for lab1|lab2
-
-        synchronized (this) {
-            try {
-                if (commit) {
-                    flushPages(tid);
-                } else {
-                    for (int i = 0; i < pagesList.size(); i++) {
-                        Page page = pagesList.get(i);
-                        PageId pid = page.getId();
-                        if (page.isDirty() != null && page.isDirty().equals(tid)) {
-                            discardPage(pid);
-                            DbFile dbFile = Database.getCatalog().getDatabaseFile(pid.getTableId());
-                            Page cleanPage = dbFile.readPage(pid);
-                            putPage(cleanPage);
+        // no read-ahead may load pages for tid from here on
+        prefetcher.complete(tid);
+        try {
+            if (commit) {
+                flushPages(tid);
+            } else {
+                for (Partition part : partitions) {
+                    synchronized (part) {
+                        for (Map.Entry<PageId, Page> e : part.pages.entrySet()) {
+                            if (tid.equals(e.getValue().isDirty())) {
+                                // revert to the on-disk version in place
+                                PageId pid = e.getKey();
+                                DbFile dbFile = Database.getCatalog().getDatabaseFile(pid.getTableId());
+                                Page page = dbFile.readPage(pid);
+                                e.setValue(page);
+                                dbFile.rolledBack(page);
+                            }
                         }
                     }
                 }
-            } catch (IOException | DbException e) {
-                e.printStackTrace();
             }
-            for (PageId pid : LRUList) {
-                if (holdsLock(tid, pid)) {
-                    unsafeReleasePage(tid, pid);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        syncFiles(lockManager.getTransactionPIDs(tid));
+        List<PageId> pinned = pinsByTid.remove(tid);
+        if (pinned != null) {
+            for (PageId pid : pinned) {
+                Partition part = partitionFor(pid);
+                synchronized (part) {
+                    part.pins.computeIfPresent(pid, (k, n) -> n == 1 ? null : n - 1);
                 }
             }
         }
+        for (PageId pid : lockManager.getTransactionPIDs(tid)) {
+            unsafeReleasePage(tid, pid);
+        }
     }
 
     /**
@@ -220,7 +660,7 @@ public class BufferPool {
      * @param tableId the table to add the tuple to
      * @param t the tuple to add
      */
-    public synchronized void insertTuple(TransactionId tid, int tableId, Tuple t)
+    public void insertTuple(TransactionId tid, int tableId, Tuple t)
             throws DbException, IOException, TransactionAbortedException {
         DbFile f = Database.getCatalog().getDatabaseFile(tableId);
         List<Page> dirtiedPages = f.insertTuple(tid, t);
@@ -233,31 +673,53 @@ public class BufferPool {
     }
 
     /**
-     * Helper method to assist putting page into bufferpool. Does LRU swap if
-     * bufferpool full.
+     * Helper method to assist putting page into bufferpool. Evicts a page from
+     * the page's partition if that partition is full.
      *
      * @param p the page to put into bufferpool
      */
-    public synchronized void putPage(Page p) throws DbException {
+    public void putPage(Page p) throws DbException {
         PageId pid = p.getId();
-        for (int i = 0; i < LRUList.size(); i++) {
-            if (LRUList.get(i).equals(pid)) { // if page is in bufferpool, remove it and add the dirtied/updated one to
-                // the tail of bufferpool (LRU is start of list)
-                pagesList.remove(i);
-                LRUList.remove(i);
-                pagesList.add(p);
-                LRUList.add(pid);
+        Partition part = partitionFor(pid);
+        synchronized (part) {
+            if (part.pages.containsKey(pid)) { // if page is in bufferpool, replace it with the dirtied/updated one
+                // and record the access with the eviction policy
+                part.pages.put(pid, p);
+                part.policy.access(pid);
                 return;
             }
-        }
 
-        if (pagesList.size() >= this.size) { // if bufferpool is full, evict the LRU (head of list) using evictPage,
-            // then add the dirtied page to bufferpool
-            evictPage();
+            while (part.pages.size() >= part.capacity) { // if the partition is full, evict a page using evictPage,
+                // then add the dirtied page to bufferpool
+                evictPage(part);
+            }
+            part.pages.put(pid, p);
+            part.policy.admit(pid);
         }
-        LRUList.add(pid);
-        pagesList.add(p);
+    }
 
+    /**
+     * Starts recording the id of every page requested through
+     * {@link #getPage}, one per line, so the stream can be replayed against
+     * different eviction policies with {@link EvictionSimulator}.
+     *
+     * @param f the file to write the trace to; it is overwritten
+     */
+    public synchronized void startTrace(File f) throws IOException {
+        stopTrace();
+        trace = new PrintWriter(new BufferedWriter(new FileWriter(f)));
+    }
+
+    /**
+     * Stops recording a trace started with {@link #startTrace} and closes the
+     * trace file.
+     */
+    public synchronized void stopTrace() {
+        PrintWriter t = trace;
+        trace = null;
+        if (t != null) {
+            t.close();
+        }
     }
 
     /**
@@ -273,7 +735,7 @@ public class BufferPool {
      * @param tid the transaction deleting the tuple.
      * @param t the tuple to delete
      */
-    public synchronized void deleteTuple(TransactionId tid, Tuple t)
+    public void deleteTuple(TransactionId tid, Tuple t)
             throws DbException, IOException, TransactionAbortedException {
         // some code goes here
         PageId pid = t.getRecordId().getPageId();
@@ -291,16 +753,35 @@ public class BufferPool {
      * writes dirty data to disk so will break simpledb if running in NO STEAL
      * mode.
      */
-    public synchronized void flushAllPages() throws IOException {
+    public void flushAllPages() throws IOException {
         // some code goes here
         // not necessary for lab1
-        for (PageId pid : LRUList) {
-            int ind = LRUList.indexOf(pid);
-            if (ind != -1 && ind < pagesList.size()) {
-                for (Page p : pagesList) {
-                    if (p.isDirty() != null) {
-                        flushPage(p.getId());
-                    }
+        List<PageId> flushed = new ArrayList<>();
+        for (Partition part : partitions) {
+            synchronized (part) {
+                for (Page p : part.pages.values()) {
+                    writeIfDirty(p);
+                }
+                flushed.addAll(part.pages.keySet());
+            }
+        }
+        syncFiles(flushed);
+    }
+
+    /**
+     * Calls {@link DbFile#sync} once on each file that has a page among
+     * pids. The caller must not hold a partition latch.
+     */
+    private void syncFiles(Collection<PageId> pids) {
+        Set<Integer> tables = new HashSet<>();
+        for (PageId pid : pids) {
+            if (tables.add(pid.getTableId())) {
+                try {
+                    Database.getCatalog().getDatabaseFile(pid.getTableId()).sync();
+                } catch (NoSuchElementException e) {
+                    // the table has been dropped from the catalog
+                } catch (IOException e) {
+                    e.printStackTrace();
                 }
             }
         }
@@ -314,19 +795,28 @@ public class BufferPool {
      * Also used by B+ tree files to ensure that deleted pages are removed from
      * the cache so they can be reused safely
      */
-    public synchronized void discardPage(PageId pid) {
+    public void discardPage(PageId pid) {
         // some code goes here
-        int ind = LRUList.indexOf(pid);
+        Partition part = partitionFor(pid);
+        synchronized (part) {
+            removePage(part, pid);
+            part.pins.remove(pid);
+            part.policy.remove(pid);
+        }
+        // not necessary for lab1
+    }
 
+    /**
+     * Drops a page from its partition and releases every lock held on it.
+     * The caller must hold the partition latch and is responsible for telling
+     * the eviction policy.
+     */
+    private void removePage(Partition part, PageId pid) {
         Set<TransactionId> holders = lockManager.getLockHoldersTID(pid);
         for (TransactionId tid : holders) {
             unsafeReleasePage(tid, pid);
         }
-        if (ind != -1 && ind < pagesList.size()) {
-            LRUList.remove(pid);
-            pagesList.remove(ind);
-        }
-        // not necessary for lab1
+        part.pages.remove(pid);
     }
 
     /**
@@ -334,15 +824,26 @@ public class BufferPool {
      *
      * @param pid an ID indicating the page to flush
      */
-    private synchronized void flushPage(PageId pid) throws IOException {
+    private void flushPage(PageId pid) throws IOException {
         // some code goes here
         // not necessary for lab1
-        int index = LRUList.indexOf(pid);
-        if (index != -1) {
-            Page page = pagesList.get(index);
-            if (page.isDirty() != null) {
-                Database.getCatalog().getDatabaseFile(pid.getTableId()).writePage(page);
-                page.markDirty(false, null);
+        Partition part = partitionFor(pid);
+        synchronized (part) {
+            Page page = part.pages.get(pid);
+            if (page != null) {
+                writeIfDirty(page);
+            }
+        }
+    }
+
+    private void writeIfDirty(Page page) throws IOException {
+        if (page.isDirty() != null) {
+            Database.getCatalog().getDatabaseFile(page.getId().getTableId()).writePage(page);
+            page.markDirty(false, null);
+            synchronized (rings) {
+                for (ScanRing ring : rings) {
+                    ring.drop(page.getId());
+                }
             }
         }
     }
@@ -350,48 +851,75 @@ public class BufferPool {
     /**
      * Write all pages of the specified transaction to disk.
      */
-    public synchronized void flushPages(TransactionId tid) throws IOException {
+    public void flushPages(TransactionId tid) throws IOException {
         // some code goes here
         // not necessary for lab1|lab2
-        for (PageId pid : LRUList) {
-            Page page = pagesList.get(LRUList.indexOf(pid));
-            if (tid.equals(page.isDirty())) {
-                flushPage(pid);
+        for (Partition part : partitions) {
+            synchronized (part) {
+                for (Page page : part.pages.values()) {
+                    if (tid.equals(page.isDirty())) {
+                        writeIfDirty(page);
+                    }
+                }
             }
         }
     }
 
     /**
-     * Discards a page from the buffer pool. Flushes the page to disk to ensure
-     * dirty pages are updated on disk.
+     * Discards an unpinned page from the given partition to make room for
+     * another. Dirty pages are never written out. The caller must hold the
+     * partition latch.
+     *
+     * @throws BufferPoolFullException if every page in the partition is pinned
      */
-    private synchronized void evictPage() throws DbException {
+    private void evictPage(Partition part) throws DbException {
         // some code goes here
         // not necessary for lab1
-        for (int i = 0; i < LRUList.size(); i++) {
-            PageId pid = LRUList.get(i);
-            Page p = pagesList.get(i);
-            if (p.isDirty() == null) { // page is clean
-                try {
-                    flushPage(pid);
-                    discardPage(pid);
-                    return;
-                } catch (IOException e) {
-                    System.err.println("IOException in evictPage of BufferPool: " + e);
-                }
+        PageId dirtyVictim = null;
+        Iterator<PageId> victims = part.policy.victims();
+        while (victims.hasNext()) {
+            PageId pid = victims.next();
+            if (part.pins.containsKey(pid)) {
+                part.pinnedSkips++;
+            } else if (part.pages.get(pid).isDirty() == null) { // page is clean
+                evict(part, pid);
+                return;
+            } else if (dirtyVictim == null) {
+                dirtyVictim = pid;
             }
         }
-        for (int i = 0; i < LRUList.size(); i++) {
-            PageId pid = LRUList.get(i);
-            try {
-                discardPage(pid);
-                flushPage(pid);
-                return;
-            } catch (IOException e) {
-                System.err.println("IOException in evictPage (dirty path) of BufferPool: " + e);
+        if (dirtyVictim != null) {
+            // every unpinned page is dirty: drop the policy's first choice
+            // without writing it, so uncommitted data never reaches disk
+            evict(part, dirtyVictim);
+            return;
+        }
+        throw new BufferPoolFullException("all " + part.pages.size() + " frames that could hold the page are pinned");
+    }
+
+    /**
+     * Discards the unpinned clean page the policy prefers from the given
+     * partition, for read-ahead, which must neither drop a dirty page nor
+     * fail. The caller must hold the partition latch.
+     *
+     * @return false if every page in the partition is pinned or dirty
+     */
+    private boolean evictCleanPage(Partition part) {
+        Iterator<PageId> victims = part.policy.victims();
+        while (victims.hasNext()) {
+            PageId pid = victims.next();
+            if (!part.pins.containsKey(pid) && part.pages.get(pid).isDirty() == null) {
+                evict(part, pid);
+                return true;
             }
         }
-        throw new DbException("No clean pages");
+        return false;
+    }
+
+    private void evict(Partition part, PageId pid) {
+        removePage(part, pid);
+        part.policy.evicted(pid);
+        part.ghosts.put(pid, Boolean.TRUE);
     }
 }
 
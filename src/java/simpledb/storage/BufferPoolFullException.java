@@ -0,0 +1,19 @@
+package simpledb.storage;
+
+import simpledb.common.DbException;
+
+/**
+ * Thrown by the BufferPool when a page must be read but every frame that
+ * could hold it is pinned. Callers should treat this as back-pressure: close
+ * or finish some open iterators (or transactions) before retrying.
+ *
+ * @see BufferPool#pinPage
+ */
+public class BufferPoolFullException extends DbException {
+
+    private static final long serialVersionUID = 1L;
+
+    public BufferPoolFullException(String s) {
+        super(s);
+    }
+}
@@ -0,0 +1,136 @@
+package simpledb.storage;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * CLOCK (second chance) replacement. Resident pages sit on a circular list
+ * with a reference bit that is set on every access. The clock hand sweeps the
+ * list, clearing set bits and offering pages whose bit is already clear.
+ */
+public class ClockEvictionPolicy implements EvictionPolicy {
+
+    private static class Node {
+
+        final PageId pid;
+        boolean referenced;
+        Node prev;
+        Node next;
+
+        Node(PageId pid) {
+            this.pid = pid;
+        }
+    }
+
+    private final Map<PageId, Node> nodes = new HashMap<>();
+    private Node hand;
+
+    @Override
+    public void admit(PageId pid) {
+        Node node = nodes.get(pid);
+        if (node != null) {
+            node.referenced = true;
+            return;
+        }
+        node = new Node(pid);
+        node.referenced = true;
+        nodes.put(pid, node);
+        if (hand == null) {
+            node.prev = node;
+            node.next = node;
+            hand = node;
+        } else {
+            // insert just behind the hand so the new page is swept last
+            node.prev = hand.prev;
+            node.next = hand;
+            hand.prev.next = node;
+            hand.prev = node;
+        }
+    }
+
+    @Override
+    public void access(PageId pid) {
+        Node node = nodes.get(pid);
+        if (node != null) {
+            node.referenced = true;
+        }
+    }
+
+    @Override
+    public void evicted(PageId pid) {
+        remove(pid);
+    }
+
+    @Override
+    public void remove(PageId pid) {
+        Node node = nodes.remove(pid);
+        if (node == null) {
+            return;
+        }
+        if (node.next == node) {
+            hand = null;
+        } else {
+            if (hand == node) {
+                hand = node.next;
+            }
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+    }
+
+    /**
+     * Sweeps the clock hand. Pages passed over with their reference bit set
+     * lose it; every page is offered at most once per iterator, so a caller
+     * that rejects every candidate sees each page exactly once.
+     */
+    @Override
+    public Iterator<PageId> victims() {
+        return new Iterator<PageId>() {
+            private final Set<PageId> offered = new HashSet<>();
+            private int steps = 2 * nodes.size();
+            private PageId next;
+
+            private PageId advance() {
+                while (hand != null && steps-- > 0) {
+                    Node node = hand;
+                    hand = hand.next;
+                    if (node.referenced) {
+                        node.referenced = false;
+                    } else if (offered.add(node.pid)) {
+                        return node.pid;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    next = advance();
+                }
+                return next != null;
+            }
+
+            @Override
+            public PageId next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                PageId pid = next;
+                next = null;
+                return pid;
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return nodes.size();
+    }
+}
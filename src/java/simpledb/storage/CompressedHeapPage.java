@@ -0,0 +1,631 @@
+package simpledb.storage;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.transaction.TransactionId;
+
+/**
+ * CompressedHeapPage is a page of a HeapFile whose columns are compressed on
+ * disk, so that a table of repetitive values takes fewer pages.
+ * <p>
+ * On disk, the page starts with two ints, the number of slots and the number
+ * of tuples, followed by a bitmap of the slots in use. Then each column is
+ * stored in turn as one byte naming its encoding, followed by the values of
+ * the column for every slot:
+ * <ul>
+ * <li>PLAIN: each value as written by {@link SlottedHeapPage}, an int in 4
+ * bytes or a string as a 2-byte length followed by its characters.
+ * <li>RLE: an int number of runs, then each run as its value followed by an
+ * unsigned short length.
+ * <li>DICTIONARY: an unsigned short number of distinct values, each value,
+ * then for every slot the index of its value, packed in as many bits as the
+ * largest index needs.
+ * <li>FRAME_OF_REFERENCE (int columns only): the smallest value, then one
+ * byte of bit width, then for every slot its difference from the smallest
+ * value packed in that many bits.
+ * </ul>
+ * Each column takes whichever encoding is smallest for its values when the
+ * page is written. An array of zeros is an empty page.
+ * <p>
+ * A page is decompressed when it is read, and kept in the buffer pool as an
+ * array of values per column; getPageData compresses it again. Once a page
+ * is first written to, it keeps track of the size its columns would take in
+ * each encoding, so that an insert knows whether the page still fits without
+ * compressing it.
+ * A deleted tuple keeps its values until its slot is reused, so that deletes
+ * never make a page larger.
+ *
+ * @see HeapPageFormat#COMPRESSED
+ */
+public class CompressedHeapPage implements TuplePage {
+
+    private static final int PLAIN = 0;
+    private static final int RLE = 1;
+    private static final int DICTIONARY = 2;
+    private static final int FRAME_OF_REFERENCE = 3;
+
+    static final int HEADER_SIZE = 8;
+    // a run length and a dictionary index must fit in an unsigned short
+    private static final int MAX_SLOTS = 0xFFFF;
+
+    /**
+     * The values of one column for every slot, and the statistics that give
+     * the size of each of its encodings.
+     */
+    private static final class Column {
+
+        final Type type;
+        int[] ints;
+        String[] strings;
+
+        boolean counted; // the statistics are only needed once the page changes
+        int runs;
+        long runBytes; // the encoded values that start runs
+        final Set<Object> distinct = new HashSet<>();
+        long distinctBytes;
+        long plainBytes;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+
+        Column(Type type, int capacity) {
+            this.type = type;
+            if (type == Type.INT_TYPE) {
+                ints = new int[capacity];
+            } else {
+                strings = new String[capacity];
+            }
+        }
+
+        Object value(int slot) {
+            return ints != null ? (Object) ints[slot] : strings[slot];
+        }
+
+        void set(int slot, Object value) {
+            if (ints != null) {
+                if (slot == ints.length) {
+                    ints = Arrays.copyOf(ints, Math.max(16, slot * 2));
+                }
+                ints[slot] = (Integer) value;
+            } else {
+                if (slot == strings.length) {
+                    strings = Arrays.copyOf(strings, Math.max(16, slot * 2));
+                }
+                strings[slot] = (String) value;
+            }
+        }
+
+        /**
+         * Adds a value after those of the first n slots to the statistics.
+         */
+        void count(int n, Object value) {
+            long bytes = valueBytes(value);
+            if (n == 0 || !value.equals(value(n - 1))) {
+                runs++;
+                runBytes += bytes;
+            }
+            if (distinct.add(value)) {
+                distinctBytes += bytes;
+            }
+            plainBytes += bytes;
+            if (ints != null) {
+                min = Math.min(min, (Integer) value);
+                max = Math.max(max, (Integer) value);
+            }
+        }
+
+        /**
+         * Recomputes the statistics from the values of the first n slots.
+         */
+        void recount(int n) {
+            counted = true;
+            runs = 0;
+            runBytes = 0;
+            distinct.clear();
+            distinctBytes = 0;
+            plainBytes = 0;
+            min = Long.MAX_VALUE;
+            max = Long.MIN_VALUE;
+            for (int i = 0; i < n; i++) {
+                count(i, value(i));
+            }
+        }
+
+        void ensureCounted(int n) {
+            if (!counted) {
+                recount(n);
+            }
+        }
+
+        /**
+         * @return the size and encoding of the column's n values if value
+         * were added after them, or of the n values alone if value is null
+         */
+        long[] encoding(int n, Object value) {
+            ensureCounted(n);
+            int runs = this.runs;
+            long runBytes = this.runBytes;
+            int d = distinct.size();
+            long distinctBytes = this.distinctBytes;
+            long plainBytes = this.plainBytes;
+            long min = this.min;
+            long max = this.max;
+            if (value != null) {
+                long bytes = valueBytes(value);
+                if (n == 0 || !value.equals(value(n - 1))) {
+                    runs++;
+                    runBytes += bytes;
+                }
+                if (!distinct.contains(value)) {
+                    d++;
+                    distinctBytes += bytes;
+                }
+                plainBytes += bytes;
+                if (ints != null) {
+                    min = Math.min(min, (Integer) value);
+                    max = Math.max(max, (Integer) value);
+                }
+                n++;
+            }
+            long[] best = {plainBytes, PLAIN};
+            best = smaller(best, 4 + runBytes + 2L * runs, RLE);
+            best = smaller(best, 2 + distinctBytes + packedBytes(n, bits(d - 1)), DICTIONARY);
+            if (ints != null && n > 0) {
+                best = smaller(best, 4 + 1 + packedBytes(n, bits(max - min)), FRAME_OF_REFERENCE);
+            }
+            return best;
+        }
+
+        private static long[] smaller(long[] best, long size, int encoding) {
+            return size < best[0] ? new long[]{size, encoding} : best;
+        }
+
+        long valueBytes(Object value) {
+            return value instanceof String ? 2 + ((String) value).length() : 4;
+        }
+    }
+
+    final HeapPageId pid;
+    final TupleDesc td;
+    private int numSlots;
+    private int numTuples;
+    private BitSet used;
+    private Column[] columns;
+    private TransactionId dirtyTID;
+
+    // null while the page still matches its before-image
+    byte[] oldData;
+    private final Object oldDataLock = new Object();
+
+    /**
+     * Create a CompressedHeapPage from a set of bytes of data read from disk,
+     * in the format described above, decompressing its columns. The TupleDesc
+     * comes from the catalog.
+     */
+    public CompressedHeapPage(HeapPageId id, byte[] data) {
+        this.pid = id;
+        this.dirtyTID = null;
+        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        decode(ByteBuffer.wrap(data));
+        setBeforeImage();
+    }
+
+    /**
+     * Return a view of this page before it was modified -- used by recovery
+     */
+    public CompressedHeapPage getBeforeImage() {
+        byte[] oldDataRef;
+        synchronized (oldDataLock) {
+            oldDataRef = oldData;
+        }
+        return new CompressedHeapPage(pid, oldDataRef != null ? oldDataRef : getPageData());
+    }
+
+    public void setBeforeImage() {
+        // the current contents are the before-image until the next modification
+        synchronized (oldDataLock) {
+            oldData = null;
+        }
+    }
+
+    /**
+     * Saves the current contents as the before-image, if no modification has
+     * done so since the last {@link #setBeforeImage}. Must be called before
+     * every change to the page.
+     */
+    private void preserveBeforeImage() {
+        synchronized (oldDataLock) {
+            if (oldData == null) {
+                oldData = getPageData();
+            }
+        }
+    }
+
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtyTID = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtyTID;
+    }
+
+    /**
+     * @return the number of tuples on this page
+     */
+    public int getNumTuples() {
+        return numTuples;
+    }
+
+    /**
+     * @return the number of tuples on a page, read from its first
+     * HEADER_SIZE bytes without decoding the rest
+     */
+    static int numTuples(byte[] header) {
+        return ByteBuffer.wrap(header).getInt(4);
+    }
+
+    /**
+     * Returns true if associated slot on this page is filled.
+     */
+    public boolean isSlotUsed(int i) {
+        return used.get(i);
+    }
+
+    /**
+     * @return the number of bytes the page takes once compressed, with value
+     * added to each column after the existing slots if values is not null
+     */
+    private long compressedSize(int slots, Object[] values) {
+        long size = HEADER_SIZE + (slots + 7) / 8;
+        for (int j = 0; j < columns.length; j++) {
+            size += 1 + columns[j].encoding(numSlots, values == null ? null : values[j])[0];
+        }
+        return size;
+    }
+
+    private static Object[] values(Tuple t) {
+        Object[] values = new Object[t.getTupleDesc().numFields()];
+        for (int j = 0; j < values.length; j++) {
+            Field f = t.getField(j);
+            values[j] = f instanceof IntField ? (Object) ((IntField) f).getValue()
+                    : truncate(((StringField) f).getValue());
+        }
+        return values;
+    }
+
+    private static String truncate(String s) {
+        return s.length() > Type.STRING_LEN ? s.substring(0, Type.STRING_LEN) : s;
+    }
+
+    /**
+     * @return a slot t fits in, or -1 if it fits in none
+     */
+    private int findSlot(Object[] values) {
+        if (numSlots < MAX_SLOTS
+                && compressedSize(numSlots + 1, values) <= BufferPool.getPageSize()) {
+            return numSlots;
+        }
+        // the first deleted tuple's slot may take t if its values compress
+        // as well; trying every such slot would make a full page costly
+        int slot = used.nextClearBit(0);
+        if (slot < numSlots) {
+            Object[] old = new Object[columns.length];
+            for (int j = 0; j < columns.length; j++) {
+                old[j] = columns[j].value(slot);
+                columns[j].set(slot, values[j]);
+                columns[j].recount(numSlots);
+            }
+            boolean fits = compressedSize(numSlots, null) <= BufferPool.getPageSize();
+            for (int j = 0; j < columns.length; j++) {
+                columns[j].set(slot, old[j]);
+                columns[j].recount(numSlots);
+            }
+            if (fits) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    public boolean hasRoomFor(Tuple t) {
+        return findSlot(values(t)) >= 0;
+    }
+
+    public void insertTuple(Tuple t) throws DbException {
+        if (!t.getTupleDesc().equals(td)) {
+            throw new DbException("Tuple description different from page's tuple description.");
+        }
+        Object[] values = values(t);
+        int slot = findSlot(values);
+        if (slot < 0) {
+            throw new DbException("Page is full, tuple not inserted.");
+        }
+        preserveBeforeImage();
+        for (int j = 0; j < columns.length; j++) {
+            if (slot == numSlots) {
+                columns[j].ensureCounted(numSlots);
+                columns[j].count(numSlots, values[j]);
+                columns[j].set(slot, values[j]);
+            } else {
+                columns[j].set(slot, values[j]);
+                columns[j].recount(numSlots);
+            }
+        }
+        if (slot == numSlots) {
+            numSlots++;
+        }
+        used.set(slot);
+        numTuples++;
+        t.setRecordId(new RecordId(pid, slot));
+    }
+
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null) {
+            throw new DbException("Tuple does not exist or has already been deleted.");
+        }
+        if (!pid.equals(rid.getPageId())) {
+            throw new DbException("Tuple does not belong to current page.");
+        }
+        int slot = rid.getTupleNumber();
+        if (slot < 0 || slot >= numSlots || !isSlotUsed(slot)) {
+            throw new DbException("Page slot already empty.");
+        }
+        preserveBeforeImage();
+        used.clear(slot);
+        numTuples--;
+    }
+
+    public Iterator<Tuple> iterator() {
+        return iterator(null);
+    }
+
+    /**
+     * Returns an iterator over the tuples on this page that fills in only the
+     * given columns, or every column if columns is null; the other fields of
+     * the tuples are left null.
+     * <p>
+     * Only the slots in use when the iterator was created are visited; a
+     * tuple deleted before the iterator reaches it is skipped.
+     */
+    public Iterator<Tuple> iterator(int[] columns) {
+        final int[] read = columns != null ? columns : allColumns();
+        final BitSet usedSlots = (BitSet) used.clone();
+        return new Iterator<Tuple>() {
+            private int slot = advance(0);
+
+            private int advance(int from) {
+                for (from = usedSlots.nextSetBit(from); from >= 0 && !isSlotUsed(from);
+                        from = usedSlots.nextSetBit(from + 1)) {
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                // the page may have changed since the last call
+                slot = slot < 0 ? slot : advance(slot);
+                return slot >= 0;
+            }
+
+            @Override
+            public Tuple next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Tuple t = new Tuple(td);
+                t.setRecordId(new RecordId(pid, slot));
+                for (int j : read) {
+                    Column c = CompressedHeapPage.this.columns[j];
+                    t.setField(j, c.ints != null ? new IntField(c.ints[slot])
+                            : new StringField(c.strings[slot], Type.STRING_LEN));
+                }
+                slot++;
+                return t;
+            }
+        };
+    }
+
+    private int[] allColumns() {
+        int[] all = new int[td.numFields()];
+        for (int j = 0; j < all.length; j++) {
+            all[j] = j;
+        }
+        return all;
+    }
+
+    // Encoding and decoding
+
+    public byte[] getPageData() {
+        ByteBuffer buf = ByteBuffer.allocate(BufferPool.getPageSize());
+        buf.putInt(numSlots);
+        buf.putInt(numTuples);
+        byte[] bitmap = new byte[(numSlots + 7) / 8];
+        byte[] bits = used.toByteArray(); // little-endian, as HeapPage's header
+        System.arraycopy(bits, 0, bitmap, 0, Math.min(bits.length, bitmap.length));
+        buf.put(bitmap);
+        for (Column c : columns) {
+            int encoding = (int) c.encoding(numSlots, null)[1];
+            buf.put((byte) encoding);
+            switch (encoding) {
+            case PLAIN:
+                for (int i = 0; i < numSlots; i++) {
+                    putValue(buf, c.value(i));
+                }
+                break;
+            case RLE:
+                buf.putInt(c.runs);
+                for (int i = 0; i < numSlots; ) {
+                    int start = i;
+                    while (i < numSlots && c.value(i).equals(c.value(start))) {
+                        i++;
+                    }
+                    putValue(buf, c.value(start));
+                    buf.putShort((short) (i - start));
+                }
+                break;
+            case DICTIONARY:
+                Map<Object, Integer> codes = new HashMap<>();
+                for (int i = 0; i < numSlots; i++) {
+                    codes.putIfAbsent(c.value(i), codes.size());
+                }
+                buf.putShort((short) codes.size());
+                Object[] dictionary = new Object[codes.size()];
+                for (Map.Entry<Object, Integer> e : codes.entrySet()) {
+                    dictionary[e.getValue()] = e.getKey();
+                }
+                for (Object value : dictionary) {
+                    putValue(buf, value);
+                }
+                long[] indexes = new long[numSlots];
+                for (int i = 0; i < numSlots; i++) {
+                    indexes[i] = codes.get(c.value(i));
+                }
+                pack(buf, indexes, bits(codes.size() - 1));
+                break;
+            case FRAME_OF_REFERENCE:
+                int width = bits(c.max - c.min);
+                buf.putInt((int) c.min);
+                buf.put((byte) width);
+                long[] deltas = new long[numSlots];
+                for (int i = 0; i < numSlots; i++) {
+                    deltas[i] = c.ints[i] - c.min;
+                }
+                pack(buf, deltas, width);
+                break;
+            default:
+                throw new IllegalStateException("unknown encoding " + encoding);
+            }
+        }
+        return buf.array();
+    }
+
+    private void decode(ByteBuffer buf) {
+        numSlots = buf.getInt();
+        numTuples = buf.getInt();
+        byte[] bitmap = new byte[(numSlots + 7) / 8];
+        buf.get(bitmap);
+        used = BitSet.valueOf(bitmap);
+        columns = new Column[td.numFields()];
+        for (int j = 0; j < columns.length; j++) {
+            Column c = new Column(td.getFieldType(j), numSlots);
+            columns[j] = c;
+            if (numSlots == 0) {
+                c.counted = true;
+                continue;
+            }
+            int encoding = buf.get();
+            switch (encoding) {
+            case PLAIN:
+                for (int i = 0; i < numSlots; i++) {
+                    c.set(i, getValue(buf, c.type));
+                }
+                break;
+            case RLE:
+                int runs = buf.getInt();
+                for (int r = 0, i = 0; r < runs; r++) {
+                    Object value = getValue(buf, c.type);
+                    for (int end = i + Short.toUnsignedInt(buf.getShort()); i < end; i++) {
+                        c.set(i, value);
+                    }
+                }
+                break;
+            case DICTIONARY:
+                Object[] dictionary = new Object[Short.toUnsignedInt(buf.getShort())];
+                for (int k = 0; k < dictionary.length; k++) {
+                    dictionary[k] = getValue(buf, c.type);
+                }
+                long[] indexes = unpack(buf, numSlots, bits(dictionary.length - 1));
+                for (int i = 0; i < numSlots; i++) {
+                    c.set(i, dictionary[(int) indexes[i]]);
+                }
+                break;
+            case FRAME_OF_REFERENCE:
+                long min = buf.getInt();
+                long[] deltas = unpack(buf, numSlots, buf.get());
+                for (int i = 0; i < numSlots; i++) {
+                    c.ints[i] = (int) (min + deltas[i]);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("unknown encoding " + encoding);
+            }
+        }
+    }
+
+    private static void putValue(ByteBuffer buf, Object value) {
+        if (value instanceof String) {
+            String s = (String) value;
+            buf.putShort((short) s.length());
+            // same encoding as StringField.serialize: the low byte of each char
+            for (int i = 0; i < s.length(); i++) {
+                buf.put((byte) s.charAt(i));
+            }
+        } else {
+            buf.putInt((Integer) value);
+        }
+    }
+
+    private static Object getValue(ByteBuffer buf, Type type) {
+        if (type == Type.STRING_TYPE) {
+            byte[] bs = new byte[Short.toUnsignedInt(buf.getShort())];
+            buf.get(bs);
+            return new String(bs);
+        }
+        return buf.getInt();
+    }
+
+    /**
+     * @return the number of bits needed to write values from 0 to max
+     */
+    private static int bits(long max) {
+        return max <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(max);
+    }
+
+    private static long packedBytes(long n, int width) {
+        return (n * width + 7) / 8;
+    }
+
+    /**
+     * Writes each value in width bits, lowest bit first.
+     */
+    private static void pack(ByteBuffer buf, long[] values, int width) {
+        long acc = 0;
+        int held = 0;
+        for (long v : values) {
+            acc |= v << held;
+            held += width;
+            while (held >= 8) {
+                buf.put((byte) acc);
+                acc >>>= 8;
+                held -= 8;
+            }
+        }
+        if (held > 0) {
+            buf.put((byte) acc);
+        }
+    }
+
+    private static long[] unpack(ByteBuffer buf, int n, int width) {
+        long[] values = new long[n];
+        long mask = (1L << width) - 1;
+        long acc = 0;
+        int held = 0;
+        for (int i = 0; i < n; i++) {
+            while (held < width) {
+                acc |= (buf.get() & 0xFFL) << held;
+                held += 8;
+            }
+            values[i] = acc & mask;
+            acc >>>= width;
+            held -= width;
+        }
+        return values;
+    }
+}
@@ -3,6 +3,7 @@ package simpledb.storage;
 
 import simpledb.common.DbException;
 import simpledb.common.Catalog;
+import simpledb.execution.Predicate;
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.transaction.TransactionId;
 
@@ -33,6 +34,27 @@ public interface DbFile {
      */
     void writePage(Page p) throws IOException;
 
+    /**
+     * Writes out what this file keeps on disk besides its pages, such as
+     * maps of its pages, once the pages themselves have been written. The
+     * BufferPool calls this when a transaction that used the file completes,
+     * and when it flushes all pages.
+     *
+     * @throws IOException if the write fails
+     */
+    default void sync() throws IOException {
+    }
+
+    /**
+     * Called by the BufferPool when a transaction aborts, with the on-disk
+     * version of a page the transaction had changed, so that the file can
+     * undo what it noted about the page besides the page itself.
+     *
+     * @param p the page as it is again
+     */
+    default void rolledBack(Page p) {
+    }
+
     /**
      * Inserts the specified tuple to the file on behalf of transaction.
      * This method will acquire a lock on the affected pages of the file, and
@@ -73,6 +95,34 @@ public interface DbFile {
      */
     DbFileIterator iterator(TransactionId tid);
 
+    /**
+     * Returns an iterator over all the tuples stored in this DbFile, for a
+     * reader that only needs the given columns. Fields outside columns may be
+     * left null in the tuples returned, so a file that stores its columns
+     * apart need not read the others.
+     *
+     * @param columns indexes of the fields the reader needs
+     * @return an iterator over all the tuples stored in this DbFile.
+     */
+    default DbFileIterator iterator(TransactionId tid, int[] columns) {
+        return iterator(tid);
+    }
+
+    /**
+     * Returns an iterator over the tuples stored in this DbFile that satisfy
+     * every one of filters, for a reader that only needs the given columns.
+     * A file may test the filters before it builds each tuple, or skip whole
+     * pages that cannot hold a match.
+     *
+     * @param columns indexes of the fields the reader needs, or null for all
+     * @param filters predicates the tuples returned satisfy
+     * @return an iterator over the matching tuples stored in this DbFile.
+     */
+    default DbFileIterator iterator(TransactionId tid, int[] columns, Predicate[] filters) {
+        int[] needed = FilteredDbFileIterator.withFilterColumns(columns, filters);
+        return new FilteredDbFileIterator(needed == null ? iterator(tid) : iterator(tid, needed), filters);
+    }
+
     /**
      * Returns a unique ID used to identify this DbFile in the Catalog. This id
      * can be used to look up the table via {@link Catalog#getDatabaseFile} and
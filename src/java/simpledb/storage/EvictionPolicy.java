@@ -0,0 +1,65 @@
+package simpledb.storage;
+
+import java.util.Iterator;
+
+/**
+ * EvictionPolicy is the replacement strategy used by the BufferPool to decide
+ * which resident page gives up its frame when the pool is full. The policy
+ * only tracks page ids; the BufferPool owns the pages themselves and tells the
+ * policy about every admission, hit, eviction and discard.
+ * <p>
+ * Implementations are not thread safe: the BufferPool calls them while holding
+ * its own latch.
+ *
+ * @see EvictionPolicyType
+ * @see BufferPool#evictPage
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Called when a page that was not resident is placed into the pool.
+     *
+     * @param pid the id of the admitted page
+     */
+    void admit(PageId pid);
+
+    /**
+     * Called when a resident page is requested again (a hit).
+     *
+     * @param pid the id of the accessed page
+     */
+    void access(PageId pid);
+
+    /**
+     * Called when a page chosen from {@link #victims()} has been evicted to
+     * make room for another page. Policies that keep a history of evicted
+     * pages (ghost lists) may remember it.
+     *
+     * @param pid the id of the evicted page
+     */
+    void evicted(PageId pid);
+
+    /**
+     * Called when a resident page is dropped for reasons other than
+     * replacement, e.g. {@link BufferPool#discardPage}. The policy should
+     * forget the page entirely.
+     *
+     * @param pid the id of the removed page
+     */
+    void remove(PageId pid);
+
+    /**
+     * Returns the resident pages in the order in which this policy would
+     * prefer to evict them. The BufferPool walks the candidates until it finds
+     * one it is allowed to evict (e.g. a clean page) and then stops; the
+     * iterator must not be used after the policy has been modified.
+     *
+     * @return an iterator over eviction candidates, best candidate first
+     */
+    Iterator<PageId> victims();
+
+    /**
+     * @return the number of resident pages tracked by this policy
+     */
+    int size();
+}
@@ -0,0 +1,62 @@
+package simpledb.storage;
+
+/**
+ * The replacement policies a BufferPool can be constructed with.
+ *
+ * @see BufferPool#BufferPool(int, EvictionPolicyType)
+ * @see EvictionSimulator
+ */
+public enum EvictionPolicyType {
+    /** Least recently used. */
+    LRU() {
+        @Override
+        public EvictionPolicy create(int numPages) {
+            return new LruEvictionPolicy();
+        }
+    },
+    /** CLOCK / second chance. */
+    CLOCK() {
+        @Override
+        public EvictionPolicy create(int numPages) {
+            return new ClockEvictionPolicy();
+        }
+    },
+    /** LRU-2, evicting by backward distance to the second to last reference. */
+    LRU_K() {
+        @Override
+        public EvictionPolicy create(int numPages) {
+            return new LruKEvictionPolicy(LruKEvictionPolicy.DEFAULT_K, numPages);
+        }
+    },
+    /** Full 2Q with an A1in FIFO, an Am LRU and an A1out ghost queue. */
+    TWO_Q() {
+        @Override
+        public EvictionPolicy create(int numPages) {
+            return new TwoQEvictionPolicy(numPages);
+        }
+    },
+    /** Adaptive replacement cache. */
+    ARC() {
+        @Override
+        public EvictionPolicy create(int numPages) {
+            return new ArcEvictionPolicy(numPages);
+        }
+    };
+
+    /**
+     * @param numPages the number of frames the policy will manage
+     * @return a new, empty policy of this type
+     */
+    public abstract EvictionPolicy create(int numPages);
+
+    /**
+     * Returns the policy used by buffer pools that are not given one
+     * explicitly. It is LRU unless overridden with the system property
+     * simpledb.storage.EvictionPolicy, e.g.
+     * -Dsimpledb.storage.EvictionPolicy=ARC.
+     */
+    public static EvictionPolicyType getDefault() {
+        String name = System.getProperty("simpledb.storage.EvictionPolicy");
+        return name == null || name.isEmpty() ? LRU : valueOf(name.toUpperCase());
+    }
+}
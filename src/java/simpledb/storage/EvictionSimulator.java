@@ -0,0 +1,110 @@
+package simpledb.storage;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Replays a recorded stream of page requests against the available eviction
+ * policies and reports the hit ratio of each. Traces are recorded with
+ * {@link BufferPool#startTrace}; every page is treated as clean, so the
+ * simulator measures the replacement decisions alone.
+ * <p>
+ * Usage: <code>java simpledb.SimpleDb simulate tracefile numPages [numPages ...]</code>
+ */
+public class EvictionSimulator {
+
+    /**
+     * Reads a trace written by {@link BufferPool#startTrace}.
+     *
+     * @param f the trace file
+     * @return the page ids in request order
+     */
+    public static List<PageId> readTrace(File f) throws IOException {
+        List<PageId> pids = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(f))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] els = line.trim().split(" ");
+                if (els.length < 2) {
+                    continue;
+                }
+                pids.add(parsePageId(els));
+            }
+        }
+        return pids;
+    }
+
+    private static PageId parsePageId(String[] els) throws IOException {
+        try {
+            Class<?> idClass = Class.forName(els[0]);
+            Object[] idArgs = new Object[els.length - 1];
+            Class<?>[] idTypes = new Class<?>[els.length - 1];
+            for (int i = 1; i < els.length; i++) {
+                idArgs[i - 1] = Integer.parseInt(els[i]);
+                idTypes[i - 1] = int.class;
+            }
+            Constructor<?> cons = idClass.getConstructor(idTypes);
+            return (PageId) cons.newInstance(idArgs);
+        } catch (ReflectiveOperationException | NumberFormatException e) {
+            throw new IOException("Malformed trace entry: " + String.join(" ", els), e);
+        }
+    }
+
+    /**
+     * Replays a trace against one policy.
+     *
+     * @param trace the page ids in request order
+     * @param numPages the number of frames to simulate
+     * @param type the policy to simulate
+     * @return the fraction of requests that were hits
+     */
+    public static double hitRatio(List<PageId> trace, int numPages, EvictionPolicyType type) {
+        EvictionPolicy policy = type.create(numPages);
+        Set<PageId> resident = new HashSet<>();
+        long hits = 0;
+        for (PageId pid : trace) {
+            if (resident.contains(pid)) {
+                hits++;
+                policy.access(pid);
+                continue;
+            }
+            if (resident.size() >= numPages) {
+                Iterator<PageId> victims = policy.victims();
+                PageId victim = victims.next();
+                resident.remove(victim);
+                policy.evicted(victim);
+            }
+            resident.add(pid);
+            policy.admit(pid);
+        }
+        return trace.isEmpty() ? 0.0 : (double) hits / trace.size();
+    }
+
+    /**
+     * Prints the hit ratio of every policy for each of the given pool sizes.
+     */
+    public static void simulate(File traceFile, int[] poolSizes) throws IOException {
+        List<PageId> trace = readTrace(traceFile);
+        System.out.println("Replaying " + trace.size() + " page requests from " + traceFile);
+        StringBuilder header = new StringBuilder("numPages");
+        for (EvictionPolicyType type : EvictionPolicyType.values()) {
+            header.append('\t').append(type);
+        }
+        System.out.println(header);
+        for (int numPages : poolSizes) {
+            StringBuilder row = new StringBuilder(Integer.toString(numPages));
+            for (EvictionPolicyType type : EvictionPolicyType.values()) {
+                row.append('\t').append(String.format("%.4f", hitRatio(trace, numPages, type)));
+            }
+            System.out.println(row);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package simpledb.storage;
+
+import java.util.Arrays;
+
+import simpledb.common.DbException;
+import simpledb.execution.Predicate;
+import simpledb.transaction.TransactionAbortedException;
+
+/**
+ * Returns the tuples of another DbFileIterator that satisfy every one of a
+ * list of predicates.
+ *
+ * @see DbFile#iterator(simpledb.transaction.TransactionId, int[], Predicate[])
+ */
+class FilteredDbFileIterator extends AbstractDbFileIterator {
+
+    private final DbFileIterator child;
+    private final Predicate[] filters;
+
+    FilteredDbFileIterator(DbFileIterator child, Predicate[] filters) {
+        this.child = child;
+        this.filters = filters;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        child.open();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        super.close();
+        child.rewind();
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+    }
+
+    @Override
+    protected Tuple readNext() throws DbException, TransactionAbortedException {
+        while (child.hasNext()) {
+            Tuple t = child.next();
+            if (matches(t, filters)) {
+                return t;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return columns together with the fields filters read, or null if
+     * columns is null
+     */
+    static int[] withFilterColumns(int[] columns, Predicate[] filters) {
+        if (columns == null) {
+            return null;
+        }
+        int[] all = Arrays.copyOf(columns, columns.length + filters.length);
+        for (int i = 0; i < filters.length; i++) {
+            all[columns.length + i] = filters[i].getField();
+        }
+        return all;
+    }
+
+    /**
+     * @return true if t satisfies every one of filters
+     */
+    static boolean matches(Tuple t, Predicate[] filters) {
+        for (Predicate p : filters) {
+            if (!p.filter(t)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
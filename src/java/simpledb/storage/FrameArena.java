@@ -0,0 +1,154 @@
+package simpledb.storage;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * FrameArena hands out page-sized frames carved from large direct (off-heap)
+ * ByteBuffers, so that cached pages keep their bytes outside the Java heap.
+ * <p>
+ * A frame belongs to the page object it was allocated for, and is recycled
+ * once that object becomes unreachable. Pages are never freed explicitly,
+ * because an evicted page may still be read through an iterator that was
+ * opened before the eviction.
+ * <p>
+ * The arena never grows beyond its capacity. When every frame is in use,
+ * {@link #allocate} returns an ordinary heap buffer, so running out of frames
+ * costs garbage collector work but never fails.
+ *
+ * @Threadsafe
+ */
+public class FrameArena {
+
+    /**
+     * Name of the system property that enables the arena for new buffer
+     * pools, e.g. <code>-Dsimpledb.storage.FrameArena=true</code>.
+     */
+    public static final String PROPERTY = "simpledb.storage.FrameArena";
+
+    /**
+     * Number of frames carved from each direct buffer.
+     */
+    private static final int FRAMES_PER_CHUNK = 256;
+
+    /**
+     * Ties a frame to the page object that owns it.
+     */
+    private static class FrameRef extends PhantomReference<Object> {
+
+        final ByteBuffer frame;
+
+        FrameRef(Object owner, ByteBuffer frame, ReferenceQueue<Object> queue) {
+            super(owner, queue);
+            this.frame = frame;
+        }
+    }
+
+    private final int frameSize;
+    private final int capacity;
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+    // keeps the phantom references themselves reachable
+    private final Set<FrameRef> owned = new HashSet<>();
+    private int allocated;
+    private long heapFallbacks;
+
+    /**
+     * @param frameSize the size of each frame in bytes
+     * @param capacity the maximum number of off-heap frames
+     */
+    public FrameArena(int frameSize, int capacity) {
+        this.frameSize = frameSize;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return true if the {@link #PROPERTY} system property asks for an arena
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(PROPERTY);
+    }
+
+    /**
+     * Returns a zeroed frame of frameSize bytes for owner. The frame returns
+     * to the arena after owner is garbage collected.
+     *
+     * @param owner the object whose lifetime bounds the frame's
+     */
+    public synchronized ByteBuffer allocate(Object owner) {
+        reclaim();
+        ByteBuffer frame = free.poll();
+        if (frame == null && allocated < capacity) {
+            int frames = Math.min(FRAMES_PER_CHUNK, capacity - allocated);
+            ByteBuffer chunk = ByteBuffer.allocateDirect(frames * frameSize);
+            for (int i = 0; i < frames; i++) {
+                chunk.limit((i + 1) * frameSize).position(i * frameSize);
+                free.add(chunk.slice());
+            }
+            allocated += frames;
+            frame = free.poll();
+        }
+        if (frame == null) {
+            heapFallbacks++;
+            return ByteBuffer.allocate(frameSize);
+        }
+        clear(frame);
+        owned.add(new FrameRef(owner, frame, queue));
+        return frame;
+    }
+
+    private void reclaim() {
+        Reference<?> ref;
+        while ((ref = queue.poll()) != null) {
+            FrameRef frameRef = (FrameRef) ref;
+            owned.remove(frameRef);
+            free.add(frameRef.frame);
+        }
+    }
+
+    private static void clear(ByteBuffer frame) {
+        int i = 0;
+        for (; i + 8 <= frame.capacity(); i += 8) {
+            frame.putLong(i, 0L);
+        }
+        for (; i < frame.capacity(); i++) {
+            frame.put(i, (byte) 0);
+        }
+    }
+
+    /**
+     * @return the size of each frame in bytes
+     */
+    public int frameSize() {
+        return frameSize;
+    }
+
+    /**
+     * @return the number of off-heap bytes reserved by the arena so far
+     */
+    public synchronized long reservedBytes() {
+        return (long) allocated * frameSize;
+    }
+
+    /**
+     * @return the number of frames currently owned by live (or not yet
+     * collected) pages
+     */
+    public synchronized int framesInUse() {
+        reclaim();
+        return owned.size();
+    }
+
+    /**
+     * @return the number of allocations served from the heap because every
+     * frame was in use
+     */
+    public synchronized long heapFallbacks() {
+        return heapFallbacks;
+    }
+}
@@ -0,0 +1,134 @@
+package simpledb.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.BitSet;
+
+/**
+ * FreeSpaceMap records which pages of a HeapFile are known to be full, so
+ * that an insert can go straight to a page with room instead of fetching
+ * every page from the start of the file.
+ * <p>
+ * The map is kept in a small file next to the heap file, one byte per page.
+ * Changes are made in memory and written out together by {@link #flush},
+ * which the HeapFile calls when a transaction that used it completes. The
+ * map is only a hint: a page the map does not know about is assumed to have
+ * room, and callers check the page itself before relying on it. A page is
+ * marked as having room again when a tuple is deleted from it, and when the
+ * transaction that filled it aborts.
+ * <p>
+ * The map file also holds the size and modification time the heap file had
+ * when the map was last written. A map whose heap file has changed since,
+ * such as one left behind by an earlier file at the same path, is thrown
+ * away, so the map never outlives the contents it describes. The map of a
+ * heap file that has been deleted is deleted by the next HeapFile that loads
+ * a map in the same directory.
+ *
+ * @see HeapFile#insertTuple
+ * @Threadsafe
+ */
+public class FreeSpaceMap {
+
+    private static final int HEADER_SIZE = 16;
+    private static final byte FULL = 1;
+    private static final byte HAS_ROOM = 0;
+
+    private final File heapFile;
+    private final File file;
+    private final PageChannel channel;
+    private final BitSet full = new BitSet();
+    private final BitSet dirty = new BitSet(); // pages changed since the last flush
+    private boolean stored; // whether the map file holds a header
+    private long storedLength, storedModified; // the heap file's, in the header
+
+    /**
+     * @return the file the map of heapFile is kept in
+     */
+    static File fileFor(File heapFile) {
+        return new File(heapFile.getPath() + ".fsm");
+    }
+
+    /**
+     * Loads the map for a heap file.
+     *
+     * @param heapFile the heap file the map describes
+     */
+    public FreeSpaceMap(File heapFile) throws IOException {
+        this.heapFile = heapFile;
+        this.file = fileFor(heapFile);
+        if (file.exists()) {
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            if (bytes.limit() < HEADER_SIZE || bytes.getLong(0) != heapFile.length()
+                    || bytes.getLong(8) != heapFile.lastModified()) {
+                Files.delete(file.toPath());
+            } else {
+                for (int i = HEADER_SIZE; i < bytes.limit(); i++) {
+                    full.set(i - HEADER_SIZE, bytes.get(i) == FULL);
+                }
+                stored = true;
+                storedLength = bytes.getLong(0);
+                storedModified = bytes.getLong(8);
+            }
+        }
+        // opened on the first flush, so reading never creates the file
+        this.channel = new PageChannel(file);
+    }
+
+    /**
+     * @return the first page at or after from that may have room; pages past
+     * the end of the heap file always may
+     */
+    public synchronized int nextCandidate(int from) {
+        return full.nextClearBit(from);
+    }
+
+    /**
+     * Records that a page has no room left.
+     */
+    public void markFull(int pageNo) {
+        update(pageNo, true);
+    }
+
+    /**
+     * Records that a page has room again.
+     */
+    public void markHasRoom(int pageNo) {
+        update(pageNo, false);
+    }
+
+    private synchronized void update(int pageNo, boolean isFull) {
+        if (full.get(pageNo) != isFull) {
+            full.set(pageNo, isFull);
+            dirty.set(pageNo);
+        }
+    }
+
+    /**
+     * Writes the changes made since the last flush to the map file, in one
+     * write, along with the heap file's current size and modification time.
+     * Does nothing if neither the map nor the heap file has changed since,
+     * and creates no map file until the map has something to record.
+     */
+    public synchronized void flush() throws IOException {
+        long length = heapFile.length();
+        long modified = heapFile.lastModified();
+        if (dirty.isEmpty() && (!stored || (length == storedLength && modified == storedModified))) {
+            return;
+        }
+        if (!dirty.isEmpty()) {
+            int from = dirty.nextSetBit(0);
+            byte[] entries = new byte[dirty.length() - from];
+            for (int i = 0; i < entries.length; i++) {
+                entries[i] = full.get(from + i) ? FULL : HAS_ROOM;
+            }
+            channel.write(HEADER_SIZE + from, entries);
+            dirty.clear();
+        }
+        channel.write(0, ByteBuffer.allocate(HEADER_SIZE).putLong(length).putLong(modified).array());
+        stored = true;
+        storedLength = length;
+        storedModified = modified;
+    }
+}
@@ -1,10 +1,14 @@
 package simpledb.storage;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import simpledb.common.Database;
 import simpledb.common.DbException;
 import simpledb.common.Permissions;
+import simpledb.execution.Predicate;
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.transaction.TransactionId;
 
@@ -13,15 +17,34 @@ import simpledb.transaction.TransactionId;
  * in no particular order. Tuples are stored on pages, each of which is a fixed
  * size, and the file is simply a collection of those pages. HeapFile works
  * closely with HeapPage. The format of HeapPages is described in the HeapPage
- * constructor.
+ * constructor. A file may instead store its tuples as variable-length records
+ * on SlottedHeapPages; its {@link HeapPageFormat} says which.
  *
  * @see HeapPage#HeapPage
+ * @see SlottedHeapPage
  * @author Sam Madden
  */
 public class HeapFile implements DbFile {
 
+    /**
+     * Name of the system property that makes new HeapFiles read their pages
+     * through a memory mapping, e.g.
+     * <code>-Dsimpledb.storage.MappedHeapFiles=true</code>.
+     */
+    public static final String MAPPED_PROPERTY = "simpledb.storage.MappedHeapFiles";
+
     private File file;
     private TupleDesc td;
+    private final HeapPageFormat format;
+    private final PageChannel channel;
+    private volatile boolean mapped = Boolean.getBoolean(MAPPED_PROPERTY);
+    private final AtomicInteger numPages = new AtomicInteger(-1); // read from the file on first use
+    private volatile FreeSpaceMap freeSpace; // loaded by the first insert or delete
+    private volatile ZoneMap zoneMap; // loaded by the first filtered scan
+    private final BitSet unmapped = new BitSet(); // pages changed before the zone map was loaded
+
+    // directories whose maps of deleted heap files have been swept
+    private static final Set<File> sweptDirs = ConcurrentHashMap.newKeySet();
 
     /**
      * Constructs a heap file backed by the specified file.
@@ -30,8 +53,18 @@ public class HeapFile implements DbFile {
      * file.
      */
     public HeapFile(File f, TupleDesc td) {
+        this(f, td, HeapPageFormat.FIXED);
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file, whose pages are in
+     * the given format.
+     */
+    public HeapFile(File f, TupleDesc td, HeapPageFormat format) {
         this.file = f;
         this.td = td;
+        this.format = format;
+        this.channel = new PageChannel(f);
         // some code goes here
     }
 
@@ -67,98 +100,270 @@ public class HeapFile implements DbFile {
         return this.td;
     }
 
-    // see DbFile.java for javadocs
-    @Override
-    public Page readPage(PageId pid) {
+    /**
+     * @return the layout of the pages of this file
+     */
+    public HeapPageFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Returns how many times fewer pages this file takes than its tuples
+     * would take in {@link HeapPageFormat#FIXED} pages, counting the tuples
+     * on the pages as last written to the file. Only a file of
+     * {@link HeapPageFormat#COMPRESSED} pages records its tuple counts where
+     * they can be read without decoding its pages; for any other file the
+     * ratio is 1.
+     */
+    public double getCompressionRatio() throws IOException {
+        int pages = numPages();
+        if (format != HeapPageFormat.COMPRESSED || pages == 0) {
+            return 1;
+        }
         int pageSize = BufferPool.getPageSize();
-        byte[] data = new byte[pageSize];
+        long tuples = 0;
+        byte[] header = new byte[CompressedHeapPage.HEADER_SIZE];
+        for (int pgNo = 0; pgNo < pages; pgNo++) {
+            channel.read((long) pgNo * pageSize, header);
+            tuples += CompressedHeapPage.numTuples(header);
+        }
+        int tuplesPerPage = pageSize * 8 / (td.getSize() * 8 + 1);
+        return (double) ((tuples + tuplesPerPage - 1) / tuplesPerPage) / pages;
+    }
 
-        try (RandomAccessFile f = new RandomAccessFile(getFile(), "r")) {
-            int pageNo = pid.getPageNumber();
-            int offset = pageNo * pageSize;
+    /**
+     * @return true if pages are read through a memory mapping of the file
+     */
+    public boolean isMapped() {
+        return mapped;
+    }
 
-            if (offset >= f.length()) {
-                throw new IOException("Attempting to read beyond file length: " + offset);
-            }
+    /**
+     * Sets whether pages are read through a memory mapping of the file. A
+     * mapped page is copied out of the mapping into its own frame, which
+     * takes no system call; this suits tables that are mostly read. Writes
+     * go through the usual write path either way. Only files of
+     * {@link HeapPageFormat#FIXED} pages are read through a mapping.
+     */
+    public void setMapped(boolean mapped) {
+        this.mapped = mapped;
+    }
 
-            f.seek(offset);
-            int bytesRead = f.read(data, 0, pageSize);
-            if (bytesRead < pageSize) {
-                throw new IOException("Incomplete page read: expected " + pageSize + ", got " + bytesRead);
+    // see DbFile.java for javadocs
+    @Override
+    public Page readPage(PageId pid) {
+        int pageSize = BufferPool.getPageSize();
+        long position = (long) pid.getPageNumber() * pageSize;
+        try {
+            if (mapped && format == HeapPageFormat.FIXED) {
+                ByteBuffer view = channel.map(position, pageSize);
+                if (view != null) {
+                    return new HeapPage((HeapPageId) pid, view);
+                }
             }
-
-            return new HeapPage((HeapPageId) pid, data);
+            byte[] data = new byte[pageSize];
+            channel.read(position, data);
+            return format.newPage((HeapPageId) pid, data);
         } catch (IOException e) {
             throw new RuntimeException("HeapFile.readPage error: " + e.getMessage(), e);
         }
     }
 
     // see DbFile.java for javadocs
-    //1. validate pageid
-    //2. calculate offset
-    //3. write to file
-    //4. catch n throw ioexception
     public void writePage(Page page) throws IOException {
         // some code goes here
-        byte[] dataToWrite = page.getPageData();
-
-        try (RandomAccessFile rf = new RandomAccessFile(file, "rw")) {
-            int pageNo = page.getId().getPageNumber();
-            int offset = pageNo * BufferPool.getPageSize();
-
-            rf.seek(offset);
-            rf.write(dataToWrite); // throws IOException if write fails
-        }
         // not necessary for lab1
         HeapPageId pid = (HeapPageId) page.getId();
         if (pid.getTableId() != getId()) {
             throw new IllegalArgumentException("Page does not belong to this HeapFile");
         }
-        int pageSize = BufferPool.getPageSize();
-        int offset = pid.getPageNumber()*pageSize;
-        try (RandomAccessFile f = new RandomAccessFile(getFile(), "rw")){
-            f.seek(offset);
-            f.write(page.getPageData());
-        } catch (IOException e){
-            throw new IOException("failed to write message to disk");
+        pageCount(); // count the pages before the write, so that it is counted once
+        channel.write((long) pid.getPageNumber() * BufferPool.getPageSize(), page.getPageData());
+        numPages.accumulateAndGet(pid.getPageNumber() + 1, Math::max);
+        ZoneMap zones = zonesFor(pid.getPageNumber());
+        if (zones != null) {
+            zones.record(pid.getPageNumber(), (TuplePage) page);
         }
     }
 
     /**
-     * Returns the number of pages in this HeapFile.
+     * Returns the number of pages in this HeapFile. This looks at the file
+     * itself, so that pages appended to it other than through writePage are
+     * counted too.
      */
     public int numPages() {
-        try (RandomAccessFile f = new RandomAccessFile(getFile(), "r")) {
-            return (int) (f.length() / BufferPool.getPageSize());
+        try {
+            int n = (int) (channel.size() / BufferPool.getPageSize());
+            return numPages.accumulateAndGet(n, Math::max);
         } catch (IOException e) {
             throw new RuntimeException("Unable to get page count", e);
         }
     }
 
+    /**
+     * Returns the number of pages in this HeapFile as last counted by
+     * {@link #numPages} or grown by {@link #writePage}, without asking the
+     * file; inserts, deletes and scans use this.
+     */
+    int pageCount() {
+        int n = numPages.get();
+        return n < 0 ? numPages() : n;
+    }
+
+    /**
+     * Deletes the maps left next to heap files that no longer exist, such as
+     * those of temporary tables, the first time a map is loaded from the
+     * directory of this file.
+     */
+    private void sweepMaps() {
+        File dir = getFile().getAbsoluteFile().getParentFile();
+        if (dir == null || !sweptDirs.add(dir)) {
+            return;
+        }
+        File[] maps = dir.listFiles((d, name) -> name.endsWith(".fsm") || name.endsWith(".zm"));
+        if (maps == null) {
+            return;
+        }
+        for (File map : maps) {
+            String path = map.getPath();
+            if (!new File(path.substring(0, path.lastIndexOf('.'))).exists()) {
+                map.delete();
+            }
+        }
+    }
+
+    /**
+     * @return the free-space map of this file, loading it if needed
+     */
+    private FreeSpaceMap freeSpace() throws IOException {
+        FreeSpaceMap fsm = freeSpace;
+        if (fsm == null) {
+            synchronized (this) {
+                if (freeSpace == null) {
+                    sweepMaps();
+                    freeSpace = new FreeSpaceMap(getFile());
+                }
+                fsm = freeSpace;
+            }
+        }
+        return fsm;
+    }
+
+    /**
+     * Writes out the changes to the free-space map and the zone map since
+     * they were last written.
+     */
+    @Override
+    public void sync() throws IOException {
+        FreeSpaceMap fsm = freeSpace;
+        if (fsm != null) {
+            fsm.flush();
+        }
+        ZoneMap zones = zoneMap;
+        if (zones != null) {
+            zones.flush();
+        }
+    }
+
+    /**
+     * Marks the page as having room again, as the insert that may have
+     * filled it is undone.
+     */
+    @Override
+    public void rolledBack(Page p) {
+        FreeSpaceMap fsm = freeSpace;
+        if (fsm != null) {
+            fsm.markHasRoom(p.getId().getPageNumber());
+        }
+    }
+
+    /**
+     * @return the zone map of this file, loading it if needed
+     */
+    private ZoneMap zones() throws IOException {
+        ZoneMap zones = zoneMap;
+        if (zones == null) {
+            synchronized (this) {
+                if (zoneMap == null) {
+                    sweepMaps();
+                    ZoneMap loaded = new ZoneMap(getFile(), td);
+                    synchronized (unmapped) {
+                        // the file may not have seen these changes yet
+                        for (int p = unmapped.nextSetBit(0); p >= 0; p = unmapped.nextSetBit(p + 1)) {
+                            loaded.forget(p);
+                        }
+                        unmapped.clear();
+                        zoneMap = loaded;
+                    }
+                }
+                zones = zoneMap;
+            }
+        }
+        return zones;
+    }
+
+    /**
+     * Returns the zone map for a change to a page, if the map is loaded.
+     * Otherwise the change is only noted, and the map forgets the page's
+     * bounds when it loads, so that a change never has to load the map.
+     *
+     * @return the zone map, or null if it is not loaded
+     */
+    private ZoneMap zonesFor(int pageNo) {
+        ZoneMap zones = zoneMap;
+        if (zones == null) {
+            synchronized (unmapped) {
+                zones = zoneMap;
+                if (zones == null) {
+                    unmapped.set(pageNo);
+                }
+            }
+        }
+        return zones;
+    }
+
     // see DbFile.java for javadocs
     public List<Page> insertTuple(TransactionId tid, Tuple t)
             throws DbException, IOException, TransactionAbortedException {
         // some code goes here
         List<Page> changedPagesList = new ArrayList<>();
 
-        for (int pgNo = 0; pgNo < numPages(); pgNo++) {
+        // only visit the pages the free-space map says may have room; with
+        // variable-length records, a page is marked full once it has no room
+        // for a tuple, though a smaller one might still fit
+        FreeSpaceMap fsm = freeSpace();
+        int pages = pageCount();
+        for (int pgNo = fsm.nextCandidate(0); pgNo < pages; pgNo = fsm.nextCandidate(pgNo + 1)) {
             HeapPageId pid = new HeapPageId(getId(), pgNo);
-            HeapPage currentPage = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+            TuplePage currentPage = (TuplePage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
 
-            synchronized (currentPage) { // acquire lock on affected pages of file, else block
-                if (currentPage.getNumEmptySlots() > 0) {
-                    currentPage = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+            if (currentPage.hasRoomFor(t)) {
+                // upgrade, then re-check: the room may have gone while we waited
+                currentPage = (TuplePage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+                if (currentPage.hasRoomFor(t)) {
                     currentPage.insertTuple(t);
+                    // the page may be scanned before it is written
+                    ZoneMap zones = zonesFor(pgNo);
+                    if (zones != null) {
+                        zones.widen(pgNo, t);
+                    }
                     changedPagesList.add(currentPage);
-                    break;
                 }
-            } // release lock
+            }
+            if (!currentPage.hasRoomFor(t)) {
+                fsm.markFull(pgNo);
+            }
+            if (!changedPagesList.isEmpty()) {
+                break;
+            }
         }
         if (changedPagesList.isEmpty()) {
-            HeapPage newHeapPage = new HeapPage(new HeapPageId(getId(), numPages()), new byte[BufferPool.getPageSize()]);
-            newHeapPage.insertTuple(t);
-            writePage(newHeapPage);
-            changedPagesList.add(newHeapPage);
+            synchronized (this) { // appending a page must not race with another append
+                TuplePage newHeapPage = format.newPage(new HeapPageId(getId(), pageCount()), new byte[BufferPool.getPageSize()]);
+                newHeapPage.insertTuple(t);
+                writePage(newHeapPage);
+                changedPagesList.add(newHeapPage);
+            }
         }
         return changedPagesList;
         // not necessary for lab1
@@ -170,20 +375,18 @@ public class HeapFile implements DbFile {
         // some code goes here
         ArrayList<Page> changedPagesList = new ArrayList<>();
 
-        for (int pgNo = 0; pgNo < numPages(); pgNo++) {
-            PageId pid = t.getRecordId().getPageId();
-            HeapPage currentPage = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
-
-            synchronized (currentPage) {
-                if (pid.getPageNumber() == pgNo) {
-                    currentPage = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
-                    currentPage.deleteTuple(t);
-                    changedPagesList.add(currentPage);
-                    break;
-                }
-            }
+        PageId pid = t.getRecordId().getPageId();
+        if (pid.getTableId() != getId() || pid.getPageNumber() >= pageCount()) {
+            throw new DbException("tuple is not a member of this file");
         }
-
+        TuplePage currentPage = (TuplePage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+        currentPage.deleteTuple(t);
+        try {
+            freeSpace().markHasRoom(pid.getPageNumber());
+        } catch (IOException e) {
+            throw new DbException("unable to load the free-space map: " + e.getMessage());
+        }
+        changedPagesList.add(currentPage);
         return changedPagesList;
         // not necessary for lab1
     }
@@ -191,26 +394,87 @@ public class HeapFile implements DbFile {
     // see DbFile.java for javadocs
     public DbFileIterator iterator(TransactionId tid) {
         // some code goes here
-        return new HeapFileIterator(tid, this);
+        return new HeapFileIterator(tid, this, null, new Predicate[0], null);
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public DbFileIterator iterator(TransactionId tid, int[] columns) {
+        return new HeapFileIterator(tid, this, columns, new Predicate[0], null);
+    }
+
+    /**
+     * Returns an iterator that skips the pages whose zone map bounds show
+     * that no tuple on them can satisfy all of filters. Pages whose bounds
+     * are not known yet are read, and their bounds recorded, and filters on
+     * string columns never skip a page. On the pages that are read, each
+     * page tests the filters before it builds a tuple.
+     *
+     * @see ZoneMap
+     */
+    @Override
+    public DbFileIterator iterator(TransactionId tid, int[] columns, Predicate[] filters) {
+        return new HeapFileIterator(tid, this, columns, filters, null);
+    }
+
+    /**
+     * Returns an iterator like {@link #iterator(TransactionId, int[],
+     * Predicate[])} that only reads the pages it claims from morsels, so
+     * that the iterators sharing morsels read each page of the file between
+     * them exactly once. Opening the iterator does not hand the pages out
+     * again; see {@link Morsels#reset()}.
+     */
+    public DbFileIterator iterator(TransactionId tid, int[] columns, Predicate[] filters, Morsels morsels) {
+        if (morsels.getFile() != this) {
+            throw new IllegalArgumentException("the morsels are pages of another file");
+        }
+        return new HeapFileIterator(tid, this, columns, filters, morsels);
     }
 
     class HeapFileIterator extends AbstractDbFileIterator {
 
         TransactionId tid;
         HeapFile hf;
+        int[] columns; // the fields to decode, or null for all of them
+        Predicate[] filters; // the tuples returned satisfy these
+        ZoneMap zones; // while open, if there are filters
         int currentPage;
         Iterator<Tuple> iter;
-
-        public HeapFileIterator(TransactionId tid, HeapFile hf) {
+        HeapPageId pinned; // the page being walked, kept in the pool until we move on
+        ScanRing ring; // private frames when the file is too large for the pool
+        int pages; // the page count when last checked
+        int prefetchedTo; // the last page read ahead
+        Morsels morsels; // the page ranges to claim, or null to read every page
+        int morselEnd; // the page after the claimed morsel
+
+        public HeapFileIterator(TransactionId tid, HeapFile hf, int[] columns, Predicate[] filters, Morsels morsels) {
             this.tid = tid;
             this.hf = hf;
+            this.columns = columns;
+            this.filters = filters;
+            this.morsels = morsels;
             this.currentPage = -1;
         }
 
         @Override
         public void open() throws DbException, TransactionAbortedException {
+            if (filters.length > 0) {
+                try {
+                    zones = zones();
+                } catch (IOException e) {
+                    throw new DbException("unable to load the zone map: " + e.getMessage());
+                }
+            }
             currentPage = 0;
-            iter = loadPage(currentPage);
+            prefetchedTo = 0;
+            pages = pageCount();
+            ring = Database.getBufferPool().newScanRing(pages);
+            if (morsels == null) {
+                iter = loadPage(currentPage);
+            } else {
+                morselEnd = 0; // nothing claimed yet
+                iter = claim() ? loadPage(currentPage) : null;
+            }
         }
 
         @Override
@@ -225,18 +489,65 @@ public class HeapFile implements DbFile {
                 return false;
             }
 
-            while ((iter == null || !iter.hasNext()) && currentPage < hf.numPages() - 1) {
-                currentPage++;
+            while ((iter == null || !iter.hasNext()) && advance()) {
                 iter = loadPage(currentPage);
             }
 
             return iter != null && iter.hasNext();
         }
 
+        /**
+         * Moves currentPage on to the next page to read.
+         *
+         * @return false if there are no pages left
+         */
+        private boolean advance() {
+            if (morsels == null) {
+                // only look at the file again once the pages seen so far are used up
+                if (currentPage < pages - 1 || currentPage < (pages = hf.pageCount()) - 1) {
+                    currentPage++;
+                    return true;
+                }
+                return false;
+            }
+            if (currentPage < morselEnd - 1) {
+                currentPage++;
+                return true;
+            }
+            return claim();
+        }
+
+        /**
+         * Claims the next morsel and moves currentPage to its first page.
+         *
+         * @return false if every morsel has been claimed
+         */
+        private boolean claim() {
+            int start = morsels.claim();
+            if (start < 0) {
+                return false;
+            }
+            pages = hf.pageCount();
+            currentPage = start;
+            morselEnd = Math.min(start + morsels.size(), pages);
+            return true;
+        }
+
         @Override
         public void close() {
+            super.close();
+            unpin();
             this.currentPage = -1;
             iter = null;
+            ring = null;
+            zones = null;
+        }
+
+        private void unpin() {
+            if (pinned != null) {
+                Database.getBufferPool().unpinPage(tid, pinned);
+                pinned = null;
+            }
         }
 
         @Override
@@ -246,8 +557,66 @@ public class HeapFile implements DbFile {
 
         public Iterator<Tuple> loadPage(int pageNo) throws DbException, TransactionAbortedException {
             HeapPageId hpid = new HeapPageId(getId(), pageNo);
-            HeapPage p = (HeapPage) Database.getBufferPool().getPage(tid, hpid, Permissions.READ_ONLY);
-            return p.iterator();
+            readAhead(pageNo);
+            if (!mayMatch(pageNo)) {
+                unpin();
+                return Collections.emptyIterator();
+            }
+            if (ring != null) {
+                // ring pages are private to this scan and need no pin
+                return tuples(pageNo, (TuplePage) Database.getBufferPool().getPage(tid, hpid, Permissions.READ_ONLY, ring));
+            }
+            // release the old page first, so its frame can take the new one
+            unpin();
+            TuplePage p = (TuplePage) Database.getBufferPool().pinPage(tid, hpid, Permissions.READ_ONLY);
+            pinned = hpid;
+            return tuples(pageNo, p);
+        }
+
+        /**
+         * @return false if the zone map shows that no tuple on the page can
+         * satisfy the filters
+         */
+        private boolean mayMatch(int pageNo) {
+            for (Predicate p : filters) {
+                if (!zones.mayMatch(pageNo, p)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private Iterator<Tuple> tuples(int pageNo, TuplePage p) throws DbException {
+            // a dirty page may hold changes that are yet to be committed
+            if (zones != null && !zones.isKnown(pageNo) && p.isDirty() == null) {
+                zones.record(pageNo, p);
+            }
+            if (filters.length > 0) {
+                return p.iterator(columns, filters);
+            }
+            return columns == null ? p.iterator() : p.iterator(columns);
+        }
+
+        /**
+         * Keeps the next prefetch-depth pages after pageNo on their way in.
+         * A ring gets at most half its frames read ahead, so that pages read
+         * ahead are not pushed out of it before the scan reaches them. A scan
+         * of morsels reads ahead no further than the end of its morsel, as the
+         * pages after it may go to another scan.
+         */
+        private void readAhead(int pageNo) {
+            BufferPool bp = Database.getBufferPool();
+            int depth = bp.getPrefetchDepth();
+            if (ring != null) {
+                depth = Math.min(depth, ring.size() / 2);
+            }
+            int last = Math.min(pageNo + depth, (morsels == null ? pages : morselEnd) - 1);
+            for (int p = Math.max(prefetchedTo, pageNo) + 1; p <= last; p++) {
+                if (mayMatch(p)) {
+                    bp.prefetch(tid, new HeapPageId(getId(), p), ring);
+                }
+            }
+            prefetchedTo = Math.max(prefetchedTo, last);
         }
 
     }
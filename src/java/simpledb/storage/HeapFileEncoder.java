@@ -4,6 +4,7 @@ import simpledb.common.Type;
 import simpledb.common.Utility;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 
@@ -224,4 +225,81 @@ public class HeapFileEncoder {
     br.close();
     os.close();
   }
+
+  /** Rewrite a file of HeapPages, the fixed-width format, as a file of
+   * SlottedHeapPages holding the same tuples in the same order. <br>
+   *
+   * Tuples are packed into as few pages as they fit, so their RecordIds
+   * change and any index over the table must be rebuilt. The input file is
+   * read directly, without the buffer pool or the catalog, and must not be
+   * written to meanwhile.
+   *
+   * @see HeapPage
+   * @see SlottedHeapPage
+   * @param inFile The file of fixed-width pages to read
+   * @param outFile The output file to write data to
+   * @param npagebytes The number of bytes per page in both files
+   * @param td The schema of the tuples in inFile
+   * @throws IOException if the input/output file can't be opened, or a tuple
+   *   does not fit on an empty slotted page
+   */
+  public static void convertToSlotted(File inFile, File outFile, int npagebytes, TupleDesc td)
+      throws IOException {
+      int nrecbytes = td.getSize();
+      int nrecords = (npagebytes * 8) / (nrecbytes * 8 + 1);
+      int nheaderbytes = (nrecords + 7) / 8;
+
+      byte[] in = new byte[npagebytes];
+      ByteBuffer page = ByteBuffer.allocate(npagebytes);
+      boolean pageEmpty = true;
+      try (InputStream is = new BufferedInputStream(new FileInputStream(inFile));
+           OutputStream os = new BufferedOutputStream(new FileOutputStream(outFile))) {
+          while (readPage(is, in)) {
+              ByteBuffer src = ByteBuffer.wrap(in);
+              for (int slot = 0; slot < nrecords; slot++) {
+                  if ((in[slot / 8] & (1 << (slot % 8))) == 0) {
+                      continue;
+                  }
+                  Tuple t = new Tuple(td);
+                  int offset = nheaderbytes + slot * nrecbytes;
+                  for (int j = 0; j < td.numFields(); j++) {
+                      t.setField(j, td.getFieldType(j).parse(src, offset));
+                      offset += td.getFieldType(j).getLen();
+                  }
+                  if (!SlottedHeapPage.fits(page, td, t) && !pageEmpty) {
+                      os.write(page.array());
+                      page = ByteBuffer.allocate(npagebytes);
+                  }
+                  if (!SlottedHeapPage.fits(page, td, t)) {
+                      throw new IOException("Tuple does not fit on a page: " + t);
+                  }
+                  SlottedHeapPage.insert(page, td, t);
+                  pageEmpty = false;
+              }
+          }
+          // like convert, an empty table still gets one (empty) page
+          os.write(page.array());
+      }
+  }
+
+  /**
+   * Fills buf from is.
+   *
+   * @return false if is was at its end
+   * @throws EOFException if is ends part way through buf
+   */
+  private static boolean readPage(InputStream is, byte[] buf) throws IOException {
+      int n = 0;
+      while (n < buf.length) {
+          int read = is.read(buf, n, buf.length - n);
+          if (read < 0) {
+              if (n == 0) {
+                  return false;
+              }
+              throw new EOFException("Partial page at the end of the file");
+          }
+          n += read;
+      }
+      return true;
+  }
 }
@@ -1,29 +1,46 @@
 package simpledb.storage;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 import simpledb.common.Catalog;
 import simpledb.common.Database;
 import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.execution.Predicate;
 import simpledb.transaction.TransactionId;
 
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and
  * implements the Page interface that is used by BufferPool.
+ * <p>
+ * The page keeps its on-disk bytes and works on them in place. Tuples handed
+ * out by the iterator are views of these bytes, and each of their fields is
+ * only decoded when it is read; the page copies its bytes before changing
+ * them while such views may exist. The bytes live in a frame of the
+ * buffer pool's {@link FrameArena} when one is configured, and in a heap
+ * buffer otherwise. A page read through a memory mapping copies its bytes
+ * out of the mapping into such a frame, so later writes to the file do not
+ * change it.
  *
  * @see HeapFile
  * @see BufferPool
+ * @see HeapPageFormat#FIXED
  *
  */
-public class HeapPage implements Page {
+public class HeapPage implements TuplePage {
 
     final HeapPageId pid;
     final TupleDesc td;
-    final byte[] header;
-    final Tuple[] tuples;
     final int numSlots;
+    final int headerSize;
+    final int tupleSize;
+    final int[] fieldOffsets; // of each field within a tuple
+    // read-only while tuples handed out by the iterator read from it
+    private ByteBuffer data;
     private TransactionId dirtyTID;
 
+    // null while the page still matches its before-image
     byte[] oldData;
     private final Byte oldDataLock = (byte) 0;
 
@@ -41,6 +58,8 @@ public class HeapPage implements Page {
      * <p>
      * ceiling(no. tuple slots / 8)
      * <p>
+     * The bytes are copied, so the caller may reuse data afterwards.
+     *
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
      * @see BufferPool#getPageSize()
@@ -49,29 +68,61 @@ public class HeapPage implements Page {
         this.pid = id;
         this.dirtyTID = null;
         this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.tupleSize = td.getSize();
         this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        this.headerSize = getHeaderSize();
+        this.fieldOffsets = getFieldOffsets(td);
 
-        // allocate and read the header slots of this page
-        header = new byte[getHeaderSize()];
-        for (int i = 0; i < header.length; i++) {
-            header[i] = dis.readByte();
-        }
+        // a short array leaves the rest of the page zeroed, i.e. empty
+        this.data = allocateFrame();
+        this.data.put(data, 0, Math.min(data.length, BufferPool.getPageSize()));
+        this.data.clear();
 
-        tuples = new Tuple[numSlots];
-        try {
-            // allocate and read the actual records of this page
-            for (int i = 0; i < tuples.length; i++) {
-                tuples[i] = readNextTuple(dis, i);
-            }
-        } catch (NoSuchElementException e) {
-            e.printStackTrace();
-        }
-        dis.close();
+        setBeforeImage();
+    }
+
+    /**
+     * Create a HeapPage from a view of its bytes, such as a region of a
+     * memory-mapped file, copying them straight into the page's frame. The
+     * view must hold exactly one page, starting at position 0.
+     *
+     * @see #HeapPage(HeapPageId, byte[])
+     */
+    HeapPage(HeapPageId id, ByteBuffer view) {
+        this.pid = id;
+        this.dirtyTID = null;
+        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.tupleSize = td.getSize();
+        this.numSlots = getNumTuples();
+        this.headerSize = getHeaderSize();
+        this.fieldOffsets = getFieldOffsets(td);
+        this.data = allocateFrame();
+        this.data.put(view.duplicate());
+        this.data.clear();
 
         setBeforeImage();
     }
 
+    /**
+     * Takes a frame from the buffer pool's arena if it has one of the right
+     * size, else allocates a heap buffer.
+     */
+    private ByteBuffer allocateFrame() {
+        FrameArena arena = Database.getBufferPool().getFrameArena();
+        if (arena != null && arena.frameSize() == BufferPool.getPageSize()) {
+            return arena.allocate(this);
+        }
+        return ByteBuffer.allocate(BufferPool.getPageSize());
+    }
+
+    private static int[] getFieldOffsets(TupleDesc td) {
+        int[] offsets = new int[td.numFields()];
+        for (int j = 1; j < offsets.length; j++) {
+            offsets[j] = offsets[j - 1] + td.getFieldType(j - 1).getLen();
+        }
+        return offsets;
+    }
+
     /**
      * Retrieve the number of tuples on this page.
      *
@@ -105,7 +156,7 @@ public class HeapPage implements Page {
             synchronized (oldDataLock) {
                 oldDataRef = oldData;
             }
-            return new HeapPage(pid, oldDataRef);
+            return new HeapPage(pid, oldDataRef != null ? oldDataRef : getPageData());
         } catch (IOException e) {
             e.printStackTrace();
             //should never happen -- we parsed it OK before!
@@ -115,8 +166,29 @@ public class HeapPage implements Page {
     }
 
     public void setBeforeImage() {
+        // the current bytes are the before-image until the next modification
         synchronized (oldDataLock) {
-            oldData = getPageData().clone();
+            oldData = null;
+        }
+    }
+
+    /**
+     * Saves the current bytes as the before-image, if no modification has
+     * done so since the last {@link #setBeforeImage}. Must be called before
+     * every change to the page's bytes.
+     */
+    private void preserveBeforeImage() {
+        synchronized (oldDataLock) {
+            if (oldData == null) {
+                oldData = getPageData();
+            }
+        }
+        if (data.isReadOnly()) {
+            // never write under a tuple's feet
+            ByteBuffer frame = allocateFrame();
+            frame.put(data.duplicate());
+            frame.clear();
+            data = frame;
         }
     }
 
@@ -129,37 +201,38 @@ public class HeapPage implements Page {
     }
 
     /**
-     * Suck up tuples from the source file.
+     * @return the offset in the page of the given slot's tuple
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) {
-            for (int i = 0; i < td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
-            return null;
-        }
+    int slotOffset(int slotId) {
+        return headerSize + slotId * tupleSize;
+    }
 
-        // read fields in the tuple
-        Tuple t = new Tuple(td);
-        RecordId rid = new RecordId(pid, slotId);
-        t.setRecordId(rid);
-        try {
-            for (int j = 0; j < td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
-            }
-        } catch (java.text.ParseException e) {
-            e.printStackTrace();
-            throw new NoSuchElementException("parsing error!");
+    /**
+     * Returns a tuple in a used slot, whose fields are decoded as they are
+     * read. The page's bytes become read-only, so that the next modification
+     * copies them and the tuple keeps reading the bytes it came from.
+     */
+    private Tuple readTuple(int slotId) {
+        ByteBuffer bytes = data;
+        if (!bytes.isReadOnly()) {
+            bytes = bytes.asReadOnlyBuffer();
+            data = bytes;
         }
+        return new Tuple(td, this, bytes, slotId);
+    }
 
-        return t;
+    /**
+     * Decodes field i of the tuple stored in bytes at tupleOffset.
+     */
+    Field readField(ByteBuffer bytes, int tupleOffset, int i) {
+        return td.getFieldType(i).parse(bytes, tupleOffset + fieldOffsets[i]);
+    }
+
+    /**
+     * Reads int field i of the tuple stored in bytes at tupleOffset.
+     */
+    int readInt(ByteBuffer bytes, int tupleOffset, int i) {
+        return bytes.getInt(tupleOffset + fieldOffsets[i]);
     }
 
     /**
@@ -174,64 +247,9 @@ public class HeapPage implements Page {
      * @return A byte array correspond to the bytes of this page.
      */
     public byte[] getPageData() {
-        int len = BufferPool.getPageSize();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
-
-        // create the header of the page
-        for (byte b : header) {
-            try {
-                dos.writeByte(b);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
-
-        // create the tuples
-        for (int i = 0; i < tuples.length; i++) {
-
-            // empty slot
-            if (!isSlotUsed(i)) {
-                for (int j = 0; j < td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
-                }
-                continue;
-            }
-
-            // non-empty slot
-            for (int j = 0; j < td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
-                try {
-                    f.serialize(dos);
-
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        // padding
-        int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        return baos.toByteArray();
+        byte[] bytes = new byte[BufferPool.getPageSize()];
+        data.duplicate().get(bytes);
+        return bytes;
     }
 
     /**
@@ -261,15 +279,21 @@ public class HeapPage implements Page {
         if (tupleRecordId == null) {
             throw new DbException("Tuple does not exist or has already been deleted.");
         }
-        if (tupleRecordId.getPageId() != pid) {
+        if (!pid.equals(tupleRecordId.getPageId())) {
             throw new DbException("Tuple does not belong to current page.");
         }
-        if (!isSlotUsed(tupleRecordId.getTupleNumber())) {
+        int slot = tupleRecordId.getTupleNumber();
+        if (slot < 0 || slot >= numSlots || !isSlotUsed(slot)) {
             throw new DbException("Page slot already empty.");
         }
 
-        tuples[tupleRecordId.getTupleNumber()] = null;
-        markSlotUsed(tupleRecordId.getTupleNumber(), false);
+        preserveBeforeImage();
+        // zero the slot so the page bytes match a freshly written page
+        int offset = slotOffset(slot);
+        for (int i = 0; i < tupleSize; i++) {
+            data.put(offset + i, (byte) 0);
+        }
+        markSlotUsed(slot, false);
         // not necessary for lab1
     }
 
@@ -288,23 +312,21 @@ public class HeapPage implements Page {
         if (!t.getTupleDesc().equals(td)) {
             throw new DbException("Tuple description different from page's tuple description.");
         }
-        if (getNumEmptySlots() > 0) {
-
-            for (int i = 0; i < numSlots; i++) {
-                if (!isSlotUsed(i)) {
-                    t.setRecordId(new RecordId(pid, i));
-                    markSlotUsed(i, true);
-                    tuples[i] = t;
-                    break;
+        for (int i = 0; i < numSlots; i++) {
+            if (!isSlotUsed(i)) {
+                preserveBeforeImage();
+                int offset = slotOffset(i);
+                for (int j = 0; j < td.numFields(); j++) {
+                    t.getField(j).serialize(data, offset);
+                    offset += td.getFieldType(j).getLen();
                 }
+                markSlotUsed(i, true);
+                t.setRecordId(new RecordId(pid, i));
+                return;
             }
-            return;
         }
 
         throw new DbException("Page is full, tuple not inserted.");
-
-        // update tuple recordid and tuplenum
-        // update tuple array
     }
 
     /**
@@ -341,13 +363,22 @@ public class HeapPage implements Page {
         return count;
     }
 
+    public boolean hasRoomFor(Tuple t) {
+        for (int i = 0; i < numSlots; i++) {
+            if (!isSlotUsed(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Returns true if associated slot on this page is filled.
      */
     public boolean isSlotUsed(int i) {
         int headerIndex = i / 8; // Byte index in header 
         int bitIndex = i % 8;    // Bit index within the byte
-        return (header[headerIndex] & (1 << bitIndex)) != 0;
+        return (data.get(headerIndex) & (1 << bitIndex)) != 0;
     }
 
     /**
@@ -357,23 +388,123 @@ public class HeapPage implements Page {
         // some code goes here
         // not necessary for lab1
         if (isSlotUsed(i) != value) {
-            header[i / 8] ^= 1 << (i % 8);
+            data.put(i / 8, (byte) (data.get(i / 8) ^ (1 << (i % 8))));
+        }
+    }
+
+    /**
+     * @return true if the tuple in a used slot satisfies every one of filters
+     */
+    private boolean matches(int slotId, Predicate[] filters) {
+        ByteBuffer bytes = data;
+        int offset = slotOffset(slotId);
+        for (Predicate p : filters) {
+            int i = p.getField();
+            boolean match = td.getFieldType(i) == Type.INT_TYPE && p.getOperand() instanceof IntField
+                    ? p.filter(readInt(bytes, offset, i))
+                    : readField(bytes, offset, i).compare(p.getOp(), p.getOperand());
+            if (!match) {
+                return false;
+            }
         }
+        return true;
+    }
+
+    /**
+     * Appends the tuples in used slots, from fromSlot on, to batch until it
+     * is full. Only the columns the batch holds are read, straight from the
+     * page's bytes and a column at a time, without building tuples.
+     *
+     * @return the slot to go on from, or -1 if the page has no more tuples
+     */
+    public int fill(TupleBatch batch, int fromSlot) {
+        ByteBuffer bytes = data;
+        int[] offsets = new int[Math.min(numSlots, TupleBatch.SIZE)];
+        int count = 0;
+        int room = TupleBatch.SIZE - batch.size();
+        int slot = fromSlot;
+        for (; slot < numSlots && count < room; slot++) {
+            if (isSlotUsed(slot)) {
+                offsets[count++] = slotOffset(slot);
+            }
+        }
+        int first = batch.append(count);
+        for (int i = 0; i < fieldOffsets.length; i++) {
+            int[] ints = batch.ints(i);
+            String[] strings = batch.strings(i);
+            if (ints != null) {
+                int fieldOffset = fieldOffsets[i];
+                for (int k = 0; k < count; k++) {
+                    ints[first + k] = bytes.getInt(offsets[k] + fieldOffset);
+                }
+            } else if (strings != null) {
+                for (int k = 0; k < count; k++) {
+                    strings[first + k] = ((StringField) readField(bytes, offsets[k], i)).getValue();
+                }
+            }
+        }
+        return slot < numSlots ? slot : -1;
+    }
+
+    /**
+     * Same as {@link #iterator()}: fields are only decoded as they are read,
+     * so nothing is saved by leaving any out.
+     */
+    public Iterator<Tuple> iterator(int[] columns) {
+        return iterator();
     }
 
     /**
      * @return an iterator over all tuples on this page (calling remove on this
      * iterator throws an UnsupportedOperationException) (note that this
      * iterator shouldn't return tuples in empty slots!)
+     * <p>
+     * Tuples are decoded as the iterator reaches them. Only the slots in use
+     * when the iterator was created are visited; a tuple deleted before the
+     * iterator reaches it is skipped.
      */
     public Iterator<Tuple> iterator() {
-        List<Tuple> nonEmptyTuples = new ArrayList<>();
-        for (Tuple tuple : tuples) {
-            if (tuple != null) {
-                nonEmptyTuples.add(tuple);
+        return iterator(null, new Predicate[0]);
+    }
+
+    /**
+     * Tests the filters against the page's bytes before building each
+     * tuple: an int field is compared where it lies, and other fields are
+     * decoded alone. Tuples that fail a filter are never built.
+     */
+    @Override
+    public Iterator<Tuple> iterator(int[] columns, Predicate[] filters) {
+        final byte[] usedSlots = new byte[headerSize];
+        data.duplicate().get(usedSlots);
+        return new Iterator<Tuple>() {
+            private int matched = -1; // the last slot known to pass filters
+            private int slot = advance(0);
+
+            private int advance(int from) {
+                while (from < numSlots
+                        && ((usedSlots[from / 8] & (1 << (from % 8))) == 0 || !isSlotUsed(from)
+                            || (from != matched && !matches(from, filters)))) {
+                    from++;
+                }
+                matched = from;
+                return from;
             }
-        }
-        return nonEmptyTuples.iterator();
+
+            @Override
+            public boolean hasNext() {
+                // the page may have changed since the last call
+                slot = advance(slot);
+                return slot < numSlots;
+            }
+
+            @Override
+            public Tuple next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return readTuple(slot++);
+            }
+        };
     }
 
 }
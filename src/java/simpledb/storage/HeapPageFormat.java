@@ -0,0 +1,70 @@
+package simpledb.storage;
+
+import java.io.IOException;
+
+/**
+ * The layouts a HeapFile can store its pages in. A table's format is chosen
+ * when its HeapFile is created, e.g. by a catalog schema line ending in
+ * <code>slotted</code>, and every page of the file uses it.
+ *
+ * @see HeapFile#HeapFile(java.io.File, TupleDesc, HeapPageFormat)
+ * @see HeapFileEncoder#convertToSlotted
+ */
+public enum HeapPageFormat {
+
+    /**
+     * Fixed-width slots, each as large as the largest possible tuple.
+     *
+     * @see HeapPage
+     */
+    FIXED {
+        @Override
+        public TuplePage newPage(HeapPageId pid, byte[] data) throws IOException {
+            return new HeapPage(pid, data);
+        }
+    },
+
+    /**
+     * A slot directory over variable-length records.
+     *
+     * @see SlottedHeapPage
+     */
+    SLOTTED {
+        @Override
+        public TuplePage newPage(HeapPageId pid, byte[] data) {
+            return new SlottedHeapPage(pid, data);
+        }
+    },
+
+    /**
+     * Fixed-width values stored column by column, for wide tables that are
+     * scanned a few columns at a time.
+     *
+     * @see PaxHeapPage
+     */
+    PAX {
+        @Override
+        public TuplePage newPage(HeapPageId pid, byte[] data) {
+            return new PaxHeapPage(pid, data);
+        }
+    },
+
+    /**
+     * Columns compressed with run-length, dictionary or frame-of-reference
+     * encoding, for tables of repetitive values.
+     *
+     * @see CompressedHeapPage
+     */
+    COMPRESSED {
+        @Override
+        public TuplePage newPage(HeapPageId pid, byte[] data) {
+            return new CompressedHeapPage(pid, data);
+        }
+    };
+
+    /**
+     * Decodes a page of this format. An array of zeros is an empty page in
+     * every format.
+     */
+    public abstract TuplePage newPage(HeapPageId pid, byte[] data) throws IOException;
+}
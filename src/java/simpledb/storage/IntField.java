@@ -4,6 +4,7 @@ import simpledb.execution.Predicate;
 import simpledb.common.Type;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Instance of Field that stores a single integer.
@@ -44,6 +45,10 @@ public class IntField implements Field {
         dos.writeInt(value);
     }
 
+    public void serialize(ByteBuffer buf, int offset) {
+        buf.putInt(offset, value);
+    }
+
     /**
      * Compare the specified field to the value of this Field.
      * Return semantics are as specified by Field.compare
@@ -55,20 +60,28 @@ public class IntField implements Field {
 
         IntField iVal = (IntField) val;
 
+        return compare(op, value, iVal.value);
+    }
+
+    /**
+     * Same as {@link #compare(Predicate.Op, Field)} for the IntFields
+     * holding a and b, without building them.
+     */
+    public static boolean compare(Predicate.Op op, int a, int b) {
         switch (op) {
             case EQUALS:
             case LIKE:
-                return value == iVal.value;
+                return a == b;
             case NOT_EQUALS:
-                return value != iVal.value;
+                return a != b;
             case GREATER_THAN:
-                return value > iVal.value;
+                return a > b;
             case GREATER_THAN_OR_EQ:
-                return value >= iVal.value;
+                return a >= b;
             case LESS_THAN:
-                return value < iVal.value;
+                return a < b;
             case LESS_THAN_OR_EQ:
-                return value <= iVal.value;
+                return a <= b;
         }
 
         return false;
@@ -0,0 +1,105 @@
+package simpledb.storage;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Least recently used replacement. Resident pages are threaded onto an
+ * intrusive, circular, doubly linked recency list indexed by a hash map, so
+ * admissions, hits and evictions are all O(1).
+ */
+public class LruEvictionPolicy implements EvictionPolicy {
+
+    private static class Node {
+
+        final PageId pid;
+        Node prev;
+        Node next;
+
+        Node(PageId pid) {
+            this.pid = pid;
+        }
+    }
+
+    private final Map<PageId, Node> nodes = new HashMap<>();
+    private final Node lru; // sentinel: lru.next is the least recently used page, lru.prev the most recent
+
+    public LruEvictionPolicy() {
+        lru = new Node(null);
+        lru.prev = lru;
+        lru.next = lru;
+    }
+
+    @Override
+    public void admit(PageId pid) {
+        Node node = nodes.get(pid);
+        if (node == null) {
+            node = new Node(pid);
+            nodes.put(pid, node);
+        } else {
+            unlink(node);
+        }
+        linkMostRecent(node);
+    }
+
+    @Override
+    public void access(PageId pid) {
+        admit(pid);
+    }
+
+    @Override
+    public void evicted(PageId pid) {
+        remove(pid);
+    }
+
+    @Override
+    public void remove(PageId pid) {
+        Node node = nodes.remove(pid);
+        if (node != null) {
+            unlink(node);
+        }
+    }
+
+    @Override
+    public Iterator<PageId> victims() {
+        return new Iterator<PageId>() {
+            private Node cur = lru.next;
+
+            @Override
+            public boolean hasNext() {
+                return cur != lru;
+            }
+
+            @Override
+            public PageId next() {
+                if (cur == lru) {
+                    throw new NoSuchElementException();
+                }
+                PageId pid = cur.pid;
+                cur = cur.next;
+                return pid;
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return nodes.size();
+    }
+
+    private void unlink(Node node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+    }
+
+    private void linkMostRecent(Node node) {
+        node.prev = lru.prev;
+        node.next = lru;
+        lru.prev.next = node;
+        lru.prev = node;
+    }
+}
@@ -0,0 +1,150 @@
+package simpledb.storage;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+
+/**
+ * LRU-K replacement (O'Neil, O'Neil and Weikum). Each page keeps the times of
+ * its last K references and the victim is the page whose K-th most recent
+ * reference lies furthest in the past. Pages referenced fewer than K times
+ * have an infinite backward K-distance and are evicted first, in LRU order, so
+ * a single sequential scan cannot push out pages that are referenced
+ * repeatedly.
+ * <p>
+ * Reference histories of evicted pages are retained (up to one pool's worth)
+ * so that a page that is re-read soon after eviction keeps its history.
+ */
+public class LruKEvictionPolicy implements EvictionPolicy {
+
+    public static final int DEFAULT_K = 2;
+
+    private static class Node {
+
+        final PageId pid;
+        final long[] history; // history[0] is the most recent reference, 0 means never
+
+        Node(PageId pid, long[] history) {
+            this.pid = pid;
+            this.history = history;
+        }
+
+        long kth() {
+            return history[history.length - 1];
+        }
+
+        long last() {
+            return history[0];
+        }
+    }
+
+    private final int k;
+    private final Map<PageId, Node> nodes = new HashMap<>();
+    private final TreeSet<Node> order;
+    private final Map<PageId, long[]> retained;
+    private long clock = 0;
+
+    /**
+     * @param k the number of references remembered per page
+     * @param numPages the number of frames managed, used to bound the retained
+     * history of evicted pages
+     */
+    public LruKEvictionPolicy(int k, final int numPages) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1");
+        }
+        this.k = k;
+        // pages are unique in (kth, last): every reference gets its own tick
+        this.order = new TreeSet<>((a, b) -> {
+            int c = Long.compare(a.kth(), b.kth());
+            return c != 0 ? c : Long.compare(a.last(), b.last());
+        });
+        this.retained = new LinkedHashMap<PageId, long[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PageId, long[]> eldest) {
+                return size() > numPages;
+            }
+        };
+    }
+
+    @Override
+    public void admit(PageId pid) {
+        Node node = nodes.get(pid);
+        if (node == null) {
+            long[] history = retained.remove(pid);
+            node = new Node(pid, history != null ? history : new long[k]);
+            nodes.put(pid, node);
+        } else {
+            order.remove(node);
+        }
+        reference(node);
+    }
+
+    @Override
+    public void access(PageId pid) {
+        Node node = nodes.get(pid);
+        if (node == null) {
+            admit(pid);
+            return;
+        }
+        order.remove(node);
+        reference(node);
+    }
+
+    @Override
+    public void evicted(PageId pid) {
+        Node node = nodes.remove(pid);
+        if (node != null) {
+            order.remove(node);
+            retained.put(pid, node.history);
+        }
+    }
+
+    @Override
+    public void remove(PageId pid) {
+        Node node = nodes.remove(pid);
+        if (node != null) {
+            order.remove(node);
+        }
+        retained.remove(pid);
+    }
+
+    @Override
+    public Iterator<PageId> victims() {
+        final Iterator<Node> it = order.iterator();
+        return new Iterator<PageId>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public PageId next() {
+                if (!it.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return it.next().pid;
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Records a reference at the current time and re-inserts the node into the
+     * eviction order. The node must not be in the order when this is called.
+     */
+    private void reference(Node node) {
+        System.arraycopy(node.history, 0, node.history, 1, k - 1);
+        node.history[0] = ++clock;
+        order.add(node);
+    }
+}
@@ -0,0 +1,78 @@
+package simpledb.storage;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Morsels hands out the pages of a HeapFile in ranges of consecutive pages
+ * ("morsels"), so that several scans of the file can share its pages out
+ * between them: each scan claims a morsel, reads it, and claims another
+ * until every page has been handed out. A scan that is slowed down simply
+ * claims fewer morsels, so the scans finish at about the same time.
+ * <p>
+ * Pages appended while the scans run are handed out too, as long as some
+ * scan is still claiming morsels.
+ *
+ * @see HeapFile#iterator(simpledb.transaction.TransactionId, int[],
+ * simpledb.execution.Predicate[], Morsels)
+ * @Threadsafe
+ */
+public class Morsels {
+
+    /**
+     * Default number of pages in a morsel: enough that claiming one costs
+     * nothing next to reading it, and few enough that the last morsels even
+     * out the work of the scans.
+     */
+    public static final int DEFAULT_MORSEL_PAGES = 16;
+
+    private final HeapFile file;
+    private final int morselPages;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public Morsels(HeapFile file) {
+        this(file, DEFAULT_MORSEL_PAGES);
+    }
+
+    /**
+     * @param file the file whose pages are handed out
+     * @param morselPages the number of pages in each morsel
+     */
+    public Morsels(HeapFile file, int morselPages) {
+        if (morselPages <= 0) {
+            throw new IllegalArgumentException("a morsel needs at least one page");
+        }
+        this.file = file;
+        this.morselPages = morselPages;
+    }
+
+    public HeapFile getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of pages in each morsel
+     */
+    public int size() {
+        return morselPages;
+    }
+
+    /**
+     * Claims the next morsel. It runs from the returned page for
+     * {@link #size()} pages, or to the end of the file if that comes first.
+     *
+     * @return the first page of the morsel, or -1 once every page of the
+     * file has been handed out
+     */
+    public int claim() {
+        int start = next.getAndAdd(morselPages);
+        return start < file.pageCount() ? start : -1;
+    }
+
+    /**
+     * Hands out every page again, from the first. Only call this while no
+     * scan is claiming morsels.
+     */
+    public void reset() {
+        next.set(0);
+    }
+}
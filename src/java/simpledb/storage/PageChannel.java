@@ -0,0 +1,153 @@
+package simpledb.storage;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * PageChannel is the long-lived handle a DbFile keeps on its backing file.
+ * The file is opened once, on first use, and every read and write after that
+ * is a single positional call on the same FileChannel, so a page miss costs
+ * one system call rather than an open, a seek, a read and a close.
+ * <p>
+ * Positional calls do not move a shared file pointer, so any number of
+ * threads may read and write pages at once. Reads and writes go straight to
+ * and from the page's own byte array; the JDK stages them through a small
+ * per-thread direct buffer that it reuses from call to call.
+ * <p>
+ * Pages can also be read without a system call through {@link #map}, which
+ * hands out read-only views of a memory mapping of the file. The file is
+ * mapped in fixed-size segments, and a segment is mapped again when the file
+ * has grown past its end. Writes still go through the channel; the mapping
+ * shares the operating system's page cache with it, so it sees them, and a
+ * caller that needs bytes that stay put copies them out of the view.
+ * <p>
+ * Like any FileChannel, the channel is closed by the JDK once it becomes
+ * unreachable, i.e. once the owning DbFile is dropped.
+ *
+ * @Threadsafe
+ */
+public class PageChannel {
+
+    /**
+     * Length of each mapped segment of the file.
+     */
+    private static final long SEGMENT_BYTES = 1L << 24;
+
+    private final File file;
+    private volatile FileChannel channel;
+    // replaced, never changed, so that map needs no lock when it hits
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    /**
+     * @param file the file to open on first use; it is created if missing
+     */
+    public PageChannel(File file) {
+        this.file = file;
+    }
+
+    private FileChannel channel() throws IOException {
+        FileChannel ch = channel;
+        if (ch == null) {
+            synchronized (this) {
+                ch = channel;
+                if (ch == null) {
+                    ch = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                            StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    channel = ch;
+                }
+            }
+        }
+        return ch;
+    }
+
+    /**
+     * Fills data with the bytes of the file starting at position.
+     *
+     * @throws EOFException if the file ends before data is full
+     */
+    public void read(long position, byte[] data) throws IOException {
+        FileChannel ch = channel();
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, position + buf.position());
+            if (n < 0) {
+                throw new EOFException("read of " + data.length + " bytes at " + position
+                        + " runs past the end of " + file);
+            }
+        }
+    }
+
+    /**
+     * Writes data to the file starting at position, growing the file if
+     * needed.
+     */
+    public void write(long position, byte[] data) throws IOException {
+        FileChannel ch = channel();
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        while (buf.hasRemaining()) {
+            ch.write(buf, position + buf.position());
+        }
+    }
+
+    /**
+     * @return the current length of the file in bytes
+     */
+    public long size() throws IOException {
+        return channel().size();
+    }
+
+    /**
+     * Returns a read-only view of length bytes of the file starting at
+     * position, backed by a memory mapping of the file rather than a copy.
+     * The view reflects later writes to the file.
+     *
+     * @return the view, or null if the range crosses a segment boundary and
+     * has to be read with {@link #read} instead
+     * @throws EOFException if the file ends before the range does
+     */
+    public ByteBuffer map(long position, int length) throws IOException {
+        int seg = (int) (position / SEGMENT_BYTES);
+        int offset = (int) (position % SEGMENT_BYTES);
+        if (offset + length > SEGMENT_BYTES) {
+            return null;
+        }
+        MappedByteBuffer[] segs = segments;
+        MappedByteBuffer m = seg < segs.length ? segs[seg] : null;
+        if (m == null || m.capacity() < offset + length) {
+            m = mapSegment(seg, offset + length);
+        }
+        ByteBuffer view = m.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice();
+    }
+
+    /**
+     * Maps segment seg as far as the file currently extends, if the current
+     * mapping holds fewer than needed bytes.
+     */
+    private synchronized MappedByteBuffer mapSegment(int seg, int needed) throws IOException {
+        MappedByteBuffer[] segs = segments;
+        if (seg < segs.length && segs[seg] != null && segs[seg].capacity() >= needed) {
+            return segs[seg];
+        }
+        long start = seg * SEGMENT_BYTES;
+        long length = Math.min(SEGMENT_BYTES, channel().size() - start);
+        if (length < needed) {
+            throw new EOFException("map of " + needed + " bytes at " + start
+                    + " runs past the end of " + file);
+        }
+        // views of the old mapping stay valid until they are unreachable
+        MappedByteBuffer m = channel().map(FileChannel.MapMode.READ_ONLY, start, length);
+        segs = Arrays.copyOf(segs, Math.max(segs.length, seg + 1));
+        segs[seg] = m;
+        segments = segs;
+        return m;
+    }
+}
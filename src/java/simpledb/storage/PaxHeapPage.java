@@ -0,0 +1,260 @@
+package simpledb.storage;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.transaction.TransactionId;
+
+/**
+ * PaxHeapPage is a page of a HeapFile that stores its tuples column by
+ * column (the PAX layout), so that a scan reading a few columns of a wide
+ * table touches only the bytes of those columns.
+ * <p>
+ * A page has as many slots as a HeapPage of the same table, and starts with
+ * the same header bitmap of used slots. The rest of the page is divided into
+ * one minipage per column, in column order: minipage j holds the values of
+ * column j for every slot, one after another, each taking the fixed length of
+ * its type. An array of zeros is an empty page.
+ * <p>
+ * Tuples handed out by the iterator are decoded when they are handed out.
+ * {@link #iterator(int[])} decodes only the given columns, reading each from
+ * its own minipage.
+ *
+ * @see HeapPageFormat#PAX
+ * @see HeapPage
+ */
+public class PaxHeapPage implements TuplePage {
+
+    final HeapPageId pid;
+    final TupleDesc td;
+    final int numSlots;
+    final int headerSize;
+    final int[] minipages; // the offset of each column's minipage
+    private final ByteBuffer data;
+    private TransactionId dirtyTID;
+
+    // null while the page still matches its before-image
+    byte[] oldData;
+    private final Object oldDataLock = new Object();
+
+    /**
+     * Create a PaxHeapPage from a set of bytes of data read from disk, in the
+     * format described above. The TupleDesc comes from the catalog. The bytes
+     * are copied, so the caller may reuse data afterwards.
+     */
+    public PaxHeapPage(HeapPageId id, byte[] data) {
+        this.pid = id;
+        this.dirtyTID = null;
+        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.numSlots = BufferPool.getPageSize() * 8 / (td.getSize() * 8 + 1);
+        this.headerSize = (numSlots + 7) / 8;
+        this.minipages = new int[td.numFields()];
+        int offset = headerSize;
+        for (int j = 0; j < minipages.length; j++) {
+            minipages[j] = offset;
+            offset += numSlots * td.getFieldType(j).getLen();
+        }
+
+        // a short array leaves the rest of the page zeroed, i.e. empty
+        this.data = ByteBuffer.allocate(BufferPool.getPageSize());
+        this.data.put(data, 0, Math.min(data.length, BufferPool.getPageSize()));
+        this.data.clear();
+
+        setBeforeImage();
+    }
+
+    /**
+     * Return a view of this page before it was modified -- used by recovery
+     */
+    public PaxHeapPage getBeforeImage() {
+        byte[] oldDataRef;
+        synchronized (oldDataLock) {
+            oldDataRef = oldData;
+        }
+        return new PaxHeapPage(pid, oldDataRef != null ? oldDataRef : getPageData());
+    }
+
+    public void setBeforeImage() {
+        // the current bytes are the before-image until the next modification
+        synchronized (oldDataLock) {
+            oldData = null;
+        }
+    }
+
+    /**
+     * Saves the current bytes as the before-image, if no modification has
+     * done so since the last {@link #setBeforeImage}. Must be called before
+     * every change to the page's bytes.
+     */
+    private void preserveBeforeImage() {
+        synchronized (oldDataLock) {
+            if (oldData == null) {
+                oldData = getPageData();
+            }
+        }
+    }
+
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    public byte[] getPageData() {
+        byte[] bytes = new byte[BufferPool.getPageSize()];
+        data.duplicate().get(bytes);
+        return bytes;
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtyTID = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtyTID;
+    }
+
+    /**
+     * @return the offset in the page of the value of column j in a slot
+     */
+    private int valueOffset(int slot, int j) {
+        return minipages[j] + slot * td.getFieldType(j).getLen();
+    }
+
+    /**
+     * Returns the number of empty slots on this page.
+     */
+    public int getNumEmptySlots() {
+        int count = 0;
+        for (int i = 0; i < numSlots; i++) {
+            if (!isSlotUsed(i)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns true if associated slot on this page is filled.
+     */
+    public boolean isSlotUsed(int i) {
+        return (data.get(i / 8) & (1 << (i % 8))) != 0;
+    }
+
+    private void markSlotUsed(int i, boolean value) {
+        byte b = data.get(i / 8);
+        data.put(i / 8, (byte) (value ? b | (1 << (i % 8)) : b & ~(1 << (i % 8))));
+    }
+
+    public boolean hasRoomFor(Tuple t) {
+        for (int i = 0; i < numSlots; i++) {
+            if (!isSlotUsed(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void insertTuple(Tuple t) throws DbException {
+        if (!t.getTupleDesc().equals(td)) {
+            throw new DbException("Tuple description different from page's tuple description.");
+        }
+        for (int i = 0; i < numSlots; i++) {
+            if (!isSlotUsed(i)) {
+                preserveBeforeImage();
+                for (int j = 0; j < td.numFields(); j++) {
+                    t.getField(j).serialize(data, valueOffset(i, j));
+                }
+                markSlotUsed(i, true);
+                t.setRecordId(new RecordId(pid, i));
+                return;
+            }
+        }
+        throw new DbException("Page is full, tuple not inserted.");
+    }
+
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null) {
+            throw new DbException("Tuple does not exist or has already been deleted.");
+        }
+        if (!pid.equals(rid.getPageId())) {
+            throw new DbException("Tuple does not belong to current page.");
+        }
+        int slot = rid.getTupleNumber();
+        if (slot < 0 || slot >= numSlots || !isSlotUsed(slot)) {
+            throw new DbException("Page slot already empty.");
+        }
+
+        preserveBeforeImage();
+        // zero the values so the page bytes match a freshly written page
+        for (int j = 0; j < td.numFields(); j++) {
+            int offset = valueOffset(slot, j);
+            for (int end = offset + td.getFieldType(j).getLen(); offset < end; offset++) {
+                data.put(offset, (byte) 0);
+            }
+        }
+        markSlotUsed(slot, false);
+    }
+
+    /**
+     * @return an iterator over all tuples on this page (calling remove on this
+     * iterator throws an UnsupportedOperationException)
+     */
+    public Iterator<Tuple> iterator() {
+        return iterator(null);
+    }
+
+    private int[] allColumns() {
+        int[] all = new int[td.numFields()];
+        for (int j = 0; j < all.length; j++) {
+            all[j] = j;
+        }
+        return all;
+    }
+
+    /**
+     * Returns an iterator over the tuples on this page that decodes only the
+     * given columns, or every column if columns is null; the other fields of
+     * the tuples are left null.
+     * <p>
+     * Only the slots in use when the iterator was created are visited; a
+     * tuple deleted before the iterator reaches it is skipped.
+     */
+    public Iterator<Tuple> iterator(int[] columns) {
+        final int[] read = columns != null ? columns : allColumns();
+        final byte[] usedSlots = new byte[headerSize];
+        data.duplicate().get(usedSlots);
+        return new Iterator<Tuple>() {
+            private int slot = advance(0);
+
+            private int advance(int from) {
+                while (from < numSlots
+                        && ((usedSlots[from / 8] & (1 << (from % 8))) == 0 || !isSlotUsed(from))) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                // the page may have changed since the last call
+                slot = advance(slot);
+                return slot < numSlots;
+            }
+
+            @Override
+            public Tuple next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Tuple t = new Tuple(td);
+                t.setRecordId(new RecordId(pid, slot));
+                for (int j : read) {
+                    t.setField(j, td.getFieldType(j).parse(data, valueOffset(slot, j)));
+                }
+                slot++;
+                return t;
+            }
+        };
+    }
+}
@@ -0,0 +1,105 @@
+package simpledb.storage;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import simpledb.transaction.TransactionId;
+
+/**
+ * Runs read-ahead work for the BufferPool on a small pool of background I/O
+ * threads, and makes sure none of a transaction's read-ahead is still running
+ * once the transaction completes.
+ * <p>
+ * The threads are shared by every BufferPool in the JVM and are daemons, so
+ * tests that create many pools do not leak threads.
+ */
+class Prefetcher {
+
+    /**
+     * Name of the system property with the number of I/O threads.
+     */
+    static final String THREADS_PROPERTY = "simpledb.storage.PrefetchThreads";
+
+    private static final ExecutorService IO = Executors.newFixedThreadPool(
+            Math.max(1, Integer.getInteger(THREADS_PROPERTY, 4)), r -> {
+                Thread t = new Thread(r, "simpledb-prefetch");
+                t.setDaemon(true);
+                return t;
+            });
+
+    /**
+     * The read-ahead of one transaction; guarded by its own monitor.
+     */
+    private static class TaskGroup {
+
+        boolean completed;
+        int running;
+    }
+
+    /**
+     * The read-ahead of each transaction, kept once the transaction completes
+     * so that later submits are turned away, and dropped with the
+     * TransactionId; guarded by this.
+     */
+    private final Map<TransactionId, TaskGroup> groups = new WeakHashMap<>();
+
+    private synchronized TaskGroup group(TransactionId tid) {
+        return groups.computeIfAbsent(tid, k -> new TaskGroup());
+    }
+
+    /**
+     * Queues task on behalf of tid. Exactly one of task and skipped runs:
+     * skipped runs instead if tid completes before the task starts, or has
+     * completed already.
+     */
+    void submit(TransactionId tid, Runnable task, Runnable skipped) {
+        TaskGroup group = group(tid);
+        synchronized (group) {
+            if (group.completed) {
+                skipped.run();
+                return;
+            }
+        }
+        IO.execute(() -> {
+            synchronized (group) {
+                if (group.completed) {
+                    skipped.run();
+                    return;
+                }
+                group.running++;
+            }
+            try {
+                task.run();
+            } finally {
+                synchronized (group) {
+                    group.running--;
+                    group.notifyAll();
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops tid's queued read-ahead and waits for its running read-ahead to
+     * finish, so that none of it outlives the transaction.
+     */
+    void complete(TransactionId tid) {
+        TaskGroup group = group(tid);
+        synchronized (group) {
+            group.completed = true;
+            boolean interrupted = false;
+            while (group.running > 0) {
+                try {
+                    group.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package simpledb.storage;
+
+import java.util.function.Function;
+
+import simpledb.transaction.TransactionId;
+
+/**
+ * Read-ahead for one walk along a chain of pages that each name the next,
+ * such as the leaves of a B+ tree linked by their right-sibling pointers.
+ * The walk reports each page it reaches, and the chain keeps the pages up to
+ * the prefetch depth beyond it on their way into the shared pool.
+ * <p>
+ * The chain remembers how far ahead it has read, so each step of the walk
+ * requests only the page that comes into range, and at most one read-ahead
+ * task of the chain is queued or running at a time. If the walk overtakes
+ * the read-ahead, the read-ahead starts again from the walk.
+ *
+ * @see BufferPool#readAheadChain
+ * @Threadsafe
+ */
+public class ReadAheadChain {
+
+    private final BufferPool pool;
+    private final TransactionId tid;
+    private final int depth;
+    private final Function<Page, PageId> next;
+
+    // guarded by this
+    private int reached = -1; // the position in the chain of the walk
+    private int readTo = -1; // the position of the last page read ahead, or of the walk
+    private PageId frontier; // the page after readTo, or null at the end
+    private boolean running; // whether a task is queued or running
+
+    ReadAheadChain(BufferPool pool, TransactionId tid, int depth, Function<Page, PageId> next) {
+        this.pool = pool;
+        this.tid = tid;
+        this.depth = depth;
+        this.next = next;
+    }
+
+    /**
+     * Reports the next page of the walk, and reads ahead of it what is not
+     * on its way in already.
+     */
+    public void reached(Page page) {
+        synchronized (this) {
+            reached++;
+            if (readTo < reached) {
+                // the walk has overtaken the read-ahead
+                readTo = reached;
+                frontier = next.apply(page);
+            }
+            if (running || !wanted()) {
+                return;
+            }
+            running = true;
+        }
+        pool.submitReadAhead(tid, this::readAhead, this::stopped);
+    }
+
+    /**
+     * @return whether there is a page to read ahead; the caller holds this
+     */
+    private boolean wanted() {
+        return frontier != null && readTo < reached + depth;
+    }
+
+    private synchronized void stopped() {
+        running = false;
+    }
+
+    private void readAhead() {
+        while (true) {
+            PageId pid;
+            synchronized (this) {
+                if (!wanted()) {
+                    running = false;
+                    return;
+                }
+                pid = frontier;
+            }
+            Page page = pool.prefetchIntoPool(pid);
+            synchronized (this) {
+                if (page == null) {
+                    // no frame to spare: the walk reads the page itself
+                    running = false;
+                    return;
+                }
+                if (pid.equals(frontier)) {
+                    readTo++;
+                    frontier = next.apply(page);
+                }
+            }
+        }
+    }
+}
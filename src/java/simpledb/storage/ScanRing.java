@@ -0,0 +1,88 @@
+package simpledb.storage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A small, private set of frames for one large sequential scan (a "bulk
+ * read" access strategy). Pages the scan reads from disk are kept here
+ * instead of in the shared pool, the oldest being dropped first, so a scan
+ * over a table larger than the pool does not push out everyone else's
+ * working set.
+ * <p>
+ * A ring belongs to a single iterator, but read-ahead may fill it from the
+ * BufferPool's I/O threads.
+ *
+ * @see BufferPool#newScanRing
+ * @see BufferPool#getPage(simpledb.transaction.TransactionId, PageId, simpledb.common.Permissions, ScanRing)
+ *
+ * @Threadsafe
+ */
+public class ScanRing {
+
+    private final int size;
+    // a frame is a future so that read-ahead can reserve it before the read
+    private final LinkedHashMap<PageId, CompletableFuture<Page>> pages;
+
+    /**
+     * @param size the number of frames in the ring
+     */
+    public ScanRing(int size) {
+        this.size = size;
+        this.pages = new LinkedHashMap<PageId, CompletableFuture<Page>>(size * 2) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PageId, CompletableFuture<Page>> eldest) {
+                return size() > ScanRing.this.size;
+            }
+        };
+    }
+
+    /**
+     * @return the number of frames in the ring
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the page if the ring holds it, waiting for it if it is being
+     * read ahead; null if the ring does not have it.
+     */
+    Page get(PageId pid) {
+        CompletableFuture<Page> frame;
+        synchronized (this) {
+            frame = pages.get(pid);
+        }
+        return frame == null ? null : frame.join();
+    }
+
+    synchronized void add(Page page) {
+        pages.put(page.getId(), CompletableFuture.completedFuture(page));
+    }
+
+    /**
+     * Drops the ring's copy of a page, or the read ahead of it in progress,
+     * e.g. once the page has been written back and the copy may be stale.
+     */
+    synchronized void drop(PageId pid) {
+        pages.remove(pid);
+    }
+
+    /**
+     * Reserves a frame for a page about to be read ahead.
+     *
+     * @return the future to complete with the page, or with null if the read
+     * is skipped; null if the ring already has the page
+     */
+    synchronized CompletableFuture<Page> reserve(PageId pid) {
+        if (pages.containsKey(pid)) {
+            return null;
+        }
+        CompletableFuture<Page> frame = new CompletableFuture<>();
+        pages.put(pid, frame);
+        return frame;
+    }
+}
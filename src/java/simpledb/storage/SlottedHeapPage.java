@@ -0,0 +1,389 @@
+package simpledb.storage;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.transaction.TransactionId;
+
+/**
+ * SlottedHeapPage is a page of a HeapFile whose records take only the bytes
+ * their values need: an int takes 4 bytes and a string takes 2 bytes of
+ * length followed by its characters, where a HeapPage reserves
+ * {@link Type#STRING_LEN} + 4 bytes for every string.
+ * <p>
+ * The page starts with a header of two unsigned shorts: the number of entries
+ * in the slot directory, and the offset of the lowest record (0 while the
+ * page has none, standing for the page size). The slot directory follows,
+ * one entry of two unsigned shorts per slot holding the offset and length of
+ * the slot's record, or two zeros if the slot is empty. Records are packed
+ * from the end of the page downwards, so the directory and the records grow
+ * towards each other. An array of zeros is an empty page, and page sizes up to
+ * 64 KB are supported.
+ * <p>
+ * A tuple's RecordId names its slot, exactly as on a HeapPage. The space of a
+ * deleted record is reclaimed by compacting the page when an insert needs it;
+ * records move but keep their slots, so RecordIds stay valid. An empty slot is
+ * reused by the next insert.
+ * <p>
+ * Tuples handed out by the iterator are decoded when they are handed out,
+ * since the record they come from may move.
+ *
+ * @see HeapPageFormat#SLOTTED
+ * @see HeapPage
+ */
+public class SlottedHeapPage implements TuplePage {
+
+    static final int HEADER_SIZE = 4;
+    static final int SLOT_SIZE = 4;
+
+    final HeapPageId pid;
+    final TupleDesc td;
+    private final ByteBuffer data;
+    private TransactionId dirtyTID;
+
+    // null while the page still matches its before-image
+    byte[] oldData;
+    private final Object oldDataLock = new Object();
+
+    /**
+     * Create a SlottedHeapPage from a set of bytes of data read from disk, in
+     * the format described above. The TupleDesc comes from the catalog. The
+     * bytes are copied, so the caller may reuse data afterwards.
+     */
+    public SlottedHeapPage(HeapPageId id, byte[] data) {
+        this.pid = id;
+        this.dirtyTID = null;
+        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+
+        // a short array leaves the rest of the page zeroed, i.e. empty
+        this.data = ByteBuffer.allocate(BufferPool.getPageSize());
+        this.data.put(data, 0, Math.min(data.length, BufferPool.getPageSize()));
+        this.data.clear();
+
+        setBeforeImage();
+    }
+
+    /**
+     * Return a view of this page before it was modified -- used by recovery
+     */
+    public SlottedHeapPage getBeforeImage() {
+        byte[] oldDataRef;
+        synchronized (oldDataLock) {
+            oldDataRef = oldData;
+        }
+        return new SlottedHeapPage(pid, oldDataRef != null ? oldDataRef : getPageData());
+    }
+
+    public void setBeforeImage() {
+        // the current bytes are the before-image until the next modification
+        synchronized (oldDataLock) {
+            oldData = null;
+        }
+    }
+
+    /**
+     * Saves the current bytes as the before-image, if no modification has
+     * done so since the last {@link #setBeforeImage}. Must be called before
+     * every change to the page's bytes.
+     */
+    private void preserveBeforeImage() {
+        synchronized (oldDataLock) {
+            if (oldData == null) {
+                oldData = getPageData();
+            }
+        }
+    }
+
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    public byte[] getPageData() {
+        byte[] bytes = new byte[BufferPool.getPageSize()];
+        data.duplicate().get(bytes);
+        return bytes;
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtyTID = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtyTID;
+    }
+
+    /**
+     * @return the number of bytes not taken by the header, the slot directory
+     * or a record; an insert may need to compact the page to use them all
+     */
+    public int getFreeSpace() {
+        return freeSpace(data);
+    }
+
+    /**
+     * Returns true if associated slot on this page is filled.
+     */
+    public boolean isSlotUsed(int i) {
+        return i >= 0 && i < numSlots(data) && slotLength(data, i) != 0;
+    }
+
+    public boolean hasRoomFor(Tuple t) {
+        return fits(data, td, t);
+    }
+
+    public void insertTuple(Tuple t) throws DbException {
+        if (!t.getTupleDesc().equals(td)) {
+            throw new DbException("Tuple description different from page's tuple description.");
+        }
+        if (!hasRoomFor(t)) {
+            throw new DbException("Page is full, tuple not inserted.");
+        }
+        preserveBeforeImage();
+        t.setRecordId(new RecordId(pid, insert(data, td, t)));
+    }
+
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null) {
+            throw new DbException("Tuple does not exist or has already been deleted.");
+        }
+        if (!pid.equals(rid.getPageId())) {
+            throw new DbException("Tuple does not belong to current page.");
+        }
+        int slot = rid.getTupleNumber();
+        if (!isSlotUsed(slot)) {
+            throw new DbException("Page slot already empty.");
+        }
+
+        preserveBeforeImage();
+        // zero the record so the page bytes match a page it was never put on
+        int offset = slotOffset(data, slot);
+        for (int end = offset + slotLength(data, slot); offset < end; offset++) {
+            data.put(offset, (byte) 0);
+        }
+        setSlot(data, slot, 0, 0);
+    }
+
+    /**
+     * @return an iterator over all tuples on this page (calling remove on this
+     * iterator throws an UnsupportedOperationException)
+     * <p>
+     * Only the slots in use when the iterator was created are visited; a tuple
+     * deleted before the iterator reaches it is skipped.
+     */
+    public Iterator<Tuple> iterator() {
+        return iterator(null);
+    }
+
+    /**
+     * Returns an iterator over the tuples on this page that decodes only the
+     * given columns, or every column if columns is null; the other fields of
+     * the tuples are left null.
+     */
+    public Iterator<Tuple> iterator(int[] columns) {
+        final boolean[] wanted = new boolean[td.numFields()];
+        if (columns == null) {
+            Arrays.fill(wanted, true);
+        } else {
+            for (int j : columns) {
+                wanted[j] = true;
+            }
+        }
+        final BitSet usedSlots = new BitSet();
+        for (int i = 0; i < numSlots(data); i++) {
+            usedSlots.set(i, slotLength(data, i) != 0);
+        }
+        return new Iterator<Tuple>() {
+            private int slot = advance(0);
+
+            private int advance(int from) {
+                for (from = usedSlots.nextSetBit(from); from >= 0 && !isSlotUsed(from);
+                        from = usedSlots.nextSetBit(from + 1)) {
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                // the page may have changed since the last call
+                slot = slot < 0 ? slot : advance(slot);
+                return slot >= 0;
+            }
+
+            @Override
+            public Tuple next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return readTuple(slot++, wanted);
+            }
+        };
+    }
+
+    private Tuple readTuple(int slot, boolean[] wanted) {
+        Tuple t = new Tuple(td);
+        t.setRecordId(new RecordId(pid, slot));
+        int pos = slotOffset(data, slot);
+        for (int i = 0; i < td.numFields(); i++) {
+            Type type = td.getFieldType(i);
+            if (type == Type.STRING_TYPE) {
+                int len = Short.toUnsignedInt(data.getShort(pos));
+                if (wanted[i]) {
+                    byte[] bs = new byte[len];
+                    ByteBuffer src = data.duplicate();
+                    src.position(pos + 2);
+                    src.get(bs);
+                    t.setField(i, new StringField(new String(bs), Type.STRING_LEN));
+                }
+                pos += 2 + len;
+            } else {
+                if (wanted[i]) {
+                    t.setField(i, type.parse(data, pos));
+                }
+                pos += type.getLen();
+            }
+        }
+        return t;
+    }
+
+    // The methods below work on the bytes of a page alone, so that pages can
+    // be built without a catalog entry for their table.
+
+    private static int numSlots(ByteBuffer page) {
+        return Short.toUnsignedInt(page.getShort(0));
+    }
+
+    private static int recordsStart(ByteBuffer page) {
+        int start = Short.toUnsignedInt(page.getShort(2));
+        return start == 0 ? page.capacity() : start;
+    }
+
+    private static int slotOffset(ByteBuffer page, int slot) {
+        return Short.toUnsignedInt(page.getShort(HEADER_SIZE + slot * SLOT_SIZE));
+    }
+
+    private static int slotLength(ByteBuffer page, int slot) {
+        return Short.toUnsignedInt(page.getShort(HEADER_SIZE + slot * SLOT_SIZE + 2));
+    }
+
+    private static void setSlot(ByteBuffer page, int slot, int offset, int length) {
+        page.putShort(HEADER_SIZE + slot * SLOT_SIZE, (short) offset);
+        page.putShort(HEADER_SIZE + slot * SLOT_SIZE + 2, (short) length);
+    }
+
+    private static int freeSpace(ByteBuffer page) {
+        int n = numSlots(page);
+        int used = HEADER_SIZE + n * SLOT_SIZE;
+        for (int i = 0; i < n; i++) {
+            used += slotLength(page, i);
+        }
+        return page.capacity() - used;
+    }
+
+    /**
+     * @return the first empty slot, or the number of slots if there is none
+     */
+    private static int emptySlot(ByteBuffer page) {
+        int n = numSlots(page);
+        for (int i = 0; i < n; i++) {
+            if (slotLength(page, i) == 0) {
+                return i;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return the number of bytes the record of t takes on a page
+     */
+    static int recordSize(TupleDesc td, Tuple t) {
+        int size = 0;
+        for (int i = 0; i < td.numFields(); i++) {
+            Field f = t.getField(i);
+            if (f instanceof StringField) {
+                size += 2 + Math.min(((StringField) f).getValue().length(), Type.STRING_LEN);
+            } else {
+                size += f.getType().getLen();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return true if the page has room for the record of t and, if no slot
+     * is empty, a new directory entry
+     */
+    static boolean fits(ByteBuffer page, TupleDesc td, Tuple t) {
+        int directoryGrowth = emptySlot(page) == numSlots(page) ? SLOT_SIZE : 0;
+        return recordSize(td, t) + directoryGrowth <= freeSpace(page);
+    }
+
+    /**
+     * Stores t as a record on the page, compacting the page first if its free
+     * space is split by the gaps of deleted records. The page must have room
+     * for it.
+     *
+     * @return the slot t was stored in
+     * @see #fits
+     */
+    static int insert(ByteBuffer page, TupleDesc td, Tuple t) {
+        int size = recordSize(td, t);
+        int n = numSlots(page);
+        int slot = emptySlot(page);
+        int directoryEnd = HEADER_SIZE + (slot == n ? n + 1 : n) * SLOT_SIZE;
+        if (recordsStart(page) - directoryEnd < size) {
+            compact(page);
+        }
+        int offset = recordsStart(page) - size;
+        int pos = offset;
+        for (int i = 0; i < td.numFields(); i++) {
+            Field f = t.getField(i);
+            if (f instanceof StringField) {
+                String s = ((StringField) f).getValue();
+                int len = Math.min(s.length(), Type.STRING_LEN);
+                page.putShort(pos, (short) len);
+                pos += 2;
+                // same encoding as StringField.serialize: the low byte of each char
+                for (int c = 0; c < len; c++) {
+                    page.put(pos++, (byte) s.charAt(c));
+                }
+            } else {
+                f.serialize(page, pos);
+                pos += f.getType().getLen();
+            }
+        }
+        if (slot == n) {
+            page.putShort(0, (short) (n + 1));
+        }
+        setSlot(page, slot, offset, size);
+        page.putShort(2, (short) offset);
+        return slot;
+    }
+
+    /**
+     * Moves the records to the end of the page, one after another, so that
+     * all free space lies between the directory and the records.
+     */
+    private static void compact(ByteBuffer page) {
+        byte[] old = new byte[page.capacity()];
+        page.duplicate().get(old);
+        int n = numSlots(page);
+        int end = page.capacity();
+        for (int i = 0; i < n; i++) {
+            int length = slotLength(page, i);
+            if (length != 0) {
+                end -= length;
+                ByteBuffer dst = page.duplicate();
+                dst.position(end);
+                dst.put(old, slotOffset(page, i), length);
+                setSlot(page, i, end, length);
+            }
+        }
+        for (int pos = HEADER_SIZE + n * SLOT_SIZE; pos < end; pos++) {
+            page.put(pos, (byte) 0);
+        }
+        page.putShort(2, (short) (end == page.capacity() ? 0 : end));
+    }
+}
@@ -4,6 +4,7 @@ import simpledb.common.Type;
 import simpledb.execution.Predicate;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Instance of Field that stores a single String of a fixed length.
@@ -69,6 +70,19 @@ public class StringField implements Field {
 			dos.write((byte) 0);
 	}
 
+	public void serialize(ByteBuffer buf, int offset) {
+		int len = Math.min(value.length(), maxSize);
+		buf.putInt(offset, len);
+		int pos = offset + 4;
+		// same encoding as DataOutputStream.writeBytes: the low byte of each char
+		for (int i = 0; i < len; i++) {
+			buf.put(pos++, (byte) value.charAt(i));
+		}
+		for (int end = offset + 4 + maxSize; pos < end; pos++) {
+			buf.put(pos, (byte) 0);
+		}
+	}
+
 	/**
 	 * Compare the specified field to the value of this Field. Return semantics
 	 * are as specified by Field.compare
@@ -80,7 +94,16 @@ public class StringField implements Field {
 	public boolean compare(Predicate.Op op, Field val) {
 
 		StringField iVal = (StringField) val;
-		int cmpVal = value.compareTo(iVal.value);
+
+		return compare(op, value, iVal.value);
+	}
+
+	/**
+	 * Same as {@link #compare(Predicate.Op, Field)} for the StringFields
+	 * holding a and b, without building them.
+	 */
+	public static boolean compare(Predicate.Op op, String a, String b) {
+		int cmpVal = a.compareTo(b);
 
 		switch (op) {
 		case EQUALS:
@@ -102,7 +125,7 @@ public class StringField implements Field {
 			return cmpVal <= 0;
 
 		case LIKE:
-			return value.contains(iVal.value);
+			return a.contains(b);
 		}
 
 		return false;
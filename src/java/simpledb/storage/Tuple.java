@@ -1,19 +1,34 @@
 package simpledb.storage;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.*;
+import simpledb.common.Type;
 
 /**
  * Tuple maintains information about the contents of a tuple. Tuples have a
  * specified schema specified by a TupleDesc object and contain Field objects
  * with the data for each field.
+ * <p>
+ * A tuple read from a HeapPage is a view of the page's bytes: each field is
+ * decoded the first time it is read, so columns a query never looks at are
+ * never decoded. Such a view is a single object until then; its field array
+ * and RecordId are only built when asked for, and {@link #getInt} reads an
+ * int field straight from the bytes without building a Field at all.
  */
 public class Tuple implements Serializable {
 
     private static final long serialVersionUID = 1L;
     private TupleDesc td;
     private RecordId recordId;
-    private List<Field> entries; // Contains all items within a tuple
+    private Field[] entries; // Contains all items within a tuple; null in a view until a field is read
+    // the page and bytes undecoded fields are read from, or null
+    private transient HeapPage sourcePage;
+    private transient ByteBuffer source;
+    private transient int sourceOffset;
+    private transient int sourceSlot = -1; // the slot of a view whose RecordId is not built yet
 
     /**
      * Create a new tuple with the specified schema (type).
@@ -24,12 +39,25 @@ public class Tuple implements Serializable {
      */
     public Tuple(TupleDesc td) {
         // some code goes here
-        this.entries = new ArrayList<>(Collections.nCopies(td.numFields(), null));
+        this.entries = new Field[td.numFields()];
         this.td = td;
         this.recordId = null;
 
     }
 
+    /**
+     * Creates a view of the tuple in a used slot of a page, whose fields are
+     * decoded from bytes when they are first read. The page must not change
+     * bytes while the tuple may still read them.
+     */
+    Tuple(TupleDesc td, HeapPage page, ByteBuffer bytes, int slotId) {
+        this.td = td;
+        this.sourcePage = page;
+        this.source = bytes;
+        this.sourceOffset = page.slotOffset(slotId);
+        this.sourceSlot = slotId;
+    }
+
     /**
      * @return The TupleDesc representing the schema of this tuple.
      */
@@ -46,6 +74,10 @@ public class Tuple implements Serializable {
     public RecordId getRecordId() {
         // some code goes here
         // return null;
+        if (sourceSlot >= 0) {
+            this.recordId = new RecordId(sourcePage.pid, sourceSlot);
+            sourceSlot = -1;
+        }
         return this.recordId;
     }
 
@@ -58,6 +90,7 @@ public class Tuple implements Serializable {
     public void setRecordId(RecordId rid) {
         // some code goes here
         this.recordId = rid;
+        this.sourceSlot = -1;
     }
 
     /**
@@ -69,11 +102,18 @@ public class Tuple implements Serializable {
      *          new value for the field.
      */
     public void setField(int i, Field f){
-        if (i < this.entries.size()) {
-            this.entries.set(i, f);
+        if (i < this.td.numFields()) {
+            entries()[i] = f;
         }
     }
 
+    private Field[] entries() {
+        if (entries == null) {
+            entries = new Field[td.numFields()];
+        }
+        return entries;
+    }
+
     /**
      * @return the value of the ith field, or null if it has not been set.
      *
@@ -81,10 +121,53 @@ public class Tuple implements Serializable {
      *          field index to return. Must be a valid index.
      */
     public Field getField(int i) {
-        if (i < this.td.numFields()) {
-            return this.entries.get(i);
+        if (i >= this.td.numFields()) {
+            return null;
+        }
+        Field[] fields = entries();
+        if (i >= fields.length) {
+            return null;
+        }
+        Field f = fields[i];
+        if (f == null && source != null) {
+            // racing readers decode the same value, so no lock is needed
+            f = sourcePage.readField(source, sourceOffset, i);
+            fields[i] = f;
         }
-        return null;
+        return f;
+    }
+
+    /**
+     * Same as the value of {@link #getField}, for an int field, but a field
+     * that has not been decoded is read without building an IntField.
+     *
+     * @throws ClassCastException if the field is not an int
+     */
+    public int getInt(int i) {
+        Field f = entries == null ? null : entries[i];
+        if (f == null && source != null && sourcePage.td.getFieldType(i) == Type.INT_TYPE) {
+            return sourcePage.readInt(source, sourceOffset, i);
+        }
+        return ((IntField) getField(i)).getValue();
+    }
+
+    /**
+     * Decodes every field not read yet, and lets go of the page.
+     */
+    private void materialize() {
+        if (source != null) {
+            getRecordId();
+            for (int i = 0; i < td.numFields(); i++) {
+                getField(i);
+            }
+            sourcePage = null;
+            source = null;
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        materialize();
+        out.defaultWriteObject();
     }
 
     /**
@@ -97,6 +180,7 @@ public class Tuple implements Serializable {
      */
     @Override
     public String toString() {
+        materialize();
         String result = "";
         for (Field entry : entries) {
             result += entry.toString();
@@ -110,7 +194,8 @@ public class Tuple implements Serializable {
      *         An iterator which iterates over all the fields of this tuple
      */
     public Iterator<Field> fields() {
-        return entries.iterator();
+        materialize();
+        return Arrays.asList(entries).iterator();
     }
 
     /**
@@ -0,0 +1,289 @@
+package simpledb.storage;
+
+import java.util.Arrays;
+
+import simpledb.common.Type;
+
+/**
+ * TupleBatch holds rows of a TupleDesc column by column, for operators that
+ * work on a batch of rows per call rather than on one tuple at a time. Each
+ * int column is an int array and each string column a String array; a
+ * column the reader did not ask for may be absent.
+ * <p>
+ * A selection vector lists the rows of the batch that are still in it, so
+ * that a filter drops rows without moving any: {@link #rows} rows are
+ * selected, and {@link #rowIndexes} gives the index of each in the column
+ * arrays. Batches passed between operators select at most {@link #SIZE}
+ * rows; a batch that operators fill for themselves, such as the build side
+ * of a join, grows as rows are appended.
+ *
+ * @see simpledb.execution.BatchIterator
+ */
+public class TupleBatch {
+
+    /**
+     * The number of rows operators put in a batch.
+     */
+    public static final int SIZE = 1024;
+
+    private static final int[] ALL = new int[SIZE];
+    static {
+        for (int i = 0; i < SIZE; i++) {
+            ALL[i] = i;
+        }
+    }
+
+    private final TupleDesc td;
+    private final int[][] ints; // by column; null for string and absent columns
+    private final String[][] strings; // by column; null for int and absent columns
+    private int size;
+    private int[] selection; // null while every row is selected
+    private int selected;
+
+    /**
+     * Creates an empty batch that holds every column of td.
+     */
+    public TupleBatch(TupleDesc td) {
+        this(td, null);
+    }
+
+    /**
+     * Creates an empty batch that holds only some of the columns of td.
+     *
+     * @param columns indexes of the columns to hold, or null for all
+     */
+    public TupleBatch(TupleDesc td, int[] columns) {
+        this.td = td;
+        this.ints = new int[td.numFields()][];
+        this.strings = new String[td.numFields()][];
+        if (columns == null) {
+            for (int i = 0; i < td.numFields(); i++) {
+                addColumn(i);
+            }
+        } else {
+            for (int i : columns) {
+                addColumn(i);
+            }
+        }
+    }
+
+    private TupleBatch(TupleDesc td, int[][] ints, String[][] strings, int size) {
+        this.td = td;
+        this.ints = ints;
+        this.strings = strings;
+        this.size = size;
+    }
+
+    private void addColumn(int i) {
+        if (td.getFieldType(i) == Type.INT_TYPE) {
+            ints[i] = new int[SIZE];
+        } else {
+            strings[i] = new String[SIZE];
+        }
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * @return true if the batch holds column i
+     */
+    public boolean hasColumn(int i) {
+        return ints[i] != null || strings[i] != null;
+    }
+
+    /**
+     * @return the values of int column i, or null if it is absent; appending
+     * a row may replace the array
+     */
+    public int[] ints(int i) {
+        return ints[i];
+    }
+
+    /**
+     * @return the values of string column i, or null if it is absent;
+     * appending a row may replace the array
+     */
+    public String[] strings(int i) {
+        return strings[i];
+    }
+
+    /**
+     * @return the number of rows stored, selected or not
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true once the batch stores {@link #SIZE} rows
+     */
+    public boolean isFull() {
+        return size >= SIZE;
+    }
+
+    /**
+     * @return the number of selected rows
+     */
+    public int rows() {
+        return selection == null ? size : selected;
+    }
+
+    /**
+     * @return the index in the column arrays of each selected row, in its
+     * first {@link #rows} entries. The array must not be changed.
+     */
+    public int[] rowIndexes() {
+        return selection == null ? ALL : selection;
+    }
+
+    /**
+     * Selects count rows, whose indexes in the column arrays are the first
+     * count entries of rows. The batch keeps the array, which the caller
+     * must not change while the batch is in use.
+     */
+    public void select(int[] rows, int count) {
+        this.selection = rows;
+        this.selected = count;
+    }
+
+    /**
+     * Removes every row.
+     */
+    public void clear() {
+        size = 0;
+        selection = null;
+    }
+
+    /**
+     * Adds a row whose values are left for the caller to set, growing the
+     * column arrays if they are full. The batch must have no selection.
+     *
+     * @return the index of the new row in the column arrays
+     */
+    public int append() {
+        return append(1);
+    }
+
+    /**
+     * Adds count rows whose values are left for the caller to set, as
+     * {@link #append()} does.
+     *
+     * @return the index in the column arrays of the first new row
+     */
+    public int append(int count) {
+        if (selection != null) {
+            throw new IllegalStateException("cannot append to a batch with a selection");
+        }
+        if (size + count > capacity()) {
+            int length = Math.max(size * 2, size + count);
+            for (int i = 0; i < ints.length; i++) {
+                if (ints[i] != null) {
+                    ints[i] = Arrays.copyOf(ints[i], length);
+                } else if (strings[i] != null) {
+                    strings[i] = Arrays.copyOf(strings[i], length);
+                }
+            }
+        }
+        size += count;
+        return size - count;
+    }
+
+    private int capacity() {
+        for (int i = 0; i < ints.length; i++) {
+            if (ints[i] != null) {
+                return ints[i].length;
+            } else if (strings[i] != null) {
+                return strings[i].length;
+            }
+        }
+        return Integer.MAX_VALUE; // no columns, so nothing to grow
+    }
+
+    /**
+     * Appends the fields of t to the columns the batch holds, which must
+     * all be set in t.
+     */
+    public void append(Tuple t) {
+        int r = append();
+        for (int i = 0; i < ints.length; i++) {
+            if (ints[i] != null) {
+                ints[i][r] = t.getInt(i);
+            } else if (strings[i] != null) {
+                strings[i][r] = ((StringField) t.getField(i)).getValue();
+            }
+        }
+    }
+
+    /**
+     * Copies the columns of row r of from that this batch also holds into
+     * a new row, whose column j is column j - offset of from. Columns of
+     * this batch outside [offset, offset + from's number of columns) are
+     * left for the caller to set.
+     *
+     * @return the index of the new row in the column arrays
+     */
+    public int append(TupleBatch from, int r, int offset) {
+        int row = append();
+        copy(from, r, row, offset);
+        return row;
+    }
+
+    /**
+     * Copies the columns of row r of from into row row of this batch, with
+     * column j of from going to column j + offset.
+     */
+    public void copy(TupleBatch from, int r, int row, int offset) {
+        for (int j = 0; j < from.ints.length; j++) {
+            if (from.ints[j] != null && ints[j + offset] != null) {
+                ints[j + offset][row] = from.ints[j][r];
+            } else if (from.strings[j] != null && strings[j + offset] != null) {
+                strings[j + offset][row] = from.strings[j][r];
+            }
+        }
+    }
+
+    /**
+     * Builds a tuple from the row at index r of the column arrays. Fields
+     * of absent columns are left null.
+     */
+    public Tuple getTuple(int r) {
+        Tuple t = new Tuple(td);
+        for (int i = 0; i < ints.length; i++) {
+            if (ints[i] != null) {
+                t.setField(i, new IntField(ints[i][r]));
+            } else if (strings[i] != null) {
+                t.setField(i, new StringField(strings[i][r], Type.STRING_LEN));
+            }
+        }
+        return t;
+    }
+
+    /**
+     * @return a batch of the given columns of this one, in that order, that
+     * shares its arrays and its selection
+     */
+    public TupleBatch project(int[] columns, TupleDesc projected) {
+        int[][] pInts = new int[columns.length][];
+        String[][] pStrings = new String[columns.length][];
+        for (int i = 0; i < columns.length; i++) {
+            pInts[i] = ints[columns[i]];
+            pStrings[i] = strings[columns[i]];
+        }
+        TupleBatch view = new TupleBatch(projected, pInts, pStrings, size);
+        view.selection = selection;
+        view.selected = selected;
+        return view;
+    }
+
+    /**
+     * @return a batch that shares the arrays of this one and selects the
+     * rows at the given indexes, which it keeps
+     */
+    public TupleBatch view(int[] rows, int count) {
+        TupleBatch view = new TupleBatch(td, ints, strings, size);
+        view.select(rows, count);
+        return view;
+    }
+}
@@ -0,0 +1,92 @@
+package simpledb.storage;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import simpledb.common.DbException;
+import simpledb.execution.Predicate;
+
+/**
+ * A page of a HeapFile, whatever its layout on disk. Tuples on the page are
+ * addressed by a slot number, which is the tuple number of their
+ * {@link RecordId}.
+ *
+ * @see HeapPageFormat
+ */
+public interface TuplePage extends Page {
+
+    HeapPageId getId();
+
+    /**
+     * @return an iterator over the tuples on this page; remove is not
+     * supported
+     */
+    Iterator<Tuple> iterator();
+
+    /**
+     * Returns an iterator over the tuples on this page for a reader that
+     * only needs the given columns. Fields outside columns may be left null
+     * in the tuples returned, so a page need not decode them.
+     *
+     * @param columns indexes of the fields the reader needs
+     */
+    Iterator<Tuple> iterator(int[] columns);
+
+    /**
+     * Returns an iterator over the tuples on this page that satisfy every
+     * one of filters, for a reader that only needs the given columns. The
+     * fields the filters read are decoded as well. Pages whose layout lets
+     * them test a predicate without building the tuple should override this.
+     *
+     * @param columns indexes of the fields the reader needs, or null for all
+     * @param filters predicates the tuples returned satisfy
+     */
+    default Iterator<Tuple> iterator(int[] columns, Predicate[] filters) {
+        int[] needed = FilteredDbFileIterator.withFilterColumns(columns, filters);
+        Iterator<Tuple> all = needed == null ? iterator() : iterator(needed);
+        return new Iterator<Tuple>() {
+            private Tuple next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && all.hasNext()) {
+                    Tuple t = all.next();
+                    if (FilteredDbFileIterator.matches(t, filters)) {
+                        next = t;
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Tuple next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Tuple t = next;
+                next = null;
+                return t;
+            }
+        };
+    }
+
+    /**
+     * Adds the specified tuple to the page, and sets its RecordId.
+     *
+     * @throws DbException if the page has no room for the tuple, or its
+     * TupleDesc does not match the page's
+     */
+    void insertTuple(Tuple t) throws DbException;
+
+    /**
+     * Deletes the specified tuple from the page.
+     *
+     * @throws DbException if the tuple is not on this page
+     */
+    void deleteTuple(Tuple t) throws DbException;
+
+    /**
+     * @return true if {@link #insertTuple} would find room for t
+     */
+    boolean hasRoomFor(Tuple t);
+}
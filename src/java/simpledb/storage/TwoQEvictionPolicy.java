@@ -0,0 +1,111 @@
+package simpledb.storage;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+
+/**
+ * Full 2Q replacement (Johnson and Shasha). Pages seen for the first time enter
+ * the A1in FIFO; if they are evicted from there their ids are remembered in
+ * the A1out ghost queue. Only a page that is requested again while in A1out is
+ * promoted to the Am LRU list, so a one-time scan flows through A1in without
+ * displacing the hot pages in Am.
+ */
+public class TwoQEvictionPolicy implements EvictionPolicy {
+
+    private final int kin;
+    private final int kout;
+    // LinkedHashSets keep insertion order: the first element is the oldest
+    private final LinkedHashSet<PageId> a1in = new LinkedHashSet<>();
+    private final LinkedHashSet<PageId> a1out = new LinkedHashSet<>();
+    private final LinkedHashSet<PageId> am = new LinkedHashSet<>();
+
+    /**
+     * @param numPages the number of frames managed; A1in is sized to a quarter
+     * and A1out to half of it, as recommended by the 2Q paper
+     */
+    public TwoQEvictionPolicy(int numPages) {
+        this.kin = Math.max(1, numPages / 4);
+        this.kout = Math.max(1, numPages / 2);
+    }
+
+    @Override
+    public void admit(PageId pid) {
+        if (am.contains(pid) || a1in.contains(pid)) {
+            access(pid);
+        } else if (a1out.remove(pid)) {
+            am.add(pid);
+        } else {
+            a1in.add(pid);
+        }
+    }
+
+    @Override
+    public void access(PageId pid) {
+        if (am.remove(pid)) {
+            am.add(pid);
+        } else if (!a1in.contains(pid)) {
+            // a page the policy has never seen; treat it as an admission
+            admit(pid);
+        }
+        // hits in A1in are deliberately ignored: they are correlated references
+    }
+
+    @Override
+    public void evicted(PageId pid) {
+        if (a1in.remove(pid)) {
+            a1out.add(pid);
+            if (a1out.size() > kout) {
+                Iterator<PageId> it = a1out.iterator();
+                it.next();
+                it.remove();
+            }
+        } else {
+            am.remove(pid);
+        }
+    }
+
+    @Override
+    public void remove(PageId pid) {
+        a1in.remove(pid);
+        am.remove(pid);
+        a1out.remove(pid);
+    }
+
+    /**
+     * Prefers the oldest A1in page while A1in is over its target size, and the
+     * least recently used Am page otherwise.
+     */
+    @Override
+    public Iterator<PageId> victims() {
+        if (a1in.size() > kin) {
+            return concat(a1in.iterator(), am.iterator());
+        }
+        return concat(am.iterator(), a1in.iterator());
+    }
+
+    @Override
+    public int size() {
+        return a1in.size() + am.size();
+    }
+
+    static Iterator<PageId> concat(final Iterator<PageId> first, final Iterator<PageId> second) {
+        return new Iterator<PageId>() {
+            @Override
+            public boolean hasNext() {
+                return first.hasNext() || second.hasNext();
+            }
+
+            @Override
+            public PageId next() {
+                if (first.hasNext()) {
+                    return first.next();
+                }
+                if (second.hasNext()) {
+                    return second.next();
+                }
+                throw new NoSuchElementException();
+            }
+        };
+    }
+}
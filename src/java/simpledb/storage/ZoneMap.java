@@ -0,0 +1,251 @@
+package simpledb.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import simpledb.common.Type;
+import simpledb.execution.Predicate;
+
+/**
+ * ZoneMap records the smallest and largest value of each int column on each
+ * page of a HeapFile, so that a scan with a predicate on such a column can
+ * skip the pages that cannot hold a match. On a table whose rows are
+ * appended in the order of a column, such as an id or a timestamp, a range
+ * predicate on that column then reads only the pages in the range.
+ * <p>
+ * A page's bounds are known once its contents have been seen: they are
+ * computed afresh whenever the page is written to the file, and when a scan
+ * reads a clean page whose bounds are not known yet. An insert widens the
+ * bounds of its page at once, so that a scan by the inserting transaction
+ * still finds the tuple before the page is written. A delete leaves them as
+ * they are until then. Bounds may therefore be wider than the page's
+ * contents, but never narrower. The HeapFile loads its map only for a
+ * filtered scan; pages changed before then are {@link #forget forgotten}
+ * when the map loads, and learned again as the scan reads them.
+ * <p>
+ * The map is kept in a small file next to the heap file. Changes are made in
+ * memory and written out together by {@link #flush}, which the HeapFile
+ * calls when a transaction that used it completes. The file also holds the
+ * size and modification time the heap file had when the map was last
+ * written, and a map whose heap file has changed since is thrown away.
+ *
+ * @see HeapFile#iterator(simpledb.transaction.TransactionId, int[], Predicate[])
+ * @Threadsafe
+ */
+public class ZoneMap {
+
+    private static final int HEADER_SIZE = 16;
+    private static final byte KNOWN = 1;
+
+    private final File heapFile;
+    private final File file;
+    private final PageChannel channel;
+    private final int[] columnSlots; // the index of each column's bounds, or -1
+    private final int entrySize;
+    private final BitSet known = new BitSet();
+    private final BitSet dirty = new BitSet(); // pages recorded since the last flush
+    private int[] mins = new int[0];
+    private int[] maxs = new int[0];
+    private boolean stored; // whether the map file holds a header
+    private long storedLength, storedModified; // the heap file's, in the header
+
+    /**
+     * @return the file the map of heapFile is kept in
+     */
+    static File fileFor(File heapFile) {
+        return new File(heapFile.getPath() + ".zm");
+    }
+
+    /**
+     * Loads the map for a heap file.
+     *
+     * @param heapFile the heap file the map describes
+     * @param td the TupleDesc of the heap file
+     */
+    public ZoneMap(File heapFile, TupleDesc td) throws IOException {
+        this.heapFile = heapFile;
+        this.file = fileFor(heapFile);
+        this.columnSlots = new int[td.numFields()];
+        int slots = 0;
+        for (int j = 0; j < columnSlots.length; j++) {
+            columnSlots[j] = td.getFieldType(j) == Type.INT_TYPE ? slots++ : -1;
+        }
+        this.entrySize = 1 + 8 * slots;
+
+        if (file.exists()) {
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            if (bytes.limit() < HEADER_SIZE || bytes.getLong(0) != heapFile.length()
+                    || bytes.getLong(8) != heapFile.lastModified()) {
+                Files.delete(file.toPath());
+            } else {
+                int pages = (bytes.limit() - HEADER_SIZE) / entrySize;
+                grow(pages);
+                for (int p = 0; p < pages; p++) {
+                    int offset = HEADER_SIZE + p * entrySize;
+                    if (bytes.get(offset) == KNOWN) {
+                        known.set(p);
+                        for (int s = 0; s < slots; s++) {
+                            mins[p * slots + s] = bytes.getInt(offset + 1 + 8 * s);
+                            maxs[p * slots + s] = bytes.getInt(offset + 5 + 8 * s);
+                        }
+                    }
+                }
+                stored = true;
+                storedLength = bytes.getLong(0);
+                storedModified = bytes.getLong(8);
+            }
+        }
+        // opened on the first flush, so reading never creates the file
+        this.channel = new PageChannel(file);
+    }
+
+    private int slots() {
+        return (entrySize - 1) / 8;
+    }
+
+    private void grow(int pages) {
+        int needed = pages * slots();
+        if (mins.length < needed) {
+            int length = Math.max(needed, mins.length * 2);
+            mins = Arrays.copyOf(mins, length);
+            maxs = Arrays.copyOf(maxs, length);
+        }
+    }
+
+    /**
+     * @return true if the bounds of the page are known
+     */
+    public synchronized boolean isKnown(int pageNo) {
+        return known.get(pageNo);
+    }
+
+    /**
+     * @return false only if no tuple on the page can satisfy p
+     */
+    public synchronized boolean mayMatch(int pageNo, Predicate p) {
+        int slot = columnSlots[p.getField()];
+        if (!known.get(pageNo) || slot < 0 || !(p.getOperand() instanceof IntField)) {
+            return true;
+        }
+        int i = pageNo * slots() + slot;
+        int min = mins[i];
+        int max = maxs[i];
+        if (min > max) {
+            return false; // no tuples at all
+        }
+        int v = ((IntField) p.getOperand()).getValue();
+        switch (p.getOp()) {
+        case EQUALS:
+            return min <= v && v <= max;
+        case NOT_EQUALS:
+            return min != v || max != v;
+        case GREATER_THAN:
+            return max > v;
+        case GREATER_THAN_OR_EQ:
+            return max >= v;
+        case LESS_THAN:
+            return min < v;
+        case LESS_THAN_OR_EQ:
+            return min <= v;
+        default:
+            return true;
+        }
+    }
+
+    /**
+     * Sets the bounds of a page from its contents, which must be those of
+     * the page in the file.
+     */
+    public void record(int pageNo, TuplePage page) {
+        int slots = slots();
+        int[] pageMins = new int[slots];
+        int[] pageMaxs = new int[slots];
+        Arrays.fill(pageMins, Integer.MAX_VALUE);
+        Arrays.fill(pageMaxs, Integer.MIN_VALUE);
+        for (Iterator<Tuple> it = page.iterator(); it.hasNext(); ) {
+            Tuple t = it.next();
+            for (int j = 0; j < columnSlots.length; j++) {
+                int s = columnSlots[j];
+                if (s >= 0) {
+                    int v = ((IntField) t.getField(j)).getValue();
+                    pageMins[s] = Math.min(pageMins[s], v);
+                    pageMaxs[s] = Math.max(pageMaxs[s], v);
+                }
+            }
+        }
+        synchronized (this) {
+            grow(pageNo + 1);
+            known.set(pageNo);
+            dirty.set(pageNo);
+            System.arraycopy(pageMins, 0, mins, pageNo * slots, slots);
+            System.arraycopy(pageMaxs, 0, maxs, pageNo * slots, slots);
+        }
+    }
+
+    /**
+     * Marks the bounds of a page as not known, for a page that has changed
+     * without the map seeing it.
+     */
+    public synchronized void forget(int pageNo) {
+        if (known.get(pageNo)) {
+            known.clear(pageNo);
+            dirty.set(pageNo);
+        }
+    }
+
+    /**
+     * Writes the bounds recorded since the last flush to the map file, in
+     * one write, along with the heap file's current size and modification
+     * time. Does nothing if neither the map nor the heap file has changed
+     * since, and creates no map file until a page has been recorded.
+     */
+    public synchronized void flush() throws IOException {
+        long length = heapFile.length();
+        long modified = heapFile.lastModified();
+        if (dirty.isEmpty() && (!stored || (length == storedLength && modified == storedModified))) {
+            return;
+        }
+        if (!dirty.isEmpty()) {
+            int slots = slots();
+            int from = dirty.nextSetBit(0);
+            ByteBuffer entries = ByteBuffer.allocate((dirty.length() - from) * entrySize);
+            for (int p = from; p < dirty.length(); p++) {
+                entries.put(known.get(p) ? KNOWN : 0);
+                for (int s = 0; s < slots; s++) {
+                    entries.putInt(mins[p * slots + s]).putInt(maxs[p * slots + s]);
+                }
+            }
+            channel.write(HEADER_SIZE + (long) from * entrySize, entries.array());
+            dirty.clear();
+        }
+        channel.write(0, ByteBuffer.allocate(HEADER_SIZE).putLong(length).putLong(modified).array());
+        stored = true;
+        storedLength = length;
+        storedModified = modified;
+    }
+
+    /**
+     * Widens the bounds of a page, if they are known, to take in a tuple
+     * inserted into it. The change is not marked to be flushed, since the
+     * page will be recorded again when it is written.
+     */
+    public synchronized void widen(int pageNo, Tuple t) {
+        if (!known.get(pageNo)) {
+            return;
+        }
+        int slots = slots();
+        for (int j = 0; j < columnSlots.length; j++) {
+            int s = columnSlots[j];
+            if (s >= 0) {
+                int v = ((IntField) t.getField(j)).getValue();
+                int i = pageNo * slots + s;
+                mins[i] = Math.min(mins[i], v);
+                maxs[i] = Math.max(maxs[i], v);
+            }
+        }
+    }
+}
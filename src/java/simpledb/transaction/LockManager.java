@@ -1,19 +1,27 @@
 package simpledb.transaction;
 
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import simpledb.common.Permissions;
 import simpledb.storage.PageId;
 
+/**
+ * Tracks the page locks held by each transaction. The maps are concurrent so
+ * that the buffer pool can call in without a global monitor; a caller blocks
+ * only on the monitor of the RWLock it is waiting for.
+ *
+ * @Threadsafe
+ */
 public class LockManager {
 
-    private HashMap<PageId, RWLock> pageLockMap;
-    private HashMap<TransactionId, Set<PageId>> tidMap;
+    private final ConcurrentHashMap<PageId, RWLock> pageLockMap;
+    private final ConcurrentHashMap<TransactionId, Set<PageId>> tidMap;
 
     public LockManager() {
-        pageLockMap = new HashMap<>();
-        tidMap = new HashMap<>();
+        pageLockMap = new ConcurrentHashMap<>();
+        tidMap = new ConcurrentHashMap<>();
     }
 
     public boolean hasLock(PageId pid) {
@@ -43,7 +51,7 @@ public class LockManager {
     }
 
     public void acquireReadLock(PageId pid, TransactionId tid) {
-        if (tidMap.containsKey(tid) && tidMap.get(tid).contains(pid)) {
+        if (hasPageLock(pid, tid)) {
             return;
         }
         if (!hasPageLock(pid, tid)) {
@@ -72,14 +80,18 @@ public class LockManager {
     }
 
     public void releaseReadLock(PageId pid, TransactionId tid) {
-            RWLock lock = pageLockMap.get(pid);
+        RWLock lock = pageLockMap.get(pid);
+        if (lock != null) {
             lock.readUnlock(tid);
-            removeFromTIDMap(pid, tid);
+        }
+        removeFromTIDMap(pid, tid);
     }
 
     public void releaseReadWriteLock(PageId pid, TransactionId tid) {
         RWLock lock = pageLockMap.get(pid);
-        lock.readWriteUnlock(tid);
+        if (lock != null) {
+            lock.readWriteUnlock(tid);
+        }
         removeFromTIDMap(pid, tid);
     }
 
@@ -92,37 +104,55 @@ public class LockManager {
     }
 
     public void addToTIDMap(PageId pid, TransactionId tid) {
-        Set<PageId> pgSet = getTransactionPIDs(tid);
-        if (!pgSet.contains(pid)) {
+        tidMap.compute(tid, (k, pgSet) -> {
+            if (pgSet == null) {
+                pgSet = ConcurrentHashMap.newKeySet();
+            }
             pgSet.add(pid);
-        }
+            return pgSet;
+        });
     }
 
     public void removeFromTIDMap(PageId pid, TransactionId tid) {
-        if (tidMap.containsKey(tid)) {
-            Set<PageId> pgSet = tidMap.get(tid);
+        tidMap.computeIfPresent(tid, (k, pgSet) -> {
             pgSet.remove(pid);
-            if (pgSet.isEmpty()) {
-                tidMap.remove(tid);
-            }
-        }
+            return pgSet.isEmpty() ? null : pgSet;
+        });
     }
 
+    /**
+     * @return a snapshot of the pages tid holds a lock on
+     */
     public Set<PageId> getTransactionPIDs(TransactionId tid) {
-        return tidMap.computeIfAbsent(tid, k -> new HashSet<>());
+        Set<PageId> pgSet = tidMap.get(tid);
+        return pgSet == null ? Collections.emptySet() : new HashSet<>(pgSet);
     }
 
     public boolean hasPageLock(PageId pid, TransactionId tid) {
-        return getTransactionPIDs(tid).contains(pid);
+        Set<PageId> pgSet = tidMap.get(tid);
+        return pgSet != null && pgSet.contains(pid);
+    }
+
+    /**
+     * @return true if tid already holds a lock on pid that is strong enough
+     * for perm, so acquiring it again would be a no-op
+     */
+    public boolean holdsLock(PageId pid, TransactionId tid, Permissions perm) {
+        if (!hasPageLock(pid, tid)) {
+            return false;
+        }
+        RWLock lock = pageLockMap.get(pid);
+        if (lock == null) {
+            return false;
+        }
+        return perm == Permissions.READ_ONLY ? lock.canRead(tid) : lock.canReadWrite(tid);
     }
 
     public HashSet<TransactionId> getLockHoldersTID(PageId pid) {
-        HashSet<TransactionId> holders = new HashSet<>();
-        for (HashMap.Entry<TransactionId, Set<PageId>> e : tidMap.entrySet()) {
-            if (e.getValue().contains(pid)) {
-                holders.add(e.getKey());
-            }
+        RWLock lock = pageLockMap.get(pid);
+        if (lock == null) {
+            return new HashSet<>();
         }
-        return holders;
+        return new HashSet<>(lock.lockHolders());
     }
 }
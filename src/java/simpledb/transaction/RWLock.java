@@ -1,6 +1,7 @@
 package simpledb.transaction;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Set;
 
 public class RWLock {
@@ -74,11 +75,14 @@ public class RWLock {
         }
     }
 
+    /**
+     * @return a snapshot of the transactions holding this lock
+     */
     public synchronized Set<TransactionId> lockHolders() {
-        return holderTIDs.keySet();
+        return new HashSet<>(holderTIDs.keySet());
     }
 
-    public boolean isExclusive() {
+    public synchronized boolean isExclusive() {
         return exclusive;
     }
 
@@ -0,0 +1,173 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.execution.Aggregate;
+import simpledb.execution.Aggregator;
+import simpledb.execution.BatchAggregate;
+import simpledb.execution.BatchFilter;
+import simpledb.execution.BatchHashEquiJoin;
+import simpledb.execution.BatchIterator;
+import simpledb.execution.BatchOrderBy;
+import simpledb.execution.BatchProject;
+import simpledb.execution.BatchScan;
+import simpledb.execution.BatchesToRows;
+import simpledb.execution.Filter;
+import simpledb.execution.HashEquiJoin;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.OpIterator;
+import simpledb.execution.OrderBy;
+import simpledb.execution.Predicate;
+import simpledb.execution.Project;
+import simpledb.execution.RowsToBatches;
+import simpledb.execution.SeqScan;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.storage.TupleIterator;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class BatchExecutionTest extends SimpleDbTestBase {
+
+    private HeapFile left, right;
+    private TransactionId tid;
+
+    /**
+     * Creates two tables of random ints below 50, each spanning several
+     * pages and several batches.
+     */
+    @Before public void createTables() throws Exception {
+        left = SystemTestUtil.createRandomHeapFile(3, 3000, 50, null, null);
+        right = SystemTestUtil.createRandomHeapFile(2, 2500, 50, null, null);
+        tid = new TransactionId();
+    }
+
+    private static List<String> rows(OpIterator it) throws Exception {
+        List<String> rows = new ArrayList<>();
+        it.open();
+        while (it.hasNext()) {
+            rows.add(it.next().toString());
+        }
+        it.close();
+        return rows;
+    }
+
+    private static List<String> sorted(List<String> rows) {
+        Collections.sort(rows);
+        return rows;
+    }
+
+    private static List<String> rows(BatchIterator it) throws Exception {
+        return rows(new BatchesToRows(it));
+    }
+
+    @Test public void scanFilterProject() throws Exception {
+        Predicate p = new Predicate(1, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(20));
+        Predicate q = new Predicate(2, Predicate.Op.NOT_EQUALS, new IntField(7));
+        List<Integer> fields = Arrays.asList(2, 0);
+        Type[] types = {Type.INT_TYPE, Type.INT_TYPE};
+
+        OpIterator rowPlan = new Project(fields, types,
+                new Filter(q, new Filter(p, new SeqScan(tid, left.getId(), "l"))));
+        BatchIterator batchPlan = new BatchProject(fields, types,
+                new BatchFilter(q, new BatchFilter(p, new BatchScan(tid, left.getId(), "l", new int[]{0, 1, 2}))));
+        assertEquals(rowPlan.getTupleDesc(), batchPlan.getTupleDesc());
+        List<String> expected = rows(rowPlan);
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, rows(batchPlan));
+
+        // a scan of only the projected and filtered columns reads the same rows
+        BatchIterator narrow = new BatchProject(Collections.singletonList(0), new Type[]{Type.INT_TYPE},
+                new BatchFilter(p, new BatchScan(tid, left.getId(), "l", new int[]{0, 1})));
+        OpIterator rowNarrow = new Project(Collections.singletonList(0), new Type[]{Type.INT_TYPE},
+                new Filter(p, new SeqScan(tid, left.getId(), "l")));
+        assertEquals(rows(rowNarrow), rows(narrow));
+    }
+
+    @Test public void hashEquiJoin() throws Exception {
+        JoinPredicate jp = new JoinPredicate(1, Predicate.Op.EQUALS, 0);
+        OpIterator rowPlan = new HashEquiJoin(jp, new SeqScan(tid, left.getId(), "l"),
+                new SeqScan(tid, right.getId(), "r"));
+        BatchIterator batchPlan = new BatchHashEquiJoin(jp, new BatchScan(tid, left.getId(), "l"),
+                new BatchFilter(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(100)),
+                        new BatchScan(tid, right.getId(), "r")));
+        assertEquals(rowPlan.getTupleDesc(), batchPlan.getTupleDesc());
+        List<String> expected = rows(rowPlan);
+        assertTrue(expected.size() > 3000); // many output batches
+        assertEquals(sorted(expected), sorted(rows(batchPlan)));
+    }
+
+    @Test public void aggregate() throws Exception {
+        for (Aggregator.Op op : new Aggregator.Op[]{Aggregator.Op.MIN, Aggregator.Op.MAX,
+                Aggregator.Op.SUM, Aggregator.Op.AVG, Aggregator.Op.COUNT}) {
+            for (int gfield : new int[]{Aggregator.NO_GROUPING, 0}) {
+                OpIterator rowPlan = new Aggregate(new SeqScan(tid, left.getId(), "l"), 2, gfield, op);
+                BatchIterator batchPlan = new BatchAggregate(new BatchScan(tid, left.getId(), "l"), 2, gfield, op);
+                assertEquals(rowPlan.getTupleDesc(), batchPlan.getTupleDesc());
+                assertEquals(op + " by " + gfield, sorted(rows(rowPlan)), sorted(rows(batchPlan)));
+            }
+        }
+    }
+
+    @Test public void orderBy() throws Exception {
+        for (boolean asc : new boolean[]{true, false}) {
+            OpIterator rowPlan = new OrderBy(1, asc, new SeqScan(tid, left.getId(), "l"));
+            BatchIterator batchPlan = new BatchOrderBy(1, asc, new BatchScan(tid, left.getId(), "l"));
+            assertEquals(rows(rowPlan), rows(batchPlan));
+        }
+    }
+
+    /**
+     * String columns filter, group, join and sort as they do in the row
+     * operators, and RowsToBatches feeds batch operators from any plan.
+     */
+    @Test public void stringColumns() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE});
+        String[] names = {"ann", "bea", "cal", "dee"};
+        List<Tuple> tuples = new ArrayList<>();
+        for (int n = 0; n < 2500; n++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(n % 97));
+            t.setField(1, new StringField(names[n * 7 % names.length], Type.STRING_LEN));
+            tuples.add(t);
+        }
+        Predicate p = new Predicate(1, Predicate.Op.NOT_EQUALS, new StringField("bea", Type.STRING_LEN));
+
+        assertEquals(rows(new Filter(p, new TupleIterator(td, tuples))),
+                rows(new BatchFilter(p, new RowsToBatches(new TupleIterator(td, tuples)))));
+        assertEquals(sorted(rows(new Aggregate(new TupleIterator(td, tuples), 0, 1, Aggregator.Op.SUM))),
+                sorted(rows(new BatchAggregate(new RowsToBatches(new TupleIterator(td, tuples)), 0, 1, Aggregator.Op.SUM))));
+        assertEquals(rows(new OrderBy(1, false, new TupleIterator(td, tuples))),
+                rows(new BatchOrderBy(1, false, new RowsToBatches(new TupleIterator(td, tuples)))));
+
+        List<Tuple> few = tuples.subList(0, 10);
+        JoinPredicate jp = new JoinPredicate(1, Predicate.Op.EQUALS, 1);
+        assertEquals(sorted(rows(new HashEquiJoin(jp, new TupleIterator(td, few), new TupleIterator(td, tuples)))),
+                sorted(rows(new BatchHashEquiJoin(jp, new RowsToBatches(new TupleIterator(td, few)),
+                        new RowsToBatches(new TupleIterator(td, tuples))))));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BatchExecutionTest.class);
+    }
+}
@@ -0,0 +1,106 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.storage.BufferPool;
+import simpledb.storage.BufferPoolFullException;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.Page;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class BufferPoolPinTest extends SimpleDbTestBase {
+
+    private HeapFile hf;
+    private BufferPool bp;
+    private TransactionId tid;
+
+    /**
+     * A five-page table and a two-page pool.
+     */
+    @Before public void setUp() throws Exception {
+        hf = SystemTestUtil.createRandomHeapFile(2, 504 * 5, null, null);
+        assertEquals(5, hf.numPages());
+        bp = Database.resetBufferPool(2);
+        tid = new TransactionId();
+    }
+
+    private HeapPageId pid(int pgNo) {
+        return new HeapPageId(hf.getId(), pgNo);
+    }
+
+    /**
+     * A pinned page survives a run of misses that would otherwise evict it.
+     */
+    @Test public void pinnedPageStaysResident() throws Exception {
+        Page pinned = bp.pinPage(tid, pid(0), Permissions.READ_ONLY);
+        for (int i = 1; i < 5; i++) {
+            bp.getPage(tid, pid(i), Permissions.READ_ONLY);
+        }
+        assertSame(pinned, bp.getPage(tid, pid(0), Permissions.READ_ONLY));
+        assertTrue(bp.getPinnedSkips() > 0);
+
+        // unpinned, it is evicted by the next two misses and read again
+        bp.unpinPage(tid, pid(0));
+        long rereads = bp.getRereads();
+        bp.getPage(tid, pid(1), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(2), Permissions.READ_ONLY);
+        assertNotSame(pinned, bp.getPage(tid, pid(0), Permissions.READ_ONLY));
+        assertEquals(rereads + 1, bp.getRereads());
+    }
+
+    /**
+     * Once every frame is pinned, a miss fails with BufferPoolFullException,
+     * and completing the transaction releases its pins.
+     */
+    @Test public void allFramesPinned() throws Exception {
+        bp.pinPage(tid, pid(0), Permissions.READ_ONLY);
+        bp.pinPage(tid, pid(1), Permissions.READ_ONLY);
+        try {
+            bp.getPage(tid, pid(2), Permissions.READ_ONLY);
+            fail("expected BufferPoolFullException");
+        } catch (BufferPoolFullException e) {
+            // expected
+        }
+
+        bp.transactionComplete(tid);
+        TransactionId tid2 = new TransactionId();
+        bp.getPage(tid2, pid(2), Permissions.READ_ONLY);
+        bp.getPage(tid2, pid(3), Permissions.READ_ONLY);
+        bp.transactionComplete(tid2);
+    }
+
+    /**
+     * Pins are counted: a page pinned twice needs two unpins.
+     */
+    @Test public void pinsAreCounted() throws Exception {
+        bp.pinPage(tid, pid(0), Permissions.READ_ONLY);
+        bp.pinPage(tid, pid(0), Permissions.READ_ONLY);
+        bp.pinPage(tid, pid(1), Permissions.READ_ONLY);
+        bp.unpinPage(tid, pid(0));
+        try {
+            bp.getPage(tid, pid(2), Permissions.READ_ONLY);
+            fail("expected BufferPoolFullException");
+        } catch (BufferPoolFullException e) {
+            // expected
+        }
+        bp.unpinPage(tid, pid(0));
+        bp.getPage(tid, pid(2), Permissions.READ_ONLY);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolPinTest.class);
+    }
+}
@@ -0,0 +1,146 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class CompressedHeapPageTest extends SimpleDbTestBase {
+
+    private static final String[] CITIES = {"Boston", "Cambridge", "Somerville"};
+
+    private TupleDesc td;
+    private HeapFile hf;
+    private HeapPageId pid;
+
+    /**
+     * Registers an empty compressed table of (int, string, int, int) tuples.
+     */
+    @Before public void addTable() throws Exception {
+        td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE, Type.INT_TYPE});
+        File f = File.createTempFile("compressed", ".dat");
+        f.deleteOnExit();
+        hf = new HeapFile(f, td, HeapPageFormat.COMPRESSED);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        pid = new HeapPageId(hf.getId(), 0);
+    }
+
+    /**
+     * Row n of a table that suits each encoding in turn: runs of a year,
+     * a few distinct strings, ids in a narrow range, and random noise.
+     */
+    private Tuple row(int n, Random random) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(2000 + n / 100));
+        t.setField(1, new StringField(CITIES[n % CITIES.length], Type.STRING_LEN));
+        t.setField(2, new IntField(1000000 + n));
+        t.setField(3, new IntField(random.nextInt()));
+        return t;
+    }
+
+    private void assertRow(int n, Tuple expected, Tuple t) {
+        for (int j = 0; j < td.numFields(); j++) {
+            assertEquals("row " + n + " field " + j, expected.getField(j), t.getField(j));
+        }
+    }
+
+    /**
+     * A page holds more tuples than a fixed-width page, and they survive a
+     * round trip through its compressed bytes, except those deleted.
+     */
+    @Test public void roundTrip() throws Exception {
+        CompressedHeapPage page = new CompressedHeapPage(pid, HeapPage.createEmptyPageData());
+        Random random = new Random(1);
+        List<Tuple> rows = new ArrayList<>();
+        for (int n = 0; page.hasRoomFor(row(n, new Random(0))); n++) {
+            Tuple t = row(n, random);
+            page.insertTuple(t);
+            rows.add(t);
+        }
+        int fixedSlots = BufferPool.getPageSize() * 8 / (td.getSize() * 8 + 1);
+        assertTrue(rows.size() > 5 * fixedSlots);
+        page.deleteTuple(rows.get(3));
+
+        CompressedHeapPage copy = new CompressedHeapPage(pid, page.getPageData());
+        assertEquals(rows.size() - 1, copy.getNumTuples());
+        Iterator<Tuple> it = copy.iterator();
+        for (int n = 0; n < rows.size(); n++) {
+            if (n != 3) {
+                assertRow(n, rows.get(n), it.next());
+            }
+        }
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * The slot of a deleted tuple is reused once the page is full.
+     */
+    @Test public void deletedSlotReused() throws Exception {
+        CompressedHeapPage page = new CompressedHeapPage(pid, HeapPage.createEmptyPageData());
+        Random random = new Random(1);
+        List<Tuple> rows = new ArrayList<>();
+        for (int n = 0; page.hasRoomFor(row(n, new Random(0))); n++) {
+            Tuple t = row(n, random);
+            page.insertTuple(t);
+            rows.add(t);
+        }
+        page.deleteTuple(rows.get(0));
+        Tuple again = row(0, new Random(1));
+        assertTrue(page.hasRoomFor(again));
+        page.insertTuple(again);
+        assertEquals(0, again.getRecordId().getTupleNumber());
+        assertRow(0, again, new CompressedHeapPage(pid, page.getPageData()).iterator().next());
+    }
+
+    /**
+     * A table written through the buffer pool reads back unchanged, and
+     * reports how much smaller it is than a fixed-width table.
+     */
+    @Test public void heapFile() throws Exception {
+        Random random = new Random(2);
+        List<Tuple> rows = new ArrayList<>();
+        TransactionId tid = new TransactionId();
+        for (int n = 0; n < 5000; n++) {
+            Tuple t = row(n, random);
+            rows.add(t);
+            Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        Database.getBufferPool().flushAllPages();
+        assertTrue(hf.getCompressionRatio() > 4);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        for (int n = 0; n < rows.size(); n++) {
+            assertTrue(it.hasNext());
+            assertRow(n, rows.get(n), it.next());
+        }
+        assertFalse(it.hasNext());
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(CompressedHeapPageTest.class);
+    }
+}
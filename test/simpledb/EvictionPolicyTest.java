@@ -0,0 +1,129 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+
+import static org.junit.Assert.*;
+
+public class EvictionPolicyTest extends SimpleDbTestBase {
+
+    private static final int POOL = 8;
+
+    private static PageId pid(int n) {
+        return new HeapPageId(1, n);
+    }
+
+    private static List<PageId> drain(Iterator<PageId> it) {
+        List<PageId> l = new ArrayList<>();
+        while (it.hasNext()) {
+            l.add(it.next());
+        }
+        return l;
+    }
+
+    /**
+     * Every policy must offer each resident page exactly once as a victim.
+     */
+    @Test public void victimsCoverResidentPages() {
+        for (EvictionPolicyType type : EvictionPolicyType.values()) {
+            EvictionPolicy policy = type.create(POOL);
+            for (int i = 0; i < POOL; i++) {
+                policy.admit(pid(i));
+            }
+            policy.access(pid(3));
+            policy.remove(pid(5));
+            List<PageId> victims = drain(policy.victims());
+            assertEquals(type.toString(), POOL - 1, victims.size());
+            assertEquals(type.toString(), POOL - 1, policy.size());
+            for (int i = 0; i < POOL; i++) {
+                assertEquals(type + " page " + i, i != 5, victims.contains(pid(i)));
+            }
+        }
+    }
+
+    /**
+     * LRU evicts the least recently accessed page first.
+     */
+    @Test public void lruOrder() {
+        EvictionPolicy policy = EvictionPolicyType.LRU.create(POOL);
+        policy.admit(pid(0));
+        policy.admit(pid(1));
+        policy.admit(pid(2));
+        policy.access(pid(0));
+        Iterator<PageId> victims = policy.victims();
+        assertEquals(pid(1), victims.next());
+        assertEquals(pid(2), victims.next());
+        assertEquals(pid(0), victims.next());
+    }
+
+    /**
+     * CLOCK gives a referenced page a second chance.
+     */
+    @Test public void clockSecondChance() {
+        EvictionPolicy policy = EvictionPolicyType.CLOCK.create(POOL);
+        policy.admit(pid(0));
+        policy.admit(pid(1));
+        policy.admit(pid(2));
+        // the first sweep clears every bit, so page 0 is offered first
+        assertEquals(pid(0), policy.victims().next());
+        policy.evicted(pid(0));
+        policy.access(pid(1));
+        assertEquals(pid(2), policy.victims().next());
+    }
+
+    /**
+     * A hot set that is referenced repeatedly must survive a long one-time
+     * scan under the scan-resistant policies, while plain LRU loses it.
+     */
+    @Test public void scanResistance() {
+        int pool = 64;
+        List<PageId> trace = new ArrayList<>();
+        int cold = 1000;
+        for (int round = 0; round < 16; round++) {
+            // a hot set of a quarter of the pool, interleaved with pages that
+            // are never seen again
+            for (int i = 0; i < pool / 4; i++) {
+                trace.add(pid(i));
+                trace.add(pid(cold++));
+            }
+        }
+        int beforeScan = trace.size();
+        // a scan over four times the pool size, then the hot set again
+        for (int i = 0; i < 4 * pool; i++) {
+            trace.add(pid(cold++));
+        }
+        for (int i = 0; i < pool / 4; i++) {
+            trace.add(pid(i));
+        }
+
+        assertEquals(0, hitsAfterScan(trace, beforeScan, pool, EvictionPolicyType.LRU));
+        for (EvictionPolicyType type : new EvictionPolicyType[]{
+                EvictionPolicyType.LRU_K, EvictionPolicyType.TWO_Q, EvictionPolicyType.ARC}) {
+            assertEquals(type.toString(), pool / 4, hitsAfterScan(trace, beforeScan, pool, type));
+        }
+    }
+
+    /**
+     * @return the number of hits in trace after position start
+     */
+    private static long hitsAfterScan(List<PageId> trace, int start, int pool, EvictionPolicyType type) {
+        double all = EvictionSimulator.hitRatio(trace, pool, type) * trace.size();
+        double prefix = EvictionSimulator.hitRatio(trace.subList(0, start), pool, type) * start;
+        return Math.round(all - prefix);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(EvictionPolicyTest.class);
+    }
+}
@@ -0,0 +1,307 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.execution.Exchange;
+import simpledb.execution.Filter;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.execution.Project;
+import simpledb.execution.SeqScan;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.IntField;
+import simpledb.storage.Morsels;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class ExchangeTest extends SimpleDbTestBase {
+
+    private static final int PARTITIONS = 3;
+
+    private HeapFile table;
+    private TransactionId tid;
+    private ExecutorService consumers;
+
+    @Before public void setUp() throws Exception {
+        table = SystemTestUtil.createRandomHeapFile(2, 10000, 50, null, null, "c");
+        tid = new TransactionId();
+        consumers = Executors.newFixedThreadPool(PARTITIONS);
+    }
+
+    @After public void tearDown() {
+        consumers.shutdownNow();
+    }
+
+    private OpIterator[] scans(Morsels morsels) {
+        OpIterator[] scans = new OpIterator[2];
+        for (int i = 0; i < scans.length; i++) {
+            scans[i] = new SeqScan(tid, table.getId(), "t", null, morsels);
+        }
+        return scans;
+    }
+
+    /**
+     * Reads every partition on a thread of its own.
+     *
+     * @return the tuples of each partition, as strings
+     */
+    private List<List<String>> read(Exchange[] partitions) throws Exception {
+        List<Future<List<String>>> results = new ArrayList<>();
+        for (Exchange partition : partitions) {
+            results.add(consumers.submit(() -> {
+                List<String> rows = new ArrayList<>();
+                partition.open();
+                while (partition.hasNext()) {
+                    rows.add(partition.next().toString());
+                }
+                partition.close();
+                return rows;
+            }));
+        }
+        List<List<String>> rows = new ArrayList<>();
+        for (Future<List<String>> result : results) {
+            rows.add(result.get());
+        }
+        return rows;
+    }
+
+    private List<String> all() throws Exception {
+        List<String> rows = new ArrayList<>();
+        SeqScan scan = new SeqScan(tid, table.getId(), "t");
+        scan.open();
+        while (scan.hasNext()) {
+            rows.add(scan.next().toString());
+        }
+        scan.close();
+        Collections.sort(rows);
+        return rows;
+    }
+
+    private static List<String> union(List<List<String>> partitions) {
+        List<String> rows = new ArrayList<>();
+        for (List<String> partition : partitions) {
+            rows.addAll(partition);
+        }
+        Collections.sort(rows);
+        return rows;
+    }
+
+    /**
+     * Each key goes to one partition, and the partitions hold every tuple
+     * between them, every time the producers run.
+     */
+    @Test public void hashPartitions() throws Exception {
+        Morsels morsels = new Morsels(table, 4);
+        Exchange[] partitions = Exchange.hash(scans(morsels), morsels, 0, PARTITIONS);
+        for (int run = 0; run < 2; run++) {
+            List<List<String>> rows = read(partitions);
+            assertEquals(all(), union(rows));
+            Set<String> seen = new HashSet<>();
+            for (List<String> partition : rows) {
+                assertFalse(partition.isEmpty());
+                Set<String> keys = new HashSet<>();
+                for (String row : partition) {
+                    keys.add(row.split("\t")[0]);
+                }
+                for (String key : keys) {
+                    assertTrue("key " + key + " is in two partitions", seen.add(key));
+                }
+            }
+        }
+    }
+
+    @Test public void roundRobin() throws Exception {
+        Exchange[] partitions = Exchange.roundRobin(new OpIterator[]{new SeqScan(tid, table.getId(), "t")},
+                null, PARTITIONS);
+        List<List<String>> rows = read(partitions);
+        assertEquals(all(), union(rows));
+        for (List<String> partition : rows) {
+            assertTrue(Math.abs(partition.size() - 10000 / PARTITIONS) <= 1);
+        }
+    }
+
+    /**
+     * A rewound partition returns its tuples again, without running the
+     * producers again.
+     */
+    @Test public void rewind() throws Exception {
+        Exchange[] partitions = Exchange.hash(new OpIterator[]{new SeqScan(tid, table.getId(), "t")},
+                null, 1, PARTITIONS);
+        List<Future<Boolean>> same = new ArrayList<>();
+        for (Exchange partition : partitions) {
+            same.add(consumers.submit(() -> {
+                partition.open();
+                List<String> first = new ArrayList<>();
+                for (int n = 0; n < 50 && partition.hasNext(); n++) {
+                    first.add(partition.next().toString());
+                }
+                partition.rewind(); // part way through
+                List<String> again = new ArrayList<>();
+                while (partition.hasNext()) {
+                    again.add(partition.next().toString());
+                }
+                partition.rewind();
+                int n = 0;
+                while (partition.hasNext()) {
+                    if (!partition.next().toString().equals(again.get(n++))) {
+                        return false;
+                    }
+                }
+                partition.close();
+                return n == again.size() && again.subList(0, first.size()).equals(first);
+            }));
+        }
+        for (Future<Boolean> result : same) {
+            assertTrue(result.get());
+        }
+    }
+
+    /**
+     * Closing the partitions early stops producers that are waiting for
+     * room, and the producers can run again.
+     */
+    @Test public void closeEarly() throws Exception {
+        Morsels morsels = new Morsels(table, 1);
+        Exchange[] partitions = Exchange.hash(scans(morsels), morsels, 0, PARTITIONS);
+        for (Exchange partition : partitions) {
+            partition.open();
+        }
+        assertTrue(partitions[0].hasNext());
+        partitions[0].next();
+        for (Exchange partition : partitions) {
+            partition.close();
+        }
+        assertEquals(all(), union(read(partitions)));
+    }
+
+    @Test public void producerExceptions() throws Exception {
+        Predicate p = new Predicate(0, Predicate.Op.EQUALS, new IntField(7)) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public boolean filter(Tuple t) {
+                if (t.getInt(1) == 7) {
+                    throw new IllegalStateException("seven");
+                }
+                return super.filter(t);
+            }
+        };
+        // over a Project, so that the scan does not test the predicate itself
+        OpIterator project = new Project(Arrays.asList(0, 1), new Type[]{Type.INT_TYPE, Type.INT_TYPE},
+                new SeqScan(tid, table.getId(), "t"));
+        Exchange[] partitions = Exchange.hash(new OpIterator[]{new Filter(p, project)}, null, 0, PARTITIONS);
+        try {
+            read(partitions);
+            fail("expected the exception of the producer");
+        } catch (java.util.concurrent.ExecutionException e) {
+            assertEquals("seven", e.getCause().getMessage());
+        }
+    }
+
+    private HeapFile createNames() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE}, new String[]{"id", "name"});
+        File f = File.createTempFile("names", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = new HeapFile(f, td);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        TransactionId insert = new TransactionId();
+        for (int n = 0; n < 500; n++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(n % 50));
+            t.setField(1, new StringField("name" + n % 7, Type.STRING_LEN));
+            Database.getBufferPool().insertTuple(insert, hf.getId(), t);
+        }
+        Database.getBufferPool().transactionComplete(insert);
+        return hf;
+    }
+
+    /**
+     * Joins and aggregates planned with parallelism return the tuples of
+     * serial plans, and the workers take their locks for the query's
+     * transaction.
+     */
+    @Test public void logicalPlans() throws Exception {
+        HeapFile names = createNames();
+        HeapFile other = SystemTestUtil.createRandomHeapFile(2, 2000, 50, null, null, "d");
+        Map<String, TableStats> stats = new HashMap<>();
+        for (HeapFile hf : new HeapFile[]{table, names, other}) {
+            stats.put(Database.getCatalog().getTableName(hf.getId()), new TableStats(hf.getId(), 1));
+        }
+        for (int q = 0; q < 2; q++) {
+            List<String> expected = null;
+            for (int parallelism : new int[]{1, PARTITIONS}) {
+                LogicalPlan lp = new LogicalPlan();
+                lp.setParallelism(parallelism);
+                lp.addScan(table.getId(), "t");
+                lp.addScan(names.getId(), "n");
+                lp.addJoin("t.c0", "n.id", Predicate.Op.EQUALS);
+                lp.addFilter("t.c1", Predicate.Op.LESS_THAN, "10");
+                if (q == 0) {
+                    lp.addScan(other.getId(), "o");
+                    lp.addJoin("n.id", "o.d1", Predicate.Op.EQUALS);
+                    lp.addProjectField("n.name", null);
+                    lp.addProjectField("o.d0", null);
+                    lp.addProjectField("t.c1", null);
+                } else {
+                    // a COUNT of strings cannot be merged, so groups are partitioned
+                    lp.addProjectField("t.c1", null);
+                    lp.addProjectField("n.name", "COUNT");
+                    lp.addAggregate("COUNT", "n.name", "t.c1");
+                }
+                TransactionId query = new TransactionId();
+                OpIterator plan = lp.physicalPlan(query, stats, false);
+                List<String> actual = new ArrayList<>();
+                plan.open();
+                while (plan.hasNext()) {
+                    actual.add(plan.next().toString());
+                }
+                plan.close();
+                assertTrue(Database.getBufferPool().holdsLock(query, new HeapPageId(table.getId(), 0)));
+                Database.getBufferPool().transactionComplete(query);
+                assertFalse(Database.getBufferPool().holdsLock(query, new HeapPageId(table.getId(), 0)));
+                Collections.sort(actual);
+                if (expected == null) {
+                    expected = actual;
+                    assertFalse(expected.isEmpty());
+                } else {
+                    assertEquals("query " + q, expected, actual);
+                }
+            }
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ExchangeTest.class);
+    }
+}
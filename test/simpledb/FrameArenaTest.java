@@ -0,0 +1,88 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Test;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import static org.junit.Assert.*;
+
+public class FrameArenaTest extends SimpleDbTestBase {
+
+    @After public void disableArena() {
+        System.clearProperty(FrameArena.PROPERTY);
+    }
+
+    /**
+     * Frames are zeroed, off-heap while the arena has room, and on-heap once
+     * it is exhausted.
+     */
+    @Test public void allocateUpToCapacity() {
+        FrameArena arena = new FrameArena(64, 2);
+        Object[] owners = {new Object(), new Object(), new Object()};
+        ByteBuffer a = arena.allocate(owners[0]);
+        a.putInt(0, 42);
+        ByteBuffer b = arena.allocate(owners[1]);
+        assertTrue(a.isDirect());
+        assertTrue(b.isDirect());
+        assertEquals(64, b.capacity());
+        assertEquals(0, b.getInt(0));
+        assertEquals(42, a.getInt(0));
+        assertEquals(2, arena.framesInUse());
+        assertEquals(128, arena.reservedBytes());
+
+        ByteBuffer c = arena.allocate(owners[2]);
+        assertFalse(c.isDirect());
+        assertEquals(64, c.capacity());
+        assertEquals(1, arena.heapFallbacks());
+    }
+
+    /**
+     * A page read with the arena enabled lives in a frame and round-trips
+     * its bytes, tuples and before-image exactly.
+     */
+    @Test public void heapPageInFrame() throws Exception {
+        System.setProperty(FrameArena.PROPERTY, "true");
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        assertNotNull(Database.getBufferPool().getFrameArena());
+
+        HeapPageId pid = new HeapPageId(-1, -1);
+        Database.getCatalog().addTable(new SkeletonFile(-1, Utility.getTupleDesc(2)), SystemTestUtil.getUUID());
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        assertEquals(1, Database.getBufferPool().getFrameArena().framesInUse());
+        assertTrue(Arrays.equals(HeapPageReadTest.EXAMPLE_DATA, page.getPageData()));
+
+        Tuple first = page.iterator().next();
+        page.deleteTuple(first);
+        Tuple added = Utility.getHeapTuple(7, 2);
+        page.insertTuple(added);
+
+        boolean found = false;
+        for (Iterator<Tuple> it = page.iterator(); it.hasNext(); ) {
+            found |= TestUtil.compareTuples(added, it.next());
+        }
+        assertTrue(found);
+        assertTrue(Arrays.equals(HeapPageReadTest.EXAMPLE_DATA, page.getBeforeImage().getPageData()));
+
+        page.setBeforeImage();
+        assertTrue(Arrays.equals(page.getPageData(), page.getBeforeImage().getPageData()));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FrameArenaTest.class);
+    }
+}
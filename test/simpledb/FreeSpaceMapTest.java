@@ -0,0 +1,192 @@
+package simpledb;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.common.Utility;
+import simpledb.storage.BufferPool;
+import simpledb.storage.DbFileIterator;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPage;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.Page;
+import simpledb.storage.Tuple;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class FreeSpaceMapTest extends SimpleDbTestBase {
+
+    private static final int PAGES = 10;
+
+    private HeapFile hf;
+    private BufferPool bp;
+
+    /**
+     * A table of full pages.
+     */
+    @Before public void setUp() throws Exception {
+        hf = SystemTestUtil.createRandomHeapFile(2, 504 * PAGES, null, null);
+        bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+    }
+
+    /**
+     * Inserts a tuple with a fresh pool and returns the page it went to.
+     */
+    private Page insert(HeapFile f, long expectedMisses) throws Exception {
+        bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        List<Page> pages = f.insertTuple(tid, Utility.getHeapTuple(new int[]{1, 2}));
+        assertEquals(expectedMisses, bp.getMisses());
+        bp.transactionComplete(tid);
+        return pages.get(0);
+    }
+
+    /**
+     * Once the full pages have been seen, inserts no longer read them, even
+     * through a new HeapFile on the same file.
+     */
+    @Test public void insertSkipsFullPages() throws Exception {
+        assertEquals(PAGES, insert(hf, PAGES).getId().getPageNumber());
+        assertEquals(PAGES, insert(hf, 1).getId().getPageNumber());
+
+        HeapFile reopened = new HeapFile(hf.getFile(), hf.getTupleDesc());
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        assertEquals(PAGES, insert(reopened, 1).getId().getPageNumber());
+    }
+
+    /**
+     * A delete makes its page a target for inserts again.
+     */
+    @Test public void deleteFreesPage() throws Exception {
+        insert(hf, PAGES);
+
+        TransactionId tid = new TransactionId();
+        HeapPageId pid = new HeapPageId(hf.getId(), 3);
+        Tuple t = ((HeapPage) bp.getPage(tid, pid, Permissions.READ_ONLY)).iterator().next();
+        bp.deleteTuple(tid, t);
+        bp.transactionComplete(tid);
+
+        assertEquals(pid, insert(hf, 1).getId());
+        assertEquals(PAGES, insert(hf, 1).getId().getPageNumber());
+    }
+
+    /**
+     * A page filled by an insert that aborts is a target for inserts again.
+     */
+    @Test public void abortFreesPage() throws Exception {
+        insert(hf, PAGES);
+
+        TransactionId tid = new TransactionId();
+        HeapPageId pid = new HeapPageId(hf.getId(), 3);
+        Tuple t = ((HeapPage) bp.getPage(tid, pid, Permissions.READ_ONLY)).iterator().next();
+        bp.deleteTuple(tid, t);
+        bp.transactionComplete(tid);
+
+        tid = new TransactionId();
+        bp.insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[]{1, 2}));
+        bp.transactionComplete(tid, false);
+        assertEquals(pid, insert(hf, 1).getId());
+    }
+
+    /**
+     * The maps of heap files that have been deleted are deleted when a map
+     * is first loaded from their directory.
+     */
+    @Test public void orphanedMapsDeleted() throws Exception {
+        File dir = Files.createTempDirectory("fsm").toFile();
+        dir.deleteOnExit();
+        File orphan = new File(dir, "gone.dat.fsm");
+        File zones = new File(dir, "gone.dat.zm");
+        assertTrue(orphan.createNewFile());
+        assertTrue(zones.createNewFile());
+
+        File f = new File(dir, "table.dat");
+        Files.copy(hf.getFile().toPath(), f.toPath());
+        HeapFile copy = new HeapFile(f, hf.getTupleDesc());
+        Database.getCatalog().addTable(copy, SystemTestUtil.getUUID());
+        insert(copy, PAGES);
+        assertFalse(orphan.exists());
+        assertFalse(zones.exists());
+
+        assertTrue(new File(f.getPath() + ".fsm").exists());
+        for (File left : dir.listFiles()) {
+            left.delete();
+        }
+    }
+
+    /**
+     * A map left behind by a larger file at the same path is ignored.
+     */
+    @Test public void staleMapIgnored() throws Exception {
+        insert(hf, PAGES);
+        // replace the file with a single empty page
+        try (OutputStream out = new FileOutputStream(hf.getFile())) {
+            out.write(HeapPage.createEmptyPageData());
+        }
+        HeapFile replaced = new HeapFile(hf.getFile(), hf.getTupleDesc());
+        Database.getCatalog().addTable(replaced, SystemTestUtil.getUUID());
+        assertEquals(0, insert(replaced, 1).getId().getPageNumber());
+    }
+
+    /**
+     * The map file is written when the transaction completes, not by each
+     * change, and not at all for a file with nothing to record.
+     */
+    @Test public void writtenAtCommit() throws Exception {
+        File fsm = new File(hf.getFile().getPath() + ".fsm");
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+        }
+        it.close();
+        bp.transactionComplete(tid);
+        assertFalse(fsm.exists());
+
+        tid = new TransactionId();
+        hf.insertTuple(tid, Utility.getHeapTuple(new int[]{1, 2}));
+        assertFalse(fsm.exists());
+        bp.transactionComplete(tid);
+        assertEquals(16 + PAGES, fsm.length());
+    }
+
+    /**
+     * A map left behind by another file of the same size at the same path is
+     * ignored too.
+     */
+    @Test public void sameSizeFileIgnored() throws Exception {
+        insert(hf, PAGES);
+        File f = hf.getFile();
+        long modified = f.lastModified();
+        try (OutputStream out = new FileOutputStream(f)) {
+            for (int i = 0; i <= PAGES; i++) {
+                out.write(HeapPage.createEmptyPageData());
+            }
+        }
+        assertTrue(f.setLastModified(modified - 10000));
+        HeapFile replaced = new HeapFile(f, hf.getTupleDesc());
+        Database.getCatalog().addTable(replaced, SystemTestUtil.getUUID());
+        assertEquals(0, insert(replaced, 1).getId().getPageNumber());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FreeSpaceMapTest.class);
+    }
+}
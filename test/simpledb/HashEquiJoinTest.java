@@ -0,0 +1,274 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.execution.HashEquiJoin;
+import simpledb.execution.Join;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Operator;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPageFormat;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class HashEquiJoinTest extends SimpleDbTestBase {
+
+    private static final JoinPredicate EQUALS = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+
+    private HeapFile big, small;
+    private TransactionId tid;
+
+    @Before public void createTables() throws Exception {
+        // about 20 pages of build side
+        big = SystemTestUtil.createRandomHeapFile(2, 10000, 2000, null, null, "b");
+        small = SystemTestUtil.createRandomHeapFile(2, 1500, 2000, null, null, "s");
+        tid = new TransactionId();
+    }
+
+    /**
+     * Counts the tuples its child returns, to count passes over the child.
+     */
+    private static class Counter extends Operator {
+        private static final long serialVersionUID = 1L;
+        private OpIterator child;
+        int count;
+
+        Counter(OpIterator child) {
+            this.child = child;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            child.open();
+            super.open();
+        }
+
+        public void close() {
+            super.close();
+            child.close();
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            child.rewind();
+        }
+
+        protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+            if (!child.hasNext()) {
+                return null;
+            }
+            count++;
+            return child.next();
+        }
+
+        public TupleDesc getTupleDesc() {
+            return child.getTupleDesc();
+        }
+
+        public OpIterator[] getChildren() {
+            return new OpIterator[]{child};
+        }
+
+        public void setChildren(OpIterator[] children) {
+            child = children[0];
+        }
+    }
+
+    /**
+     * @return the tuples it returns after being opened, sorted, as strings
+     */
+    private static List<String> rows(OpIterator it) throws Exception {
+        List<String> rows = new ArrayList<>();
+        while (it.hasNext()) {
+            rows.add(it.next().toString());
+        }
+        Collections.sort(rows);
+        return rows;
+    }
+
+    private List<String> nestedLoops(HeapFile left, HeapFile right) throws Exception {
+        Join join = new Join(EQUALS, new SeqScan(tid, left.getId(), "l"), new SeqScan(tid, right.getId(), "r"));
+        join.open();
+        List<String> rows = rows(join);
+        join.close();
+        return rows;
+    }
+
+    private static int spillFiles() {
+        String[] names = new File(System.getProperty("java.io.tmpdir")).list((dir, name) -> name.startsWith("simpledb-spill"));
+        return names == null ? 0 : names.length;
+    }
+
+    /**
+     * A build side that fits is joined in memory: each child is read once,
+     * and rewinding reads only the probe side again.
+     */
+    @Test public void inMemory() throws Exception {
+        List<String> expected = nestedLoops(small, big);
+        Counter build = new Counter(new SeqScan(tid, small.getId(), "l"));
+        Counter probe = new Counter(new SeqScan(tid, big.getId(), "r"));
+        HashEquiJoin join = new HashEquiJoin(EQUALS, build, probe);
+        join.open();
+        assertEquals(expected, rows(join));
+        assertEquals(0, join.getSpilledPartitions());
+        assertEquals(1500, build.count);
+        assertEquals(10000, probe.count);
+        join.rewind();
+        assertEquals(expected, rows(join));
+        assertEquals(1500, build.count);
+        join.close();
+    }
+
+    /**
+     * A build side larger than the budget is partitioned to disk, and each
+     * child is still read once.
+     */
+    @Test public void spills() throws Exception {
+        List<String> expected = nestedLoops(big, small);
+        int files = spillFiles();
+        for (int pages : new int[]{1, 4, 16}) {
+            Counter build = new Counter(new SeqScan(tid, big.getId(), "l"));
+            Counter probe = new Counter(new SeqScan(tid, small.getId(), "r"));
+            HashEquiJoin join = new HashEquiJoin(EQUALS, build, probe);
+            join.setMemoryPages(pages);
+            join.open();
+            assertTrue(join.getSpilledPartitions() > 0);
+            assertEquals(pages + " pages", expected, rows(join));
+            assertEquals(10000, build.count);
+            assertEquals(1500, probe.count);
+
+            // rewinding part way through starts over
+            join.rewind();
+            assertTrue(join.hasNext());
+            join.next();
+            join.rewind();
+            assertEquals(expected, rows(join));
+            join.close();
+        }
+        assertEquals(files, spillFiles());
+    }
+
+    /**
+     * A partition that cannot be split, since all its tuples have one key,
+     * is joined in chunks.
+     */
+    @Test public void skewedKeys() throws Exception {
+        Map<Integer, Integer> one = new HashMap<>();
+        one.put(0, 7);
+        HeapFile sevens = SystemTestUtil.createRandomHeapFile(2, 3000, one, null);
+        HeapFile probes = SystemTestUtil.createRandomHeapFile(2, 40, 10, null, null);
+        List<String> expected = nestedLoops(sevens, probes);
+        HashEquiJoin join = new HashEquiJoin(EQUALS, new SeqScan(tid, sevens.getId(), "l"),
+                new SeqScan(tid, probes.getId(), "r"));
+        join.setMemoryPages(2);
+        join.open();
+        assertEquals(expected, rows(join));
+        join.close();
+    }
+
+    private HeapFile createNames(int rows) throws Exception {
+        return createNames(rows, HeapPageFormat.FIXED);
+    }
+
+    private HeapFile createNames(int rows, HeapPageFormat format) throws Exception {
+        TupleDesc td = new TupleDesc(new Type[]{Type.STRING_TYPE, Type.INT_TYPE}, new String[]{"name", "id"});
+        File f = File.createTempFile("names", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = new HeapFile(f, td, format);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        TransactionId insert = new TransactionId();
+        for (int n = 0; n < rows; n++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new StringField("name" + n % 300, Type.STRING_LEN));
+            t.setField(1, new IntField(n));
+            Database.getBufferPool().insertTuple(insert, hf.getId(), t);
+        }
+        Database.getBufferPool().transactionComplete(insert);
+        return hf;
+    }
+
+    @Test public void spilledStrings() throws Exception {
+        HeapFile left = createNames(2000);
+        HeapFile right = createNames(400);
+        List<String> expected = nestedLoops(left, right);
+        HashEquiJoin join = new HashEquiJoin(EQUALS, new SeqScan(tid, left.getId(), "l"),
+                new SeqScan(tid, right.getId(), "r"));
+        join.setMemoryPages(8);
+        join.open();
+        assertTrue(join.getSpilledPartitions() > 0);
+        assertEquals(expected, rows(join));
+        join.close();
+    }
+
+    /**
+     * The fields a scan with a projection leaves null are still null once
+     * spilled and read back.
+     */
+    @Test public void spilledProjection() throws Exception {
+        for (HeapPageFormat format : new HeapPageFormat[]{HeapPageFormat.PAX, HeapPageFormat.COMPRESSED}) {
+            HeapFile left = createNames(2000, format);
+            HeapFile right = createNames(400, format);
+            int[] names = {0};
+            Join nested = new Join(EQUALS, new SeqScan(tid, left.getId(), "l", names),
+                    new SeqScan(tid, right.getId(), "r", names));
+            nested.open();
+            List<String> expected = nullableRows(nested);
+            nested.close();
+
+            HashEquiJoin join = new HashEquiJoin(EQUALS, new SeqScan(tid, left.getId(), "l", names),
+                    new SeqScan(tid, right.getId(), "r", names));
+            join.setMemoryPages(8);
+            join.open();
+            assertTrue(join.getSpilledPartitions() > 0);
+            assertFalse(expected.isEmpty());
+            assertEquals(format.toString(), expected, nullableRows(join));
+            join.close();
+        }
+    }
+
+    /**
+     * @return the tuples it returns, sorted, as strings that show null fields
+     */
+    private static List<String> nullableRows(OpIterator it) throws Exception {
+        List<String> rows = new ArrayList<>();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            StringBuilder row = new StringBuilder();
+            for (int i = 0; i < t.getTupleDesc().numFields(); i++) {
+                row.append(t.getField(i)).append('\t');
+            }
+            rows.add(row.toString());
+        }
+        Collections.sort(rows);
+        return rows;
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HashEquiJoinTest.class);
+    }
+}
@@ -102,6 +102,22 @@ public class HeapPageReadTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Tuples read from a page keep their values after the page changes
+     * under them.
+     */
+    @Test public void tuplesOutlivePageChanges() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        Tuple first = page.iterator().next();
+        assertEquals(EXAMPLE_VALUES[0][0], ((IntField) first.getField(0)).getValue());
+
+        page.deleteTuple(first);
+        page.insertTuple(Utility.getHeapTuple(new int[]{-1, -2}));
+        assertEquals(EXAMPLE_VALUES[0][0], ((IntField) first.getField(0)).getValue());
+        assertEquals(EXAMPLE_VALUES[0][1], ((IntField) first.getField(1)).getValue());
+        assertEquals(-1, ((IntField) page.iterator().next().getField(0)).getValue());
+    }
+
     /**
      * Unit test for HeapPage.getNumEmptySlots()
      */
@@ -3,19 +3,30 @@ package simpledb;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import junit.framework.JUnit4TestAdapter;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import simpledb.common.Database;
 import simpledb.common.Utility;
 import simpledb.execution.Join;
 import simpledb.execution.JoinPredicate;
 import simpledb.execution.OpIterator;
 import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.execution.SortMergeJoin;
+import simpledb.storage.HeapFile;
 import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
 import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
 
 public class JoinTest extends SimpleDbTestBase {
 
@@ -112,6 +123,48 @@ public class JoinTest extends SimpleDbTestBase {
     TestUtil.matchAllTuples(eqJoin, op);
   }
 
+  private static List<String> rows(OpIterator it) throws Exception {
+    List<String> rows = new ArrayList<>();
+    while (it.hasNext()) {
+      rows.add(it.next().toString());
+    }
+    Collections.sort(rows);
+    return rows;
+  }
+
+  /**
+   * Unit test for Join over blocks of the outer relation, when the inner
+   * relation does not fit in the memory budget
+   */
+  @Test public void blocks() throws Exception {
+    // few outer keys are below the inner keys, to keep the < join small
+    HeapFile outer = SystemTestUtil.createRandomHeapFile(2, 1500, 1000, null, null);
+    HeapFile inner = SystemTestUtil.createRandomHeapFile(2, 1000, 100, null, null);
+    TransactionId tid = new TransactionId();
+    for (Predicate.Op operator : new Predicate.Op[] { Predicate.Op.EQUALS, Predicate.Op.LESS_THAN }) {
+      JoinPredicate pred = new JoinPredicate(0, operator, 1);
+      SortMergeJoin merge = new SortMergeJoin(pred, new SeqScan(tid, outer.getId(), "o"),
+          new SeqScan(tid, inner.getId(), "i"));
+      merge.open();
+      List<String> expected = rows(merge);
+      merge.close();
+
+      for (int pages : new int[] { 1, Join.DEFAULT_MEMORY_PAGES }) {
+        Join op = new Join(pred, new SeqScan(tid, outer.getId(), "o"), new SeqScan(tid, inner.getId(), "i"));
+        op.setMemoryPages(pages);
+        op.open();
+        assertEquals(pages == Join.DEFAULT_MEMORY_PAGES, op.isInnerResident());
+        assertEquals(operator + " in " + pages + " pages", expected, rows(op));
+        op.rewind();
+        assertNotNull(op.next());
+        op.rewind();
+        assertEquals(expected, rows(op));
+        op.close();
+      }
+    }
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
   /**
    * JUnit suite target
    */
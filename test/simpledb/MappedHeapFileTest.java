@@ -0,0 +1,105 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.common.Utility;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPage;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.Tuple;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class MappedHeapFileTest extends SimpleDbTestBase {
+
+    private static final int PAGES = 10;
+
+    private HeapFile hf;
+    private List<List<Integer>> tuples;
+    private BufferPool bp;
+
+    @Before public void setUp() throws Exception {
+        tuples = new ArrayList<>();
+        hf = SystemTestUtil.createRandomHeapFile(2, 504 * PAGES, null, tuples);
+        hf.setMapped(true);
+        bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+    }
+
+    /**
+     * A mapped file returns the same tuples as one read by copying.
+     */
+    @Test public void scan() throws Exception {
+        SystemTestUtil.matchTuples(hf, tuples);
+    }
+
+    /**
+     * Pages appended after the file was first mapped can be read.
+     */
+    @Test public void fileGrows() throws Exception {
+        TransactionId tid = new TransactionId();
+        hf.readPage(new HeapPageId(hf.getId(), 0));
+        while (hf.numPages() == PAGES) {
+            Tuple t = Utility.getHeapTuple(new int[]{1, 2});
+            bp.insertTuple(tid, hf.getId(), t);
+            tuples.add(SystemTestUtil.tupleToList(t));
+        }
+        bp.transactionComplete(tid);
+        bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(hf, tuples);
+    }
+
+    /**
+     * Changing a mapped page does not change the file, so aborting leaves
+     * the file as it was.
+     */
+    @Test public void abortLeavesFileUnchanged() throws Exception {
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        byte[] before = ((HeapPage) hf.readPage(pid)).getPageData();
+
+        TransactionId tid = new TransactionId();
+        HeapPage p = (HeapPage) bp.getPage(tid, pid, Permissions.READ_WRITE);
+        Tuple t = p.iterator().next();
+        p.deleteTuple(t);
+        assertFalse(p.isSlotUsed(t.getRecordId().getTupleNumber()));
+        bp.transactionComplete(tid, false);
+
+        assertArrayEquals(before, ((HeapPage) hf.readPage(pid)).getPageData());
+        SystemTestUtil.matchTuples(hf, tuples);
+    }
+
+    /**
+     * A page read through the mapping keeps its bytes when the file is
+     * written under it, so its tuples and before-image stay as they were.
+     */
+    @Test public void writeLeavesPagesUnchanged() throws Exception {
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        HeapPage p = (HeapPage) hf.readPage(pid);
+        byte[] before = p.getPageData();
+        Tuple first = p.iterator().next();
+        String row = first.toString();
+
+        hf.writePage(new HeapPage(pid, HeapPage.createEmptyPageData()));
+        assertArrayEquals(before, p.getPageData());
+        assertArrayEquals(before, p.getBeforeImage().getPageData());
+        assertEquals(row, first.toString());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(MappedHeapFileTest.class);
+    }
+}
@@ -0,0 +1,276 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.execution.Aggregate;
+import simpledb.execution.Aggregator;
+import simpledb.execution.Filter;
+import simpledb.execution.Gather;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Operator;
+import simpledb.execution.ParallelAggregate;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.Morsels;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class ParallelScanTest extends SimpleDbTestBase {
+
+    private static final int THREADS = 4;
+
+    private HeapFile table, small;
+    private TransactionId tid;
+
+    @Before public void createTables() throws Exception {
+        // about 60 pages, which is not a whole number of morsels
+        table = SystemTestUtil.createRandomHeapFile(3, 20000, 100, null, null, "c");
+        small = SystemTestUtil.createRandomHeapFile(2, 300, 100, null, null, "d");
+        tid = new TransactionId();
+    }
+
+    /**
+     * @return the tuples of it, sorted, as strings
+     */
+    private static List<String> rows(OpIterator it) throws Exception {
+        List<String> rows = new ArrayList<>();
+        it.open();
+        while (it.hasNext()) {
+            rows.add(it.next().toString());
+        }
+        it.close();
+        Collections.sort(rows);
+        return rows;
+    }
+
+    private OpIterator[] scans(Morsels morsels, Predicate p) {
+        OpIterator[] scans = new OpIterator[THREADS];
+        for (int i = 0; i < scans.length; i++) {
+            SeqScan scan = new SeqScan(tid, table.getId(), "t", null, morsels);
+            if (p != null) {
+                scan.pushDown(p);
+            }
+            scans[i] = scan;
+        }
+        return scans;
+    }
+
+    /**
+     * Scans sharing morsels read every tuple of the table exactly once
+     * between them, whatever the size of the morsels.
+     */
+    @Test public void morselsSplitTheTable() throws Exception {
+        List<String> expected = rows(new SeqScan(tid, table.getId(), "t"));
+        for (int pages : new int[]{1, 7, Morsels.DEFAULT_MORSEL_PAGES, 1000}) {
+            Morsels morsels = new Morsels(table, pages);
+            List<String> actual = new ArrayList<>();
+            for (OpIterator scan : scans(morsels, null)) {
+                actual.addAll(rows(scan)); // one after another: the first claims most pages
+            }
+            Collections.sort(actual);
+            assertEquals(expected, actual);
+        }
+
+        // a scan opened again once every morsel is claimed reads nothing
+        Morsels morsels = new Morsels(table, 5);
+        SeqScan scan = new SeqScan(tid, table.getId(), "t", null, morsels);
+        assertEquals(expected, rows(scan));
+        assertTrue(rows(scan).isEmpty());
+    }
+
+    @Test public void gatherFilters() throws Exception {
+        Predicate p = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(30));
+        List<String> expected = rows(new Filter(p, new SeqScan(tid, table.getId(), "t")));
+        Morsels morsels = new Morsels(table, 4);
+        Gather gather = new Gather(scans(morsels, p), morsels);
+        assertEquals(expected, rows(gather));
+
+        // rewinding hands the pages out again
+        List<String> twice = new ArrayList<>();
+        gather.open();
+        for (int pass = 0; pass < 2; pass++) {
+            while (gather.hasNext()) {
+                twice.add(gather.next().toString());
+            }
+            gather.rewind();
+        }
+        gather.close();
+        List<String> expectedTwice = new ArrayList<>(expected);
+        expectedTwice.addAll(expected);
+        Collections.sort(expectedTwice);
+        Collections.sort(twice);
+        assertEquals(expectedTwice, twice);
+    }
+
+    /**
+     * Closing a Gather before its children are used up stops the workers,
+     * which may be waiting for room in the queue.
+     */
+    @Test public void closeEarly() throws Exception {
+        Morsels morsels = new Morsels(table, 1);
+        Gather gather = new Gather(scans(morsels, null), morsels);
+        gather.open();
+        for (int n = 0; n < 10; n++) {
+            assertTrue(gather.hasNext());
+            gather.next();
+        }
+        gather.close();
+        assertEquals(20000, rows(gather).size());
+    }
+
+    @Test public void workerExceptions() throws Exception {
+        OpIterator failing = new Operator() {
+            private static final long serialVersionUID = 1L;
+            private OpIterator child = new SeqScan(tid, small.getId(), "s");
+            private int count;
+
+            public void open() throws DbException, NoSuchElementException,
+                    simpledb.transaction.TransactionAbortedException {
+                super.open();
+                child.open();
+            }
+
+            protected Tuple fetchNext() throws DbException,
+                    simpledb.transaction.TransactionAbortedException {
+                if (++count == 100) {
+                    throw new DbException("failed");
+                }
+                return child.hasNext() ? child.next() : null;
+            }
+
+            public void rewind() throws DbException,
+                    simpledb.transaction.TransactionAbortedException {
+                child.rewind();
+            }
+
+            public void close() {
+                super.close();
+                child.close();
+            }
+
+            public OpIterator[] getChildren() {
+                return new OpIterator[]{child};
+            }
+
+            public void setChildren(OpIterator[] children) {
+                child = children[0];
+            }
+
+            public TupleDesc getTupleDesc() {
+                return child.getTupleDesc();
+            }
+        };
+        Gather gather = new Gather(new OpIterator[]{new SeqScan(tid, small.getId(), "s"), failing});
+        try {
+            rows(gather);
+            fail("expected the exception of the failing worker");
+        } catch (DbException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        gather.close();
+    }
+
+    @Test public void mergedAggregates() throws Exception {
+        Predicate p = new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(20));
+        for (Aggregator.Op op : new Aggregator.Op[]{Aggregator.Op.MIN, Aggregator.Op.MAX,
+                Aggregator.Op.SUM, Aggregator.Op.AVG, Aggregator.Op.COUNT}) {
+            for (int gfield : new int[]{Aggregator.NO_GROUPING, 2}) {
+                Aggregate serial = new Aggregate(new Filter(p, new SeqScan(tid, table.getId(), "t")), 1, gfield, op);
+                Morsels morsels = new Morsels(table);
+                ParallelAggregate parallel = new ParallelAggregate(scans(morsels, p), morsels, 1, gfield, op);
+                assertEquals(serial.getTupleDesc(), parallel.getTupleDesc());
+                assertEquals(op + " by " + gfield, rows(serial), rows(parallel));
+            }
+        }
+    }
+
+    /**
+     * Plans with parallelism return the tuples, and TupleDesc, of serial
+     * plans.
+     */
+    @Test public void logicalPlans() throws Exception {
+        Map<String, TableStats> stats = new HashMap<>();
+        for (HeapFile hf : new HeapFile[]{table, small}) {
+            stats.put(Database.getCatalog().getTableName(hf.getId()), new TableStats(hf.getId(), 1));
+        }
+        for (int q = 0; q < 3; q++) {
+            List<String> expected = null;
+            TupleDesc expectedTd = null;
+            for (int parallelism : new int[]{1, THREADS}) {
+                LogicalPlan lp = new LogicalPlan();
+                lp.setParallelism(parallelism);
+                lp.addScan(table.getId(), "t");
+                lp.addFilter("t.c0", Predicate.Op.LESS_THAN, "70");
+                lp.addFilter("t.c2", Predicate.Op.NOT_EQUALS, "5");
+                if (q == 0) {
+                    lp.addProjectField("t.c2", null);
+                    lp.addProjectField("t.c1", null);
+                } else if (q == 1) {
+                    lp.addProjectField("t.c2", null);
+                    lp.addProjectField("t.c1", "AVG");
+                    lp.addAggregate("AVG", "t.c1", "t.c2");
+                } else {
+                    lp.addScan(small.getId(), "s");
+                    lp.addJoin("t.c1", "s.d0", Predicate.Op.EQUALS);
+                    lp.addProjectField("s.d1", null);
+                    lp.addProjectField("t.c0", null);
+                }
+                OpIterator plan = lp.physicalPlan(tid, stats, false);
+                if (parallelism > 1) {
+                    assertTrue(containsGather(plan));
+                }
+                List<String> actual = rows(plan);
+                if (expected == null) {
+                    expected = actual;
+                    expectedTd = plan.getTupleDesc();
+                    assertFalse(expected.isEmpty());
+                } else {
+                    assertEquals("query " + q, expected, actual);
+                    assertEquals(expectedTd.toString(), plan.getTupleDesc().toString());
+                }
+            }
+        }
+    }
+
+    private static boolean containsGather(OpIterator plan) {
+        if (plan instanceof Gather) {
+            return true;
+        }
+        if (plan instanceof Operator) {
+            for (OpIterator child : ((Operator) plan).getChildren()) {
+                if (containsGather(child)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ParallelScanTest.class);
+    }
+}
@@ -0,0 +1,107 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.SeqScan;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class PaxHeapPageTest extends SimpleDbTestBase {
+
+    private static final int COLUMNS = 5;
+
+    private HeapFile hf;
+    private HeapPageId pid;
+
+    /**
+     * Registers an empty PAX table of int tuples.
+     */
+    @Before public void addTable() throws Exception {
+        File f = File.createTempFile("pax", ".dat");
+        f.deleteOnExit();
+        hf = new HeapFile(f, Utility.getTupleDesc(COLUMNS), HeapPageFormat.PAX);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        pid = new HeapPageId(hf.getId(), 0);
+    }
+
+    /**
+     * A page holds as many tuples as a HeapPage, and they survive a round
+     * trip through its bytes, except those deleted.
+     */
+    @Test public void insertDelete() throws Exception {
+        PaxHeapPage page = new PaxHeapPage(pid, HeapPage.createEmptyPageData());
+        HeapPage heapPage = new HeapPage(pid, HeapPage.createEmptyPageData());
+        List<Tuple> tuples = new ArrayList<>();
+        for (int n = 0; page.getNumEmptySlots() > 0; n++) {
+            Tuple t = Utility.getHeapTuple(n, COLUMNS);
+            page.insertTuple(t);
+            tuples.add(t);
+        }
+        assertEquals(heapPage.getNumEmptySlots(), tuples.size());
+        page.deleteTuple(tuples.get(1));
+
+        Iterator<Tuple> it = new PaxHeapPage(pid, page.getPageData()).iterator();
+        for (int n = 0; n < tuples.size(); n++) {
+            if (n == 1) {
+                continue;
+            }
+            Tuple t = it.next();
+            assertEquals(n, t.getRecordId().getTupleNumber());
+            for (int j = 0; j < COLUMNS; j++) {
+                assertEquals(new IntField(n), t.getField(j));
+            }
+        }
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * A scan for some of the columns reads those and leaves the rest null.
+     */
+    @Test public void projectedScan() throws Exception {
+        TransactionId tid = new TransactionId();
+        for (int n = 0; n < 1000; n++) {
+            Tuple t = new Tuple(hf.getTupleDesc());
+            for (int j = 0; j < COLUMNS; j++) {
+                t.setField(j, new IntField(n * COLUMNS + j));
+            }
+            Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, hf.getId(), "t", new int[]{1, 3});
+        scan.open();
+        for (int n = 0; n < 1000; n++) {
+            assertTrue(scan.hasNext());
+            Tuple t = scan.next();
+            assertNull(t.getField(0));
+            assertEquals(new IntField(n * COLUMNS + 1), t.getField(1));
+            assertNull(t.getField(2));
+            assertEquals(new IntField(n * COLUMNS + 3), t.getField(3));
+        }
+        assertFalse(scan.hasNext());
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PaxHeapPageTest.class);
+    }
+}
@@ -0,0 +1,177 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import javax.tools.ToolProvider;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Type;
+import simpledb.execution.Aggregate;
+import simpledb.execution.Aggregator;
+import simpledb.execution.CompiledPipeline;
+import simpledb.execution.Filter;
+import simpledb.execution.HashEquiJoin;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Operator;
+import simpledb.execution.OrderBy;
+import simpledb.execution.PipelineCompiler;
+import simpledb.execution.Predicate;
+import simpledb.execution.Project;
+import simpledb.execution.SeqScan;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.storage.TupleIterator;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class PipelineCompilerTest extends SimpleDbTestBase {
+
+    private HeapFile left, right;
+    private TransactionId tid;
+
+    @Before public void createTables() throws Exception {
+        Assume.assumeNotNull(ToolProvider.getSystemJavaCompiler());
+        left = SystemTestUtil.createRandomHeapFile(3, 2000, 50, null, null);
+        right = SystemTestUtil.createRandomHeapFile(2, 1500, 50, null, null);
+        tid = new TransactionId();
+    }
+
+    private static List<String> rows(OpIterator it) throws Exception {
+        List<String> rows = new ArrayList<>();
+        it.open();
+        while (it.hasNext()) {
+            rows.add(it.next().toString());
+        }
+        it.rewind();
+        int again = 0;
+        while (it.hasNext()) {
+            assertEquals(rows.get(again++), it.next().toString());
+        }
+        assertEquals(rows.size(), again);
+        it.close();
+        return rows;
+    }
+
+    /**
+     * Compiles one copy of a plan and checks that it returns the same tuples,
+     * in the same order, as another copy run as it is.
+     *
+     * @return the compiled plan
+     */
+    private static OpIterator checkCompiled(Callable<OpIterator> plan) throws Exception {
+        List<String> expected = rows(plan.call());
+        OpIterator compiled = PipelineCompiler.compile(plan.call());
+        assertEquals(expected, rows(compiled));
+        return compiled;
+    }
+
+    @Test public void filterProject() throws Exception {
+        Predicate pushed = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(40));
+        Predicate inline = new Predicate(2, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(10));
+        OpIterator compiled = checkCompiled(() -> {
+            SeqScan scan = new SeqScan(tid, left.getId(), "l");
+            scan.pushDown(pushed);
+            return new Project(Arrays.asList(2, 0), new Type[]{Type.INT_TYPE, Type.INT_TYPE},
+                    new Filter(inline, scan));
+        });
+        assertTrue(compiled instanceof CompiledPipeline);
+    }
+
+    @Test public void hashJoins() throws Exception {
+        Predicate p = new Predicate(0, Predicate.Op.NOT_EQUALS, new IntField(3));
+        OpIterator compiled = checkCompiled(() -> new Project(Arrays.asList(4, 1, 0),
+                new Type[]{Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE},
+                new Filter(p, new HashEquiJoin(new JoinPredicate(1, Predicate.Op.EQUALS, 0),
+                        new SeqScan(tid, left.getId(), "l"),
+                        new Filter(p, new SeqScan(tid, right.getId(), "r"))))));
+        assertTrue(compiled instanceof CompiledPipeline);
+
+        // a pipeline through the probe sides of two joins
+        compiled = checkCompiled(() -> new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 4),
+                new Filter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(5)), new SeqScan(tid, right.getId(), "a")),
+                new HashEquiJoin(new JoinPredicate(1, Predicate.Op.EQUALS, 1),
+                        new SeqScan(tid, right.getId(), "b"), new SeqScan(tid, left.getId(), "c"))));
+        assertTrue(compiled instanceof CompiledPipeline);
+        assertEquals(3, ((Operator) compiled).getChildren().length);
+    }
+
+    /**
+     * A join whose build side is over its memory budget is not held in
+     * memory by the pipeline: the join it was compiled from runs instead,
+     * and spills.
+     */
+    @Test public void buildSideOverBudget() throws Exception {
+        HashEquiJoin[] join = new HashEquiJoin[1];
+        OpIterator compiled = checkCompiled(() -> {
+            join[0] = new HashEquiJoin(new JoinPredicate(1, Predicate.Op.EQUALS, 0),
+                    new SeqScan(tid, left.getId(), "l"),
+                    new Filter(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(40)),
+                            new SeqScan(tid, right.getId(), "r")));
+            join[0].setMemoryPages(2);
+            return join[0];
+        });
+        assertTrue(compiled instanceof CompiledPipeline);
+        compiled.open();
+        assertTrue(compiled.hasNext());
+        assertTrue(join[0].getSpilledPartitions() > 0);
+        compiled.close();
+    }
+
+    /**
+     * Operators that end a pipeline run as they are, over compiled
+     * pipelines.
+     */
+    @Test public void unsupportedOperators() throws Exception {
+        Predicate p = new Predicate(2, Predicate.Op.EQUALS, new IntField(7));
+        OpIterator compiled = checkCompiled(() -> new OrderBy(0, false, new Aggregate(
+                new Filter(p, new Project(Arrays.asList(0, 1, 2), new Type[]{Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE},
+                        new SeqScan(tid, left.getId(), "l"))), 1, 0, Aggregator.Op.SUM)));
+        assertTrue(compiled instanceof OrderBy);
+        OpIterator aggregate = ((Operator) compiled).getChildren()[0];
+        assertTrue(aggregate instanceof Aggregate);
+        OpIterator filter = ((Operator) aggregate).getChildren()[0];
+        assertTrue(filter instanceof CompiledPipeline);
+        assertTrue(((Operator) filter).getChildren()[0] instanceof CompiledPipeline);
+    }
+
+    @Test public void stringFields() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE});
+        String[] names = {"ann", "bea", "cal", "dee"};
+        List<Tuple> tuples = new ArrayList<>();
+        for (int n = 0; n < 500; n++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(n % 13));
+            t.setField(1, new StringField(names[n * 7 % names.length], Type.STRING_LEN));
+            tuples.add(t);
+        }
+        for (Predicate.Op op : Predicate.Op.values()) {
+            Predicate p = new Predicate(1, op, new StringField("bea", Type.STRING_LEN));
+            checkCompiled(() -> new Filter(p, new TupleIterator(td, tuples)));
+        }
+        checkCompiled(() -> new HashEquiJoin(new JoinPredicate(1, Predicate.Op.EQUALS, 1),
+                new TupleIterator(td, tuples.subList(0, 10)),
+                new Filter(new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(3)), new TupleIterator(td, tuples))));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PipelineCompilerTest.class);
+    }
+}
@@ -0,0 +1,142 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.execution.Filter;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Operator;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPageFormat;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class PredicatePushdownTest extends SimpleDbTestBase {
+
+    private static final String[] NAMES = {"alice", "bob", "carol"};
+
+    /**
+     * Registers an empty table of (int, string, int) tuples in the given
+     * format, and fills it through the buffer pool.
+     */
+    private HeapFile createTable(HeapPageFormat format, int rows) throws Exception {
+        TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE},
+                new String[]{"id", "name", "score"});
+        File f = File.createTempFile("pushdown", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = new HeapFile(f, td, format);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        TransactionId tid = new TransactionId();
+        for (int n = 0; n < rows; n++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(n));
+            t.setField(1, new StringField(NAMES[n % NAMES.length], Type.STRING_LEN));
+            t.setField(2, new IntField(n * 37 % 100));
+            Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        return hf;
+    }
+
+    /**
+     * A scan with pushed-down predicates on int and string fields returns
+     * exactly the matching tuples, in every page format, with the fields it
+     * was asked for and those the predicates read.
+     */
+    @Test public void scanReturnsOnlyMatches() throws Exception {
+        int rows = 1000;
+        int expected = 0;
+        for (int n = 0; n < rows; n++) {
+            if (n % NAMES.length == 1 && n * 37 % 100 < 30) {
+                expected++;
+            }
+        }
+        for (HeapPageFormat format : HeapPageFormat.values()) {
+            HeapFile hf = createTable(format, rows);
+            TransactionId tid = new TransactionId();
+            SeqScan scan = new SeqScan(tid, hf.getId(), "t", new int[]{0});
+            assertTrue(scan.pushDown(new Predicate(1, Predicate.Op.EQUALS, new StringField("bob", Type.STRING_LEN))));
+            assertTrue(scan.pushDown(new Predicate(2, Predicate.Op.LESS_THAN, new IntField(30))));
+            scan.open();
+            assertFalse(scan.pushDown(new Predicate(0, Predicate.Op.EQUALS, new IntField(0))));
+            int count = 0;
+            while (scan.hasNext()) {
+                Tuple t = scan.next();
+                int n = ((IntField) t.getField(0)).getValue();
+                assertEquals(format + " row " + n, 1, n % NAMES.length);
+                assertEquals(new StringField("bob", Type.STRING_LEN), t.getField(1));
+                assertTrue(((IntField) t.getField(2)).getValue() < 30);
+                count++;
+            }
+            scan.close();
+            Database.getBufferPool().transactionComplete(tid);
+            assertEquals(format.toString(), expected, count);
+        }
+    }
+
+    /**
+     * A plan's scans only build the fields the query reads, and test the
+     * query's filters themselves, with no Filter over them.
+     */
+    @Test public void planReadsOnlyNeededFields() throws Exception {
+        HeapFile hf = createTable(HeapPageFormat.PAX, 1000);
+        String table = Database.getCatalog().getTableName(hf.getId());
+        Map<String, TableStats> stats = new HashMap<>();
+        stats.put(table, new TableStats(hf.getId(), 1));
+
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(hf.getId(), "t");
+        lp.addFilter("t.score", Predicate.Op.GREATER_THAN_OR_EQ, "90");
+        lp.addProjectField("t.id", null);
+        TransactionId tid = new TransactionId();
+        OpIterator project = lp.physicalPlan(tid, stats, false);
+
+        SeqScan scan = (SeqScan) ((Operator) project).getChildren()[0];
+        scan.open();
+        List<Integer> ids = new ArrayList<>();
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            assertNull(t.getField(1));
+            assertTrue(((IntField) t.getField(2)).getValue() >= 90);
+            ids.add(((IntField) t.getField(0)).getValue());
+        }
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        List<Integer> expected = new ArrayList<>();
+        for (int n = 0; n < 1000; n++) {
+            if (n * 37 % 100 >= 90) {
+                expected.add(n);
+            }
+        }
+        assertEquals(expected, ids);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PredicatePushdownTest.class);
+    }
+}
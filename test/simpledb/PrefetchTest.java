@@ -0,0 +1,154 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreePageId;
+import simpledb.index.BTreeUtility;
+import simpledb.storage.BufferPool;
+import simpledb.storage.DbFileIterator;
+import simpledb.storage.EvictionPolicyType;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.Page;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class PrefetchTest extends SimpleDbTestBase {
+
+    private static final int PAGES = 20;
+
+    /**
+     * A scan reads ahead into the pool, returns every tuple exactly once, and
+     * holds no locks once its transaction has completed.
+     */
+    @Test public void scanReadsAhead() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504 * PAGES, null, tuples);
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        bp.setPrefetchDepth(4);
+
+        TransactionId tid = new TransactionId();
+        SystemTestUtil.matchTuples(hf, tid, tuples);
+        assertEquals(PAGES, bp.getMisses() + bp.getPrefetches());
+        assertTrue(bp.getPrefetches() > 0);
+
+        bp.transactionComplete(tid);
+        for (int i = 0; i < PAGES; i++) {
+            assertFalse(bp.holdsLock(tid, new HeapPageId(hf.getId(), i)));
+        }
+    }
+
+    /**
+     * With read-ahead off every page is read by the scan itself.
+     */
+    @Test public void readAheadOff() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504 * PAGES, null, tuples);
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        bp.setPrefetchDepth(0);
+
+        TransactionId tid = new TransactionId();
+        SystemTestUtil.matchTuples(hf, tid, tuples);
+        assertEquals(0, bp.getPrefetches());
+        assertEquals(PAGES, bp.getMisses());
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * Read-ahead takes no locks: pages a scan has not reached yet are in the
+     * pool, but not locked for the scan's transaction.
+     */
+    @Test public void readAheadTakesNoLocks() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504 * PAGES, null, null);
+        BTreeFile bf = BTreeUtility.createRandomBTreeFile(2, 504 * PAGES, null, null, 0);
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        bp.setPrefetchDepth(4);
+        TransactionId tid = new TransactionId();
+
+        DbFileIterator scan = hf.iterator(tid);
+        scan.open();
+        scan.next();
+        awaitPrefetches(bp, 4);
+        for (int i = 1; i < PAGES; i++) {
+            assertFalse(bp.holdsLock(tid, new HeapPageId(hf.getId(), i)));
+        }
+        scan.close();
+
+        long before = bp.getPrefetches();
+        DbFileIterator walk = bf.iterator(tid);
+        walk.open();
+        walk.next();
+        awaitPrefetches(bp, before + 4);
+        int lockedLeaves = 0;
+        for (int i = 1; i <= bf.numPages(); i++) {
+            if (bp.holdsLock(tid, new BTreePageId(bf.getId(), i, BTreePageId.LEAF))) {
+                lockedLeaves++;
+            }
+        }
+        assertEquals(1, lockedLeaves);
+        int count = 1;
+        while (walk.hasNext()) {
+            walk.next();
+            count++;
+        }
+        assertEquals(504 * PAGES, count);
+        walk.close();
+        bp.transactionComplete(tid);
+    }
+
+    private static void awaitPrefetches(BufferPool bp, long prefetches) throws InterruptedException {
+        for (int wait = 0; wait < 500 && bp.getPrefetches() < prefetches; wait++) {
+            Thread.sleep(10);
+        }
+        assertTrue(bp.getPrefetches() >= prefetches);
+    }
+
+    /**
+     * Read-ahead into a full pool of dirty pages gives up instead of dropping
+     * one, and a transaction that has completed reads nothing ahead.
+     */
+    @Test public void readAheadKeepsDirtyPages() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504 * 3, null, null);
+        BufferPool bp = Database.resetBufferPool(2, EvictionPolicyType.LRU, 1);
+        TransactionId writer = new TransactionId();
+        Page[] dirty = new Page[2];
+        for (int i = 0; i < dirty.length; i++) {
+            dirty[i] = bp.getPage(writer, new HeapPageId(hf.getId(), i), Permissions.READ_WRITE);
+            dirty[i].markDirty(true, writer);
+        }
+
+        TransactionId reader = new TransactionId();
+        HeapPageId last = new HeapPageId(hf.getId(), 2);
+        bp.prefetch(reader, last, null);
+        Thread.sleep(100);
+        bp.transactionComplete(reader);
+        assertEquals(0, bp.getPrefetches());
+        for (int i = 0; i < dirty.length; i++) {
+            assertSame(dirty[i], bp.getPage(writer, new HeapPageId(hf.getId(), i), Permissions.READ_ONLY));
+        }
+
+        // the pages are clean once the writer aborts, but the reader is done
+        bp.transactionComplete(writer, false);
+        bp.prefetch(reader, last, null);
+        Thread.sleep(100);
+        assertEquals(0, bp.getPrefetches());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PrefetchTest.class);
+    }
+}
@@ -0,0 +1,88 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPageId;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class ScanRingTest extends SimpleDbTestBase {
+
+    private static final int POOL = 20;
+    private static final int HOT = 5;
+
+    private HeapFile hot;
+    private HeapFile big;
+    private List<List<Integer>> bigTuples;
+    private BufferPool bp;
+
+    /**
+     * A small hot table and a table three times the size of the pool.
+     */
+    @Before public void setUp() throws Exception {
+        hot = SystemTestUtil.createRandomHeapFile(2, 504 * HOT, null, null);
+        bigTuples = new ArrayList<>();
+        big = SystemTestUtil.createRandomHeapFile(2, 504 * POOL * 3, null, bigTuples);
+        bp = Database.resetBufferPool(POOL);
+    }
+
+    private long readHotSet(TransactionId tid) throws Exception {
+        long misses = bp.getMisses();
+        for (int i = 0; i < HOT; i++) {
+            bp.getPage(tid, new HeapPageId(hot.getId(), i), Permissions.READ_ONLY);
+        }
+        return bp.getMisses() - misses;
+    }
+
+    /**
+     * A scan of a table larger than the pool reads through its own ring and
+     * leaves the hot pages cached.
+     */
+    @Test public void largeScanKeepsWorkingSet() throws Exception {
+        TransactionId tid = new TransactionId();
+        assertEquals(HOT, readHotSet(tid));
+        SystemTestUtil.matchTuples(big, bigTuples);
+        assertEquals(0, readHotSet(tid));
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * Without a ring the same scan flushes the hot pages out of the pool.
+     */
+    @Test public void scanWithoutRingEvictsWorkingSet() throws Exception {
+        bp.setScanRingPages(0);
+        TransactionId tid = new TransactionId();
+        assertEquals(HOT, readHotSet(tid));
+        SystemTestUtil.matchTuples(big, bigTuples);
+        assertEquals(HOT, readHotSet(tid));
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * Tables that fit in the pool are scanned through it, and cached.
+     */
+    @Test public void smallScanUsesPool() throws Exception {
+        assertNull(bp.newScanRing(POOL));
+        assertNotNull(bp.newScanRing(POOL + 1));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ScanRingTest.class);
+    }
+}
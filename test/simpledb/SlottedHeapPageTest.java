@@ -0,0 +1,171 @@
+package simpledb;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class SlottedHeapPageTest extends SimpleDbTestBase {
+
+    private TupleDesc td;
+    private HeapPageId pid;
+
+    /**
+     * Registers an empty slotted table of (int, string) tuples.
+     */
+    @Before public void addTable() throws Exception {
+        td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE});
+        File f = File.createTempFile("slotted", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = new HeapFile(f, td, HeapPageFormat.SLOTTED);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        pid = new HeapPageId(hf.getId(), 0);
+    }
+
+    private Tuple tuple(int n, String s) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(n));
+        t.setField(1, new StringField(s, Type.STRING_LEN));
+        return t;
+    }
+
+    /**
+     * Short strings take only their own length, so a page holds many more
+     * tuples than a fixed-width page, and they read back unchanged.
+     */
+    @Test public void packsShortStrings() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, HeapPage.createEmptyPageData());
+        int n = 0;
+        while (page.hasRoomFor(tuple(n, "v" + n))) {
+            page.insertTuple(tuple(n, "v" + n));
+            n++;
+        }
+        int fixedSlots = BufferPool.getPageSize() * 8 / (td.getSize() * 8 + 1);
+        assertTrue(n > 5 * fixedSlots);
+
+        SlottedHeapPage copy = new SlottedHeapPage(pid, page.getPageData());
+        Iterator<Tuple> it = copy.iterator();
+        for (int i = 0; i < n; i++) {
+            Tuple t = it.next();
+            assertEquals(i, t.getRecordId().getTupleNumber());
+            assertEquals(new IntField(i), t.getField(0));
+            assertEquals(new StringField("v" + i, Type.STRING_LEN), t.getField(1));
+        }
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * Space freed by deletes is reused by compacting the page, and the
+     * remaining tuples keep their slots.
+     */
+    @Test public void deletesAreReclaimed() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, HeapPage.createEmptyPageData());
+        List<Tuple> tuples = new ArrayList<>();
+        for (int n = 0; page.hasRoomFor(tuple(n, "short")); n++) {
+            Tuple t = tuple(n, "short");
+            page.insertTuple(t);
+            tuples.add(t);
+        }
+        // every other tuple leaves a gap smaller than the long tuple
+        for (int i = 0; i < tuples.size(); i += 2) {
+            page.deleteTuple(tuples.get(i));
+        }
+        String longString = "a much longer string than the ones deleted";
+        assertTrue(page.hasRoomFor(tuple(-1, longString)));
+        Tuple inserted = tuple(-1, longString);
+        page.insertTuple(inserted);
+        assertEquals(0, inserted.getRecordId().getTupleNumber());
+
+        Iterator<Tuple> it = page.iterator();
+        assertEquals(longString, ((StringField) it.next().getField(1)).getValue());
+        for (int i = 1; i < tuples.size(); i += 2) {
+            Tuple t = it.next();
+            assertEquals(i, t.getRecordId().getTupleNumber());
+            assertEquals(new IntField(i), t.getField(0));
+        }
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * Tuples inserted through the buffer pool are scanned back from a
+     * slotted file.
+     */
+    @Test public void heapFileRoundTrip() throws Exception {
+        HeapFile hf = (HeapFile) Database.getCatalog().getDatabaseFile(pid.getTableId());
+        TransactionId tid = new TransactionId();
+        for (int n = 0; n < 1000; n++) {
+            Database.getBufferPool().insertTuple(tid, hf.getId(), tuple(n, "row " + n));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        for (int n = 0; n < 1000; n++) {
+            assertTrue(it.hasNext());
+            Tuple t = it.next();
+            assertEquals(new IntField(n), t.getField(0));
+            assertEquals("row " + n, ((StringField) t.getField(1)).getValue());
+        }
+        assertFalse(it.hasNext());
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertTrue(hf.numPages() < 1000 / (BufferPool.getPageSize() * 8 / (td.getSize() * 8 + 1)));
+    }
+
+    /**
+     * A fixed-width file migrated to slotted pages holds the same tuples.
+     */
+    @Test public void migrate() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        File fixed = SystemTestUtil.createRandomHeapFileUnopened(3, 2000, 10000, null, tuples);
+        File slotted = File.createTempFile("slotted", ".dat");
+        slotted.deleteOnExit();
+        TupleDesc intDesc = new TupleDesc(new Type[]{Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE});
+        HeapFileEncoder.convertToSlotted(fixed, slotted, BufferPool.getPageSize(), intDesc);
+
+        HeapFile hf = new HeapFile(slotted, intDesc, HeapPageFormat.SLOTTED);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        SystemTestUtil.matchTuples(hf, tuples);
+    }
+
+    /**
+     * A catalog line can choose the page format of its table.
+     */
+    @Test public void catalogFormat() throws Exception {
+        File schema = File.createTempFile("catalog", ".txt");
+        schema.deleteOnExit();
+        try (Writer w = new FileWriter(schema)) {
+            w.write("fixedtable (a int, b string)\n");
+            w.write("slottedtable (a int, b string) slotted\n");
+        }
+        Database.getCatalog().loadSchema(schema.getPath());
+        assertEquals(HeapPageFormat.FIXED, ((HeapFile) Database.getCatalog().getDatabaseFile(
+                Database.getCatalog().getTableId("fixedtable"))).getFormat());
+        assertEquals(HeapPageFormat.SLOTTED, ((HeapFile) Database.getCatalog().getDatabaseFile(
+                Database.getCatalog().getTableId("slottedtable"))).getFormat());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedHeapPageTest.class);
+    }
+}
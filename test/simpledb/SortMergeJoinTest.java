@@ -0,0 +1,227 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.execution.Filter;
+import simpledb.execution.HashEquiJoin;
+import simpledb.execution.Join;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.OpIterator;
+import simpledb.execution.OrderBy;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.execution.SortMergeJoin;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeScan;
+import simpledb.index.BTreeUtility;
+import simpledb.optimizer.JoinOptimizer;
+import simpledb.optimizer.LogicalJoinNode;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class SortMergeJoinTest extends SimpleDbTestBase {
+
+    private static final Predicate.Op[] OPS = {Predicate.Op.EQUALS, Predicate.Op.LESS_THAN,
+            Predicate.Op.LESS_THAN_OR_EQ, Predicate.Op.GREATER_THAN, Predicate.Op.GREATER_THAN_OR_EQ};
+
+    private HeapFile left, right;
+    private TransactionId tid;
+
+    @Before public void createTables() throws Exception {
+        // few distinct keys, so that both sides have long runs of duplicates
+        left = SystemTestUtil.createRandomHeapFile(2, 600, 40, null, null, "a");
+        right = SystemTestUtil.createRandomHeapFile(2, 300, 40, null, null, "b");
+        tid = new TransactionId();
+    }
+
+    /**
+     * @return the tuples of it, as strings, after it is opened
+     */
+    private static List<String> rows(OpIterator it) throws Exception {
+        List<String> rows = new ArrayList<>();
+        while (it.hasNext()) {
+            rows.add(it.next().toString());
+        }
+        return rows;
+    }
+
+    private static List<String> sorted(List<String> rows) {
+        List<String> copy = new ArrayList<>(rows);
+        Collections.sort(copy);
+        return copy;
+    }
+
+    private OpIterator scan(HeapFile f, String alias) {
+        return new SeqScan(tid, f.getId(), alias);
+    }
+
+    private List<String> nestedLoops(JoinPredicate p, OpIterator outer, OpIterator inner) throws Exception {
+        Join join = new Join(p, outer, inner);
+        join.open();
+        List<String> rows = sorted(rows(join));
+        join.close();
+        return rows;
+    }
+
+    @Test public void matchesNestedLoops() throws Exception {
+        for (Predicate.Op op : OPS) {
+            JoinPredicate p = new JoinPredicate(0, op, 1);
+            List<String> expected = nestedLoops(p, scan(left, "l"), scan(right, "r"));
+            SortMergeJoin join = new SortMergeJoin(p, scan(left, "l"), scan(right, "r"));
+            join.open();
+            List<String> actual = rows(join);
+            assertFalse(expected.isEmpty());
+            assertEquals(op != Predicate.Op.EQUALS, join.isInnerResident());
+            assertEquals(op.toString(), expected, sorted(actual));
+
+            // rewinding part way through, and at the end, returns them again
+            join.rewind();
+            assertEquals(actual.get(0), join.next().toString());
+            join.rewind();
+            assertEquals(actual, rows(join));
+            join.close();
+        }
+    }
+
+    /**
+     * On EQUALS the output is in the order of the join keys, so a second
+     * merge join on the same key needs no sort.
+     */
+    @Test public void ordered() throws Exception {
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        SortMergeJoin join = new SortMergeJoin(p, scan(left, "l"), scan(right, "r"));
+        assertTrue(join.getChildren()[0] instanceof OrderBy);
+        assertTrue(SortMergeJoin.isOrderedOn(join, 0));
+        assertTrue(SortMergeJoin.isOrderedOn(join, 2));
+        assertFalse(SortMergeJoin.isOrderedOn(join, 1));
+        Predicate small = new Predicate(0, Predicate.Op.LESS_THAN, new IntField(20));
+        assertTrue(SortMergeJoin.isOrderedOn(new Filter(small, join), 2));
+
+        SortMergeJoin again = new SortMergeJoin(new JoinPredicate(2, Predicate.Op.EQUALS, 0),
+                join, scan(left, "x"));
+        assertSame(join, again.getChildren()[0]);
+        again.open();
+        int last = Integer.MIN_VALUE;
+        int count = 0;
+        while (again.hasNext()) {
+            int key = again.next().getInt(0);
+            assertTrue(key >= last);
+            last = key;
+            count++;
+        }
+        again.close();
+        assertTrue(count > 0);
+    }
+
+    /**
+     * On a range predicate, an inner larger than the memory budget is held a
+     * chunk at a time, with the outer read once per chunk.
+     */
+    @Test public void innerOverBudget() throws Exception {
+        // 600 tuples of 8 bytes are more than a page
+        for (Predicate.Op op : OPS) {
+            if (op == Predicate.Op.EQUALS) {
+                continue;
+            }
+            JoinPredicate p = new JoinPredicate(0, op, 1);
+            List<String> expected = nestedLoops(p, scan(right, "r"), scan(left, "l"));
+            SortMergeJoin join = new SortMergeJoin(p, scan(right, "r"), scan(left, "l"));
+            join.setMemoryPages(1);
+            join.open();
+            assertFalse(join.isInnerResident());
+            assertEquals(op.toString(), expected, sorted(rows(join)));
+
+            join.rewind();
+            assertTrue(join.hasNext());
+            join.next();
+            join.rewind();
+            assertEquals(op.toString(), expected, sorted(rows(join)));
+            join.close();
+        }
+        // a range join's output is not known to be in order, as it may be
+        // read in chunks
+        assertFalse(SortMergeJoin.isOrderedOn(new SortMergeJoin(new JoinPredicate(0, Predicate.Op.LESS_THAN, 0),
+                new OrderBy(0, true, scan(left, "l")), scan(right, "r")), 0));
+    }
+
+    /**
+     * A B+ tree scan on the join key is merged as it is, without a sort.
+     */
+    @Test public void indexScans() throws Exception {
+        BTreeFile outer = BTreeUtility.createRandomBTreeFile(2, 500, 100, null, null, 1);
+        BTreeFile inner = BTreeUtility.createRandomBTreeFile(2, 400, 100, null, null, 0);
+        assertTrue(SortMergeJoin.isOrderedOn(new BTreeScan(tid, outer.getId(), "o", null), 1));
+        assertFalse(SortMergeJoin.isOrderedOn(new BTreeScan(tid, outer.getId(), "o", null), 0));
+        for (Predicate.Op op : OPS) {
+            JoinPredicate p = new JoinPredicate(1, op, 0);
+            List<String> expected = nestedLoops(p, new BTreeScan(tid, outer.getId(), "o", null),
+                    new BTreeScan(tid, inner.getId(), "i", null));
+            SortMergeJoin join = new SortMergeJoin(p, new BTreeScan(tid, outer.getId(), "o", null),
+                    new BTreeScan(tid, inner.getId(), "i", null));
+            assertTrue(join.getChildren()[0] instanceof BTreeScan);
+            assertTrue(join.getChildren()[1] instanceof BTreeScan);
+            join.open();
+            assertEquals(op.toString(), expected, sorted(rows(join)));
+            join.close();
+        }
+    }
+
+    @Test public void instantiateJoin() throws Exception {
+        LogicalJoinNode eq = new LogicalJoinNode("l", "r", "l.a0", "r.b1", Predicate.Op.EQUALS);
+        assertTrue(JoinOptimizer.instantiateJoin(eq, scan(left, "l"), scan(right, "r")) instanceof HashEquiJoin);
+        OpIterator sortedLeft = new OrderBy(0, true, scan(left, "l"));
+        OpIterator sortedRight = new OrderBy(1, true, scan(right, "r"));
+        assertTrue(JoinOptimizer.instantiateJoin(eq, sortedLeft, scan(right, "r")) instanceof HashEquiJoin);
+        assertTrue(JoinOptimizer.instantiateJoin(eq, sortedLeft, sortedRight) instanceof SortMergeJoin);
+
+        LogicalJoinNode lt = new LogicalJoinNode("l", "r", "l.a0", "r.b1", Predicate.Op.LESS_THAN);
+        assertTrue(JoinOptimizer.instantiateJoin(lt, scan(left, "l"), scan(right, "r")) instanceof SortMergeJoin);
+        LogicalJoinNode ne = new LogicalJoinNode("l", "r", "l.a0", "r.b1", Predicate.Op.NOT_EQUALS);
+        assertTrue(JoinOptimizer.instantiateJoin(ne, scan(left, "l"), scan(right, "r")) instanceof Join);
+    }
+
+    /**
+     * With cardinalities, the cheapest join is chosen: a merge join for an
+     * equi-join when the inputs that need a sort are small enough.
+     */
+    @Test public void instantiateJoinByCost() throws Exception {
+        LogicalJoinNode eq = new LogicalJoinNode("l", "r", "l.a0", "r.b1", Predicate.Op.EQUALS);
+        OpIterator sortedLeft = new OrderBy(0, true, scan(left, "l"));
+        OpIterator sortedRight = new OrderBy(1, true, scan(right, "r"));
+        assertTrue(JoinOptimizer.instantiateJoin(eq, scan(left, "l"), scan(right, "r"), 1000, 1000)
+                instanceof HashEquiJoin);
+        assertTrue(JoinOptimizer.instantiateJoin(eq, scan(left, "l"), scan(right, "r"), 1000000, 1000000)
+                instanceof HashEquiJoin);
+        assertTrue(JoinOptimizer.instantiateJoin(eq, sortedLeft, sortedRight, 1000, 1000)
+                instanceof SortMergeJoin);
+        // sorting a few tuples is cheaper than hashing many
+        assertTrue(JoinOptimizer.instantiateJoin(eq, sortedLeft, scan(right, "r"), 100000, 10)
+                instanceof SortMergeJoin);
+        assertTrue(JoinOptimizer.instantiateJoin(eq, sortedLeft, scan(right, "r"), 1000, 1000)
+                instanceof HashEquiJoin);
+
+        LogicalJoinNode lt = new LogicalJoinNode("l", "r", "l.a0", "r.b1", Predicate.Op.LESS_THAN);
+        assertTrue(JoinOptimizer.instantiateJoin(lt, scan(left, "l"), scan(right, "r"), 1000, 1000)
+                instanceof SortMergeJoin);
+        assertTrue(JoinOptimizer.instantiateJoin(lt, scan(left, "l"), scan(right, "r"), 1, 1) instanceof Join);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SortMergeJoinTest.class);
+    }
+}
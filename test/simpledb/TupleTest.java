@@ -1,13 +1,22 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Iterator;
+
 import junit.framework.JUnit4TestAdapter;
 
 import org.junit.Test;
 
+import simpledb.common.Database;
+import simpledb.common.Type;
 import simpledb.common.Utility;
 import simpledb.storage.*;
 import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
 
 public class TupleTest extends SimpleDbTestBase {
 
@@ -59,6 +68,43 @@ public class TupleTest extends SimpleDbTestBase {
 	}
     }
 
+    /**
+     * Tuple.getInt() reads the same values as getField(), both from a tuple
+     * whose fields were set and from a view of a page's bytes, and a view
+     * knows its RecordId until it is given another.
+     */
+    @Test public void getInt() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE});
+        File f = File.createTempFile("tuple", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = new HeapFile(f, td);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        HeapPage page = new HeapPage(pid, HeapPage.createEmptyPageData());
+        Tuple tup = new Tuple(td);
+        tup.setField(0, new IntField(-7));
+        tup.setField(1, new StringField("x", Type.STRING_LEN));
+        tup.setField(2, new IntField(42));
+        page.insertTuple(tup);
+        page.insertTuple(tup);
+        assertEquals(42, tup.getInt(2));
+
+        Iterator<Tuple> it = page.iterator();
+        Tuple view = it.next();
+        assertEquals(-7, view.getInt(0));
+        assertEquals(42, view.getInt(2));
+        assertEquals(new IntField(42), view.getField(2));
+        assertEquals(new RecordId(pid, 0), view.getRecordId());
+        view = it.next();
+        view.setRecordId(null);
+        assertNull(view.getRecordId());
+        try {
+            view.getInt(1);
+            fail("getInt() read a string field");
+        } catch (ClassCastException expected) {
+        }
+    }
+
     /**
      * JUnit suite target
      */
@@ -0,0 +1,226 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.common.Utility;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapFileEncoder;
+import simpledb.storage.HeapPage;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class ZoneMapTest extends SimpleDbTestBase {
+
+    private static final int PAGES = 10;
+    private static final int PER_PAGE = 504;
+
+    private File file;
+    private HeapFile hf;
+    private BufferPool bp;
+
+    /**
+     * Writes a table of full pages whose first column is the row number.
+     */
+    private static void writeTable(File f, int rows) throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        for (int n = 0; n < rows; n++) {
+            tuples.add(Arrays.asList(n, n % 7));
+        }
+        HeapFileEncoder.convert(tuples, f, BufferPool.getPageSize(), 2);
+    }
+
+    private HeapFile open() {
+        HeapFile f = new HeapFile(file, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(f, SystemTestUtil.getUUID());
+        return f;
+    }
+
+    @Before public void setUp() throws Exception {
+        file = File.createTempFile("zones", ".dat");
+        file.deleteOnExit();
+        writeTable(file, PER_PAGE * PAGES);
+        hf = open();
+        bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+    }
+
+    /**
+     * Counts the tuples of a filtered scan with a fresh pool, and checks how
+     * many pages it read. Read-ahead is off, so that every read is a miss.
+     */
+    private int count(HeapFile f, Predicate p, long expectedMisses) throws Exception {
+        bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        bp.setPrefetchDepth(0);
+        TransactionId tid = new TransactionId();
+        int n = count(f, tid, p);
+        assertEquals(expectedMisses, bp.getMisses());
+        bp.transactionComplete(tid);
+        return n;
+    }
+
+    private int count(HeapFile f, TransactionId tid, Predicate p) throws Exception {
+        SeqScan scan = new SeqScan(tid, f.getId(), "t");
+        scan.pushDown(p);
+        scan.open();
+        int n = 0;
+        while (scan.hasNext()) {
+            assertTrue(p.filter(scan.next()));
+            n++;
+        }
+        scan.close();
+        return n;
+    }
+
+    private static Predicate id(Predicate.Op op, int v) {
+        return new Predicate(0, op, new IntField(v));
+    }
+
+    /**
+     * Once a scan has seen every page, a range query on the append-ordered
+     * column reads only the pages in the range, even through a new HeapFile
+     * on the same file. Predicates on other columns still read every page.
+     */
+    @Test public void rangeReadsOnlyRelevantPages() throws Exception {
+        int from = PER_PAGE * 7;
+        assertEquals(PER_PAGE * 3, count(hf, id(Predicate.Op.GREATER_THAN_OR_EQ, from), PAGES));
+        assertEquals(PER_PAGE * 3, count(hf, id(Predicate.Op.GREATER_THAN_OR_EQ, from), 3));
+        assertEquals(1, count(hf, id(Predicate.Op.EQUALS, 5), 1));
+        assertEquals(0, count(hf, id(Predicate.Op.LESS_THAN, 0), 0));
+        assertEquals(PER_PAGE * PAGES / 7,
+                count(hf, new Predicate(1, Predicate.Op.EQUALS, new IntField(0)), PAGES));
+
+        HeapFile reopened = open();
+        assertEquals(PER_PAGE * 3, count(reopened, id(Predicate.Op.GREATER_THAN_OR_EQ, from), 3));
+    }
+
+    /**
+     * A tuple inserted into a page whose bounds are known is found by the
+     * inserting transaction before the page is written, and by later scans
+     * after it is; a delete leaves the bounds wide until the page is written.
+     */
+    @Test public void insertAndDelete() throws Exception {
+        count(hf, id(Predicate.Op.LESS_THAN, 0), PAGES);
+
+        TransactionId tid = new TransactionId();
+        HeapPageId pid = new HeapPageId(hf.getId(), 3);
+        Tuple victim = ((HeapPage) bp.getPage(tid, pid, Permissions.READ_ONLY)).iterator().next();
+        bp.deleteTuple(tid, victim);
+        assertEquals(0, count(hf, tid, id(Predicate.Op.EQUALS, PER_PAGE * 3)));
+        bp.transactionComplete(tid);
+        assertEquals(0, count(hf, id(Predicate.Op.EQUALS, PER_PAGE * 3), 0));
+
+        tid = new TransactionId();
+        bp.insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[]{-5, 0}));
+        assertEquals(1, count(hf, tid, id(Predicate.Op.LESS_THAN, 0)));
+        bp.transactionComplete(tid);
+        assertEquals(1, count(hf, id(Predicate.Op.LESS_THAN, 0), 1));
+    }
+
+    /**
+     * Bounds learned by a scan reach the map file when its transaction
+     * completes, not as each page is read.
+     */
+    @Test public void writtenAtCommit() throws Exception {
+        File zm = new File(file.getPath() + ".zm");
+        TransactionId tid = new TransactionId();
+        assertEquals(0, count(hf, tid, id(Predicate.Op.LESS_THAN, 0)));
+        assertFalse(zm.exists());
+        bp.transactionComplete(tid);
+        assertTrue(zm.exists());
+    }
+
+    /**
+     * A map whose heap file has changed since it was written is discarded.
+     */
+    @Test public void staleMapDiscarded() throws Exception {
+        count(hf, id(Predicate.Op.LESS_THAN, 0), PAGES);
+
+        List<List<Integer>> shifted = new ArrayList<>();
+        for (int n = 0; n < PER_PAGE * (PAGES - 1); n++) {
+            shifted.add(Arrays.asList(-1 - n, 0));
+        }
+        HeapFileEncoder.convert(shifted, file, BufferPool.getPageSize(), 2);
+        HeapFile rewritten = open();
+        assertEquals(PER_PAGE * (PAGES - 1), count(rewritten, id(Predicate.Op.LESS_THAN, 0), PAGES - 1));
+    }
+
+    /**
+     * Inserts and writes do not load the map, nor create a map file.
+     */
+    @Test public void writesLeaveNoMap() throws Exception {
+        TransactionId tid = new TransactionId();
+        bp.insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[]{-5, 0}));
+        bp.transactionComplete(tid);
+        assertFalse(new File(file.getPath() + ".zm").exists());
+        assertEquals(1, count(hf, id(Predicate.Op.LESS_THAN, 0), PAGES + 1));
+    }
+
+    /**
+     * A tuple inserted through a HeapFile whose map is not loaded yet is
+     * found by the inserting transaction's first filtered scan, though the
+     * map file it loads still has the page's old bounds.
+     */
+    @Test public void insertBeforeFirstScan() throws Exception {
+        count(hf, id(Predicate.Op.LESS_THAN, 0), PAGES);
+
+        HeapFile reopened = open();
+        bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        HeapPageId pid = new HeapPageId(reopened.getId(), 3);
+        Tuple victim = ((HeapPage) bp.getPage(tid, pid, Permissions.READ_ONLY)).iterator().next();
+        bp.deleteTuple(tid, victim);
+        bp.insertTuple(tid, reopened.getId(), Utility.getHeapTuple(new int[]{-5, 0}));
+        assertEquals(1, count(reopened, tid, id(Predicate.Op.LESS_THAN, 0)));
+        bp.transactionComplete(tid);
+        assertEquals(1, count(reopened, id(Predicate.Op.LESS_THAN, 0), 1));
+    }
+
+    /**
+     * A page written through a HeapFile whose map is not loaded yet is
+     * forgotten when the map loads, so the first filtered scan after the
+     * write finds its tuples even if the map looks current, as it does when
+     * the write comes within one tick of the file's modification time.
+     */
+    @Test public void writeBeforeFirstScan() throws Exception {
+        count(hf, id(Predicate.Op.LESS_THAN, 0), PAGES);
+        long modified = file.lastModified();
+
+        HeapFile reopened = open();
+        HeapPageId pid = new HeapPageId(reopened.getId(), 0);
+        HeapPage page = (HeapPage) reopened.readPage(pid);
+        page.deleteTuple(page.iterator().next());
+        page.insertTuple(Utility.getHeapTuple(new int[]{-5, 0}));
+        reopened.writePage(page);
+        assertTrue(file.setLastModified(modified));
+
+        bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        assertEquals(1, count(reopened, tid, id(Predicate.Op.LESS_THAN, 0)));
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ZoneMapTest.class);
+    }
+}
@@ -0,0 +1,148 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Utility;
+import simpledb.execution.Aggregate;
+import simpledb.execution.Aggregator;
+import simpledb.execution.BatchAggregate;
+import simpledb.execution.BatchFilter;
+import simpledb.execution.BatchIterator;
+import simpledb.execution.BatchScan;
+import simpledb.execution.BatchesToRows;
+import simpledb.execution.Filter;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPage;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.IntField;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Compares tuple-at-a-time and batch plans for two queries shaped like TPC-H
+ * Q6 and Q1, over a 10-column int table held in the pool:
+ * <ul>
+ * <li>Q6: SELECT SUM(c1) FROM t WHERE c3 &gt;= 20 AND c3 &lt; 60 AND c4 &lt; 24
+ * AND c5 &lt; 70</li>
+ * <li>Q1: SELECT c2, SUM(c1) FROM t WHERE c5 &lt;= 90 GROUP BY c2</li>
+ * </ul>
+ * Read-ahead is off, so that both plans only pay for the query itself.
+ * <p>
+ * Run with <code>ant runbench -Dbench=BatchBenchmark</code>; the table size
+ * can be changed with <code>-Dpages=N</code> in bench.jvmargs.
+ */
+public class BatchBenchmark {
+
+    private static final int COLUMNS = 10;
+    private static final int ROUNDS = 15;
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        int numPages = Integer.getInteger("pages", 2000);
+        Database.reset();
+        HeapFile hf = createFullTable(numPages);
+        Database.resetBufferPool(numPages + 10).setPrefetchDepth(0);
+        long rows = numPages * (long) tuplesPerPage();
+        String[] names = {"Q6 rows", "Q6 batches", "Q1 rows", "Q1 batches"};
+        TransactionId tid = new TransactionId();
+
+        // rounds visit every plan in turn, so that warm-up and garbage
+        // collection do not favour the plan measured last
+        long[][] times = new long[names.length][ROUNDS];
+        for (int round = -3; round < ROUNDS; round++) {
+            for (int q = 0; q < names.length; q++) {
+                long start = System.nanoTime();
+                run(q % 2 == 0 ? rowPlan(q / 2, tid, hf) : new BatchesToRows(batchPlan(q / 2, tid, hf)));
+                if (round >= 0) { // the first rounds fill the pool and warm up
+                    times[q][round] = System.nanoTime() - start;
+                }
+            }
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        System.out.println("pages: " + numPages + ", rows: " + rows + ", " + COLUMNS + " int columns");
+        System.out.println("plan\t\tms (median of " + ROUNDS + ")\tMrows/s");
+        for (int q = 0; q < names.length; q++) {
+            Arrays.sort(times[q]);
+            double ms = times[q][ROUNDS / 2] / 1e6;
+            System.out.printf("%-10s\t%.1f\t\t\t%.1f%n", names[q], ms, rows / ms / 1000);
+        }
+    }
+
+    private static Predicate[] filters(int q) {
+        if (q == 0) {
+            return new Predicate[]{
+                    new Predicate(3, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(20)),
+                    new Predicate(3, Predicate.Op.LESS_THAN, new IntField(60)),
+                    new Predicate(4, Predicate.Op.LESS_THAN, new IntField(24)),
+                    new Predicate(5, Predicate.Op.LESS_THAN, new IntField(70))};
+        }
+        return new Predicate[]{new Predicate(5, Predicate.Op.LESS_THAN_OR_EQ, new IntField(90))};
+    }
+
+    private static OpIterator rowPlan(int q, TransactionId tid, HeapFile hf) throws DbException {
+        SeqScan scan = new SeqScan(tid, hf.getId(), "t");
+        for (Predicate p : filters(q)) {
+            scan.pushDown(p);
+        }
+        return new Aggregate(scan, 1, q == 1 ? 2 : Aggregator.NO_GROUPING, Aggregator.Op.SUM);
+    }
+
+    private static BatchIterator batchPlan(int q, TransactionId tid, HeapFile hf) {
+        BatchIterator plan = new BatchScan(tid, hf.getId(), "t", new int[]{1, 2, 3, 4, 5});
+        for (Predicate p : filters(q)) {
+            plan = new BatchFilter(p, plan);
+        }
+        return new BatchAggregate(plan, 1, q == 1 ? 2 : Aggregator.NO_GROUPING, Aggregator.Op.SUM);
+    }
+
+    private static void run(OpIterator it) throws Exception {
+        it.open();
+        while (it.hasNext()) {
+            sink = it.next();
+        }
+        it.close();
+    }
+
+    private static int tuplesPerPage() {
+        return BufferPool.getPageSize() * 8 / (COLUMNS * 4 * 8 + 1);
+    }
+
+    /**
+     * Writes a table whose pages are all the same full page of random values
+     * below 100, with 10 distinct values in the grouping column.
+     */
+    private static HeapFile createFullTable(int numPages) throws IOException, DbException {
+        File f = File.createTempFile("bench", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(COLUMNS));
+        Database.getCatalog().addTable(hf, f.getName());
+        HeapPage page = new HeapPage(new HeapPageId(hf.getId(), 0), HeapPage.createEmptyPageData());
+        Random random = new Random(1);
+        for (int n = 0; n < tuplesPerPage(); n++) {
+            int[] values = new int[COLUMNS];
+            for (int j = 0; j < COLUMNS; j++) {
+                values[j] = random.nextInt(j == 2 ? 10 : 100);
+            }
+            page.insertTuple(Utility.getHeapTuple(values));
+        }
+        byte[] data = page.getPageData();
+        try (OutputStream out = new FileOutputStream(f)) {
+            for (int i = 0; i < numPages; i++) {
+                out.write(data);
+            }
+        }
+        return hf;
+    }
+}
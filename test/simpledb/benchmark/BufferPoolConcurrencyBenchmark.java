@@ -0,0 +1,113 @@
+package simpledb.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Permissions;
+import simpledb.storage.BufferPool;
+import simpledb.storage.EvictionPolicyType;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.PageId;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Measures BufferPool read-hit throughput as the number of threads grows.
+ * Every thread runs its own transaction over a shared, fully resident table,
+ * so getPage never blocks on a page lock and never reads from disk; what is
+ * left is the cost of the pool's own latching. Each thread count is run both
+ * against a single-partition pool (one latch for every frame) and against the
+ * default partitioning.
+ * <p>
+ * Run with <code>ant runbench -Dbench=BufferPoolConcurrencyBenchmark</code>.
+ */
+public class BufferPoolConcurrencyBenchmark {
+
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32};
+    private static final int NUM_PAGES = 16384;
+    private static final int HITS_PER_THREAD = 1000000;
+    private static final int PAGE_SIZE = 128;
+
+    public static void main(String[] args) throws Exception {
+        BufferPool.setPageSize(PAGE_SIZE);
+        System.out.println("processors: " + Runtime.getRuntime().availableProcessors());
+        System.out.println("threads\tpartitions\tMhits/s");
+        for (int threads : THREADS) {
+            for (int partitions : new int[]{1, 0}) {
+                BufferPool bp = load(partitions);
+                double rate = hitsPerSecond(bp, threads);
+                System.out.println(threads + "\t" + bp.numPartitions() + "\t" + String.format("%.2f", rate / 1e6));
+            }
+        }
+        BufferPool.resetPageSize();
+    }
+
+    /**
+     * Creates a table of NUM_PAGES pages and a pool that holds all of it.
+     *
+     * @param partitions the number of partitions, or 0 for the default
+     */
+    private static BufferPool load(int partitions) throws IOException, DbException, TransactionAbortedException {
+        Database.reset();
+        HeapFile hf = BufferPoolHitBenchmark.createEmptyTable(NUM_PAGES);
+        BufferPool bp = partitions == 0
+                ? Database.resetBufferPool(NUM_PAGES)
+                : Database.resetBufferPool(NUM_PAGES, EvictionPolicyType.getDefault(), partitions);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < NUM_PAGES; i++) {
+            bp.getPage(tid, new HeapPageId(hf.getId(), i), Permissions.READ_ONLY);
+        }
+        bp.transactionComplete(tid);
+        return bp;
+    }
+
+    private static double hitsPerSecond(BufferPool bp, int threads) throws InterruptedException {
+        int tableId = Database.getCatalog().tableIdIterator().next();
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final long seed = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    TransactionId tid = new TransactionId();
+                    PageId[] pids = new PageId[NUM_PAGES];
+                    for (int i = 0; i < NUM_PAGES; i++) {
+                        pids[i] = new HeapPageId(tableId, i);
+                        // take every read lock up front, and warm up the JIT
+                        bp.getPage(tid, pids[i], Permissions.READ_ONLY);
+                    }
+                    Random r = new Random(seed);
+                    int[] order = new int[HITS_PER_THREAD];
+                    for (int i = 0; i < HITS_PER_THREAD; i++) {
+                        order[i] = r.nextInt(NUM_PAGES);
+                    }
+                    ready.countDown();
+                    go.await();
+                    for (int i = 0; i < HITS_PER_THREAD; i++) {
+                        bp.getPage(tid, pids[order[i]], Permissions.READ_ONLY);
+                    }
+                    done.countDown();
+                    bp.transactionComplete(tid);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            workers[t].start();
+        }
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        for (Thread w : workers) {
+            w.join();
+        }
+        return (double) threads * HITS_PER_THREAD / (elapsed / 1e9);
+    }
+}
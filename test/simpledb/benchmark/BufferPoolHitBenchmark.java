@@ -0,0 +1,86 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Permissions;
+import simpledb.common.Utility;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.PageId;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Measures the latency of a BufferPool hit as the pool grows. For each pool
+ * size, a table with exactly that many pages is loaded into a pool of the
+ * same size, and then random pages are requested. With an O(1) page table the
+ * reported ns/hit should stay roughly flat from the smallest pool to the
+ * largest.
+ * <p>
+ * Run with <code>ant runbench -Dbench=BufferPoolHitBenchmark</code>.
+ */
+public class BufferPoolHitBenchmark {
+
+    private static final int[] POOL_SIZES = {1000, 4000, 16000, 64000};
+    private static final int HITS = 2000000;
+    private static final int PAGE_SIZE = 128;
+
+    public static void main(String[] args) throws IOException, DbException, TransactionAbortedException {
+        BufferPool.setPageSize(PAGE_SIZE);
+        System.out.println("numPages\tns/hit");
+        for (int numPages : POOL_SIZES) {
+            System.out.println(numPages + "\t" + String.format("%.1f", nanosPerHit(numPages)));
+        }
+        BufferPool.resetPageSize();
+    }
+
+    private static double nanosPerHit(int numPages) throws IOException, DbException, TransactionAbortedException {
+        Database.reset();
+        HeapFile hf = createEmptyTable(numPages);
+        BufferPool bp = Database.resetBufferPool(numPages);
+        TransactionId tid = new TransactionId();
+
+        PageId[] pids = new PageId[numPages];
+        for (int i = 0; i < numPages; i++) {
+            pids[i] = new HeapPageId(hf.getId(), i);
+            bp.getPage(tid, pids[i], Permissions.READ_ONLY);
+        }
+
+        Random r = new Random(42);
+        int[] order = new int[HITS];
+        for (int i = 0; i < HITS; i++) {
+            order[i] = r.nextInt(numPages);
+        }
+
+        // one warm-up pass for the JIT, then the timed pass
+        for (int i = 0; i < HITS; i++) {
+            bp.getPage(tid, pids[order[i]], Permissions.READ_ONLY);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < HITS; i++) {
+            bp.getPage(tid, pids[order[i]], Permissions.READ_ONLY);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        bp.transactionComplete(tid);
+        return (double) elapsed / HITS;
+    }
+
+    /**
+     * Creates a two-column table of the given number of empty pages.
+     */
+    static HeapFile createEmptyTable(int numPages) throws IOException {
+        File f = File.createTempFile("bench", ".dat");
+        f.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.setLength((long) numPages * BufferPool.getPageSize());
+        }
+        return Utility.openHeapFile(2, f);
+    }
+}
@@ -0,0 +1,157 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Utility;
+import simpledb.execution.OpIterator;
+import simpledb.execution.PipelineCompiler;
+import simpledb.execution.Predicate;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPage;
+import simpledb.storage.HeapPageId;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Compares plans run by the operators with the same plans compiled by
+ * {@link PipelineCompiler}, for queries over 10-column int tables held in
+ * the pool, planned by {@link LogicalPlan}:
+ * <ul>
+ * <li>filter: SELECT b.f1, b.f2 FROM b WHERE b.f3 &lt; 50 AND b.f4 &gt;= 10
+ * AND b.f5 &lt;&gt; 3</li>
+ * <li>join: SELECT b.f0, a.f1 FROM a, b WHERE a.f0 = b.f1 AND b.f2 &lt; 80
+ * AND b.f3 &gt; 10</li>
+ * </ul>
+ * where a has 20 pages and b has 2000. The time to compile each plan is
+ * reported separately.
+ * <p>
+ * Run with <code>ant runbench -Dbench=CompiledPipelineBenchmark</code>; the
+ * size of b can be changed with <code>-Dpages=N</code> in bench.jvmargs.
+ */
+public class CompiledPipelineBenchmark {
+
+    private static final int COLUMNS = 10;
+    private static final int ROUNDS = 15;
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        int numPages = Integer.getInteger("pages", 2000);
+        Database.reset();
+        HeapFile a = createFullTable("a", 20, 1000);
+        HeapFile b = createFullTable("b", numPages, 100);
+        Database.resetBufferPool(numPages + 30).setPrefetchDepth(0);
+        Map<String, TableStats> stats = new HashMap<>();
+        stats.put("a", new TableStats(a.getId(), 1));
+        stats.put("b", new TableStats(b.getId(), 1));
+        TransactionId tid = new TransactionId();
+
+        String[] names = {"filter", "filter, compiled", "join", "join, compiled"};
+        OpIterator[] plans = new OpIterator[names.length];
+        for (int q = 0; q < names.length; q++) {
+            plans[q] = plan(q / 2, tid, a, b, stats);
+            if (q % 2 == 1) {
+                long start = System.nanoTime();
+                plans[q] = PipelineCompiler.compile(plans[q]);
+                System.out.printf("compiling the %s plan took %.1f ms%n", names[q - 1], (System.nanoTime() - start) / 1e6);
+            }
+        }
+
+        // rounds visit every plan in turn, so that warm-up and garbage
+        // collection do not favour the plan measured last
+        long[][] times = new long[names.length][ROUNDS];
+        long[] rows = new long[names.length];
+        for (int round = -3; round < ROUNDS; round++) {
+            for (int q = 0; q < names.length; q++) {
+                long start = System.nanoTime();
+                rows[q] = run(plans[q]);
+                if (round >= 0) { // the first rounds fill the pool and warm up
+                    times[q][round] = System.nanoTime() - start;
+                }
+            }
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        System.out.println("pages of b: " + numPages + ", " + COLUMNS + " int columns");
+        System.out.println("plan\t\t\tms (median of " + ROUNDS + ")\trows out");
+        for (int q = 0; q < names.length; q++) {
+            Arrays.sort(times[q]);
+            System.out.printf("%-16s\t%.1f\t\t\t%d%n", names[q], times[q][ROUNDS / 2] / 1e6, rows[q]);
+        }
+    }
+
+    private static OpIterator plan(int q, TransactionId tid, HeapFile a, HeapFile b,
+                                   Map<String, TableStats> stats) throws Exception {
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(b.getId(), "b");
+        if (q == 0) {
+            lp.addFilter("b.f3", Predicate.Op.LESS_THAN, "50");
+            lp.addFilter("b.f4", Predicate.Op.GREATER_THAN_OR_EQ, "10");
+            lp.addFilter("b.f5", Predicate.Op.NOT_EQUALS, "3");
+            lp.addProjectField("b.f1", null);
+            lp.addProjectField("b.f2", null);
+        } else {
+            lp.addScan(a.getId(), "a");
+            lp.addJoin("a.f0", "b.f1", Predicate.Op.EQUALS);
+            lp.addFilter("b.f2", Predicate.Op.LESS_THAN, "80");
+            lp.addFilter("b.f3", Predicate.Op.GREATER_THAN, "10");
+            lp.addProjectField("b.f0", null);
+            lp.addProjectField("a.f1", null);
+        }
+        return lp.physicalPlan(tid, stats, false);
+    }
+
+    private static long run(OpIterator it) throws Exception {
+        long rows = 0;
+        it.open();
+        while (it.hasNext()) {
+            sink = it.next();
+            rows++;
+        }
+        it.close();
+        return rows;
+    }
+
+    private static int tuplesPerPage() {
+        return BufferPool.getPageSize() * 8 / (COLUMNS * 4 * 8 + 1);
+    }
+
+    /**
+     * Writes a table of the given name whose pages are all the same full
+     * page of random values below 100, except for the first column, whose
+     * values are below keys.
+     */
+    private static HeapFile createFullTable(String name, int numPages, int keys) throws IOException, DbException {
+        File f = File.createTempFile("bench", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(COLUMNS, "f"));
+        Database.getCatalog().addTable(hf, name);
+        HeapPage page = new HeapPage(new HeapPageId(hf.getId(), 0), HeapPage.createEmptyPageData());
+        Random random = new Random(name.hashCode());
+        for (int n = 0; n < tuplesPerPage(); n++) {
+            int[] values = new int[COLUMNS];
+            for (int j = 0; j < COLUMNS; j++) {
+                values[j] = random.nextInt(j == 0 ? keys : 100);
+            }
+            page.insertTuple(Utility.getHeapTuple(values));
+        }
+        byte[] data = page.getPageData();
+        try (OutputStream out = new FileOutputStream(f)) {
+            for (int i = 0; i < numPages; i++) {
+                out.write(data);
+            }
+        }
+        return hf;
+    }
+}
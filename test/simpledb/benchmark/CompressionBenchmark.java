@@ -0,0 +1,125 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.BufferPool;
+import simpledb.storage.DbFileIterator;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPageFormat;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.storage.TuplePage;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Compares the size and the scan throughput of a table of repetitive values
+ * stored in HeapPages and in CompressedHeapPages.
+ * <p>
+ * The table has a year that changes every 1000 rows, a city from a short
+ * list, an increasing id and a small measure. The pool is much smaller than
+ * either table, so every scan reads each page from the file, and compressed
+ * pages are decompressed as they are read. The operating system's page cache
+ * is warm, so the numbers show the cost of the read path rather than of the
+ * disk.
+ * <p>
+ * Run with <code>ant runbench -Dbench=CompressionBenchmark</code>; the table
+ * size can be changed with <code>-Drows=N</code> in bench.jvmargs.
+ */
+public class CompressionBenchmark {
+
+    private static final String[] CITIES = {"Boston", "Cambridge", "Somerville", "Medford", "Newton"};
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[]{Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE, Type.INT_TYPE});
+    private static final int POOL = 100;
+    private static final int ROUNDS = 11;
+
+    public static void main(String[] args) throws Exception {
+        int rows = Integer.getInteger("rows", 500000);
+        Database.reset();
+        HeapPageFormat[] formats = {HeapPageFormat.FIXED, HeapPageFormat.COMPRESSED};
+        HeapFile[] tables = new HeapFile[formats.length];
+        for (int i = 0; i < formats.length; i++) {
+            tables[i] = createTable(formats[i], rows);
+        }
+        Database.resetBufferPool(POOL).setPrefetchDepth(0);
+        TransactionId tid = new TransactionId();
+
+        // rounds visit every table in turn, so that warm-up and garbage
+        // collection do not favour the table measured last
+        long[][] times = new long[formats.length][ROUNDS];
+        for (int round = -1; round < ROUNDS; round++) {
+            for (int i = 0; i < formats.length; i++) {
+                long nanos = scan(tables[i], tid);
+                if (round >= 0) {
+                    times[i][round] = nanos;
+                }
+            }
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        System.out.println("rows: " + rows + ", pool " + POOL);
+        System.out.println("format\t\tpages\tratio\trows/s (median of " + ROUNDS + ")");
+        for (int i = 0; i < formats.length; i++) {
+            Arrays.sort(times[i]);
+            System.out.printf("%-10s\t%d\t%.2f\t%d%n", formats[i], tables[i].numPages(),
+                    tables[i].getCompressionRatio(), (long) (rows / (times[i][ROUNDS / 2] / 1e9)));
+        }
+    }
+
+    private static Tuple row(int n) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(1990 + n / 1000));
+        t.setField(1, new StringField(CITIES[(n / 7) % CITIES.length], Type.STRING_LEN));
+        t.setField(2, new IntField(n));
+        t.setField(3, new IntField(n * 31 % 100));
+        return t;
+    }
+
+    /**
+     * @return the time the scan took, in nanoseconds
+     */
+    private static long scan(HeapFile hf, TransactionId tid) throws Exception {
+        long start = System.nanoTime();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+        }
+        it.close();
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Writes a table of the given format with each page filled in turn.
+     */
+    private static HeapFile createTable(HeapPageFormat format, int rows) throws IOException, DbException {
+        File f = File.createTempFile("bench", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = new HeapFile(f, TD, format);
+        Database.getCatalog().addTable(hf, f.getName());
+        try (OutputStream out = new FileOutputStream(f)) {
+            int pageNo = 0;
+            TuplePage page = format.newPage(new HeapPageId(hf.getId(), pageNo), new byte[BufferPool.getPageSize()]);
+            for (int n = 0; n < rows; n++) {
+                Tuple t = row(n);
+                if (!page.hasRoomFor(t)) {
+                    out.write(page.getPageData());
+                    page = format.newPage(new HeapPageId(hf.getId(), ++pageNo), new byte[BufferPool.getPageSize()]);
+                }
+                page.insertTuple(t);
+            }
+            out.write(page.getPageData());
+        }
+        return hf;
+    }
+}
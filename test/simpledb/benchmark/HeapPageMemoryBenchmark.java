@@ -0,0 +1,137 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Permissions;
+import simpledb.common.Utility;
+import simpledb.storage.BufferPool;
+import simpledb.storage.FrameArena;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPage;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.Tuple;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Measures the Java heap held by a large, full BufferPool and the garbage
+ * collection time spent loading and scanning it, with pages in heap buffers
+ * and with pages in off-heap {@link FrameArena} frames.
+ * <p>
+ * Run with <code>ant runbench -Dbench=HeapPageMemoryBenchmark</code>; the
+ * pool size can be changed with <code>-Dpages=N</code> in bench.jvmargs.
+ */
+public class HeapPageMemoryBenchmark {
+
+    private static final int COLUMNS = 2;
+    private static final int SCANS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int numPages = Integer.getInteger("pages", 20000);
+        System.out.println("pages: " + numPages + ", " + COLUMNS + " int columns, " + SCANS + " scans");
+        System.out.println("mode\theap MB\toff-heap MB\tgc count\tgc ms\tscan ms");
+        for (boolean arena : new boolean[]{false, true}) {
+            if (arena) {
+                System.setProperty(FrameArena.PROPERTY, "true");
+            } else {
+                System.clearProperty(FrameArena.PROPERTY);
+            }
+            Database.reset();
+            File f = createFullTable(numPages);
+            HeapFile hf = Utility.openHeapFile(COLUMNS, f);
+            BufferPool bp = Database.resetBufferPool(numPages);
+            settle();
+            long heapBefore = usedHeap();
+            long gcCount = gcCount();
+            long gcMillis = gcMillis();
+
+            TransactionId tid = new TransactionId();
+            long start = System.nanoTime();
+            long tuples = 0;
+            for (int s = 0; s < SCANS; s++) {
+                tuples += scan(bp, tid, hf.getId(), numPages);
+            }
+            long scanMillis = (System.nanoTime() - start) / 1000000;
+            gcCount = gcCount() - gcCount;
+            gcMillis = gcMillis() - gcMillis;
+
+            settle();
+            long heap = usedHeap() - heapBefore;
+            FrameArena fa = bp.getFrameArena();
+            long offHeap = fa == null ? 0 : fa.reservedBytes();
+            System.out.println((arena ? "arena" : "heap") + "\t" + heap / (1 << 20) + "\t" + offHeap / (1 << 20)
+                    + "\t" + gcCount + "\t" + gcMillis + "\t" + scanMillis + "\t(" + tuples + " tuples)");
+            bp.transactionComplete(tid);
+        }
+        System.clearProperty(FrameArena.PROPERTY);
+    }
+
+    private static long scan(BufferPool bp, TransactionId tid, int tableId, int numPages)
+            throws DbException, TransactionAbortedException {
+        long n = 0;
+        for (int i = 0; i < numPages; i++) {
+            HeapPage p = (HeapPage) bp.getPage(tid, new HeapPageId(tableId, i), Permissions.READ_ONLY);
+            for (Iterator<Tuple> it = p.iterator(); it.hasNext(); ) {
+                it.next();
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Writes a table whose pages are all full.
+     */
+    private static File createFullTable(int numPages) throws IOException, DbException {
+        File f = File.createTempFile("bench", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = Utility.openHeapFile(COLUMNS, f);
+        HeapPage page = new HeapPage(new HeapPageId(hf.getId(), 0), HeapPage.createEmptyPageData());
+        int n = 0;
+        while (page.getNumEmptySlots() > 0) {
+            page.insertTuple(Utility.getHeapTuple(n++, COLUMNS));
+        }
+        byte[] data = page.getPageData();
+        try (OutputStream out = new FileOutputStream(f)) {
+            for (int i = 0; i < numPages; i++) {
+                out.write(data);
+            }
+        }
+        return f;
+    }
+
+    private static void settle() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+    }
+
+    private static long usedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long gcCount() {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            n += gc.getCollectionCount();
+        }
+        return n;
+    }
+
+    private static long gcMillis() {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            n += gc.getCollectionTime();
+        }
+        return n;
+    }
+}
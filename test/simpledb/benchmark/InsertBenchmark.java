@@ -0,0 +1,49 @@
+package simpledb.benchmark;
+
+import java.io.File;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Measures insert throughput into a heap file as it grows from empty to a
+ * large table. With the free-space map, each step should take about as long
+ * as the first one.
+ * <p>
+ * Run with <code>ant runbench -Dbench=InsertBenchmark</code>; the table size
+ * can be changed with <code>-Drows=N</code> in bench.jvmargs.
+ */
+public class InsertBenchmark {
+
+    private static final int COLUMNS = 2;
+    private static final int STEPS = 10;
+    private static final int ROWS_PER_TRANSACTION = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int rows = Integer.getInteger("rows", 1000000);
+        Database.reset();
+        File f = File.createTempFile("bench", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = Utility.openHeapFile(COLUMNS, f);
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+        System.out.println("rows\tpages\tinserts/s");
+        int step = rows / STEPS;
+        int n = 0;
+        for (int s = 0; s < STEPS; s++) {
+            long start = System.nanoTime();
+            for (int done = 0; done < step; done += ROWS_PER_TRANSACTION) {
+                TransactionId tid = new TransactionId();
+                for (int i = 0; i < ROWS_PER_TRANSACTION; i++) {
+                    bp.insertTuple(tid, hf.getId(), Utility.getHeapTuple(n++, COLUMNS));
+                }
+                bp.transactionComplete(tid);
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.println(n + "\t" + hf.numPages() + "\t" + (long) (step / (nanos / 1e9)));
+        }
+    }
+}
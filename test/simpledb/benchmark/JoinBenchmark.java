@@ -0,0 +1,116 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Utility;
+import simpledb.execution.HashEquiJoin;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPage;
+import simpledb.storage.HeapPageId;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Measures an equi-join of two 2-column int tables held in the pool,
+ * SELECT * FROM r, s WHERE r.f0 = s.f0, by a {@link HashEquiJoin} with
+ * memory budgets that hold all, some, or little of the build side r.
+ * <p>
+ * Run with <code>ant runbench -Dbench=JoinBenchmark</code>; the table size
+ * can be changed with <code>-Dpages=N</code>, and the budgets with
+ * <code>-Dbudgets=1024,128,16</code>, in bench.jvmargs.
+ */
+public class JoinBenchmark {
+
+    private static final int COLUMNS = 2;
+    private static final int ROUNDS = 7;
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        int numPages = Integer.getInteger("pages", 400);
+        int[] budgets = Arrays.stream(System.getProperty("budgets", "1024,128,16").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        Database.reset();
+        HeapFile r = createTable("r", numPages, 1);
+        HeapFile s = createTable("s", numPages, 2);
+        Database.resetBufferPool(2 * numPages + 10).setPrefetchDepth(0);
+        TransactionId tid = new TransactionId();
+
+        // rounds visit every budget in turn, so that warm-up and garbage
+        // collection do not favour the budget measured last
+        long[][] times = new long[budgets.length][ROUNDS];
+        long[] rows = new long[budgets.length];
+        int[] spilled = new int[budgets.length];
+        for (int round = -2; round < ROUNDS; round++) {
+            for (int b = 0; b < budgets.length; b++) {
+                HashEquiJoin join = new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                        new SeqScan(tid, r.getId(), "r"), new SeqScan(tid, s.getId(), "s"));
+                join.setMemoryPages(budgets[b]);
+                long start = System.nanoTime();
+                join.open();
+                spilled[b] = join.getSpilledPartitions();
+                rows[b] = drain(join);
+                join.close();
+                if (round >= 0) { // the first rounds fill the pool and warm up
+                    times[b][round] = System.nanoTime() - start;
+                }
+            }
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        System.out.println("pages per table: " + numPages + ", build side "
+                + numPages * (long) BufferPool.getPageSize() / 1024 + " KB");
+        System.out.println("budget (pages)\tms (median of " + ROUNDS + ")\tspilled partitions\trows out");
+        for (int b = 0; b < budgets.length; b++) {
+            Arrays.sort(times[b]);
+            System.out.printf("%d\t\t%.1f\t\t\t%d\t\t\t%d%n", budgets[b], times[b][ROUNDS / 2] / 1e6, spilled[b], rows[b]);
+        }
+    }
+
+    private static long drain(OpIterator it) throws Exception {
+        long rows = 0;
+        while (it.hasNext()) {
+            sink = it.next();
+            rows++;
+        }
+        return rows;
+    }
+
+    private static int tuplesPerPage() {
+        return BufferPool.getPageSize() * 8 / (COLUMNS * 4 * 8 + 1);
+    }
+
+    /**
+     * Writes a table of full pages whose join keys are random below the
+     * number of tuples, so that each tuple matches about one other.
+     */
+    private static HeapFile createTable(String name, int numPages, long seed) throws IOException, DbException {
+        File f = File.createTempFile("bench", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(COLUMNS, "f"));
+        Database.getCatalog().addTable(hf, name);
+        Random random = new Random(seed);
+        int keys = numPages * tuplesPerPage();
+        try (OutputStream out = new FileOutputStream(f)) {
+            for (int i = 0; i < numPages; i++) {
+                HeapPage page = new HeapPage(new HeapPageId(hf.getId(), i), HeapPage.createEmptyPageData());
+                for (int n = 0; n < tuplesPerPage(); n++) {
+                    page.insertTuple(Utility.getHeapTuple(new int[]{random.nextInt(keys), n}));
+                }
+                out.write(page.getPageData());
+            }
+        }
+        return hf;
+    }
+}
@@ -0,0 +1,96 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Utility;
+import simpledb.storage.BufferPool;
+import simpledb.storage.DbFileIterator;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPage;
+import simpledb.storage.HeapPageId;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Compares full scans of a table read through positional channel reads with
+ * scans of the same table read through a memory mapping. The pool is much
+ * smaller than the table, so every page of every scan is read from the file.
+ * <p>
+ * The cold scan is the first one through a freshly opened HeapFile, before
+ * the file is mapped; the warm scans follow it. The operating system's page
+ * cache is warm in both cases, so the numbers show the cost of the read path
+ * rather than of the disk.
+ * <p>
+ * Run with <code>ant runbench -Dbench=MappedScanBenchmark</code>; the table
+ * size can be changed with <code>-Dpages=N</code> in bench.jvmargs.
+ */
+public class MappedScanBenchmark {
+
+    private static final int COLUMNS = 2;
+    private static final int POOL = 100;
+    private static final int WARM_SCANS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int numPages = Integer.getInteger("pages", 20000);
+        System.out.println("pages: " + numPages + ", " + COLUMNS + " int columns, pool " + POOL);
+        System.out.println("mode\tcold ms\twarm ms (avg of " + WARM_SCANS + ")");
+        Database.reset();
+        File f = createFullTable(numPages);
+        for (boolean mapped : new boolean[]{false, true}) {
+            HeapFile hf = Utility.openHeapFile(COLUMNS, f);
+            hf.setMapped(mapped);
+            BufferPool bp = Database.resetBufferPool(POOL);
+            // measure the read path alone
+            bp.setPrefetchDepth(0);
+            TransactionId tid = new TransactionId();
+
+            long cold = scan(hf, tid);
+            long warm = 0;
+            for (int s = 0; s < WARM_SCANS; s++) {
+                warm += scan(hf, tid);
+            }
+            System.out.println((mapped ? "mmap" : "channel") + "\t" + cold / 1000000
+                    + "\t" + warm / WARM_SCANS / 1000000);
+            bp.transactionComplete(tid);
+        }
+    }
+
+    /**
+     * @return the time the scan took, in nanoseconds
+     */
+    private static long scan(HeapFile hf, TransactionId tid) throws Exception {
+        long start = System.nanoTime();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+        }
+        it.close();
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Writes a table whose pages are all full.
+     */
+    private static File createFullTable(int numPages) throws IOException, DbException {
+        File f = File.createTempFile("bench", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = Utility.openHeapFile(COLUMNS, f);
+        HeapPage page = new HeapPage(new HeapPageId(hf.getId(), 0), HeapPage.createEmptyPageData());
+        int n = 0;
+        while (page.getNumEmptySlots() > 0) {
+            page.insertTuple(Utility.getHeapTuple(n++, COLUMNS));
+        }
+        byte[] data = page.getPageData();
+        try (OutputStream out = new FileOutputStream(f)) {
+            for (int i = 0; i < numPages; i++) {
+                out.write(data);
+            }
+        }
+        return f;
+    }
+}
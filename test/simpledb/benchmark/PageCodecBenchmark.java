@@ -0,0 +1,107 @@
+package simpledb.benchmark;
+
+import java.io.File;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.index.BTreeEntry;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeInternalPage;
+import simpledb.index.BTreeLeafPage;
+import simpledb.index.BTreePage;
+import simpledb.index.BTreePageId;
+import simpledb.index.BTreeUtility;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPage;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.IntField;
+
+/**
+ * Measures how many full pages per second each page class encodes with
+ * getPageData and decodes with its constructor.
+ * <p>
+ * Each measurement is preceded by an untimed warm-up round of the same
+ * length, so that the JIT has compiled the code being measured.
+ * <p>
+ * Run with <code>ant runbench -Dbench=PageCodecBenchmark</code>; the length
+ * of a round can be changed with <code>-Dmillis=N</code> in bench.jvmargs.
+ */
+public class PageCodecBenchmark {
+
+    private static final int COLUMNS = 2;
+    private static final int KEY = 0;
+
+    /**
+     * Encodes or decodes one page.
+     */
+    private interface Codec {
+        Object run() throws Exception;
+    }
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        long millis = Long.getLong("millis", 1000);
+        Database.reset();
+
+        File hf = File.createTempFile("bench", ".dat");
+        hf.deleteOnExit();
+        int heapId = Utility.openHeapFile(COLUMNS, hf).getId();
+        HeapPage heap = new HeapPage(new HeapPageId(heapId, 0), HeapPage.createEmptyPageData());
+        for (int n = 0; heap.getNumEmptySlots() > 0; n++) {
+            heap.insertTuple(Utility.getHeapTuple(n, COLUMNS));
+        }
+
+        File bf = File.createTempFile("bench", ".dat");
+        bf.deleteOnExit();
+        BTreeFile btree = BTreeUtility.createEmptyBTreeFile(bf.getPath(), COLUMNS, KEY);
+        BTreeLeafPage leaf = new BTreeLeafPage(new BTreePageId(btree.getId(), 1, BTreePageId.LEAF),
+                BTreePage.createEmptyPageData(), KEY);
+        for (int n = 0; leaf.getNumEmptySlots() > 0; n++) {
+            leaf.insertTuple(Utility.getHeapTuple(n, COLUMNS));
+        }
+        BTreeInternalPage internal = new BTreeInternalPage(
+                new BTreePageId(btree.getId(), 2, BTreePageId.INTERNAL), BTreePage.createEmptyPageData(), KEY);
+        for (int n = 0; internal.getNumEmptySlots() > 0; n++) {
+            internal.insertEntry(new BTreeEntry(new IntField(n),
+                    new BTreePageId(btree.getId(), n + 3, BTreePageId.LEAF),
+                    new BTreePageId(btree.getId(), n + 4, BTreePageId.LEAF)));
+        }
+
+        System.out.println("page\t\t\tencode pages/s\tdecode pages/s");
+        byte[] heapData = heap.getPageData();
+        report("HeapPage\t", heap::getPageData, () -> new HeapPage(heap.getId(), heapData), millis);
+        byte[] leafData = leaf.getPageData();
+        report("BTreeLeafPage\t", leaf::getPageData, () -> new BTreeLeafPage(leaf.getId(), leafData, KEY), millis);
+        byte[] internalData = internal.getPageData();
+        report("BTreeInternalPage", internal::getPageData,
+                () -> new BTreeInternalPage(internal.getId(), internalData, KEY), millis);
+    }
+
+    private static void report(String name, Codec encode, Codec decode, long millis) throws Exception {
+        System.out.println(name + "\t" + (long) rate(encode, millis) + "\t\t" + (long) rate(decode, millis));
+    }
+
+    /**
+     * @return how many times per second codec runs, after a warm-up round
+     */
+    private static double rate(Codec codec, long millis) throws Exception {
+        for (int round = 0; round < 2; round++) {
+            long n = 0;
+            long start = System.nanoTime();
+            long end = start + millis * 1000000;
+            long now;
+            do {
+                for (int i = 0; i < 100; i++) {
+                    sink = codec.run();
+                }
+                n += 100;
+                now = System.nanoTime();
+            } while (now < end);
+            if (round == 1) {
+                return n / ((now - start) / 1e9);
+            }
+        }
+        throw new AssertionError();
+    }
+}
@@ -0,0 +1,155 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Utility;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPage;
+import simpledb.storage.HeapPageId;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Measures how scan-heavy queries, planned by {@link LogicalPlan}, scale
+ * with the number of threads set by {@link LogicalPlan#setParallelism}, over
+ * a 10-column int table held in the pool:
+ * <ul>
+ * <li>filter: SELECT t.f1, t.f2 FROM t WHERE t.f3 &lt; 10 AND t.f4 &gt;= 10</li>
+ * <li>aggregate: SELECT t.f2, AVG(t.f1) FROM t WHERE t.f5 &lt;= 90 GROUP BY
+ * t.f2</li>
+ * </ul>
+ * Scaling can only be near-linear up to the number of cores the JVM gets;
+ * the number is printed with the results.
+ * <p>
+ * Run with <code>ant runbench -Dbench=ParallelScanBenchmark</code>; the
+ * table size can be changed with <code>-Dpages=N</code>, and the thread
+ * counts with <code>-Dthreads=1,2,4</code>, in bench.jvmargs.
+ */
+public class ParallelScanBenchmark {
+
+    private static final int COLUMNS = 10;
+    private static final int ROUNDS = 15;
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        int numPages = Integer.getInteger("pages", 2000);
+        int[] threads = Arrays.stream(System.getProperty("threads", "1,2,4").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        Database.reset();
+        HeapFile hf = createFullTable(numPages);
+        Database.resetBufferPool(numPages + 10).setPrefetchDepth(0);
+        Map<String, TableStats> stats = new HashMap<>();
+        stats.put("t", new TableStats(hf.getId(), 1));
+        TransactionId tid = new TransactionId();
+
+        String[] queries = {"filter", "aggregate"};
+        // rounds visit every plan in turn, so that warm-up and garbage
+        // collection do not favour the plan measured last
+        long[][][] times = new long[queries.length][threads.length][ROUNDS];
+        long[][] rows = new long[queries.length][threads.length];
+        for (int round = -3; round < ROUNDS; round++) {
+            for (int q = 0; q < queries.length; q++) {
+                for (int n = 0; n < threads.length; n++) {
+                    OpIterator plan = plan(q, threads[n], tid, hf, stats);
+                    long start = System.nanoTime();
+                    rows[q][n] = run(plan);
+                    if (round >= 0) { // the first rounds fill the pool and warm up
+                        times[q][n][round] = System.nanoTime() - start;
+                    }
+                }
+            }
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        System.out.println("pages: " + numPages + ", " + COLUMNS + " int columns, "
+                + Runtime.getRuntime().availableProcessors() + " cores");
+        System.out.println("query\t\tthreads\tms (median of " + ROUNDS + ")\tspeedup\trows out");
+        for (int q = 0; q < queries.length; q++) {
+            double serial = 0;
+            for (int n = 0; n < threads.length; n++) {
+                Arrays.sort(times[q][n]);
+                double ms = times[q][n][ROUNDS / 2] / 1e6;
+                if (n == 0) {
+                    serial = ms;
+                }
+                System.out.printf("%-10s\t%d\t%.1f\t\t\t%.2f\t%d%n", queries[q], threads[n], ms, serial / ms, rows[q][n]);
+            }
+        }
+    }
+
+    private static OpIterator plan(int q, int threads, TransactionId tid, HeapFile hf,
+                                   Map<String, TableStats> stats) throws Exception {
+        LogicalPlan lp = new LogicalPlan();
+        lp.setParallelism(threads);
+        lp.addScan(hf.getId(), "t");
+        if (q == 0) {
+            lp.addFilter("t.f3", Predicate.Op.LESS_THAN, "10");
+            lp.addFilter("t.f4", Predicate.Op.GREATER_THAN_OR_EQ, "10");
+            lp.addProjectField("t.f1", null);
+            lp.addProjectField("t.f2", null);
+        } else {
+            lp.addFilter("t.f5", Predicate.Op.LESS_THAN_OR_EQ, "90");
+            lp.addProjectField("t.f2", null);
+            lp.addProjectField("t.f1", "AVG");
+            lp.addAggregate("AVG", "t.f1", "t.f2");
+        }
+        return lp.physicalPlan(tid, stats, false);
+    }
+
+    private static long run(OpIterator it) throws Exception {
+        long rows = 0;
+        it.open();
+        while (it.hasNext()) {
+            sink = it.next();
+            rows++;
+        }
+        it.close();
+        return rows;
+    }
+
+    private static int tuplesPerPage() {
+        return BufferPool.getPageSize() * 8 / (COLUMNS * 4 * 8 + 1);
+    }
+
+    /**
+     * Writes a table named t whose pages are all the same full page of
+     * random values below 100, with 10 distinct values in the grouping
+     * column.
+     */
+    private static HeapFile createFullTable(int numPages) throws IOException, DbException {
+        File f = File.createTempFile("bench", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(COLUMNS, "f"));
+        Database.getCatalog().addTable(hf, "t");
+        HeapPage page = new HeapPage(new HeapPageId(hf.getId(), 0), HeapPage.createEmptyPageData());
+        Random random = new Random(1);
+        for (int n = 0; n < tuplesPerPage(); n++) {
+            int[] values = new int[COLUMNS];
+            for (int j = 0; j < COLUMNS; j++) {
+                values[j] = random.nextInt(j == 2 ? 10 : 100);
+            }
+            page.insertTuple(Utility.getHeapTuple(values));
+        }
+        byte[] data = page.getPageData();
+        try (OutputStream out = new FileOutputStream(f)) {
+            for (int i = 0; i < numPages; i++) {
+                out.write(data);
+            }
+        }
+        return hf;
+    }
+}
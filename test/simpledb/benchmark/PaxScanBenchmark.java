@@ -0,0 +1,121 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Utility;
+import simpledb.execution.SeqScan;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPageFormat;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TuplePage;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Compares scans of a 20-column table that read 2 of its columns, with the
+ * table stored in HeapPages and in PaxHeapPages. Scans that read every
+ * column are shown for reference.
+ * <p>
+ * The pool holds both tables, and each scan is timed after the tables have
+ * been read once, so the numbers show the cost of decoding pages in memory
+ * rather than of reading them.
+ * <p>
+ * Run with <code>ant runbench -Dbench=PaxScanBenchmark</code>; the table size
+ * can be changed with <code>-Dpages=N</code> in bench.jvmargs.
+ */
+public class PaxScanBenchmark {
+
+    private static final int COLUMNS = 20;
+    private static final int[] READ = {0, 1};
+    private static final int ROUNDS = 30;
+
+    private static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        int numPages = Integer.getInteger("pages", 5000);
+        System.out.println("pages: " + numPages + ", " + COLUMNS + " int columns, reading " + READ.length);
+        System.out.println("format\tcolumns\tms per scan (median of " + ROUNDS + ")");
+        Database.reset();
+        HeapPageFormat[] formats = {HeapPageFormat.FIXED, HeapPageFormat.PAX};
+        int[][] projections = {READ, null};
+        HeapFile[] tables = new HeapFile[formats.length];
+        for (int i = 0; i < formats.length; i++) {
+            tables[i] = createFullTable(formats[i], numPages);
+        }
+        Database.resetBufferPool(formats.length * numPages + 10);
+        TransactionId tid = new TransactionId();
+
+        // rounds visit every case in turn, so that warm-up and garbage
+        // collection do not favour the cases measured last
+        long[][][] times = new long[formats.length][projections.length][ROUNDS];
+        for (int round = -1; round < ROUNDS; round++) {
+            for (int i = 0; i < formats.length; i++) {
+                for (int c = 0; c < projections.length; c++) {
+                    long nanos = scan(tables[i], tid, projections[c]);
+                    if (round >= 0) { // the first round fills the pool
+                        times[i][c][round] = nanos;
+                    }
+                }
+            }
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        for (int i = 0; i < formats.length; i++) {
+            for (int c = 0; c < projections.length; c++) {
+                Arrays.sort(times[i][c]);
+                System.out.println(formats[i] + "\t" + (projections[c] == null ? "all" : projections[c].length)
+                        + "\t" + times[i][c][ROUNDS / 2] / 1000000.0);
+            }
+        }
+    }
+
+    /**
+     * Scans the table and sums the columns the benchmark reads.
+     *
+     * @return the time the scan took, in nanoseconds
+     */
+    private static long scan(HeapFile hf, TransactionId tid, int[] columns) throws Exception {
+        long start = System.nanoTime();
+        SeqScan scan = new SeqScan(tid, hf.getId(), "t", columns);
+        scan.open();
+        long sum = 0;
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            for (int j : READ) {
+                sum += ((IntField) t.getField(j)).getValue();
+            }
+        }
+        scan.close();
+        sink = sum;
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Writes a table of the given format whose pages are all full.
+     */
+    private static HeapFile createFullTable(HeapPageFormat format, int numPages) throws IOException, DbException {
+        File f = File.createTempFile("bench", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(COLUMNS), format);
+        Database.getCatalog().addTable(hf, f.getName());
+        TuplePage page = format.newPage(new HeapPageId(hf.getId(), 0), new byte[BufferPool.getPageSize()]);
+        for (int n = 0; page.hasRoomFor(Utility.getHeapTuple(n, COLUMNS)); n++) {
+            page.insertTuple(Utility.getHeapTuple(n, COLUMNS));
+        }
+        byte[] data = page.getPageData();
+        try (OutputStream out = new FileOutputStream(f)) {
+            for (int i = 0; i < numPages; i++) {
+                out.write(data);
+            }
+        }
+        return hf;
+    }
+}
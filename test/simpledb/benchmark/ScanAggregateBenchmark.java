@@ -0,0 +1,133 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Utility;
+import simpledb.execution.Aggregate;
+import simpledb.execution.Aggregator;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPage;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.IntField;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Measures the memory allocated per tuple and the throughput of
+ * scan-filter-aggregate queries over a 10-column int table held in the pool:
+ * <ul>
+ * <li>SELECT SUM(c1) FROM t WHERE c3 &lt; 50</li>
+ * <li>SELECT c2, SUM(c1) FROM t WHERE c3 &lt; 50 GROUP BY c2</li>
+ * <li>SELECT SUM(c1) FROM t</li>
+ * </ul>
+ * Allocation is that of the benchmark's own thread, as reported by the JVM;
+ * read-ahead is off, so no other thread works for the query.
+ * <p>
+ * Run with <code>ant runbench -Dbench=ScanAggregateBenchmark</code>; the
+ * table size can be changed with <code>-Dpages=N</code> in bench.jvmargs.
+ */
+public class ScanAggregateBenchmark {
+
+    private static final int COLUMNS = 10;
+    private static final int ROUNDS = 15;
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        int numPages = Integer.getInteger("pages", 2000);
+        Database.reset();
+        HeapFile hf = createFullTable(numPages);
+        Database.resetBufferPool(numPages + 10).setPrefetchDepth(0);
+        long rows = numPages * (long) tuplesPerPage();
+        String[] names = {"filter, sum", "filter, group, sum", "sum"};
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        TransactionId tid = new TransactionId();
+
+        // rounds visit every query in turn, so that warm-up and garbage
+        // collection do not favour the query measured last
+        long[][] times = new long[names.length][ROUNDS];
+        long[] allocated = new long[names.length];
+        for (int round = -2; round < ROUNDS; round++) {
+            for (int q = 0; q < names.length; q++) {
+                long bytes = threads.getCurrentThreadAllocatedBytes();
+                long start = System.nanoTime();
+                run(query(q, tid, hf));
+                long nanos = System.nanoTime() - start;
+                if (round >= 0) { // the first rounds fill the pool and warm up
+                    times[q][round] = nanos;
+                    allocated[q] += threads.getCurrentThreadAllocatedBytes() - bytes;
+                }
+            }
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        System.out.println("pages: " + numPages + ", rows: " + rows + ", " + COLUMNS + " int columns");
+        System.out.println("query\t\t\tms (median of " + ROUNDS + ")\tMrows/s\tbytes/row");
+        for (int q = 0; q < names.length; q++) {
+            Arrays.sort(times[q]);
+            double ms = times[q][ROUNDS / 2] / 1e6;
+            System.out.printf("%-20s\t%.1f\t\t\t%.1f\t%.1f%n", names[q], ms, rows / ms / 1000,
+                    allocated[q] / (double) ROUNDS / rows);
+        }
+    }
+
+    private static OpIterator query(int q, TransactionId tid, HeapFile hf) throws DbException {
+        SeqScan scan = new SeqScan(tid, hf.getId(), "t");
+        if (q == 2) {
+            return new Aggregate(scan, 1, Aggregator.NO_GROUPING, Aggregator.Op.SUM);
+        }
+        Predicate p = new Predicate(3, Predicate.Op.LESS_THAN, new IntField(50));
+        scan.pushDown(p);
+        return new Aggregate(scan, 1, q == 1 ? 2 : Aggregator.NO_GROUPING, Aggregator.Op.SUM);
+    }
+
+    private static void run(OpIterator it) throws Exception {
+        it.open();
+        while (it.hasNext()) {
+            sink = it.next();
+        }
+        it.close();
+    }
+
+    private static int tuplesPerPage() {
+        return BufferPool.getPageSize() * 8 / (COLUMNS * 4 * 8 + 1);
+    }
+
+    /**
+     * Writes a table whose pages are all the same full page of random values
+     * below 100, with 10 distinct values in the grouping column.
+     */
+    private static HeapFile createFullTable(int numPages) throws IOException, DbException {
+        File f = File.createTempFile("bench", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(COLUMNS));
+        Database.getCatalog().addTable(hf, f.getName());
+        HeapPage page = new HeapPage(new HeapPageId(hf.getId(), 0), HeapPage.createEmptyPageData());
+        Random random = new Random(1);
+        for (int n = 0; n < tuplesPerPage(); n++) {
+            int[] values = new int[COLUMNS];
+            for (int j = 0; j < COLUMNS; j++) {
+                values[j] = random.nextInt(j == 2 ? 10 : 100);
+            }
+            page.insertTuple(Utility.getHeapTuple(values));
+        }
+        byte[] data = page.getPageData();
+        try (OutputStream out = new FileOutputStream(f)) {
+            for (int i = 0; i < numPages; i++) {
+                out.write(data);
+            }
+        }
+        return hf;
+    }
+}
@@ -0,0 +1,67 @@
+package simpledb.benchmark;
+
+import java.util.Random;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.storage.BufferPool;
+import simpledb.storage.DbFileIterator;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPageId;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Measures how much a full scan of a large table disturbs the working set of
+ * a concurrent OLTP-style workload: the hit ratio of random reads over a hot
+ * set is reported before and after the scan, with and without scan rings.
+ * <p>
+ * Run with <code>ant runbench -Dbench=ScanRingBenchmark</code>.
+ */
+public class ScanRingBenchmark {
+
+    private static final int POOL = 2000;
+    private static final int HOT = 1000;
+    private static final int BIG = 20000;
+    private static final int READS = 5000;
+    private static final int PAGE_SIZE = 512;
+
+    public static void main(String[] args) throws Exception {
+        BufferPool.setPageSize(PAGE_SIZE);
+        System.out.println("ring\thit ratio before\thit ratio after\tscan ms");
+        for (int ring : new int[]{0, BufferPool.DEFAULT_SCAN_RING_PAGES}) {
+            Database.reset();
+            HeapFile hot = BufferPoolHitBenchmark.createEmptyTable(HOT);
+            HeapFile big = BufferPoolHitBenchmark.createEmptyTable(BIG);
+            BufferPool bp = Database.resetBufferPool(POOL);
+            bp.setScanRingPages(ring);
+            TransactionId tid = new TransactionId();
+            Random r = new Random(42);
+
+            hitRatio(bp, tid, hot, r); // warm up
+            double before = hitRatio(bp, tid, hot, r);
+            long start = System.nanoTime();
+            DbFileIterator it = big.iterator(tid);
+            it.open();
+            while (it.hasNext()) {
+                it.next();
+            }
+            it.close();
+            long scanMillis = (System.nanoTime() - start) / 1000000;
+            double after = hitRatio(bp, tid, hot, r);
+            System.out.println(ring + "\t" + String.format("%.3f\t\t\t%.3f", before, after) + "\t\t" + scanMillis);
+            bp.transactionComplete(tid);
+        }
+        BufferPool.resetPageSize();
+    }
+
+    private static double hitRatio(BufferPool bp, TransactionId tid, HeapFile hot, Random r) throws Exception {
+        long hits = bp.getHits();
+        long misses = bp.getMisses();
+        for (int i = 0; i < READS; i++) {
+            bp.getPage(tid, new HeapPageId(hot.getId(), r.nextInt(HOT)), Permissions.READ_ONLY);
+        }
+        hits = bp.getHits() - hits;
+        misses = bp.getMisses() - misses;
+        return (double) hits / (hits + misses);
+    }
+}